@@ -0,0 +1,58 @@
+package io.github.pastorgl.aqlselectex.benchmarks;
+
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import io.github.pastorgl.aqlselectex.CompiledSelect;
+import io.github.pastorgl.aqlselectex.QueryCatalog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compilation of a catalog of distinct queries one by one, and in parallel by compileAll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+    @Param({"1000", "20000"})
+    public int size;
+
+    private List<String> selects;
+    private AQLSelectEx selectEx;
+
+    @Setup
+    public void setup() {
+        String[] shapes = {Queries.SIMPLE, Queries.NESTED, Queries.ITERATORS, Queries.GEOJSON, Queries.REGEX};
+
+        selects = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // trailing spaces make texts distinct for the compiled query cache
+            StringBuilder sb = new StringBuilder(shapes[i % shapes.length]);
+            for (int j = i / shapes.length; j > 0; j >>= 1) {
+                sb.append(((j & 1) == 0) ? ' ' : '\t');
+            }
+            selects.add(sb.toString());
+        }
+
+        selectEx = AQLSelectEx.forSchema(Queries.schema(500)).withCacheSize(0);
+    }
+
+    @Benchmark
+    public CompiledSelect sequential() throws Exception {
+        CompiledSelect last = null;
+        for (String select : selects) {
+            last = selectEx.compile(select);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public QueryCatalog compileAll() {
+        return selectEx.compileAll(selects);
+    }
+}
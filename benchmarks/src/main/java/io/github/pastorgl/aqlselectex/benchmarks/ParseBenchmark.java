@@ -0,0 +1,49 @@
+package io.github.pastorgl.aqlselectex.benchmarks;
+
+import com.aerospike.client.query.Statement;
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import io.github.pastorgl.aqlselectex.ParserEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full compilation of a query from text with each parser engine, and a compiled query cache hit for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"simple", "nested", "manyOrs", "iterators", "geojson", "regex"})
+    public String shape;
+
+    @Param({"ANTLR", "RECURSIVE_DESCENT"})
+    public ParserEngine engine;
+
+    private String select;
+    private AQLSelectEx uncached;
+    private AQLSelectEx cached;
+
+    @Setup
+    public void setup() throws Exception {
+        select = Queries.byShape(shape);
+
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(Queries.schema(500)).withParserEngine(engine);
+        uncached = selectEx.withCacheSize(0);
+        cached = selectEx.withCacheSize(16);
+        cached.fromString(select);
+    }
+
+    @Benchmark
+    public Statement compile() throws Exception {
+        return uncached.fromString(select);
+    }
+
+    @Benchmark
+    public Statement cacheHit() throws Exception {
+        return cached.fromString(select);
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.pastorgl.aqlselectex.benchmarks;
+
+import com.aerospike.client.command.ParticleType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class Queries {
+    static final String SIMPLE = "SELECT foo,bar,baz FROM namespace1.sett";
+
+    static final String NESTED = "SELECT foo,bar,baz FROM namespace1.sett WITH (baz='a') WHERE " +
+            "(foo>2 AND (bar <=3 OR (foo>5 AND NOT (baz='b' OR (foo<=7 AND (bar>1 OR foo!=9)))))) OR NOT (foo<=100 AND bar>=-5)";
+
+    static final String MANY_ORS;
+
+    static final String ITERATORS = "SELECT li,ma FROM namespace1.sett WHERE li ANY CONTAINS (ke='aaa') " +
+            "AND (ma MAPKEYS (ko<=999) OR ma ANY MAPVALUES (ko!=5)) AND NOT li CONTAINS (ke='bbb')";
+
+    static final String GEOJSON = "SELECT gj FROM namespace1.sett WHERE gj WITHIN CAST('{\"type\": \"Polygon\", " +
+            "\"coordinates\": [0.0, 0.0],[1.0, 0.0],[1.0, 1.0],[0.0, 1.0],[0.0, 0.0]}' AS GEOJSON) " +
+            "OR gj CONTAINS CAST('{\"type\": \"Point\", \"coordinates\": [0.5, 0.5]}' AS GEOJSON)";
+
+    static final String REGEX = "SELECT baz FROM namespace1.sett WHERE baz LIKE '/sparta.*/ie?' OR baz MATCH '^[a-f0-9]{32}$' " +
+            "OR baz REGEXP '/^thermopyl(ae|ai)$/s'";
+
+    static {
+        StringBuilder sb = new StringBuilder("SELECT foo,bar,baz FROM namespace1.sett WHERE ");
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append("foo = ").append(i);
+        }
+        MANY_ORS = sb.toString();
+    }
+
+    static Map<String, Map<String, Integer>> schema(int wideBins) {
+        Map<String, Map<String, Integer>> schema = new HashMap<>();
+
+        Map<String, Integer> bins = new HashMap<>();
+        bins.put("foo", ParticleType.INTEGER);
+        bins.put("bar", ParticleType.DOUBLE);
+        bins.put("baz", ParticleType.STRING);
+        bins.put("gj", ParticleType.GEOJSON);
+        bins.put("li", ParticleType.LIST);
+        bins.put("ma", ParticleType.MAP);
+        bins.put("ma.ko", ParticleType.INTEGER);
+        for (int i = 0; i < wideBins; i++) {
+            bins.put("wide" + i, (i % 2 == 0) ? ParticleType.INTEGER : ParticleType.STRING);
+        }
+        schema.put("namespace1.sett", bins);
+
+        return schema;
+    }
+
+    static String byShape(String shape) {
+        switch (shape) {
+            case "simple":
+                return SIMPLE;
+            case "nested":
+                return NESTED;
+            case "manyOrs":
+                return MANY_ORS;
+            case "iterators":
+                return ITERATORS;
+            case "geojson":
+                return GEOJSON;
+            case "regex":
+                return REGEX;
+        }
+        throw new IllegalArgumentException("Unknown query shape " + shape);
+    }
+
+    private Queries() {
+    }
+}
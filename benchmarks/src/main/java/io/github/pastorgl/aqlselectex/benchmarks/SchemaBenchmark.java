@@ -0,0 +1,54 @@
+package io.github.pastorgl.aqlselectex.benchmarks;
+
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import io.github.pastorgl.aqlselectex.Schema;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AQLSelectEx instance lookup by schema, by a single thread and under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBenchmark {
+    @Param({"10", "500"})
+    public int bins;
+
+    private Map<String, Map<String, Integer>> schema;
+    private Schema.Snapshot snapshot;
+
+    @Setup
+    public void setup() {
+        schema = Queries.schema(bins);
+        snapshot = Schema.Snapshot.of(schema);
+        AQLSelectEx.forSchema(snapshot);
+    }
+
+    @Benchmark
+    public AQLSelectEx forSchema() {
+        return AQLSelectEx.forSchema(schema);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AQLSelectEx forSchemaContended() {
+        return AQLSelectEx.forSchema(schema);
+    }
+
+    @Benchmark
+    public AQLSelectEx forSnapshot() {
+        return AQLSelectEx.forSchema(snapshot);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public AQLSelectEx forSnapshotContended() {
+        return AQLSelectEx.forSchema(snapshot);
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.pastorgl.aqlselectex.benchmarks;
+
+import com.aerospike.client.query.PredExp;
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the client does with a compiled predicate on each execution: estimate its wire size, then serialize it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireSizeBenchmark {
+    @Param({"nested", "manyOrs", "iterators", "geojson", "regex"})
+    public String shape;
+
+    private PredExp[] predExp;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        predExp = AQLSelectEx.forSchema(Queries.schema(10)).fromString(Queries.byShape(shape)).getPredExp();
+        buffer = new byte[PredExp.estimateSize(predExp)];
+    }
+
+    @Benchmark
+    public int estimateSize() {
+        return PredExp.estimateSize(predExp);
+    }
+
+    @Benchmark
+    public int estimateAndWrite() {
+        int size = PredExp.estimateSize(predExp);
+        if (buffer.length < size) {
+            buffer = new byte[size];
+        }
+        return PredExp.write(predExp, buffer, 0);
+    }
+}
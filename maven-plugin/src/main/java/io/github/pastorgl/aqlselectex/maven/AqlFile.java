@@ -0,0 +1,80 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Queries of a .aql source file. Each query is preceded by a "-- name: methodName" line, and spans all lines up to the
+ * next one. Other lines starting with "--" are comments.
+ */
+final class AqlFile {
+    private static final String COMMENT = "--";
+    private static final String NAME = "name:";
+
+    static final class Query {
+        final String name;
+        final String text;
+        final int line;
+
+        private Query(String name, String text, int line) {
+            this.name = name;
+            this.text = text;
+            this.line = line;
+        }
+    }
+
+    private final List<Query> queries;
+
+    private AqlFile(List<Query> queries) {
+        this.queries = Collections.unmodifiableList(queries);
+    }
+
+    static AqlFile parse(String content) {
+        List<Query> queries = new ArrayList<>();
+
+        String[] lines = content.split("\r\n|\r|\n", -1);
+        String name = null;
+        int line = 0;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            String trimmed = lines[i].trim();
+            if (trimmed.startsWith(COMMENT)) {
+                String comment = trimmed.substring(COMMENT.length()).trim();
+                if (comment.startsWith(NAME)) {
+                    if (name != null) {
+                        queries.add(query(name, text, line));
+                    }
+                    name = comment.substring(NAME.length()).trim();
+                    line = i + 1;
+                    text.setLength(0);
+                }
+                continue;
+            }
+
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (name == null) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": query text before the first '-- name:' line");
+            }
+            text.append((text.length() > 0) ? "\n" : "").append(lines[i]);
+        }
+        if (name != null) {
+            queries.add(query(name, text, line));
+        }
+
+        return new AqlFile(queries);
+    }
+
+    private static Query query(String name, StringBuilder text, int line) {
+        if (text.length() == 0) {
+            throw new IllegalArgumentException("Line " + line + ": query " + name + " has no text");
+        }
+        return new Query(name, text.toString(), line);
+    }
+
+    List<Query> getQueries() {
+        return queries;
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles queries of .aql files ahead of time into Java classes, one per file, with static methods that build their
+ * Statements. Package of a class is the directory of its file relative to the source directory, same as the ANTLR
+ * plugin does for grammars. The build fails if any query is invalid or doesn't match the schema.
+ *
+ * @see AqlFile
+ * @see SchemaFile
+ */
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+    private static final String EXTENSION = ".aql";
+
+    @Parameter(defaultValue = "${basedir}/src/main/aql")
+    private File sourceDirectory;
+
+    @Parameter(defaultValue = "${basedir}/src/main/aql/schema.properties")
+    private File schemaFile;
+
+    @Parameter(defaultValue = "${project.build.directory}/generated-sources/aql")
+    private File outputDirectory;
+
+    /**
+     * Optimize WHERE before compiling it, see {@link AQLSelectEx#withOptimizer(boolean)}
+     */
+    @Parameter(defaultValue = "false")
+    private boolean optimize;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!sourceDirectory.isDirectory()) {
+            getLog().info("No AQL sources in " + sourceDirectory);
+            return;
+        }
+
+        SchemaFile schema;
+        try (Reader reader = Files.newBufferedReader(schemaFile.toPath(), StandardCharsets.UTF_8)) {
+            schema = SchemaFile.parse(reader);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't read schema " + schemaFile, e);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException(schemaFile + ": " + e.getMessage());
+        }
+
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(schema.getTypes(), schema.getIndexes()).withOptimizer(optimize);
+
+        Path root = sourceDirectory.toPath();
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(root)) {
+            sources = files.filter(file -> file.toString().endsWith(EXTENSION) && Files.isRegularFile(file)).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't list " + sourceDirectory, e);
+        }
+
+        List<String> errors = new ArrayList<>();
+        int queries = 0;
+        for (Path source : sources) {
+            Path relative = root.relativize(source);
+            String fileName = relative.getFileName().toString();
+            String className = fileName.substring(0, fileName.length() - EXTENSION.length());
+            String packageName = (relative.getParent() == null) ? null : relative.getParent().toString().replace(File.separatorChar, '.');
+
+            JavaSourceGenerator generator;
+            AqlFile aqlFile;
+            try {
+                generator = new JavaSourceGenerator(selectEx, packageName, className);
+                aqlFile = AqlFile.parse(new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                errors.add(source + ": " + e.getMessage());
+                continue;
+            } catch (IOException e) {
+                throw new MojoExecutionException("Can't read " + source, e);
+            }
+
+            boolean valid = true;
+            for (AqlFile.Query query : aqlFile.getQueries()) {
+                try {
+                    generator.add(query.name, query.text);
+                    queries++;
+                } catch (Exception e) {
+                    errors.add(source + ":" + query.line + ": query " + query.name + ": " + e.getMessage());
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                continue;
+            }
+
+            Path target = outputDirectory.toPath().resolve(relative.resolveSibling(className + ".java"));
+            try {
+                Files.createDirectories(target.getParent());
+                Files.write(target, generator.generate().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Can't write " + target, e);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                getLog().error(error);
+            }
+            throw new MojoFailureException(errors.size() + " invalid AQL source(s) or query(ies), see the log");
+        }
+
+        getLog().info("Compiled " + queries + " AQL query(ies) of " + sources.size() + " file(s) to " + outputDirectory);
+        project.addCompileSourceRoot(outputDirectory.getPath());
+    }
+}
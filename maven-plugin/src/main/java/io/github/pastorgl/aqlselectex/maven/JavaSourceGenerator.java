@@ -0,0 +1,689 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import com.aerospike.client.command.ParticleType;
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import io.github.pastorgl.aqlselectex.CodegenBackend;
+import io.github.pastorgl.aqlselectex.CompiledSelect;
+import io.github.pastorgl.aqlselectex.IndexNode;
+import io.github.pastorgl.aqlselectex.PredExpEmitter;
+import io.github.pastorgl.aqlselectex.PredExpTemplate;
+import io.github.pastorgl.aqlselectex.SelectNode;
+import io.github.pastorgl.aqlselectex.SetSchema;
+import io.github.pastorgl.aqlselectex.ValueNode;
+import io.github.pastorgl.aqlselectex.WhereNode;
+
+import javax.lang.model.SourceVersion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Generates Java source of a class with static methods that build Statements of queries known at build time, with
+ * their Filter and PredExp created directly. Code that calls them needs only the Aerospike client, and neither this
+ * library nor ANTLR runtime. Each query is compiled and checked against the schema when it is added, and parameters
+ * become method arguments typed after the bins they are compared with.
+ */
+public final class JavaSourceGenerator {
+    private static final PredExpEmitter<String> SOURCE = new SourceEmitter();
+
+    private enum ParamType {
+        ANY("Object"), LONG("long"), DOUBLE("double"), STRING("String");
+
+        private final String javaType;
+
+        ParamType(String javaType) {
+            this.javaType = javaType;
+        }
+    }
+
+    private final AQLSelectEx selectEx;
+    private final String packageName;
+    private final String className;
+
+    private final LinkedHashMap<String, String> methods = new LinkedHashMap<>();
+    private boolean regex;
+    private boolean exactLong;
+
+    /**
+     * @param packageName package of the generated class, or null for the default package
+     */
+    public JavaSourceGenerator(AQLSelectEx selectEx, String packageName, String className) {
+        if ((packageName != null) && !packageName.isEmpty() && !SourceVersion.isName(packageName)) {
+            throw new IllegalArgumentException("Invalid package name " + packageName);
+        }
+        if (!isIdentifier(className)) {
+            throw new IllegalArgumentException("Invalid class name " + className);
+        }
+
+        // residual predicates are checked by QueryExecutor, and generated code has no use of other backends
+        this.selectEx = selectEx.withHybridPushdown(false).withBackend(CodegenBackend.PREDEXP).withCacheSize(0);
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    /**
+     * Compiles the query into a method of the generated class. Fails if the query is invalid, its namespace[.set]
+     * isn't in the schema, any bin or bin variable it compares is missing from the schema, a parameter is used
+     * both as a number and as a string, or the query aggregates or has ORDER BY, LIMIT or OFFSET, which a Statement
+     * can't do.
+     *
+     * @param name name of the method
+     */
+    public void add(String name, String select) throws Exception {
+        if (!isIdentifier(name)) {
+            throw new IllegalArgumentException("Invalid method name " + name);
+        }
+        if (methods.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate method name " + name);
+        }
+
+        CompiledSelect compiled = selectEx.compile(select);
+        if (compiled.isAggregate()) {
+            throw new RuntimeException("Aggregate functions and GROUP BY are computed on the client and can't be compiled into a Statement");
+        }
+        if (compiled.getSelect().getOrder() != null) {
+            throw new RuntimeException("ORDER BY is applied on the client and can't be compiled into a Statement");
+        }
+        if ((compiled.getLimit() != SelectNode.NO_LIMIT) || (compiled.getOffset() != 0L)) {
+            throw new RuntimeException("LIMIT and OFFSET are honored by the client and can't be compiled into a Statement");
+        }
+
+        SetSchema setSchema = selectEx.getSchema().get(compiled.getFqns());
+        if (setSchema == null) {
+            throw new RuntimeException("Namespace[.set] " + compiled.getFqns() + " is not in the schema");
+        }
+        checkBins(compiled.getSelect(), setSchema);
+
+        methods.put(name, method(name, compiled, setSchema));
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * @return names of methods in order of adding
+     */
+    public List<String> getMethodNames() {
+        return new ArrayList<>(methods.keySet());
+    }
+
+    public String generate() {
+        StringBuilder sb = new StringBuilder("// Generated by AQLSelectEx, do not edit\n");
+        if ((packageName != null) && !packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import com.aerospike.client.query.Filter;\n")
+                .append("import com.aerospike.client.query.IndexCollectionType;\n")
+                .append("import com.aerospike.client.query.PredExp;\n")
+                .append("import com.aerospike.client.query.RegexFlag;\n")
+                .append("import com.aerospike.client.query.Statement;\n\n")
+                .append("public final class ").append(className).append(" {\n")
+                .append("    private ").append(className).append("() {\n")
+                .append("    }\n");
+
+        for (String method : methods.values()) {
+            sb.append(method);
+        }
+
+        if (exactLong) {
+            // same as the library binds EQUAL and CONTAINS values of integer indexes
+            sb.append("\n")
+                    .append("    private static long exactLong(Number value) {\n")
+                    .append("        if ((value instanceof Double) || (value instanceof Float)) {\n")
+                    .append("            double d = value.doubleValue();\n")
+                    .append("            long l = (long) d;\n")
+                    .append("            if (l != d) {\n")
+                    .append("                throw new IllegalArgumentException(\"Value \" + value + \" of integer index isn't an integer\");\n")
+                    .append("            }\n")
+                    .append("            return l;\n")
+                    .append("        }\n")
+                    .append("        return value.longValue();\n")
+                    .append("    }\n");
+        }
+
+        if (regex) {
+            // same as the library compiles LIKE patterns
+            sb.append("\n")
+                    .append("    private static String regexPattern(String pattern) {\n")
+                    .append("        if (pattern.startsWith(\"/\")) {\n")
+                    .append("            return pattern.substring(1, pattern.lastIndexOf('/'));\n")
+                    .append("        }\n")
+                    .append("        return pattern;\n")
+                    .append("    }\n\n")
+                    .append("    private static int regexFlags(String pattern) {\n")
+                    .append("        int regexFlags = RegexFlag.NEWLINE;\n")
+                    .append("        if (pattern.startsWith(\"/\")) {\n")
+                    .append("            String patternFlags = pattern.substring(pattern.lastIndexOf('/')).toLowerCase();\n")
+                    .append("            regexFlags |= patternFlags.contains(\"i\") ? RegexFlag.ICASE : RegexFlag.NONE;\n")
+                    .append("            regexFlags |= patternFlags.contains(\"e\") ? RegexFlag.EXTENDED : RegexFlag.NONE;\n")
+                    .append("            if (patternFlags.contains(\"s\")) {\n")
+                    .append("                regexFlags &= ~RegexFlag.NEWLINE;\n")
+                    .append("            }\n")
+                    .append("            regexFlags |= patternFlags.contains(\"?\") ? RegexFlag.NOSUB : RegexFlag.NONE;\n")
+                    .append("        }\n")
+                    .append("        return regexFlags;\n")
+                    .append("    }\n");
+        }
+
+        return sb.append("}\n").toString();
+    }
+
+    private String method(String name, CompiledSelect compiled, SetSchema setSchema) {
+        List<String> paramNames = compiled.getParamNames();
+        ParamType[] types = new ParamType[paramNames.size()];
+        Arrays.fill(types, ParamType.ANY);
+        String[] args = arguments(paramNames);
+
+        IndexNode index = compiled.getSelect().getIndex();
+        boolean[] filterParams = new boolean[types.length];
+        if (index != null) {
+            ParamType type;
+            switch (index.getKind()) {
+                case EQUAL: {
+                    int binType = setSchema.binType(index.getBin());
+                    type = ((binType == ParticleType.INTEGER) || (binType == ParticleType.DOUBLE)) ? ParamType.LONG : ParamType.STRING;
+                }
+                break;
+                case RANGE: {
+                    type = ParamType.LONG;
+                }
+                break;
+                case CONTAINS: {
+                    // element type of a collection isn't in the schema, so it's chosen by the value as the library does
+                    type = ParamType.ANY;
+                }
+                break;
+                default: {
+                    type = ParamType.STRING;
+                }
+            }
+            for (ValueNode value : index.getValues()) {
+                if (value.isParam()) {
+                    constrain(types, paramNames, value.getParam(), type);
+                    filterParams[value.getParam()] = true;
+                }
+            }
+        }
+
+        PredExpTemplate code = compiled.getPredExpTemplate();
+        boolean[] predExpParams = new boolean[types.length];
+        if (code != null) {
+            for (PredExpTemplate.Slot slot : code.getSlots()) {
+                PredExpTemplate.SlotKind kind = slot.getKind();
+                constrain(types, paramNames, slot.getParam(), (kind == PredExpTemplate.SlotKind.INTEGER) || (kind == PredExpTemplate.SlotKind.DIGEST_MODULO) ? ParamType.LONG
+                        : (kind == PredExpTemplate.SlotKind.DOUBLE) ? ParamType.DOUBLE : ParamType.STRING);
+                predExpParams[slot.getParam()] = true;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("\n    /**\n     * ")
+                .append(comment(compiled.getCanonical().getText()))
+                .append("\n     */\n");
+
+        boolean[] allParams = new boolean[types.length];
+        Arrays.fill(allParams, true);
+        sb.append("    public static Statement ").append(name).append('(').append(parameters(types, args, allParams)).append(") {\n")
+                .append("        Statement statement = new Statement();\n")
+                .append("        statement.setNamespace(").append(javaString(compiled.getNamespace())).append(");\n");
+        if (compiled.getSetName() != null) {
+            sb.append("        statement.setSetName(").append(javaString(compiled.getSetName())).append(");\n");
+        }
+        List<String> binNames = compiled.getSelect().getBinNames();
+        if (binNames != null) {
+            sb.append("        statement.setBinNames(");
+            for (int i = 0; i < binNames.size(); i++) {
+                sb.append((i > 0) ? ", " : "").append(javaString(binNames.get(i)));
+            }
+            sb.append(");\n");
+        }
+        if (index != null) {
+            sb.append("        statement.setFilter(").append(name).append("Filter(").append(arguments(args, filterParams)).append("));\n");
+        }
+        if (code != null) {
+            sb.append("        statement.setPredExp(").append(name).append("PredExp(").append(arguments(args, predExpParams)).append("));\n");
+        }
+        sb.append("        return statement;\n")
+                .append("    }\n");
+
+        if (index != null) {
+            sb.append("\n    public static Filter ").append(name).append("Filter(").append(parameters(types, args, filterParams)).append(") {\n")
+                    .append(nullChecks(types, args, filterParams))
+                    .append("        return ").append(filter(index, types, args)).append(";\n")
+                    .append("    }\n");
+        }
+
+        if (code != null) {
+            String[] nodes = compiled.emitPredExp(SOURCE).toArray(new String[0]);
+            for (PredExpTemplate.Slot slot : code.getSlots()) {
+                String arg = args[slot.getParam()];
+                ParamType type = types[slot.getParam()];
+                int at = slot.getIndex();
+                switch (slot.getKind()) {
+                    case INTEGER:
+                    case DOUBLE: {
+                        nodes[at] = "PredExp.integerValue(" + toLong(arg, type) + ")";
+                    }
+                    break;
+                    case STRING: {
+                        nodes[at] = "PredExp.stringValue(" + arg + ")";
+                    }
+                    break;
+                    case GEOJSON: {
+                        nodes[at] = "PredExp.geoJSONValue(" + arg + ")";
+                    }
+                    break;
+                    case REGEX: {
+                        regex = true;
+                        nodes[at] = "PredExp.stringValue(regexPattern(" + arg + "))";
+                        nodes[at + 1] = "PredExp.stringRegex(regexFlags(" + arg + "))";
+                    }
+                    break;
+                    case DIGEST_MODULO: {
+                        nodes[at] = "PredExp.recDigestModulo((int) " + arg + ")";
+                    }
+                    break;
+                }
+            }
+
+            sb.append("\n    public static PredExp[] ").append(name).append("PredExp(").append(parameters(types, args, predExpParams)).append(") {\n")
+                    .append(nullChecks(types, args, predExpParams))
+                    .append("        return new PredExp[]{\n");
+            for (int i = 0; i < nodes.length; i++) {
+                sb.append("                ").append(nodes[i]).append((i < nodes.length - 1) ? ",\n" : "\n");
+            }
+            sb.append("        };\n")
+                    .append("    }\n");
+        }
+
+        return sb.toString();
+    }
+
+    private static void constrain(ParamType[] types, List<String> paramNames, int param, ParamType type) {
+        ParamType current = types[param];
+        if ((type == ParamType.ANY) || (current == type)) {
+            return;
+        }
+        if (current == ParamType.ANY) {
+            types[param] = type;
+            return;
+        }
+        if ((current != ParamType.STRING) && (type != ParamType.STRING)) {
+            types[param] = ParamType.DOUBLE;
+            return;
+        }
+
+        String name = paramNames.get(param);
+        throw new RuntimeException("Parameter " + ((name == null) ? "#" + (param + 1) : ":" + name) + " is used both as a number and as a string");
+    }
+
+    private static String[] arguments(List<String> paramNames) {
+        String[] args = new String[paramNames.size()];
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String name = paramNames.get(i);
+            String arg = ((name != null) && isIdentifier(name)) ? name : "p" + (i + 1);
+            while (taken.contains(arg)) {
+                arg += "_";
+            }
+            taken.add(arg);
+            args[i] = arg;
+        }
+        return args;
+    }
+
+    private static String parameters(ParamType[] types, String[] args, boolean[] used) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (used[i]) {
+                sb.append((sb.length() > 0) ? ", " : "").append(types[i].javaType).append(' ').append(args[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String arguments(String[] args, boolean[] used) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (used[i]) {
+                sb.append((sb.length() > 0) ? ", " : "").append(args[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String nullChecks(ParamType[] types, String[] args, boolean[] used) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (used[i] && ((types[i] == ParamType.STRING) || (types[i] == ParamType.ANY))) {
+                sb.append("        if (").append(args[i]).append(" == null) {\n")
+                        .append("            throw new IllegalArgumentException(\"Parameter #").append(i + 1).append(" is not bound\");\n")
+                        .append("        }\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String toLong(String arg, ParamType type) {
+        return (type == ParamType.DOUBLE) ? "(long) " + arg : arg;
+    }
+
+    private String filter(IndexNode index, ParamType[] types, String[] args) {
+        String bin = javaString(index.getBin());
+        String collectionType = "IndexCollectionType." + index.getCollectionType().name();
+
+        // literals are converted the same way the library binds them
+        ValueNode value = index.getValues()[0];
+        switch (index.getKind()) {
+            case EQUAL:
+            case CONTAINS: {
+                String method = (index.getKind() == IndexNode.Kind.EQUAL) ? "Filter.equal(" + bin + ", " : "Filter.contains(" + bin + ", " + collectionType + ", ";
+                if (!value.isParam()) {
+                    return method + literal(value) + ")";
+                }
+
+                String arg = args[value.getParam()];
+                ParamType type = types[value.getParam()];
+                if (type == ParamType.ANY) {
+                    exactLong = true;
+                    return "(" + arg + " instanceof Number) ? " + method + "exactLong((Number) " + arg + ")) : " + method + arg + ".toString())";
+                }
+                if (type == ParamType.DOUBLE) {
+                    exactLong = true;
+                    return method + "exactLong(" + arg + "))";
+                }
+                return method + arg + ")";
+            }
+            case RANGE: {
+                return "Filter.range(" + bin + ", " + collectionType + ", " + rangeBound(value, types, args, "ceil") + ", "
+                        + rangeBound(index.getValues()[1], types, args, "floor") + ")";
+            }
+            case GEO_CONTAINS: {
+                return "Filter.geoContains(" + bin + ", " + collectionType + ", " + (value.isParam() ? args[value.getParam()] : javaString(value.getText())) + ")";
+            }
+            default: {
+                return "Filter.geoWithinRegion(" + bin + ", " + collectionType + ", " + (value.isParam() ? args[value.getParam()] : javaString(value.getText())) + ")";
+            }
+        }
+    }
+
+    /**
+     * @param rounding Math method the library rounds a fractional bound with
+     */
+    private static String rangeBound(ValueNode value, ParamType[] types, String[] args, String rounding) {
+        if (value.isParam()) {
+            String arg = args[value.getParam()];
+            return (types[value.getParam()] == ParamType.DOUBLE) ? "(long) Math." + rounding + "(" + arg + ")" : arg;
+        }
+        return value.truncatedValue() + "L";
+    }
+
+    private static String literal(ValueNode value) {
+        return value.isString() ? javaString(value.getText()) : value.truncatedValue() + "L";
+    }
+
+    /**
+     * Emits the client call that creates each PredExp node, for the compiler to drive.
+     */
+    private static final class SourceEmitter implements PredExpEmitter<String> {
+        @Override
+        public String and(int nexp) {
+            return "PredExp.and(" + nexp + ")";
+        }
+
+        @Override
+        public String or(int nexp) {
+            return "PredExp.or(" + nexp + ")";
+        }
+
+        @Override
+        public String not() {
+            return "PredExp.not()";
+        }
+
+        @Override
+        public String integerValue(long value) {
+            return "PredExp.integerValue(" + value + "L)";
+        }
+
+        @Override
+        public String stringValue(String value) {
+            return "PredExp.stringValue(" + javaString(value) + ")";
+        }
+
+        @Override
+        public String geoJSONValue(String value) {
+            return "PredExp.geoJSONValue(" + javaString(value) + ")";
+        }
+
+        @Override
+        public String integerBin(String name) {
+            return "PredExp.integerBin(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String stringBin(String name) {
+            return "PredExp.stringBin(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String geoJSONBin(String name) {
+            return "PredExp.geoJSONBin(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String listBin(String name) {
+            return "PredExp.listBin(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String mapBin(String name) {
+            return "PredExp.mapBin(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String integerVar(String name) {
+            return "PredExp.integerVar(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String stringVar(String name) {
+            return "PredExp.stringVar(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String geoJSONVar(String name) {
+            return "PredExp.geoJSONVar(" + javaString(name) + ")";
+        }
+
+        @Override
+        public String recDeviceSize() {
+            return "PredExp.recDeviceSize()";
+        }
+
+        @Override
+        public String recLastUpdate() {
+            return "PredExp.recLastUpdate()";
+        }
+
+        @Override
+        public String recVoidTime() {
+            return "PredExp.recVoidTime()";
+        }
+
+        @Override
+        public String recDigestModulo(int mod) {
+            return "PredExp.recDigestModulo(" + mod + ")";
+        }
+
+        @Override
+        public String integerEqual() {
+            return "PredExp.integerEqual()";
+        }
+
+        @Override
+        public String integerUnequal() {
+            return "PredExp.integerUnequal()";
+        }
+
+        @Override
+        public String integerGreater() {
+            return "PredExp.integerGreater()";
+        }
+
+        @Override
+        public String integerGreaterEq() {
+            return "PredExp.integerGreaterEq()";
+        }
+
+        @Override
+        public String integerLess() {
+            return "PredExp.integerLess()";
+        }
+
+        @Override
+        public String integerLessEq() {
+            return "PredExp.integerLessEq()";
+        }
+
+        @Override
+        public String stringEqual() {
+            return "PredExp.stringEqual()";
+        }
+
+        @Override
+        public String stringUnequal() {
+            return "PredExp.stringUnequal()";
+        }
+
+        @Override
+        public String stringRegex(int cflags) {
+            return "PredExp.stringRegex(" + cflags + ")";
+        }
+
+        @Override
+        public String geoJSONWithin() {
+            return "PredExp.geoJSONWithin()";
+        }
+
+        @Override
+        public String geoJSONContains() {
+            return "PredExp.geoJSONContains()";
+        }
+
+        @Override
+        public String listIterateOr(String varName) {
+            return "PredExp.listIterateOr(" + javaString(varName) + ")";
+        }
+
+        @Override
+        public String mapKeyIterateOr(String varName) {
+            return "PredExp.mapKeyIterateOr(" + javaString(varName) + ")";
+        }
+
+        @Override
+        public String mapValIterateOr(String varName) {
+            return "PredExp.mapValIterateOr(" + javaString(varName) + ")";
+        }
+
+        @Override
+        public String listIterateAnd(String varName) {
+            return "PredExp.listIterateAnd(" + javaString(varName) + ")";
+        }
+
+        @Override
+        public String mapKeyIterateAnd(String varName) {
+            return "PredExp.mapKeyIterateAnd(" + javaString(varName) + ")";
+        }
+
+        @Override
+        public String mapValIterateAnd(String varName) {
+            return "PredExp.mapValIterateAnd(" + javaString(varName) + ")";
+        }
+    }
+
+    private static void checkBins(SelectNode select, SetSchema setSchema) {
+        String fqns = select.getFqns();
+
+        IndexNode index = select.getIndex();
+        if ((index != null) && (setSchema.bin(index.getBin()) == null)) {
+            throw new RuntimeException("Indexed bin " + index.getBin() + " is not in the schema of " + fqns);
+        }
+
+        WhereNode where = select.getWhere();
+        if (where == null) {
+            return;
+        }
+        where.accept(new WhereNode.Visitor<Void>() {
+            @Override
+            public Void visitLogic(WhereNode.Logic logic) {
+                for (WhereNode operand : logic.getOperands()) {
+                    operand.accept(this);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitCompare(WhereNode.Compare compare) {
+                if (compare.getMeta() == null) {
+                    bin(compare.getBin());
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitIterate(WhereNode.Iterate iterate) {
+                if (bin(iterate.getBin()).var(iterate.getVar()) == null) {
+                    throw new RuntimeException("Variable " + iterate.getVar() + " of bin " + iterate.getBin() + " is not in the schema of " + fqns);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitGeo(WhereNode.Geo geo) {
+                bin(geo.getBin());
+                return null;
+            }
+
+            private SetSchema.Bin bin(String name) {
+                SetSchema.Bin bin = setSchema.bin(name);
+                if (bin == null) {
+                    throw new RuntimeException("Bin " + name + " is not in the schema of " + fqns);
+                }
+                return bin;
+            }
+        });
+    }
+
+    private static boolean isIdentifier(String name) {
+        return (name != null) && SourceVersion.isIdentifier(name) && !SourceVersion.isKeyword(name);
+    }
+
+    static String javaString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                // octal, because unicode escapes of line terminators are translated before the literal is parsed
+                sb.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7E) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String comment(String s) {
+        // backslashes are doubled so that none of them starts a unicode escape
+        return s.replace("\\", "\\\\").replace("*/", "*&#47;").replace("\n", " ");
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Schema in .properties format, with a key per namespace[.set] and a comma-separated list of its bins as the value.
+ * Each bin is given as "name:TYPE", or "name:TYPE:INDEX" if it has a secondary index, where TYPE is a name of a
+ * {@link ParticleType} constant, and INDEX is an {@link IndexCollectionType}. Variables of MAP and LIST bins are
+ * "bin.var:TYPE", same as in the schema Map of {@link io.github.pastorgl.aqlselectex.AQLSelectEx#forSchema(Map)}.
+ * <pre>
+ * namespace1.set1 = foo:INTEGER:DEFAULT, bar:DOUBLE, ma:MAP, ma.ko:INTEGER
+ * </pre>
+ */
+final class SchemaFile {
+    private static final Map<String, Integer> PARTICLE_TYPES = new HashMap<>();
+
+    static {
+        for (Field field : ParticleType.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && (field.getType() == int.class)) {
+                try {
+                    PARTICLE_TYPES.put(field.getName(), field.getInt(null));
+                } catch (IllegalAccessException ignore) {
+                }
+            }
+        }
+    }
+
+    private final Map<String, Map<String, Integer>> types = new HashMap<>();
+    private final Map<String, Map<String, IndexCollectionType>> indexes = new HashMap<>();
+
+    private SchemaFile() {
+    }
+
+    static SchemaFile parse(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+
+        SchemaFile schema = new SchemaFile();
+        for (String fqns : properties.stringPropertyNames()) {
+            Map<String, Integer> binTypes = new HashMap<>();
+            Map<String, IndexCollectionType> binIndexes = new HashMap<>();
+
+            for (String bin : properties.getProperty(fqns).split(",")) {
+                bin = bin.trim();
+                if (bin.isEmpty()) {
+                    continue;
+                }
+
+                String[] parts = bin.split(":");
+                if ((parts.length < 2) || (parts.length > 3)) {
+                    throw new IllegalArgumentException("Bin of " + fqns + " must be name:TYPE or name:TYPE:INDEX, got '" + bin + "'");
+                }
+
+                String name = parts[0].trim();
+                Integer type = PARTICLE_TYPES.get(parts[1].trim().toUpperCase());
+                if (type == null) {
+                    throw new IllegalArgumentException("Unknown type of bin " + fqns + "." + name + ": " + parts[1].trim());
+                }
+                binTypes.put(name, type);
+
+                if (parts.length == 3) {
+                    try {
+                        binIndexes.put(name, IndexCollectionType.valueOf(parts[2].trim().toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown index of bin " + fqns + "." + name + ": " + parts[2].trim());
+                    }
+                }
+            }
+
+            schema.types.put(fqns, binTypes);
+            if (!binIndexes.isEmpty()) {
+                schema.indexes.put(fqns, binIndexes);
+            }
+        }
+
+        return schema;
+    }
+
+    Map<String, Map<String, Integer>> getTypes() {
+        return types;
+    }
+
+    Map<String, Map<String, IndexCollectionType>> getIndexes() {
+        return indexes;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.IndexCollectionType;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AqlFileTest {
+
+    @Test
+    public void namedQueries() {
+        List<AqlFile.Query> queries = AqlFile.parse("-- queries of the users set\n\n"
+                + "-- name: byId\n"
+                + "SELECT * FROM test.users\r\n"
+                + "  WHERE id = :id\n"
+                + "\n"
+                + "--name:all\n"
+                + "-- every user\n"
+                + "SELECT name FROM test.users\n").getQueries();
+
+        assertEquals(2, queries.size());
+        assertEquals("byId", queries.get(0).name);
+        assertEquals("SELECT * FROM test.users\n  WHERE id = :id", queries.get(0).text);
+        assertEquals(3, queries.get(0).line);
+        assertEquals("all", queries.get(1).name);
+        assertEquals("SELECT name FROM test.users", queries.get(1).text);
+        assertEquals(7, queries.get(1).line);
+    }
+
+    @Test
+    public void invalidFiles() {
+        for (String content : new String[]{"SELECT * FROM test.users", "-- name: empty\n\n-- name: next\nSELECT * FROM test.users"}) {
+            try {
+                AqlFile.parse(content);
+                fail(content);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertTrue(AqlFile.parse("-- nothing here\n").getQueries().isEmpty());
+    }
+
+    @Test
+    public void schemaFile() throws Exception {
+        SchemaFile schema = SchemaFile.parse(new StringReader("test.users = id:INTEGER:DEFAULT, name:string,\\\n"
+                + "    tags:LIST, tags.t:STRING:list\n"
+                + "test = \n"));
+
+        assertEquals(ParticleType.INTEGER, (int) schema.getTypes().get("test.users").get("id"));
+        assertEquals(ParticleType.STRING, (int) schema.getTypes().get("test.users").get("name"));
+        assertEquals(ParticleType.LIST, (int) schema.getTypes().get("test.users").get("tags"));
+        assertEquals(ParticleType.STRING, (int) schema.getTypes().get("test.users").get("tags.t"));
+        assertTrue(schema.getTypes().get("test").isEmpty());
+        assertEquals(IndexCollectionType.DEFAULT, schema.getIndexes().get("test.users").get("id"));
+        assertEquals(IndexCollectionType.LIST, schema.getIndexes().get("test.users").get("tags.t"));
+
+        for (String content : new String[]{"test.users = id", "test.users = id:INT", "test.users = id:INTEGER:BTREE"}) {
+            try {
+                SchemaFile.parse(new StringReader(content));
+                fail(content);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
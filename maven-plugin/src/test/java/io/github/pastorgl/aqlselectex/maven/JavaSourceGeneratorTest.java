@@ -0,0 +1,183 @@
+package io.github.pastorgl.aqlselectex.maven;
+
+import com.aerospike.client.command.Command;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.Statement;
+import io.github.pastorgl.aqlselectex.AQLSelectEx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.aerospike.client.command.Command.MSG_TOTAL_HEADER_SIZE;
+import static org.junit.Assert.*;
+
+public class JavaSourceGeneratorTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+            put("li", ParticleType.LIST);
+            put("li.ke", ParticleType.STRING);
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.INTEGER);
+        }});
+    }};
+
+    private final Map<String, Map<String, IndexCollectionType>> INDEXES = Collections.singletonMap("namespace1.set1", new HashMap<String, IndexCollectionType>() {{
+        put("baz", IndexCollectionType.DEFAULT);
+    }});
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generatedStatementsMatchCompiled() throws Exception {
+        // query, and values of its parameters
+        LinkedHashMap<String, Object[]> queries = new LinkedHashMap<>();
+        queries.put("SELECT foo, baz FROM namespace1.set1 WHERE foo > 1 AND baz = 'it''s' OR NOT (bar <= 2.5)", new Object[0]);
+        queries.put("SELECT * FROM namespace1.set1 WHERE baz != 'Ä\"\\u0041\n' AND foo = -9223372036854775808", new Object[0]);
+        queries.put("SELECT * FROM namespace1.set1 WHERE LUT > 5 AND DIGEST(4) = 1 AND RECSIZE < :size AND TTL >= 1 AND DIGEST(?) != 0", new Object[]{100L, 8L});
+        queries.put("SELECT * FROM namespace1.set1 WHERE ma ANY MAPKEYS (ko = :k) AND li CONTAINS (ke = 'x') AND ma MAPVALUES (ko < 2)", new Object[]{5L});
+        queries.put("SELECT gj FROM namespace1.set1 WHERE gj WITHIN CAST(? AS GEOJSON) OR gj CONTAINS CAST('{\"type\": \"Point\", \"coordinates\": [0.0, 0.0]}' AS GEOJSON)",
+                new Object[]{"{\"type\": \"Polygon\"}"});
+        queries.put("SELECT * FROM namespace1.set1 WHERE baz LIKE '/sp.*/i' AND (baz LIKE ? OR baz LIKE :re)", new Object[]{"/a+/s", "b.*"});
+        queries.put("SELECT * FROM namespace1.set1 WHERE foo = :x AND bar > :x", new Object[]{2.7});
+        queries.put("SELECT * FROM namespace1.set1 WITH (foo BETWEEN ? AND 10.5) WHERE baz = ?", new Object[]{-3L, "a"});
+        queries.put("SELECT * FROM namespace1.set1 WITH (foo BETWEEN :lo AND 9007199254740993) WHERE bar > :lo", new Object[]{2.5});
+        queries.put("SELECT * FROM namespace1.set1 WITH LIST (li CONTAINS ?)", new Object[]{42L});
+        queries.put("SELECT * FROM namespace1.set1 WITH LIST (li CONTAINS :v) WHERE li ANY CONTAINS (ke = :v)", new Object[]{"v"});
+        queries.put("SELECT * FROM namespace1.set1 WHERE baz = :b AND foo > 1", new Object[]{"b"});
+        queries.put("SELECT * FROM namespace1.set1 WITH (gj CONTAINS CAST('{}' AS GEOJSON))", new Object[0]);
+        queries.put("SELECT * FROM namespace1.set1", new Object[0]);
+
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA, INDEXES);
+        JavaSourceGenerator generator = new JavaSourceGenerator(selectEx, "com.example.queries", "Queries");
+        int q = 0;
+        for (String query : queries.keySet()) {
+            generator.add("query" + q++, query);
+        }
+
+        Class<?> generated = compile(generator);
+
+        q = 0;
+        for (Map.Entry<String, Object[]> query : queries.entrySet()) {
+            Statement statement = (Statement) method(generated, "query" + q++).invoke(null, query.getValue());
+
+            assertArrayEquals(query.getKey(), wire(selectEx.prepare(query.getKey()).bind(query.getValue())), wire(statement));
+        }
+    }
+
+    @Test
+    public void partsAndParameters() throws Exception {
+        JavaSourceGenerator generator = new JavaSourceGenerator(AQLSelectEx.forSchema(SCHEMA), null, "Parts");
+        generator.add("byBaz", "SELECT * FROM namespace1.set1 WITH (baz = :b) WHERE foo = :f AND bar < :d");
+        assertEquals(Collections.singletonList("byBaz"), generator.getMethodNames());
+
+        Class<?> generated = compile(generator);
+
+        assertArrayEquals(new Class[]{String.class, long.class, double.class}, method(generated, "byBaz").getParameterTypes());
+        assertArrayEquals(new Class[]{String.class}, method(generated, "byBazFilter").getParameterTypes());
+        assertArrayEquals(new Class[]{long.class, double.class}, method(generated, "byBazPredExp").getParameterTypes());
+
+        try {
+            method(generated, "byBazFilter").invoke(null, (Object) null);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void invalidQueriesFail() {
+        JavaSourceGenerator generator = new JavaSourceGenerator(AQLSelectEx.forSchema(SCHEMA), "com.example", "Invalid");
+
+        String[] invalid = {
+                "SELECT * FROM namespace1.set1 WHERE foo >",
+                "SELECT * FROM namespace1.set2 WHERE foo > 1",
+                "SELECT * FROM namespace1.set1 WHERE fooo > 1",
+                "SELECT * FROM namespace1.set1 WHERE ma ANY MAPKEYS (ke = 1)",
+                "SELECT * FROM namespace1.set1 WITH (qux = 1)",
+                "SELECT * FROM namespace1.set1 WHERE foo = 'a'",
+                "SELECT * FROM namespace1.set1 WHERE foo = :x AND baz = :x",
+                "SELECT baz, COUNT(*) FROM namespace1.set1 GROUP BY baz",
+                "SELECT baz FROM namespace1.set1 ORDER BY foo DESC LIMIT 10",
+                "SELECT baz FROM namespace1.set1 WHERE foo > 1 LIMIT 10",
+                "SELECT baz FROM namespace1.set1 LIMIT 10 OFFSET 20",
+        };
+        for (String query : invalid) {
+            try {
+                generator.add("invalid", query);
+                fail(query);
+            } catch (Exception e) {
+                // expected
+            }
+        }
+        assertTrue(generator.getMethodNames().isEmpty());
+
+        for (String name : new String[]{"class", "1st", "with space", null}) {
+            try {
+                generator.add(name, "SELECT * FROM namespace1.set1");
+                fail(name);
+            } catch (Exception e) {
+                assertTrue(e instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    private Class<?> compile(JavaSourceGenerator generator) throws Exception {
+        File root = folder.newFolder();
+        String packageName = generator.getPackageName();
+        File dir = (packageName == null) ? root : new File(root, packageName.replace('.', File.separatorChar));
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+
+        File source = new File(dir, generator.getClassName() + ".java");
+        Files.write(source.toPath(), generator.generate().getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, javac.run(null, null, null, "-encoding", "UTF-8", "-classpath", System.getProperty("java.class.path"), source.getPath()));
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, getClass().getClassLoader());
+        return loader.loadClass((packageName == null) ? generator.getClassName() : packageName + "." + generator.getClassName());
+    }
+
+    private static byte[] wire(Statement statement) {
+        Command command = new Command(0, 0, 0) {
+            @Override
+            protected void sizeBuffer() {
+            }
+        };
+        command.dataBuffer = new byte[8192];
+        command.setQuery(new QueryPolicy(), statement, false, null);
+
+        return Arrays.copyOfRange(command.dataBuffer, MSG_TOTAL_HEADER_SIZE, command.dataOffset);
+    }
+
+    private static Method method(Class<?> generated, String name) {
+        for (Method method : generated.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError(name);
+    }
+}
@@ -12,10 +12,26 @@ error
  ;
 
 select_stmt
- : K_SELECT ( STAR | column_name ( COMMA column_name )* )
+ : K_SELECT ( STAR | result_column ( COMMA result_column )* )
    ( K_FROM from_set )?
    ( (K_USE | K_WITH) index_expr )?
    ( K_WHERE where_expr )?
+   ( K_GROUP K_BY column_name ( COMMA column_name )* )?
+   ( K_ORDER K_BY order_column )?
+   ( K_LIMIT limit=NUMERIC_LITERAL ( K_OFFSET offset=NUMERIC_LITERAL )? )?
+ ;
+
+result_column
+ : column_name
+ | aggregate_func OPEN_PAR ( STAR | column_name ) CLOSE_PAR
+ ;
+
+order_column
+ : result_column ( K_ASC | K_DESC )?
+ ;
+
+aggregate_func
+ : K_COUNT | K_SUM | K_MIN | K_MAX | K_AVG
  ;
 
 type_name
@@ -37,11 +53,19 @@ logic_op
  ;
 
 atomic_expr
- : column_name ( equality_op | regex_op ) STRING_LITERAL
+ : column_name ( equality_op | comparison_op | regex_op ) STRING_LITERAL
  | ( column_name | meta_name ) ( equality_op | comparison_op ) NUMERIC_LITERAL
+ | column_name ( equality_op | comparison_op | regex_op ) param
+ | meta_name ( equality_op | comparison_op ) param
  | column_name map_op iter_expr
  | column_name list_op iter_expr
  | column_name geo_op cast_expr
+ | column_name K_NOT? K_IN in_expr
+ | column_name K_NOT? between_expr
+ ;
+
+in_expr
+ : OPEN_PAR ( NUMERIC_LITERAL | STRING_LITERAL | param ) ( COMMA ( NUMERIC_LITERAL | STRING_LITERAL | param ) )* CLOSE_PAR
  ;
 
 equality_op
@@ -59,6 +83,7 @@ map_op
 iter_expr
  : OPEN_PAR var_name equality_op STRING_LITERAL CLOSE_PAR
  | OPEN_PAR var_name ( equality_op | comparison_op ) NUMERIC_LITERAL CLOSE_PAR
+ | OPEN_PAR var_name ( equality_op | comparison_op ) param CLOSE_PAR
  ;
 
 geo_op
@@ -75,7 +100,7 @@ regex_op
 
 index_expr
  : index_type? OPEN_PAR (
- column_name index_op ( NUMERIC_LITERAL | STRING_LITERAL )
+ column_name index_op ( NUMERIC_LITERAL | STRING_LITERAL | param )
  | column_name geo_op cast_expr
  | column_name between_expr )
  CLOSE_PAR
@@ -86,12 +111,16 @@ index_op
  ;
 
 between_expr
- : K_BETWEEN low=NUMERIC_LITERAL K_AND high=NUMERIC_LITERAL
+ : K_BETWEEN low=bound K_AND high=bound
+ ;
+
+bound
+ : NUMERIC_LITERAL | param
  ;
 
 cast_expr
- : K_CAST OPEN_PAR STRING_LITERAL K_AS type_name CLOSE_PAR
- | type_name OPEN_PAR STRING_LITERAL CLOSE_PAR
+ : K_CAST OPEN_PAR ( STRING_LITERAL | param ) K_AS type_name CLOSE_PAR
+ | type_name OPEN_PAR ( STRING_LITERAL | param ) CLOSE_PAR
  ;
 
 from_set
@@ -113,23 +142,32 @@ meta_name
  : K_LUT
  | K_RECSIZE
  | K_TTL
- | K_DIGEST OPEN_PAR NUMERIC_LITERAL CLOSE_PAR
+ | K_DIGEST OPEN_PAR ( NUMERIC_LITERAL | param ) CLOSE_PAR
+ ;
+
+param
+ : QMARK | NAMED_PARAM
  ;
 
 ns_name
- : IDENTIFIER
+ : IDENTIFIER | non_reserved_keyword
  ;
 
 set_name
- : IDENTIFIER
+ : IDENTIFIER | non_reserved_keyword
  ;
 
 bin_name
- : K_PK | IDENTIFIER
+ : K_PK | IDENTIFIER | non_reserved_keyword
  ;
 
 var_name
- : IDENTIFIER
+ : IDENTIFIER | non_reserved_keyword
+ ;
+
+// keywords added after names had been in use unquoted, so they still may be
+non_reserved_keyword
+ : K_ASC | K_AVG | K_BY | K_COUNT | K_DESC | K_GROUP | K_IN | K_LIMIT | K_MAX | K_MIN | K_OFFSET | K_ORDER | K_SUM
  ;
 
 SCOL : ';';
@@ -148,38 +186,52 @@ GT_EQ : '>=';
 EQ2 : '==';
 NOT_EQ1 : '!=';
 NOT_EQ2 : '<>';
+QMARK : '?';
 
 K_AND : A N D;
 K_ANY : A N Y;
 K_AS : A S;
+K_ASC : A S C;
+K_AVG : A V G;
 K_BETWEEN : B E T W E E N;
+K_BY : B Y;
 K_CAST : C A S T;
 K_CHAR : C H A R;
 K_CONTAINS : C O N T A I N S;
+K_COUNT : C O U N T;
 K_DECIMAL : D E C I M A L;
 K_DEFAULT : D E F A U L T;
+K_DESC : D E S C;
 K_DIGEST : D I G E S T;
 K_FLOAT : F L O A T;
 K_FROM : F R O M;
 K_GEOJSON : G E O J S O N;
+K_GROUP : G R O U P;
+K_IN : I N;
 K_INT : I N T;
 K_JSON : J S O N;
 K_LIKE : L I K E;
+K_LIMIT : L I M I T;
 K_LIST : L I S T;
 K_LUT : L U T;
 K_MATCH : M A T C H;
 K_MAP : M A P;
 K_MAPKEYS : M A P K E Y S;
 K_MAPVALUES : M A P V A L U E S;
+K_MAX : M A X;
+K_MIN : M I N;
 K_NOT : N O T;
 K_NUMERIC : N U M E R I C;
+K_OFFSET : O F F S E T;
 K_OR : O R;
+K_ORDER : O R D E R;
 K_PK : P K;
 K_REAL : R E A L;
 K_RECSIZE : R E C S I Z E;
 K_REGEXP : R E G E X P;
 K_SELECT : S E L E C T;
 K_STRING : S T R I N G;
+K_SUM : S U M;
 K_TEXT : T E X T;
 K_TTL : T T L;
 K_USE : U S E;
@@ -193,6 +245,10 @@ IDENTIFIER
  | [a-zA-Z_] [a-zA-Z_0-9]*
  ;
 
+NAMED_PARAM
+ : ':' [a-zA-Z_] [a-zA-Z_0-9]*
+ ;
+
 UNARY_OPERATOR
  : PLUS
  | MINUS
@@ -1,52 +1,394 @@
 package io.github.pastorgl.aqlselectex;
 
+import com.aerospike.client.query.IndexCollectionType;
 import com.aerospike.client.query.Statement;
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 public class AQLSelectEx {
-    private static Map<Map<String, Map<String, Integer>>, AQLSelectEx> INSTANCES = new HashMap<>();
-    private Map<String, Map<String, Integer>> schema;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    /**
+     * Set this system property to "background" to start {@link #warmUp()} in a daemon thread on class load.
+     */
+    public static final String WARM_UP_PROPERTY = "aqlselectex.warmup";
 
-    private AQLSelectEx(Map<String, Map<String, Integer>> schema) {
+    private static final ConcurrentHashMap<Schema.Snapshot, AQLSelectEx> INSTANCES = new ConcurrentHashMap<>();
+    // instances recently returned for source Maps, by identity of the Maps, to skip the fingerprint
+    private static final Recent[] RECENT = new Recent[16];
+    private final Schema schema;
+    private final int cacheSize;
+    private final QueryCache cache;
+    private final boolean optimize;
+    private final boolean hybrid;
+    private final MetricsSink metrics;
+    private final CodegenBackend backend;
+    private final ParserEngine engine;
+
+    static {
+        if ("background".equalsIgnoreCase(System.getProperty(WARM_UP_PROPERTY))) {
+            warmUpInBackground();
+        }
+    }
+
+    private AQLSelectEx(Schema schema, int cacheSize, boolean optimize, boolean hybrid, MetricsSink metrics, CodegenBackend backend, ParserEngine engine) {
         this.schema = schema;
+        this.cacheSize = cacheSize;
+        this.cache = new QueryCache(cacheSize);
+        this.optimize = optimize;
+        this.hybrid = hybrid;
+        this.metrics = metrics;
+        this.backend = backend;
+        this.engine = engine;
     }
 
+    /**
+     * Returns a shared instance for the schema. The schema is snapshotted, so changes made to the passed Map
+     * afterwards are not seen by the instance; use {@link #reloadSchema(String, Map)} to update it. The Map is
+     * fingerprinted and compared with the registered snapshot in place, and copied only if there is none. Recently
+     * passed Map objects are recognized by identity and hash code alone, without the fingerprint.
+     */
     public static AQLSelectEx forSchema(Map<String, Map<String, Integer>> schema) {
-        AQLSelectEx instance;
-        if (INSTANCES.containsKey(schema)) {
-            instance = INSTANCES.get(schema);
-        } else {
-            instance = new AQLSelectEx(schema);
-            INSTANCES.put(schema, instance);
+        return forSchema(schema, Collections.emptyMap());
+    }
+
+    /**
+     * Same as {@link #forSchema(Map)}, but also declares secondary indexes available in each namespace[.set], by bin
+     * name. Top-level WHERE conditions on indexed bins are then turned into the query Filter, unless there is an
+     * explicit WITH clause.
+     */
+    public static AQLSelectEx forSchema(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes) {
+        // same Maps with the same hash code are taken for unchanged, as hashing is much cheaper than comparing
+        int hashCode = 31 * schema.hashCode() + indexes.hashCode();
+        int slot = (System.identityHashCode(schema) ^ System.identityHashCode(indexes)) & (RECENT.length - 1);
+        Recent recent = RECENT[slot];
+        if ((recent != null) && recent.matches(schema, indexes, hashCode)) {
+            return recent.instance;
         }
 
+        AQLSelectEx instance = INSTANCES.get(Schema.Snapshot.view(schema, indexes));
+        if (instance == null) {
+            instance = forSchema(Schema.Snapshot.of(schema, indexes));
+        }
+        RECENT[slot] = new Recent(schema, indexes, hashCode, instance);
         return instance;
     }
 
+    /**
+     * Returns a shared instance for the snapshot. Lookup by the same snapshot object takes constant time, and an
+     * equal one is compared with the registered snapshot once per call.
+     */
+    public static AQLSelectEx forSchema(Schema.Snapshot snapshot) {
+        // get() first, because computeIfAbsent() locks the bin even if the key is there
+        AQLSelectEx instance = INSTANCES.get(snapshot);
+        if (instance != null) {
+            return instance;
+        }
+        return INSTANCES.computeIfAbsent(snapshot, key -> new AQLSelectEx(new Schema(key), DEFAULT_CACHE_SIZE, false, false, null, CodegenBackend.PREDEXP, ParserEngine.ANTLR));
+    }
+
+    /**
+     * Primes lexer and parser DFA caches shared by all instances by compiling a built-in corpus that covers every
+     * grammar rule, so first real queries after start don't pay for lazy ATN simulation.
+     */
+    public static WarmUpReport warmUp() {
+        return WarmUp.run(new AQLSelectEx(new Schema(Schema.Snapshot.of(WarmUp.schema())), 0, false, false, null, CodegenBackend.PREDEXP, ParserEngine.ANTLR));
+    }
+
+    public static CompletableFuture<WarmUpReport> warmUpInBackground() {
+        CompletableFuture<WarmUpReport> report = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                report.complete(warmUp());
+            } catch (Throwable e) {
+                report.completeExceptionally(e);
+            }
+        }, "AQLSelectEx-warmup");
+        thread.setDaemon(true);
+        thread.start();
+
+        return report;
+    }
+
+    /**
+     * Returns a separate instance for the same schema with its own compiled query cache of the given size.
+     * Size of 0 disables caching.
+     */
+    public AQLSelectEx withCacheSize(int cacheSize) {
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    /**
+     * Returns a separate instance for the same schema that optimizes WHERE before compiling it: AND and OR chains
+     * are flattened into n-ary predicates, duplicates and double negations are removed, NOTs are pushed down where
+     * that makes the predicate shorter, and cheaper operands are put first. Resulting predicate is equivalent, but
+     * differs from the literal translation of the query.
+     */
+    public AQLSelectEx withOptimizer(boolean optimize) {
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    /**
+     * Returns a separate instance for the same schema that compiles only the part of WHERE PredExp evaluates exactly
+     * into the Statement. Top-level conditions on DOUBLE bins (PredExp compares them as truncated integers) and
+     * ordering comparisons of strings become the residual predicate instead, which {@link QueryExecutor} checks on
+     * the client. Statements alone then return a superset of the result.
+     */
+    public AQLSelectEx withHybridPushdown(boolean hybrid) {
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    /**
+     * Returns a separate instance for the same schema that reports per-phase timings and sizes of each compiled
+     * query, and compile errors, to the sink. Queries served from the compiled query cache aren't reported.
+     */
+    public AQLSelectEx withMetrics(MetricsSink metrics) {
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    /**
+     * Returns a separate instance for the same schema that emits server-side predicates with another code generator.
+     * Queries, parameters and everything else stay the same.
+     */
+    public AQLSelectEx withBackend(CodegenBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Code generation backend must be set");
+        }
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    /**
+     * Returns a separate instance for the same schema that parses queries with another engine.
+     */
+    public AQLSelectEx withParserEngine(ParserEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Parser engine must be set");
+        }
+        return new AQLSelectEx(schema, cacheSize, optimize, hybrid, metrics, backend, engine);
+    }
+
+    public ParserEngine getParserEngine() {
+        return engine;
+    }
+
+    public CodegenBackend getBackend() {
+        return backend;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Replaces bin types of the namespace[.set], and invalidates only the queries compiled against it. The change
+     * is visible to all instances sharing this schema. As the schema no longer matches the snapshot it was created
+     * from, it is unregistered, and {@link #forSchema(Map)} returns a new instance for that snapshot from now on.
+     *
+     * @return new version of namespace[.set] schema
+     */
+    public long reloadSchema(String fqns, Map<String, Integer> binTypes) {
+        return reloadSchema(fqns, binTypes, Collections.emptyMap());
+    }
+
+    public long reloadSchema(String fqns, Map<String, Integer> binTypes, Map<String, IndexCollectionType> indexes) {
+        long version = schema.reload(fqns, binTypes, indexes).getVersion();
+        cache.invalidate(fqns);
+        INSTANCES.computeIfPresent(schema.getSnapshot(), (snapshot, registered) -> (registered.schema == schema) ? null : registered);
+        return version;
+    }
+
     public Statement fromString(String select) throws Exception {
-        Statement statement = new Statement();
+        CompiledSelect compiled = compile(select);
+        if (compiled.hasParameters()) {
+            throw new Exception("Query has parameters and must be bound via prepare(): " + select);
+        }
+        if (compiled.isAggregate()) {
+            throw new Exception("Query has aggregate functions or GROUP BY and must be run via plan(): " + select);
+        }
+        if (compiled.getSelect().getOrder() != null) {
+            throw new Exception("Query has ORDER BY and must be run via plan(): " + select);
+        }
+        if ((compiled.getLimit() != SelectNode.NO_LIMIT) || (compiled.getOffset() != 0L)) {
+            throw new Exception("Query has LIMIT or OFFSET and must be run via plan(): " + select);
+        }
+        if (compiled.getFilterExp() != null) {
+            throw new Exception("Query has a filter expression a Statement can't carry, and must be run via plan(): " + select);
+        }
+
+        return compiled.toStatement();
+    }
+
+    /**
+     * Splits a query with top-level OR into one indexed sub-statement per disjunct, if every disjunct has an indexed
+     * condition. Otherwise the plan consists of the same single statement {@link #fromString(String)} returns.
+     */
+    public QueryPlan plan(String select) throws Exception {
+        CompiledSelect compiled = compile(select);
+        if (compiled.hasParameters()) {
+            throw new Exception("Query has parameters and must be bound via prepare(): " + select);
+        }
+
+        return compiled.toPlan();
+    }
+
+    public PreparedSelect prepare(String select) throws Exception {
+        return new PreparedSelect(compile(select));
+    }
+
+    public CompiledSelect compile(String select) throws Exception {
+        return compile(select, true);
+    }
 
-        CharStream cs = CharStreams.fromString(select);
+    CompiledSelect compile(String select, boolean cached) throws Exception {
+        if (!cached) {
+            return parse(select);
+        }
+
+        CompiledSelect compiled = cache.get(select);
+        if ((compiled == null) || compiled.isStale(schema)) {
+            compiled = parse(select);
+            cache.put(select, compiled);
+        }
 
-        AQLSelectExLexer lexer = new AQLSelectExLexer(cs);
-        AQLSelectExParser parser = new AQLSelectExParser(new CommonTokenStream(lexer));
+        return compiled;
+    }
 
-        AQLSelectExErrorListener errors = new AQLSelectExErrorListener();
-        parser.addErrorListener(errors);
+    /**
+     * Compiles a batch of queries in parallel on the common fork-join pool, for example a catalog of saved queries
+     * at startup. A query that fails to compile doesn't stop the rest, and its error is kept in the catalog instead.
+     * Compiled queries bypass the compiled query cache, so a large catalog doesn't evict the queries that are hot.
+     */
+    public QueryCatalog compileAll(Collection<String> selects) {
+        return compileAll(selects, ForkJoinPool.commonPool());
+    }
 
-        parser.addParseListener(new AQLSelectExListenerImpl(statement, this.schema));
+    public QueryCatalog compileAll(Collection<String> selects, ForkJoinPool pool) {
+        return compileAll(selects, pool, false);
+    }
 
-        parser.parse();
+    /**
+     * @param cached true to look queries up in the compiled query cache and put them there, as {@link #compile(String)}
+     *               does
+     */
+    public QueryCatalog compileAll(Collection<String> selects, ForkJoinPool pool, boolean cached) {
+        return QueryCatalog.compile(this, selects, pool, cached);
+    }
+
+    /**
+     * Canonical text and fingerprint of the query, for use as a key of statistics or caches. Queries differing only
+     * in formatting have the same canonical text; see {@link CanonicalQuery}. Goes through the compiled query cache.
+     */
+    public CanonicalQuery canonicalize(String select) throws Exception {
+        return compile(select).getCanonical();
+    }
+
+    public QueryCache.Stats cacheStats() {
+        return cache.stats();
+    }
 
-        if (errors.hasError()) {
-            throw errors.exception();
+    private CompiledSelect parse(String select) throws Exception {
+        MetricsSink metrics = this.metrics;
+        long[] nanos = null;
+        long started = 0L;
+        if (metrics != null) {
+            nanos = new long[MetricsSink.Phase.values().length];
+            started = System.nanoTime();
         }
 
-        return statement;
+        MetricsSink.Phase phase = MetricsSink.Phase.LEX;
+        try {
+            SelectNode selectNode;
+            int tokens;
+            if (engine == ParserEngine.ANTLR) {
+                AntlrParser parser = AntlrParser.lex(select);
+
+                if (metrics != null) {
+                    started = lap(nanos, phase, started);
+                }
+                phase = MetricsSink.Phase.PARSE;
+
+                selectNode = parser.parse();
+                tokens = parser.tokens();
+            } else {
+                // tokens are scanned on demand while parsing
+                phase = MetricsSink.Phase.PARSE;
+
+                RecursiveDescentParser parser = new RecursiveDescentParser(select);
+                selectNode = parser.parse();
+                tokens = parser.tokens();
+            }
+
+            SelectNode written = selectNode;
+
+            if (metrics != null) {
+                started = lap(nanos, phase, started);
+            }
+            phase = MetricsSink.Phase.OPTIMIZE;
+
+            if (optimize) {
+                selectNode = selectNode.withWhere(WhereOptimizer.optimize(selectNode.getWhere()));
+            }
+
+            if (metrics != null) {
+                started = lap(nanos, phase, started);
+            }
+            phase = MetricsSink.Phase.PUSHDOWN;
+
+            SetSchema setSchema = schema.get(selectNode.getFqns());
+            selectNode = IndexPushdown.apply(selectNode, setSchema);
+            if (hybrid) {
+                selectNode = HybridPushdown.apply(selectNode, setSchema, backend);
+            }
+
+            if (metrics != null) {
+                started = lap(nanos, phase, started);
+            }
+            phase = MetricsSink.Phase.CODEGEN;
+
+            CompiledSelect compiled = CompiledSelect.compile(selectNode, setSchema, written, backend);
+
+            if (metrics != null) {
+                lap(nanos, phase, started);
+                metrics.compiled(new CompileMetrics(compiled.getCanonical().getFingerprint(), nanos, tokens, compiled.predExpSize()));
+            }
+
+            return compiled;
+        } catch (Exception | Error e) {
+            if (metrics != null) {
+                metrics.compileFailed(phase, e);
+            }
+            throw e;
+        }
+    }
+
+    private static long lap(long[] nanos, MetricsSink.Phase phase, long started) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] = now - started;
+        return now;
+    }
+
+    private static final class Recent {
+        private final WeakReference<Map<String, Map<String, Integer>>> schema;
+        private final WeakReference<Map<String, Map<String, IndexCollectionType>>> indexes;
+        private final int hashCode;
+        private final AQLSelectEx instance;
+
+        private Recent(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes, int hashCode, AQLSelectEx instance) {
+            this.schema = new WeakReference<>(schema);
+            this.indexes = new WeakReference<>(indexes);
+            this.hashCode = hashCode;
+            this.instance = instance;
+        }
+
+        private boolean matches(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes, int hashCode) {
+            // a reloaded instance is no longer registered for its snapshot
+            return (this.schema.get() == schema) && (this.indexes.get() == indexes) && (this.hashCode == hashCode) && !instance.schema.isReloaded();
+        }
     }
 }
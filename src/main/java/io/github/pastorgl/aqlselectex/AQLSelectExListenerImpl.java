@@ -1,498 +1,350 @@
 package io.github.pastorgl.aqlselectex;
 
-import com.aerospike.client.command.ParticleType;
-import com.aerospike.client.query.*;
+import com.aerospike.client.query.IndexCollectionType;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import static io.github.pastorgl.aqlselectex.AQLSelectExLexer.CLOSE_PAR;
 import static io.github.pastorgl.aqlselectex.AQLSelectExLexer.OPEN_PAR;
 
+/**
+ * Builds {@link SelectNode} in a single pass, while the query is being parsed.
+ */
 public class AQLSelectExListenerImpl extends AQLSelectExBaseListener {
-    private final Statement statement;
-    private final Map<String, Map<String, Integer>> schema;
+    private IndexNode index;
+    private WhereNode where;
 
-    private Map<String, Integer> binTypes;
+    private List<String> paramNames = new ArrayList<>();
+    private Map<String, Integer> namedParams = new HashMap<>();
+    private Map<AQLSelectExParser.ParamContext, Integer> paramOrdinals = new HashMap<>();
 
-    private List<PredExp> where = new ArrayList<>();
+    private SelectNode select;
 
-    private Deque<ParseTree> whereOpStack = new LinkedList<>();
-    private List<ParseTree> predExpStack = new ArrayList<>();
-
-    public AQLSelectExListenerImpl(Statement statement, Map<String, Map<String, Integer>> schema) {
-        this.statement = statement;
-        this.schema = schema;
+    public SelectNode getSelect() {
+        return select;
     }
 
     @Override
     public void exitSelect_stmt(AQLSelectExParser.Select_stmtContext ctx) {
+        List<String> binNames = null;
+        List<AggregateNode> aggregates = new ArrayList<>();
         if (ctx.STAR() == null) {
-            List<String> binNames = new ArrayList<>();
-            for (AQLSelectExParser.Column_nameContext cnc : ctx.column_name()) {
-                binNames.add(stripNameQuotes(cnc.bin_name().IDENTIFIER().getText()));
+            binNames = new ArrayList<>();
+            for (AQLSelectExParser.Result_columnContext rcc : ctx.result_column()) {
+                if (rcc.aggregate_func() == null) {
+                    binNames.add(stripNameQuotes(rcc.column_name().getText()));
+                } else {
+                    aggregates.add(aggregate(rcc));
+                }
             }
-            statement.setBinNames(binNames.toArray(new String[0]));
-        }
-
-        AQLSelectExParser.From_setContext fsc = ctx.from_set();
-        statement.setNamespace(fsc.ns_name().getText());
-        String fqns = statement.getNamespace();
-        if (fsc.set_name() != null) {
-            statement.setSetName(fsc.set_name().getText());
-            fqns += "." + statement.getSetName();
-        }
-
-        this.binTypes = schema.get(fqns);
-        if (binTypes == null) {
-            binTypes = Collections.emptyMap();
         }
 
-        while (!whereOpStack.isEmpty()) {
-            predExpStack.add(whereOpStack.pop());
+        List<String> groupBy = new ArrayList<>();
+        for (AQLSelectExParser.Column_nameContext cnc : ctx.column_name()) {
+            groupBy.add(stripNameQuotes(cnc.getText()));
         }
 
-        for (ParseTree whereExpr : predExpStack) {
-            if (whereExpr instanceof AQLSelectExParser.Atomic_exprContext) {
-                AQLSelectExParser.Atomic_exprContext atomicExpr = (AQLSelectExParser.Atomic_exprContext) whereExpr;
-
-                AQLSelectExParser.Equality_opContext equalityOp = atomicExpr.equality_op();
-                AQLSelectExParser.Comparison_opContext comparisonOp = atomicExpr.comparison_op();
-                TerminalNode numericLiteral = atomicExpr.NUMERIC_LITERAL();
-
-                AQLSelectExParser.Meta_nameContext metaName = atomicExpr.meta_name();
-                // meta_name equality_op NUMERIC_LITERAL
-                if (equalityOp != null && metaName != null && numericLiteral != null) {
-                    addPredExpMetaValue(metaName, numericLiteral.getText());
-
-                    addNumericEqualityOp(equalityOp);
-                    continue;
-                }
-
-                // meta_name comparison_op NUMERIC_LITERAL
-                if (comparisonOp != null && metaName != null && numericLiteral != null) {
-                    addPredExpMetaValue(metaName, numericLiteral.getText());
-
-                    addNumericComparisonOp(comparisonOp);
-                    continue;
-                }
-
-                AQLSelectExParser.Column_nameContext columnName = atomicExpr.column_name();
-                String binName = columnName.getText();
-
-                // column_name equality_op STRING_LITERAL
-                TerminalNode stringLiteral = atomicExpr.STRING_LITERAL();
-                if (equalityOp != null && stringLiteral != null) {
-                    addPredExpBinValue(binName, stripStringQuotes(stringLiteral.getText()));
-
-                    addStringEqualityOp(equalityOp);
-                    continue;
-                }
-
-                // column_name equality_op NUMERIC_LITERAL
-                if (equalityOp != null && numericLiteral != null) {
-                    addPredExpBinValue(binName, numericLiteral.getText());
-
-                    addNumericEqualityOp(equalityOp);
-                    continue;
-                }
-
-                // column_name comparison_op NUMERIC_LITERAL
-                if (comparisonOp != null && numericLiteral != null) {
-                    addPredExpBinValue(binName, numericLiteral.getText());
-
-                    addNumericComparisonOp(comparisonOp);
-                    continue;
-                }
-
-                AQLSelectExParser.Iter_exprContext iterExpr = atomicExpr.iter_expr();
-                if (iterExpr != null) {
-                    String varName = iterExpr.var_name().getText();
-                    AQLSelectExParser.Equality_opContext iterEqualityOp = iterExpr.equality_op();
-                    TerminalNode iterStringLiteral = iterExpr.STRING_LITERAL();
-                    TerminalNode iterNumericLiteral = iterExpr.NUMERIC_LITERAL();
-
-                    AQLSelectExParser.Map_opContext mapOp = atomicExpr.map_op();
-                    // column_name map_op iter_expr
-                    if (mapOp != null) {
-                        if (mapOp.K_MAPKEYS() != null) {
-                            if (mapOp.K_ANY() != null) {
-                                where.add(PredExp.mapKeyIterateOr(varName));
-                            } else {
-                                where.add(PredExp.mapKeyIterateAnd(varName));
-                            }
-                        }
-                        if (mapOp.K_MAPVALUES() != null) {
-                            if (mapOp.K_ANY() != null) {
-                                where.add(PredExp.mapValIterateOr(varName));
-                            } else {
-                                where.add(PredExp.mapValIterateAnd(varName));
-                            }
-                        }
-                    }
-
-                    AQLSelectExParser.List_opContext listOp = atomicExpr.list_op();
-                    // column_name list_op iter_expr
-                    if (listOp != null) {
-                        if (listOp.K_ANY() != null) {
-                            where.add(PredExp.listIterateOr(varName));
-                        } else {
-                            where.add(PredExp.listIterateAnd(varName));
-                        }
-                    }
-
-                    if (iterStringLiteral != null) {
-                        addPredExpBinVar(binName, varName, stripStringQuotes(iterStringLiteral.getText()));
-
-                        addStringEqualityOp(iterEqualityOp);
-                    }
-                    if (iterNumericLiteral != null) {
-                        addPredExpBinVar(binName, varName, iterNumericLiteral.getText());
-
-                        if (iterEqualityOp != null) {
-                            addNumericEqualityOp(iterEqualityOp);
-                        }
-
-                        AQLSelectExParser.Comparison_opContext iterComparisonOp = iterExpr.comparison_op();
-                        if (iterComparisonOp != null) {
-                            addNumericComparisonOp(iterComparisonOp);
-                        }
-                    }
-
-                    continue;
-                }
-
-                AQLSelectExParser.Geo_opContext geoOp = atomicExpr.geo_op();
-                // column_name geo_op cast_expr
-                if (geoOp != null) {
-                    if (atomicExpr.cast_expr().type_name().K_GEOJSON() == null) {
-                        throw new RuntimeException("Expected GEOJSON type cast at input index " + ctx.getRuleIndex());
-                    }
-
-                    String geo = stripStringQuotes(atomicExpr.cast_expr().STRING_LITERAL().getText());
-                    addPredExpBinValue(binName, geo);
-
-                    if (geoOp.K_CONTAINS() != null) {
-                        where.add(PredExp.geoJSONContains());
-                    }
-                    if (geoOp.K_WITHIN() != null) {
-                        where.add(PredExp.geoJSONWithin());
-                    }
-
-                    continue;
-                }
-
-                // column_name regex_op STRING_LITERAL
-                if (atomicExpr.regex_op() != null) {
-                    String pattern = stripStringQuotes(stringLiteral.getText());
-                    int regexFlags = RegexFlag.NEWLINE;
-                    if (pattern.startsWith("/")) {
-                        int lastSlash = pattern.lastIndexOf('/');
-
-                        String patternFlags = pattern.substring(lastSlash).toLowerCase();
-                        regexFlags |= patternFlags.contains("i") ? RegexFlag.ICASE : RegexFlag.NONE;
-                        regexFlags |= patternFlags.contains("e") ? RegexFlag.EXTENDED : RegexFlag.NONE;
-                        if (patternFlags.contains("s")) {
-                            regexFlags &= ~RegexFlag.NEWLINE;
-                        } else {
-                            regexFlags |= RegexFlag.NEWLINE;
-                        }
-                        regexFlags |= patternFlags.contains("?") ? RegexFlag.NOSUB : RegexFlag.NONE;
-
-                        pattern = pattern.substring(1, lastSlash);
-                    }
-
-                    addPredExpBinValue(binName, pattern);
-                    where.add(PredExp.stringRegex(regexFlags));
-                }
-
-                continue;
+        AQLSelectExParser.From_setContext fsc = ctx.from_set();
+        if (fsc == null) {
+            throw new RuntimeException("Expected FROM namespace[.set]");
+        }
+        String namespace = stripNameQuotes(fsc.ns_name().getText());
+        String setName = (fsc.set_name() == null) ? null : stripNameQuotes(fsc.set_name().getText());
+
+        long limit = SelectNode.NO_LIMIT;
+        long offset = 0L;
+        if (ctx.limit != null) {
+            limit = count(ctx.limit, "LIMIT");
+            if (ctx.offset != null) {
+                offset = count(ctx.offset, "OFFSET");
             }
+        }
 
-            if (whereExpr instanceof AQLSelectExParser.Logic_opContext) {
-                AQLSelectExParser.Logic_opContext logicOp = (AQLSelectExParser.Logic_opContext)whereExpr;
-
-                if (logicOp.K_NOT() != null) {
-                    where.add(PredExp.not());
-                }
-                if (logicOp.K_AND() != null) {
-                    where.add(PredExp.and(2));
-                }
-                if (logicOp.K_OR() != null) {
-                    where.add(PredExp.or(2));
-                }
-            }
+        select = new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset);
+        if (!aggregates.isEmpty() || !groupBy.isEmpty()) {
+            select = select.withAggregation(aggregates, groupBy);
         }
 
-        if (where.size() > 0) {
-            statement.setPredExp(where.toArray(new PredExp[0]));
+        AQLSelectExParser.Order_columnContext occ = ctx.order_column();
+        if (occ != null) {
+            AQLSelectExParser.Result_columnContext rcc = occ.result_column();
+            boolean descending = occ.K_DESC() != null;
+            select = select.withOrder((rcc.aggregate_func() == null)
+                    ? new OrderNode(stripNameQuotes(rcc.column_name().getText()), descending)
+                    : new OrderNode(aggregate(rcc), descending));
         }
     }
 
-    private void addNumericComparisonOp(AQLSelectExParser.Comparison_opContext comparisonOp) {
-        if (comparisonOp.GT() != null) {
-            where.add(PredExp.integerGreater());
-        }
-        if (comparisonOp.GT_EQ() != null) {
-            where.add(PredExp.integerGreaterEq());
-        }
-        if (comparisonOp.LT() != null) {
-            where.add(PredExp.integerLess());
-        }
-        if (comparisonOp.LT_EQ() != null) {
-            where.add(PredExp.integerLessEq());
-        }
+    private static AggregateNode aggregate(AQLSelectExParser.Result_columnContext rcc) {
+        return new AggregateNode(aggregateFunction(rcc.aggregate_func()), (rcc.STAR() == null) ? stripNameQuotes(rcc.column_name().getText()) : null);
     }
 
-    private void addNumericEqualityOp(AQLSelectExParser.Equality_opContext equalityOp) {
-        if (equalityOp.EQ() != null || equalityOp.EQ2() != null) {
-            where.add(PredExp.integerEqual());
+    private static AggregateNode.Function aggregateFunction(AQLSelectExParser.Aggregate_funcContext func) {
+        if (func.K_COUNT() != null) {
+            return AggregateNode.Function.COUNT;
         }
-        if (equalityOp.NOT_EQ1() != null || equalityOp.NOT_EQ2() != null) {
-            where.add(PredExp.integerUnequal());
+        if (func.K_SUM() != null) {
+            return AggregateNode.Function.SUM;
         }
-    }
-
-    private void addStringEqualityOp(AQLSelectExParser.Equality_opContext equalityOp) {
-        if (equalityOp.EQ() != null || equalityOp.EQ2() != null) {
-            where.add(PredExp.stringEqual());
+        if (func.K_MIN() != null) {
+            return AggregateNode.Function.MIN;
         }
-        if (equalityOp.NOT_EQ1() != null || equalityOp.NOT_EQ2() != null) {
-            where.add(PredExp.stringUnequal());
+        if (func.K_MAX() != null) {
+            return AggregateNode.Function.MAX;
         }
+        return AggregateNode.Function.AVG;
     }
 
-    private String stripNameQuotes(String sqlName) {
-        if (sqlName == null) {
-            return null;
-        }
-        String name = sqlName;
-        // escape character : "
-        if (name.length() >= 2) {
-            if ((name.charAt(0) == '"') && (name.charAt(name.length() - 1) == '"')) {
-                name = name.substring(1, name.length() - 1);
+    private static long count(Token literal, String clause) {
+        try {
+            long count = Long.parseLong(literal.getText());
+            if (count >= 0L) {
+                return count;
             }
+        } catch (NumberFormatException ignored) {
         }
-        return name;
+        throw new RuntimeException("Expected non-negative integer for " + clause + " at input index " + literal.getStartIndex());
     }
 
-    private String stripStringQuotes(String sqlString) {
-        if (sqlString == null) {
-            return null;
-        }
-        String string = sqlString;
-        // escape character : '
-        if ((string.charAt(0) == '\'') && (string.charAt(string.length() - 1) == '\'')) {
-            string = string.substring(1, string.length() - 1);
+    @Override
+    public void exitParam(AQLSelectExParser.ParamContext ctx) {
+        Integer ordinal;
+        if (ctx.NAMED_PARAM() != null) {
+            String name = ctx.NAMED_PARAM().getText().substring(1);
+            ordinal = namedParams.get(name);
+            if (ordinal == null) {
+                ordinal = paramNames.size();
+                paramNames.add(name);
+                namedParams.put(name, ordinal);
+            }
+        } else {
+            ordinal = paramNames.size();
+            paramNames.add(null);
         }
-        return string;
+
+        paramOrdinals.put(ctx, ordinal);
     }
 
     @Override
     public void exitWhere_expr(AQLSelectExParser.Where_exprContext ctx) {
-        int i = 0;
-        try {
-            // doing Shunting Yard
-            List<ParseTree> children = ctx.children;
-            for (; i < children.size(); i++) {
-                ParseTree child = children.get(i);
-                if (child instanceof AQLSelectExParser.Logic_opContext) {
-                    AQLSelectExParser.Logic_opContext logic = (AQLSelectExParser.Logic_opContext) child;
-                    while (!whereOpStack.isEmpty() && isHigherOp(logic, whereOpStack.peek())) {
-                        predExpStack.add(whereOpStack.pop());
-                    }
-                    whereOpStack.push(logic);
-                } else if (child instanceof TerminalNode) {
-                    TerminalNode paren = (TerminalNode) child;
-
-                    int type = paren.getSymbol().getType();
-                    if (type == OPEN_PAR) {
-                        whereOpStack.push(paren);
-                    } else {
-                        ParseTree p;
-                        while (!(((p = whereOpStack.peek()) instanceof TerminalNode) && ((TerminalNode) p).getSymbol().getType() != CLOSE_PAR)) {
-                            predExpStack.add(whereOpStack.pop());
-                        }
-                        whereOpStack.pop();
-                    }
+        WhereBuilder builder = new WhereBuilder();
+
+        for (ParseTree child : ctx.children) {
+            if (child instanceof AQLSelectExParser.Logic_opContext) {
+                builder.op(logicOp((AQLSelectExParser.Logic_opContext) child));
+            } else if (child instanceof TerminalNode) {
+                if (((TerminalNode) child).getSymbol().getType() == OPEN_PAR) {
+                    builder.open();
                 } else {
-                    predExpStack.add(child);
+                    builder.close();
                 }
+            } else {
+                builder.atom(atom((AQLSelectExParser.Atomic_exprContext) child));
             }
-        } catch (RuntimeException e) {
-            throw new RuntimeException("Mismatched parentheses at WHERE token #" + i, e);
         }
+
+        where = builder.build();
     }
 
-    private boolean isHigherOp(AQLSelectExParser.Logic_opContext ctx1, ParseTree ctx2) {
-        if (!(ctx2 instanceof AQLSelectExParser.Logic_opContext)) {
-            return false;
+    private static WhereNode.LogicOp logicOp(AQLSelectExParser.Logic_opContext logicOp) {
+        if (logicOp.K_NOT() != null) {
+            return WhereNode.LogicOp.NOT;
         }
-
-        AQLSelectExParser.Logic_opContext other = (AQLSelectExParser.Logic_opContext) ctx2;
-
-        // NOT > *
-        if (other.K_NOT() != null) {
-            return true;
+        if (logicOp.K_AND() != null) {
+            return WhereNode.LogicOp.AND;
         }
+        return WhereNode.LogicOp.OR;
+    }
 
-        // NOT > AND > *
-        if ((other.K_AND() != null) && (ctx1.K_NOT() == null)) {
-            return true;
-        }
+    private WhereNode atom(AQLSelectExParser.Atomic_exprContext atomicExpr) {
+        AQLSelectExParser.Meta_nameContext metaName = atomicExpr.meta_name();
+        // meta_name ( equality_op | comparison_op ) ( NUMERIC_LITERAL | param )
+        if (metaName != null) {
+            WhereNode.Meta meta;
+            ValueNode digestModulo = null;
+            if (metaName.K_DIGEST() != null) {
+                meta = WhereNode.Meta.DIGEST;
+                digestModulo = value(null, metaName.NUMERIC_LITERAL(), metaName.param());
+            } else if (metaName.K_LUT() != null) {
+                meta = WhereNode.Meta.LUT;
+            } else if (metaName.K_RECSIZE() != null) {
+                meta = WhereNode.Meta.RECSIZE;
+            } else {
+                meta = WhereNode.Meta.TTL;
+            }
 
-        // * >= OR
-        if ((other.K_OR() != null) && (ctx1.K_OR() != null)) {
-            return true;
+            return new WhereNode.Compare(meta, digestModulo, compareOp(atomicExpr.equality_op(), atomicExpr.comparison_op()),
+                    value(null, atomicExpr.NUMERIC_LITERAL(), atomicExpr.param()));
         }
 
-        return false;
-    }
-
-    @Override
-    public void exitIndex_expr(AQLSelectExParser.Index_exprContext ctx) {
-        Filter filter = null;
-        String binName = ctx.column_name().getText();
+        String binName = stripNameQuotes(atomicExpr.column_name().getText());
 
-        String index = (ctx.index_type() == null) ? IndexCollectionType.DEFAULT.name() : ctx.index_type().getText();
-
-        AQLSelectExParser.Index_opContext indexOp = ctx.index_op();
-        if (indexOp != null) {
-            if (ctx.NUMERIC_LITERAL() != null) {
-                if (indexOp.EQ() != null || indexOp.EQ2() != null) {
-                    filter = Filter.equal(binName, new Double(ctx.NUMERIC_LITERAL().getText()).longValue());
-                }
-                if (indexOp.K_CONTAINS() != null) {
-                    filter = Filter.contains(binName, IndexCollectionType.valueOf(index), new Double(ctx.NUMERIC_LITERAL().getText()).longValue());
+        AQLSelectExParser.Iter_exprContext iterExpr = atomicExpr.iter_expr();
+        // column_name ( map_op | list_op ) iter_expr
+        if (iterExpr != null) {
+            WhereNode.IterateOp iterateOp;
+            AQLSelectExParser.Map_opContext mapOp = atomicExpr.map_op();
+            if (mapOp != null) {
+                if (mapOp.K_MAPKEYS() != null) {
+                    iterateOp = (mapOp.K_ANY() != null) ? WhereNode.IterateOp.MAPKEYS_OR : WhereNode.IterateOp.MAPKEYS_AND;
+                } else {
+                    iterateOp = (mapOp.K_ANY() != null) ? WhereNode.IterateOp.MAPVALUES_OR : WhereNode.IterateOp.MAPVALUES_AND;
                 }
+            } else {
+                iterateOp = (atomicExpr.list_op().K_ANY() != null) ? WhereNode.IterateOp.LIST_OR : WhereNode.IterateOp.LIST_AND;
             }
 
-            if (ctx.STRING_LITERAL() != null) {
-                String string = stripStringQuotes(ctx.STRING_LITERAL().getText());
-                if (indexOp.EQ() != null || indexOp.EQ2() != null) {
-                    filter = Filter.equal(binName, string);
-                }
-                if (indexOp.K_CONTAINS() != null) {
-                    filter = Filter.contains(binName, IndexCollectionType.valueOf(index), string);
-                }
-            }
+            return new WhereNode.Iterate(binName, iterateOp, stripNameQuotes(iterExpr.var_name().getText()),
+                    compareOp(iterExpr.equality_op(), iterExpr.comparison_op()),
+                    value(iterExpr.STRING_LITERAL(), iterExpr.NUMERIC_LITERAL(), iterExpr.param()));
         }
 
-        AQLSelectExParser.Geo_opContext geoOp = ctx.geo_op();
+        AQLSelectExParser.Geo_opContext geoOp = atomicExpr.geo_op();
+        // column_name geo_op cast_expr
         if (geoOp != null) {
-            AQLSelectExParser.Cast_exprContext castExpr = ctx.cast_expr();
-            if (castExpr != null) {
-                if (castExpr.type_name().K_GEOJSON() == null) {
-                    throw new RuntimeException("Expected GEOJSON type cast at input index " + ctx.getRuleIndex());
-                }
-
-                String string = stripStringQuotes(castExpr.STRING_LITERAL().getText());
-                if (geoOp.K_CONTAINS() != null) {
-                    filter = Filter.geoContains(binName, IndexCollectionType.valueOf(index), string);
+            return new WhereNode.Geo(binName, (geoOp.K_CONTAINS() != null) ? WhereNode.GeoOp.CONTAINS : WhereNode.GeoOp.WITHIN,
+                    geoCast(atomicExpr.cast_expr()));
+        }
+
+        AQLSelectExParser.In_exprContext inExpr = atomicExpr.in_expr();
+        // column_name K_NOT? K_IN in_expr
+        if (inExpr != null) {
+            List<WhereNode> equalities = new ArrayList<>();
+            for (ParseTree child : inExpr.children) {
+                ValueNode value = null;
+                if (child instanceof AQLSelectExParser.ParamContext) {
+                    value = value(null, null, (AQLSelectExParser.ParamContext) child);
+                } else {
+                    int type = ((TerminalNode) child).getSymbol().getType();
+                    if (type == AQLSelectExLexer.STRING_LITERAL) {
+                        value = value((TerminalNode) child, null, null);
+                    } else if (type == AQLSelectExLexer.NUMERIC_LITERAL) {
+                        value = value(null, (TerminalNode) child, null);
+                    }
                 }
-                if (geoOp.K_WITHIN() != null) {
-                    filter = Filter.geoWithinRegion(binName, IndexCollectionType.valueOf(index), string);
+                if (value != null) {
+                    equalities.add(new WhereNode.Compare(binName, WhereNode.CompareOp.EQ, value));
                 }
             }
+
+            WhereNode in = (equalities.size() == 1) ? equalities.get(0) : new WhereNode.Logic(WhereNode.LogicOp.OR, equalities);
+            return (atomicExpr.K_NOT() != null) ? new WhereNode.Logic(WhereNode.LogicOp.NOT, in) : in;
         }
 
-        AQLSelectExParser.Between_exprContext betweenExpr = ctx.between_expr();
+        AQLSelectExParser.Between_exprContext betweenExpr = atomicExpr.between_expr();
+        // column_name K_NOT? between_expr
         if (betweenExpr != null) {
-            filter = Filter.range(
-                    binName,
-                    IndexCollectionType.valueOf(index),
-                    new Double(betweenExpr.low.getText()).longValue(),
-                    new Double(betweenExpr.high.getText()).longValue()
-            );
+            WhereNode between = new WhereNode.Logic(WhereNode.LogicOp.AND,
+                    new WhereNode.Compare(binName, WhereNode.CompareOp.GE, value(null, betweenExpr.low.NUMERIC_LITERAL(), betweenExpr.low.param())),
+                    new WhereNode.Compare(binName, WhereNode.CompareOp.LE, value(null, betweenExpr.high.NUMERIC_LITERAL(), betweenExpr.high.param())));
+            return (atomicExpr.K_NOT() != null) ? new WhereNode.Logic(WhereNode.LogicOp.NOT, between) : between;
         }
 
-        statement.setFilter(filter);
+        // column_name ( equality_op | comparison_op | regex_op ) ( STRING_LITERAL | NUMERIC_LITERAL | param )
+        WhereNode.CompareOp op = (atomicExpr.regex_op() != null) ? WhereNode.CompareOp.REGEX
+                : compareOp(atomicExpr.equality_op(), atomicExpr.comparison_op());
+        return new WhereNode.Compare(binName, op, value(atomicExpr.STRING_LITERAL(), atomicExpr.NUMERIC_LITERAL(), atomicExpr.param()));
     }
 
-    private void addPredExpMetaValue(AQLSelectExParser.Meta_nameContext metaName, String raw) {
-        if (metaName.K_DIGEST() != null) {
-            where.add(PredExp.recDigestModulo(new Double(metaName.NUMERIC_LITERAL().getText()).intValue()));
+    private static WhereNode.CompareOp compareOp(AQLSelectExParser.Equality_opContext equalityOp, AQLSelectExParser.Comparison_opContext comparisonOp) {
+        if (equalityOp != null) {
+            return ((equalityOp.EQ() != null) || (equalityOp.EQ2() != null)) ? WhereNode.CompareOp.EQ : WhereNode.CompareOp.NE;
         }
 
-        if (metaName.K_LUT() != null) {
-            where.add(PredExp.recLastUpdate());
+        if (comparisonOp.GT() != null) {
+            return WhereNode.CompareOp.GT;
+        }
+        if (comparisonOp.GT_EQ() != null) {
+            return WhereNode.CompareOp.GE;
+        }
+        if (comparisonOp.LT() != null) {
+            return WhereNode.CompareOp.LT;
         }
+        return WhereNode.CompareOp.LE;
+    }
 
-        if (metaName.K_RECSIZE() != null) {
-            where.add(PredExp.recDeviceSize());
+    private ValueNode value(TerminalNode stringLiteral, TerminalNode numericLiteral, AQLSelectExParser.ParamContext param) {
+        if (param != null) {
+            return ValueNode.param(paramOrdinals.get(param));
+        }
+        if (stringLiteral != null) {
+            return ValueNode.string(stripStringQuotes(stringLiteral.getText()));
         }
+        return ValueNode.numeric(numericLiteral.getText());
+    }
 
-        if (metaName.K_TTL() != null) {
-            where.add(PredExp.recVoidTime());
+    private ValueNode geoCast(AQLSelectExParser.Cast_exprContext castExpr) {
+        if (castExpr.type_name().K_GEOJSON() == null) {
+            throw new RuntimeException("Expected GEOJSON type cast at input index " + castExpr.getStart().getStartIndex());
         }
 
-        where.add(PredExp.integerValue(new Long(raw)));
+        return value(castExpr.STRING_LITERAL(), null, castExpr.param());
     }
 
-    private void addPredExpBinValue(String bin, String raw) {
-        int binType = binTypes.getOrDefault(bin, ParticleType.STRING);
-
-        switch (binType) {
-            case ParticleType.INTEGER: {
-                where.add(PredExp.integerBin(bin));
-                where.add(PredExp.integerValue(new Long(raw)));
-            }
-            break;
-            case ParticleType.DOUBLE: {
-                where.add(PredExp.integerBin(bin));
-                where.add(PredExp.integerValue(new Double(raw).longValue()));
-            }
-            break;
-            case ParticleType.STRING: {
-                where.add(PredExp.stringBin(bin));
-                where.add(PredExp.stringValue(raw));
-            }
-            break;
-            case ParticleType.GEOJSON: {
-                where.add(PredExp.geoJSONBin(bin));
-                where.add(PredExp.geoJSONValue(raw));
+    @Override
+    public void exitIndex_expr(AQLSelectExParser.Index_exprContext ctx) {
+        String binName = stripNameQuotes(ctx.column_name().getText());
+
+        IndexCollectionType collectionType = IndexCollectionType.DEFAULT;
+        AQLSelectExParser.Index_typeContext indexType = ctx.index_type();
+        if (indexType != null) {
+            if (indexType.K_LIST() != null) {
+                collectionType = IndexCollectionType.LIST;
+            } else if (indexType.K_MAPKEYS() != null) {
+                collectionType = IndexCollectionType.MAPKEYS;
+            } else if (indexType.K_MAPVALUES() != null) {
+                collectionType = IndexCollectionType.MAPVALUES;
             }
-            break;
         }
-    }
 
-    private void addPredExpBinVar(String bin, String var, String raw) {
-        int binType = binTypes.getOrDefault(bin, ParticleType.STRING);
-        int varType = binTypes.getOrDefault(bin + "." + var, ParticleType.STRING);
+        AQLSelectExParser.Index_opContext indexOp = ctx.index_op();
+        if (indexOp != null) {
+            IndexNode.Kind kind = (indexOp.K_CONTAINS() != null) ? IndexNode.Kind.CONTAINS : IndexNode.Kind.EQUAL;
+            index = new IndexNode(kind, binName, collectionType, value(ctx.STRING_LITERAL(), ctx.NUMERIC_LITERAL(), ctx.param()));
+            return;
+        }
 
-        switch (binType) {
-            case ParticleType.MAP: {
-                where.add(PredExp.mapBin(bin));
-            }
-            break;
-            case ParticleType.LIST: {
-                where.add(PredExp.listBin(bin));
-            }
-            break;
+        AQLSelectExParser.Geo_opContext geoOp = ctx.geo_op();
+        if (geoOp != null) {
+            IndexNode.Kind kind = (geoOp.K_CONTAINS() != null) ? IndexNode.Kind.GEO_CONTAINS : IndexNode.Kind.GEO_WITHIN;
+            index = new IndexNode(kind, binName, collectionType, geoCast(ctx.cast_expr()));
+            return;
         }
 
-        switch (varType) {
-            case ParticleType.STRING: {
-                where.add(PredExp.stringVar(var));
-                where.add(PredExp.stringValue(raw));
-            }
-            break;
-            case ParticleType.INTEGER: {
-                where.add(PredExp.integerVar(var));
-                where.add(PredExp.integerValue(new Long(raw)));
-            }
-            break;
-            case ParticleType.DOUBLE: {
-                where.add(PredExp.integerVar(var));
-                where.add(PredExp.integerValue(new Double(raw).longValue()));
-            }
-            break;
-            case ParticleType.GEOJSON: {
-                where.add(PredExp.geoJSONVar(var));
-                where.add(PredExp.geoJSONValue(raw));
+        AQLSelectExParser.Between_exprContext betweenExpr = ctx.between_expr();
+        index = new IndexNode(IndexNode.Kind.RANGE, binName, collectionType,
+                value(null, betweenExpr.low.NUMERIC_LITERAL(), betweenExpr.low.param()),
+                value(null, betweenExpr.high.NUMERIC_LITERAL(), betweenExpr.high.param()));
+    }
+
+    static String stripNameQuotes(String sqlName) {
+        if (sqlName == null) {
+            return null;
+        }
+        String name = sqlName;
+        // escape character : "
+        if (name.length() >= 2) {
+            if ((name.charAt(0) == '"') && (name.charAt(name.length() - 1) == '"')) {
+                name = name.substring(1, name.length() - 1).replace("\"\"", "\"");
             }
-            break;
         }
+        return name;
+    }
+
+    static String stripStringQuotes(String sqlString) {
+        if (sqlString == null) {
+            return null;
+        }
+        String string = sqlString;
+        // escape character : '
+        if ((string.charAt(0) == '\'') && (string.charAt(string.length() - 1) == '\'')) {
+            string = string.substring(1, string.length() - 1).replace("''", "'");
+        }
+        return string;
     }
 }
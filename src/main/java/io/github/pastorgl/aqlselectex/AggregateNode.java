@@ -0,0 +1,62 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Aggregate function of the SELECT list, over a bin, or over records for COUNT(*).
+ */
+public final class AggregateNode {
+    public enum Function {
+        COUNT, SUM, MIN, MAX, AVG
+    }
+
+    private final Function function;
+    private final String bin;
+
+    /**
+     * @param bin bin name, or null for COUNT(*)
+     */
+    public AggregateNode(Function function, String bin) {
+        if ((bin == null) && (function != Function.COUNT)) {
+            throw new RuntimeException("Only COUNT can be applied to *");
+        }
+
+        this.function = function;
+        this.bin = bin;
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * @return bin name, or null for COUNT(*)
+     */
+    public String getBin() {
+        return bin;
+    }
+
+    /**
+     * @return name of the bin this aggregate is returned as, like COUNT(*) or SUM(foo)
+     */
+    public String getLabel() {
+        return function + "(" + ((bin == null) ? "*" : bin) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AggregateNode)) {
+            return false;
+        }
+        AggregateNode other = (AggregateNode) o;
+        return (function == other.function) && ((bin == null) ? other.bin == null : bin.equals(other.bin));
+    }
+
+    @Override
+    public int hashCode() {
+        return function.hashCode() * 31 + ((bin == null) ? 0 : bin.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
@@ -0,0 +1,458 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Record;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.KeyRecord;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Aggregate functions and GROUP BY of a query, compiled against the schema. Records are aggregated by a number of
+ * independent {@link Partial}s, one per worker thread, which are merged into one when all records are consumed, so
+ * memory depends on the number of groups and not on the number of records.
+ */
+final class Aggregation {
+    private static final int COUNT_ALL = 0;
+    private static final int COUNT = 1;
+    private static final int SUM_LONG = 2;
+    private static final int SUM_DOUBLE = 3;
+    private static final int MIN_LONG = 4;
+    private static final int MIN_DOUBLE = 5;
+    private static final int MAX_LONG = 6;
+    private static final int MAX_DOUBLE = 7;
+    private static final int AVG_LONG = 8;
+    private static final int AVG_DOUBLE = 9;
+
+    // group key of records missing GROUP BY bin, and of the only group without GROUP BY
+    private static final Object NULL_KEY = new Object();
+
+    private static final int INITIAL_GROUPS = 16;
+
+    private final String[] groupBy;
+    private final String[] binNames;
+    private final int[] binGroups;
+    private final String[] aggregateBins;
+    private final String[] labels;
+    private final int[] kinds;
+    private final String[] fetched;
+
+    private Aggregation(SelectNode select, SetSchema setSchema) {
+        groupBy = select.getGroupBy().toArray(new String[0]);
+
+        List<String> selected = select.getBinNames();
+        binNames = selected.toArray(new String[0]);
+        binGroups = new int[binNames.length];
+        for (int i = 0; i < binNames.length; i++) {
+            binGroups[i] = select.getGroupBy().indexOf(binNames[i]);
+        }
+
+        List<AggregateNode> aggregates = select.getAggregates();
+        aggregateBins = new String[aggregates.size()];
+        labels = new String[aggregates.size()];
+        kinds = new int[aggregates.size()];
+        for (int a = 0; a < kinds.length; a++) {
+            AggregateNode aggregate = aggregates.get(a);
+            aggregateBins[a] = aggregate.getBin();
+            labels[a] = aggregate.getLabel();
+            kinds[a] = kind(aggregate, setSchema);
+        }
+
+        Set<String> fetched = new LinkedHashSet<>(Arrays.asList(groupBy));
+        for (String bin : aggregateBins) {
+            if (bin != null) {
+                fetched.add(bin);
+            }
+        }
+        if (select.getResidual() != null) {
+            bins(select.getResidual(), fetched);
+        }
+        this.fetched = fetched.toArray(new String[0]);
+    }
+
+    /**
+     * @return compiled aggregation, or null if the query doesn't aggregate
+     */
+    static Aggregation compile(SelectNode select, SetSchema setSchema) {
+        return select.isAggregate() ? new Aggregation(select, (setSchema == null) ? SetSchema.EMPTY : setSchema) : null;
+    }
+
+    private static int kind(AggregateNode aggregate, SetSchema setSchema) {
+        if (aggregate.getFunction() == AggregateNode.Function.COUNT) {
+            return (aggregate.getBin() == null) ? COUNT_ALL : COUNT;
+        }
+
+        int type = setSchema.binType(aggregate.getBin());
+        if ((type != ParticleType.INTEGER) && (type != ParticleType.DOUBLE)) {
+            throw new RuntimeException(aggregate.getFunction() + " of bin " + aggregate.getBin() + ", which isn't INTEGER or DOUBLE in the schema");
+        }
+        boolean integer = type == ParticleType.INTEGER;
+
+        switch (aggregate.getFunction()) {
+            case SUM:
+                return integer ? SUM_LONG : SUM_DOUBLE;
+            case MIN:
+                return integer ? MIN_LONG : MIN_DOUBLE;
+            case MAX:
+                return integer ? MAX_LONG : MAX_DOUBLE;
+            default:
+                return integer ? AVG_LONG : AVG_DOUBLE;
+        }
+    }
+
+    private static void bins(WhereNode where, Set<String> bins) {
+        where.accept(new WhereNode.Visitor<Void>() {
+            @Override
+            public Void visitLogic(WhereNode.Logic logic) {
+                for (WhereNode operand : logic.getOperands()) {
+                    operand.accept(this);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitCompare(WhereNode.Compare compare) {
+                if (compare.getMeta() == null) {
+                    bins.add(compare.getBin());
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitIterate(WhereNode.Iterate iterate) {
+                bins.add(iterate.getBin());
+                return null;
+            }
+
+            @Override
+            public Void visitGeo(WhereNode.Geo geo) {
+                bins.add(geo.getBin());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return bins the Statement has to fetch, empty for COUNT(*) alone, which needs no bin data at all
+     */
+    String[] fetchedBins() {
+        return fetched.clone();
+    }
+
+    Partial newPartial() {
+        return new Partial();
+    }
+
+    /**
+     * Merges partials into one. They mustn't be used afterwards.
+     */
+    Partial merge(Collection<Partial> partials) {
+        Partial merged = null;
+        for (Partial partial : partials) {
+            if (merged == null) {
+                merged = partial;
+            } else {
+                merged.merge(partial);
+            }
+        }
+        return (merged == null) ? new Partial() : merged;
+    }
+
+    /**
+     * Per-group accumulators of a single worker, not thread-safe. Groups are numbered in order of appearance by an
+     * open addressing hash table, and accumulators of each aggregate are primitive arrays indexed by group number.
+     */
+    final class Partial {
+        private Object[] keys = new Object[INITIAL_GROUPS];
+        private int[] hashes = new int[INITIAL_GROUPS];
+        // group number + 1 by hash, 0 for a free slot
+        private int[] table = new int[INITIAL_GROUPS * 2];
+        private int size;
+
+        private final long[][] counts = new long[kinds.length][];
+        private final long[][] longs = new long[kinds.length][];
+        private final double[][] doubles = new double[kinds.length][];
+
+        private Partial() {
+            for (int a = 0; a < kinds.length; a++) {
+                counts[a] = new long[INITIAL_GROUPS];
+                switch (kinds[a]) {
+                    case SUM_LONG:
+                    case MIN_LONG:
+                    case MAX_LONG:
+                    case AVG_LONG: {
+                        longs[a] = new long[INITIAL_GROUPS];
+                    }
+                    break;
+                    case SUM_DOUBLE:
+                    case MIN_DOUBLE:
+                    case MAX_DOUBLE:
+                    case AVG_DOUBLE: {
+                        doubles[a] = new double[INITIAL_GROUPS];
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Values which aren't numbers are skipped by numeric aggregates, same as missing ones.
+         */
+        void accept(Record record) {
+            int group = group(key(record));
+
+            for (int a = 0; a < kinds.length; a++) {
+                int kind = kinds[a];
+                if (kind == COUNT_ALL) {
+                    counts[a][group]++;
+                    continue;
+                }
+
+                Object value = record.getValue(aggregateBins[a]);
+                if (kind == COUNT) {
+                    if (value != null) {
+                        counts[a][group]++;
+                    }
+                    continue;
+                }
+                if (!(value instanceof Number)) {
+                    continue;
+                }
+
+                long count = counts[a][group]++;
+                switch (kind) {
+                    case SUM_LONG:
+                    case AVG_LONG: {
+                        longs[a][group] += ((Number) value).longValue();
+                    }
+                    break;
+                    case SUM_DOUBLE:
+                    case AVG_DOUBLE: {
+                        doubles[a][group] += ((Number) value).doubleValue();
+                    }
+                    break;
+                    case MIN_LONG: {
+                        long v = ((Number) value).longValue();
+                        if ((count == 0L) || (v < longs[a][group])) {
+                            longs[a][group] = v;
+                        }
+                    }
+                    break;
+                    case MAX_LONG: {
+                        long v = ((Number) value).longValue();
+                        if ((count == 0L) || (v > longs[a][group])) {
+                            longs[a][group] = v;
+                        }
+                    }
+                    break;
+                    case MIN_DOUBLE: {
+                        double v = ((Number) value).doubleValue();
+                        if ((count == 0L) || (v < doubles[a][group])) {
+                            doubles[a][group] = v;
+                        }
+                    }
+                    break;
+                    case MAX_DOUBLE: {
+                        double v = ((Number) value).doubleValue();
+                        if ((count == 0L) || (v > doubles[a][group])) {
+                            doubles[a][group] = v;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        private void merge(Partial other) {
+            for (int g = 0; g < other.size; g++) {
+                int group = group(other.keys[g], other.hashes[g]);
+
+                for (int a = 0; a < kinds.length; a++) {
+                    long otherCount = other.counts[a][g];
+                    if (otherCount == 0L) {
+                        continue;
+                    }
+
+                    long count = counts[a][group];
+                    counts[a][group] = count + otherCount;
+                    switch (kinds[a]) {
+                        case SUM_LONG:
+                        case AVG_LONG: {
+                            longs[a][group] += other.longs[a][g];
+                        }
+                        break;
+                        case SUM_DOUBLE:
+                        case AVG_DOUBLE: {
+                            doubles[a][group] += other.doubles[a][g];
+                        }
+                        break;
+                        case MIN_LONG: {
+                            if ((count == 0L) || (other.longs[a][g] < longs[a][group])) {
+                                longs[a][group] = other.longs[a][g];
+                            }
+                        }
+                        break;
+                        case MAX_LONG: {
+                            if ((count == 0L) || (other.longs[a][g] > longs[a][group])) {
+                                longs[a][group] = other.longs[a][g];
+                            }
+                        }
+                        break;
+                        case MIN_DOUBLE: {
+                            if ((count == 0L) || (other.doubles[a][g] < doubles[a][group])) {
+                                doubles[a][group] = other.doubles[a][g];
+                            }
+                        }
+                        break;
+                        case MAX_DOUBLE: {
+                            if ((count == 0L) || (other.doubles[a][g] > doubles[a][group])) {
+                                doubles[a][group] = other.doubles[a][g];
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int groups() {
+            return size;
+        }
+
+        /**
+         * Passes a row per group to the consumer, with SELECTed GROUP BY bins and then aggregates, by their labels.
+         * Keys of rows are null. Without GROUP BY, there is a single row even if there were no records.
+         */
+        void emit(Consumer<KeyRecord> consumer) {
+            if ((groupBy.length == 0) && (size == 0)) {
+                group(NULL_KEY);
+            }
+
+            for (int g = 0; g < size; g++) {
+                Map<String, Object> bins = new LinkedHashMap<>();
+                for (int i = 0; i < binNames.length; i++) {
+                    bins.put(binNames[i], groupValue(keys[g], binGroups[i]));
+                }
+                for (int a = 0; a < kinds.length; a++) {
+                    bins.put(labels[a], result(a, g));
+                }
+
+                consumer.accept(new KeyRecord(null, new Record(bins, 0, 0)));
+            }
+        }
+
+        private Object result(int a, int g) {
+            long count = counts[a][g];
+            switch (kinds[a]) {
+                case COUNT_ALL:
+                case COUNT:
+                    return count;
+            }
+            if (count == 0L) {
+                return null;
+            }
+
+            switch (kinds[a]) {
+                case SUM_LONG:
+                case MIN_LONG:
+                case MAX_LONG:
+                    return longs[a][g];
+                case AVG_LONG:
+                    return (double) longs[a][g] / count;
+                case AVG_DOUBLE:
+                    return doubles[a][g] / count;
+                default:
+                    return doubles[a][g];
+            }
+        }
+
+        private Object key(Record record) {
+            switch (groupBy.length) {
+                case 0:
+                    return NULL_KEY;
+                case 1: {
+                    Object value = record.getValue(groupBy[0]);
+                    return (value == null) ? NULL_KEY : value;
+                }
+                default: {
+                    Object[] values = new Object[groupBy.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = record.getValue(groupBy[i]);
+                    }
+                    return Arrays.asList(values);
+                }
+            }
+        }
+
+        private Object groupValue(Object key, int groupBin) {
+            if (groupBy.length == 1) {
+                return (key == NULL_KEY) ? null : key;
+            }
+            return ((List<?>) key).get(groupBin);
+        }
+
+        private int group(Object key) {
+            int h = key.hashCode() * 0x9E3779B9;
+            return group(key, h ^ (h >>> 16));
+        }
+
+        private int group(Object key, int hash) {
+            int mask = table.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int group = table[slot] - 1;
+                if (group < 0) {
+                    break;
+                }
+                if ((hashes[group] == hash) && keys[group].equals(key)) {
+                    return group;
+                }
+            }
+
+            if (size == keys.length) {
+                grow();
+            }
+
+            int group = size++;
+            keys[group] = key;
+            hashes[group] = hash;
+            insert(group);
+            return group;
+        }
+
+        private void insert(int group) {
+            int mask = table.length - 1;
+            int slot = hashes[group] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = group + 1;
+        }
+
+        private void grow() {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            for (int a = 0; a < kinds.length; a++) {
+                counts[a] = Arrays.copyOf(counts[a], capacity);
+                if (longs[a] != null) {
+                    longs[a] = Arrays.copyOf(longs[a], capacity);
+                }
+                if (doubles[a] != null) {
+                    doubles[a] = Arrays.copyOf(doubles[a], capacity);
+                }
+            }
+
+            // load factor stays at most 1/2
+            table = new int[capacity * 2];
+            for (int group = 0; group < size; group++) {
+                insert(group);
+            }
+        }
+    }
+}
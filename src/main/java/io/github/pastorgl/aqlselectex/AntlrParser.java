@@ -0,0 +1,54 @@
+package io.github.pastorgl.aqlselectex;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+/**
+ * Runs ANTLR lexer and parser with {@link AQLSelectExListenerImpl}. Kept apart from {@link AQLSelectEx}, so ANTLR
+ * runtime isn't loaded by instances that use {@link ParserEngine#RECURSIVE_DESCENT}.
+ * <p>
+ * Lexer and parser are created per query, and aren't kept after it, so neither its tokens nor its parse tree outlive
+ * the compilation. That is cheap, because DFA caches they are built from are static and shared by all threads.
+ */
+final class AntlrParser {
+    private final CommonTokenStream tokens;
+
+    private AntlrParser(CommonTokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Tokenizes the whole query upfront.
+     */
+    static AntlrParser lex(String select) {
+        CommonTokenStream tokens = new CommonTokenStream(new AQLSelectExLexer(CharStreams.fromString(select)));
+        tokens.fill();
+
+        return new AntlrParser(tokens);
+    }
+
+    /**
+     * @return number of tokens, not counting whitespace
+     */
+    int tokens() {
+        return tokens.getNumberOfOnChannelTokens() - 1;
+    }
+
+    SelectNode parse() throws Exception {
+        AQLSelectExParser parser = new AQLSelectExParser(tokens);
+
+        AQLSelectExErrorListener errors = new AQLSelectExErrorListener();
+        parser.addErrorListener(errors);
+
+        AQLSelectExListenerImpl listener = new AQLSelectExListenerImpl();
+        parser.addParseListener(listener);
+
+        parser.parse();
+
+        if (errors.hasError()) {
+            throw errors.exception();
+        }
+
+        return listener.getSelect();
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Canonical text of a SELECT, built from its syntax tree, and its 64-bit fingerprint. Queries which differ only in
+ * whitespace, keyword case, name quoting, redundant parentheses, or operator spelling (= and ==, != and &lt;&gt;,
+ * LIKE, MATCH and REGEXP) have the same canonical text. Template is the canonical text with all literals replaced
+ * by ?, for grouping queries of the same shape; it isn't always valid AQL.
+ */
+public final class CanonicalQuery {
+    private final String text;
+    private final long fingerprint;
+    private final String template;
+    private final long templateFingerprint;
+
+    private CanonicalQuery(String text, String template) {
+        this.text = text;
+        this.fingerprint = Schema.mix(Schema.hash(text));
+        this.template = template;
+        this.templateFingerprint = text.equals(template) ? fingerprint : Schema.mix(Schema.hash(template));
+    }
+
+    static CanonicalQuery of(SelectNode select) {
+        return new CanonicalQuery(Canonicalizer.canonical(select, false), Canonicalizer.canonical(select, true));
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public long getTemplateFingerprint() {
+        return templateFingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
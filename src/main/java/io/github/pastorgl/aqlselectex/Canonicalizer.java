@@ -0,0 +1,278 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Prints a {@link SelectNode} as canonical AQL: upper case keywords, single spaces, names quoted only if they must
+ * be, parentheses only where precedence requires them, and one spelling of each operator.
+ */
+final class Canonicalizer implements WhereNode.Visitor<Void> {
+    private static final Pattern PLAIN_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z_0-9]*");
+
+    private final StringBuilder sb = new StringBuilder();
+    private final List<String> paramNames;
+    private final boolean strip;
+
+    private Canonicalizer(List<String> paramNames, boolean strip) {
+        this.paramNames = paramNames;
+        this.strip = strip;
+    }
+
+    static String canonical(SelectNode select, boolean stripLiterals) {
+        Canonicalizer c = new Canonicalizer(select.getParamNames(), stripLiterals);
+        StringBuilder sb = c.sb;
+
+        sb.append("SELECT ");
+        if (select.getBinNames() == null) {
+            sb.append('*');
+        } else {
+            // aggregates always follow bins, as in the rows returned
+            for (int i = 0; i < select.getBinNames().size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                c.name(select.getBinNames().get(i));
+            }
+            for (int i = 0; i < select.getAggregates().size(); i++) {
+                if ((i > 0) || !select.getBinNames().isEmpty()) {
+                    sb.append(", ");
+                }
+                c.aggregate(select.getAggregates().get(i));
+            }
+        }
+
+        sb.append(" FROM ");
+        c.name(select.getNamespace());
+        if (select.getSetName() != null) {
+            sb.append('.');
+            c.name(select.getSetName());
+        }
+
+        if (select.getIndex() != null) {
+            sb.append(" WITH ");
+            c.index(select.getIndex());
+        }
+
+        if (select.getWhere() != null) {
+            sb.append(" WHERE ");
+            select.getWhere().accept(c);
+        }
+
+        if (!select.getGroupBy().isEmpty()) {
+            sb.append(" GROUP BY ");
+            for (int i = 0; i < select.getGroupBy().size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                c.name(select.getGroupBy().get(i));
+            }
+        }
+
+        OrderNode order = select.getOrder();
+        if (order != null) {
+            sb.append(" ORDER BY ");
+            if (order.getAggregate() == null) {
+                c.name(order.getBin());
+            } else {
+                c.aggregate(order.getAggregate());
+            }
+            sb.append(order.isDescending() ? " DESC" : " ASC");
+        }
+
+        if (select.getLimit() != SelectNode.NO_LIMIT) {
+            sb.append(" LIMIT ").append(stripLiterals ? "?" : String.valueOf(select.getLimit()));
+            if (select.getOffset() != 0L) {
+                sb.append(" OFFSET ").append(stripLiterals ? "?" : String.valueOf(select.getOffset()));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private void aggregate(AggregateNode aggregate) {
+        sb.append(aggregate.getFunction()).append('(');
+        if (aggregate.getBin() == null) {
+            sb.append('*');
+        } else {
+            name(aggregate.getBin());
+        }
+        sb.append(')');
+    }
+
+    private void index(IndexNode index) {
+        if (index.getCollectionType() != IndexCollectionType.DEFAULT) {
+            sb.append(index.getCollectionType()).append(' ');
+        }
+
+        sb.append('(');
+        name(index.getBin());
+        ValueNode[] values = index.getValues();
+        switch (index.getKind()) {
+            case EQUAL: {
+                sb.append(" = ");
+                value(values[0]);
+            }
+            break;
+            case CONTAINS: {
+                sb.append(" CONTAINS ");
+                value(values[0]);
+            }
+            break;
+            case RANGE: {
+                sb.append(" BETWEEN ");
+                value(values[0]);
+                sb.append(" AND ");
+                value(values[1]);
+            }
+            break;
+            case GEO_CONTAINS: {
+                sb.append(" CONTAINS ");
+                geoJSON(values[0]);
+            }
+            break;
+            case GEO_WITHIN: {
+                sb.append(" WITHIN ");
+                geoJSON(values[0]);
+            }
+            break;
+        }
+        sb.append(')');
+    }
+
+    @Override
+    public Void visitLogic(WhereNode.Logic logic) {
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            sb.append("NOT ");
+            operand(logic.getOperands().get(0), WhereNode.LogicOp.NOT);
+            return null;
+        }
+
+        String op = (logic.getOp() == WhereNode.LogicOp.AND) ? " AND " : " OR ";
+        List<WhereNode> operands = logic.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                sb.append(op);
+            }
+            operand(operands.get(i), logic.getOp());
+        }
+        return null;
+    }
+
+    private void operand(WhereNode operand, WhereNode.LogicOp parent) {
+        // operands of the same associative op and of higher precedence need no parentheses
+        boolean parens = (operand instanceof WhereNode.Logic)
+                && (((WhereNode.Logic) operand).getOp().ordinal() > parent.ordinal());
+        if (parens) {
+            sb.append('(');
+        }
+        operand.accept(this);
+        if (parens) {
+            sb.append(')');
+        }
+    }
+
+    @Override
+    public Void visitCompare(WhereNode.Compare compare) {
+        if (compare.getMeta() != null) {
+            sb.append(compare.getMeta());
+            if (compare.getMeta() == WhereNode.Meta.DIGEST) {
+                sb.append('(');
+                value(compare.getDigestModulo());
+                sb.append(')');
+            }
+        } else {
+            name(compare.getBin());
+        }
+
+        sb.append(' ').append(op(compare.getOp())).append(' ');
+        value(compare.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visitIterate(WhereNode.Iterate iterate) {
+        name(iterate.getBin());
+        switch (iterate.getIterateOp()) {
+            case LIST_OR:
+                sb.append(" ANY CONTAINS (");
+                break;
+            case LIST_AND:
+                sb.append(" CONTAINS (");
+                break;
+            case MAPKEYS_OR:
+                sb.append(" ANY MAPKEYS (");
+                break;
+            case MAPKEYS_AND:
+                sb.append(" MAPKEYS (");
+                break;
+            case MAPVALUES_OR:
+                sb.append(" ANY MAPVALUES (");
+                break;
+            case MAPVALUES_AND:
+                sb.append(" MAPVALUES (");
+                break;
+        }
+        name(iterate.getVar());
+        sb.append(' ').append(op(iterate.getOp())).append(' ');
+        value(iterate.getValue());
+        sb.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitGeo(WhereNode.Geo geo) {
+        name(geo.getBin());
+        sb.append((geo.getOp() == WhereNode.GeoOp.CONTAINS) ? " CONTAINS " : " WITHIN ");
+        geoJSON(geo.getValue());
+        return null;
+    }
+
+    private static String op(WhereNode.CompareOp op) {
+        switch (op) {
+            case EQ:
+                return "=";
+            case NE:
+                return "!=";
+            case LT:
+                return "<";
+            case LE:
+                return "<=";
+            case GT:
+                return ">";
+            case GE:
+                return ">=";
+            default:
+                return "LIKE";
+        }
+    }
+
+    private void geoJSON(ValueNode value) {
+        sb.append("CAST(");
+        value(value);
+        sb.append(" AS GEOJSON)");
+    }
+
+    private void value(ValueNode value) {
+        if (value.isParam()) {
+            String name = paramNames.get(value.getParam());
+            sb.append((name == null) ? "?" : ":" + name);
+        } else if (strip) {
+            sb.append('?');
+        } else if (value.isString()) {
+            sb.append('\'').append(value.getText().replace("'", "''")).append('\'');
+        } else {
+            sb.append(value.getText());
+        }
+    }
+
+    private void name(String name) {
+        if (PLAIN_NAME.matcher(name).matches() && !RecursiveDescentParser.isKeyword(name)) {
+            sb.append(name);
+        } else {
+            sb.append('"').append(name.replace("\"", "\"\"")).append('"');
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Statement;
+
+/**
+ * Emits the server-side predicate of a Statement from the WHERE tree. Parsing, optimization, pushdown and binding
+ * are shared by all backends, so the same query text can be compiled for a different server predicate API by
+ * setting another backend via {@link AQLSelectEx#withBackend(CodegenBackend)}. {@link #PREDEXP} is the default.
+ */
+public interface CodegenBackend {
+    CodegenBackend PREDEXP = new PredExpBackend(false);
+
+    /**
+     * Same PredExp, but constant parts of the predicate are encoded in wire format once on compilation, and Statements
+     * carry them as opaque byte runs, so the client doesn't encode them on each execution.
+     */
+    CodegenBackend PREDEXP_ENCODED = new PredExpBackend(true);
+
+    /**
+     * Filter expressions of Aerospike server 5.2 and later, which replace PredExp. They are set on the policy, so
+     * queries compiled with this backend are run via {@link QueryExecutor}, or with {@link CompiledSelect#getFilterExp()}
+     * set as filterExp of the policy.
+     */
+    CodegenBackend EXPRESSION = new ExpBackend();
+
+    /**
+     * @return compiled predicate, or null if there is no WHERE
+     */
+    ServerPredicate compile(WhereNode where, SetSchema setSchema);
+
+    /**
+     * @return true if the server evaluates the comparison exactly. Others are moved to the client by the hybrid
+     * pushdown, see {@link AQLSelectEx#withHybridPushdown(boolean)}
+     */
+    boolean evaluates(WhereNode.Compare compare, SetSchema setSchema);
+
+    /**
+     * @return true if the server evaluates the comparison of list or map elements exactly, the same as above
+     */
+    boolean evaluates(WhereNode.Iterate iterate, SetSchema setSchema);
+
+    /**
+     * Immutable compiled predicate, which may contain parameter placeholders.
+     */
+    interface ServerPredicate {
+        /**
+         * @return number of predicate nodes
+         */
+        int size();
+
+        /**
+         * @param values values of parameters by their index, or null if there are none
+         * @return size of the predicate field sent to the server, in bytes, without field header
+         */
+        int encodedSize(Object[] values);
+
+        /**
+         * Sets the predicate to the Statement, with parameter values substituted.
+         *
+         * @param values values of parameters by their index, or null if there are none
+         */
+        void applyTo(Statement statement, Object[] values);
+
+        /**
+         * @param values values of parameters by their index, or null if there are none
+         * @return filter expression to set on the policy, with parameter values substituted, or null if the predicate
+         * is set to the Statement
+         */
+        Expression filterExp(Object[] values);
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Timings and sizes of a single query compilation.
+ */
+public final class CompileMetrics {
+    private final long fingerprint;
+    private final long[] nanos;
+    private final int tokens;
+    private final int predExpSize;
+
+    CompileMetrics(long fingerprint, long[] nanos, int tokens, int predExpSize) {
+        this.fingerprint = fingerprint;
+        this.nanos = nanos;
+        this.tokens = tokens;
+        this.predExpSize = predExpSize;
+    }
+
+    /**
+     * @return {@link CanonicalQuery#getFingerprint()} of the query
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getNanos(MetricsSink.Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long total = 0L;
+        for (long n : nanos) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @return number of tokens in the query text
+     */
+    public int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return length of the PredExp array, or 0 if there is no WHERE left after pushdown
+     */
+    public int getPredExpSize() {
+        return predExpSize;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CompileMetrics{fingerprint=").append(Long.toHexString(fingerprint));
+        for (MetricsSink.Phase phase : MetricsSink.Phase.values()) {
+            sb.append(", ").append(phase.name().toLowerCase()).append("Nanos=").append(nanos[phase.ordinal()]);
+        }
+        return sb.append(", tokens=").append(tokens).append(", predExpSize=").append(predExpSize).append('}').toString();
+    }
+}
@@ -0,0 +1,346 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Record;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+public final class CompiledSelect {
+    private final SelectNode select;
+    // the query as written, before any rewriting, to canonicalize on demand
+    private final SelectNode written;
+    private volatile CanonicalQuery canonical;
+
+    private final String namespace;
+    private final String setName;
+    private final String[] binNames;
+    private final Filter filter;
+    private final CodegenBackend.ServerPredicate predicate;
+
+    private final List<String> paramNames;
+    private final FilterTemplate filterTemplate;
+
+    private final SetSchema setSchema;
+    private final CodegenBackend backend;
+
+    private final Predicate<Record> residual;
+    private final Aggregation aggregation;
+    private final Ordering ordering;
+
+    private volatile List<CompiledSelect> branches;
+
+    private CompiledSelect(SelectNode select, SelectNode written, SetSchema setSchema, CodegenBackend backend, Filter filter, FilterTemplate filterTemplate, CodegenBackend.ServerPredicate predicate, Aggregation aggregation, Ordering ordering) {
+        this.select = select;
+        this.written = written;
+
+        this.namespace = select.getNamespace();
+        this.setName = select.getSetName();
+        if (aggregation != null) {
+            // aggregated query returns rows, not records, so bins it SELECTs aren't the bins it needs
+            this.binNames = aggregation.fetchedBins();
+        } else if (select.getBinNames() == null) {
+            this.binNames = null;
+        } else {
+            List<String> binNames = new ArrayList<>(select.getBinNames());
+            String orderBin = Ordering.fetchedBin(select);
+            if (orderBin != null) {
+                binNames.add(orderBin);
+            }
+            this.binNames = binNames.toArray(new String[0]);
+        }
+        this.filter = filter;
+        this.predicate = predicate;
+
+        this.paramNames = select.getParamNames();
+        this.filterTemplate = filterTemplate;
+        this.setSchema = setSchema;
+        this.backend = backend;
+
+        this.residual = hasParameters() ? null : ResidualCompiler.compile(select.getResidual(), setSchema, null);
+        this.aggregation = aggregation;
+        this.ordering = ordering;
+    }
+
+    /**
+     * @param written the query as written, before any rewriting
+     */
+    static CompiledSelect compile(SelectNode select, SetSchema setSchema, SelectNode written, CodegenBackend backend) {
+        CodegenBackend.ServerPredicate predicate = backend.compile(select.getWhere(), setSchema);
+
+        Filter filter = null;
+        FilterTemplate filterTemplate = null;
+        IndexNode index = select.getIndex();
+        if (index != null) {
+            filterTemplate = new FilterTemplate(index, setSchema);
+            if (!index.hasParams()) {
+                filter = filterTemplate.bind(null);
+                filterTemplate = null;
+            }
+        }
+
+        return new CompiledSelect(select, written, setSchema, backend, filter, filterTemplate, predicate, Aggregation.compile(select, setSchema), Ordering.compile(select, setSchema));
+    }
+
+    public SelectNode getSelect() {
+        return select;
+    }
+
+    /**
+     * @return canonical form of the query as written, before any rewriting
+     */
+    public CanonicalQuery getCanonical() {
+        CanonicalQuery c = canonical;
+        if (c == null) {
+            canonical = c = CanonicalQuery.of(written);
+        }
+        return c;
+    }
+
+    SelectNode written() {
+        return written;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getSetName() {
+        return setName;
+    }
+
+    public String getFqns() {
+        return (setName == null) ? namespace : namespace + "." + setName;
+    }
+
+    /**
+     * @return true if the schema of namespace[.set] this query was compiled against has been reloaded since
+     */
+    public boolean isStale(Schema schema) {
+        return schema.get(getFqns()) != setSchema;
+    }
+
+    /**
+     * @return LIMIT of the query, or {@link SelectNode#NO_LIMIT}. Statements can't carry it, so it is honored
+     * only by {@link QueryPlan} execution, and a query with LIMIT or OFFSET can't be turned into a Statement
+     */
+    public long getLimit() {
+        return select.getLimit();
+    }
+
+    public long getOffset() {
+        return select.getOffset();
+    }
+
+    /**
+     * @return predicate for the part of WHERE that has to be evaluated on the client, or null if there is none.
+     * Statements can't carry it, so it is applied only by {@link QueryPlan} execution
+     */
+    public Predicate<Record> getResidual() {
+        if (hasParameters()) {
+            throw new IllegalStateException("Query has " + paramNames.size() + " unbound parameter(s)");
+        }
+
+        return residual;
+    }
+
+    public boolean hasParameters() {
+        return !paramNames.isEmpty();
+    }
+
+    /**
+     * Names of parameters in order of their first appearance in the query text, with null for positional ones.
+     */
+    public List<String> getParamNames() {
+        return paramNames;
+    }
+
+    /**
+     * With {@link CodegenBackend#EXPRESSION}, the Statement has no predicate, and is to be run with the policy whose
+     * filterExp is {@link #getFilterExp()}.
+     *
+     * @throws IllegalStateException if the query has parameters, or needs client-side execution a Statement can't
+     *                               carry; see {@link #checkStatement()}
+     */
+    public Statement toStatement() {
+        if (hasParameters()) {
+            throw new IllegalStateException("Query has " + paramNames.size() + " unbound parameter(s)");
+        }
+        checkStatement();
+
+        return newStatement(filter, null);
+    }
+
+    /**
+     * Statements are run as is by the Aerospike client, so a query that only {@link QueryPlan} execution computes
+     * correctly mustn't turn into one silently.
+     *
+     * @throws IllegalStateException if the query has aggregate functions, GROUP BY, ORDER BY, LIMIT or OFFSET
+     */
+    void checkStatement() {
+        if (aggregation != null) {
+            throw new IllegalStateException("Aggregate functions and GROUP BY are computed on the client, so the query must be run via plan()");
+        }
+        if (ordering != null) {
+            throw new IllegalStateException("ORDER BY is applied on the client, so the query must be run via plan()");
+        }
+        if ((select.getLimit() != SelectNode.NO_LIMIT) || (select.getOffset() != 0L)) {
+            throw new IllegalStateException("Statements can't carry LIMIT and OFFSET, so the query must be run via plan()");
+        }
+    }
+
+    /**
+     * Indexed sub-queries this query splits into, or just this query if it can't be split.
+     */
+    List<CompiledSelect> branches() {
+        List<CompiledSelect> b = branches;
+        if (b == null) {
+            branches = b = QueryPlanner.split(this, setSchema, backend);
+        }
+        return b;
+    }
+
+    QueryPlan toPlan() {
+        List<Statement> statements = new ArrayList<>();
+        List<Expression> filterExps = new ArrayList<>();
+        for (CompiledSelect branch : branches()) {
+            statements.add(branch.newStatement(branch.filter, null));
+            filterExps.add((branch.predicate == null) ? null : branch.predicate.filterExp(null));
+        }
+        return new QueryPlan(statements, filterExps, select.getLimit(), select.getOffset(), residual, aggregation, ordering);
+    }
+
+    QueryPlan bindPlan(Object[] values) {
+        List<Statement> statements = new ArrayList<>();
+        List<Expression> filterExps = new ArrayList<>();
+        for (CompiledSelect branch : branches()) {
+            statements.add(branch.bind(values));
+            filterExps.add(branch.filterExp(values));
+        }
+        return new QueryPlan(statements, filterExps, select.getLimit(), select.getOffset(), ResidualCompiler.compile(select.getResidual(), setSchema, values), aggregation, ordering);
+    }
+
+    /**
+     * @return true if the query has aggregate functions or GROUP BY, which are computed only by {@link QueryPlan}
+     * execution, so it can't be turned into a single Statement. Statements of its plan fetch just the bins
+     * aggregation needs
+     */
+    public boolean isAggregate() {
+        return aggregation != null;
+    }
+
+    /**
+     * @return PredExp of the query for code generators, or null if there is no WHERE
+     * @throws IllegalStateException if the query isn't compiled with {@link CodegenBackend#PREDEXP}
+     */
+    public PredExpTemplate getPredExpTemplate() {
+        if (predicate == null) {
+            return null;
+        }
+        if (backend != CodegenBackend.PREDEXP) {
+            throw new IllegalStateException("Query is compiled with another backend than PREDEXP");
+        }
+
+        return new PredExpTemplate((PredExpCode) predicate);
+    }
+
+    /**
+     * Runs PredExp code generation of the query again with another emitter, so code generators get the source of
+     * the calls that create the nodes, rather than the nodes themselves.
+     *
+     * @return emitted nodes in RPN order, with null at the slots of {@link #getPredExpTemplate()}, or null if there
+     * is no WHERE
+     * @throws IllegalStateException if the query isn't compiled with {@link CodegenBackend#PREDEXP}
+     */
+    public <T> List<T> emitPredExp(PredExpEmitter<T> emitter) {
+        if (predicate == null) {
+            return null;
+        }
+        if (backend != CodegenBackend.PREDEXP) {
+            throw new IllegalStateException("Query is compiled with another backend than PREDEXP");
+        }
+
+        return PredExpCompiler.emit(select.getWhere(), (setSchema == null) ? SetSchema.EMPTY : setSchema, emitter);
+    }
+
+    /**
+     * @return filter expression to set as filterExp of the policy the Statement is run with, or null if there is no
+     * WHERE, or the backend sets the predicate to the Statement itself
+     * @see CodegenBackend#EXPRESSION
+     */
+    public Expression getFilterExp() {
+        if (hasParameters()) {
+            throw new IllegalStateException("Query has " + paramNames.size() + " unbound parameter(s)");
+        }
+
+        return (predicate == null) ? null : predicate.filterExp(null);
+    }
+
+    Expression filterExp(Object[] values) {
+        check(values);
+
+        return (predicate == null) ? null : predicate.filterExp(values);
+    }
+
+    int predExpSize() {
+        return (predicate == null) ? 0 : predicate.size();
+    }
+
+    /**
+     * @return size of the predicate field of the Statement, in bytes, without field header, to check it against
+     * server limits before sending
+     */
+    public int getEncodedSize() {
+        if (hasParameters()) {
+            throw new IllegalStateException("Query has " + paramNames.size() + " unbound parameter(s)");
+        }
+
+        return (predicate == null) ? 0 : predicate.encodedSize(null);
+    }
+
+    int encodedSize(Object[] values) {
+        check(values);
+
+        return (predicate == null) ? 0 : predicate.encodedSize(values);
+    }
+
+    Statement bind(Object[] values) {
+        check(values);
+
+        return newStatement((filterTemplate == null) ? filter : filterTemplate.bind(values), values);
+    }
+
+    private void check(Object[] values) {
+        if (values.length != paramNames.size()) {
+            throw new IllegalArgumentException("Expected " + paramNames.size() + " parameter value(s), got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("Parameter #" + (i + 1) + " is not bound");
+            }
+        }
+    }
+
+    private Statement newStatement(Filter filter, Object[] values) {
+        Statement statement = new Statement();
+
+        statement.setNamespace(namespace);
+        if (setName != null) {
+            statement.setSetName(setName);
+        }
+        if (binNames != null) {
+            statement.setBinNames(binNames.clone());
+        }
+        if (filter != null) {
+            statement.setFilter(filter);
+        }
+        if (predicate != null) {
+            predicate.applyTo(statement, values);
+        }
+
+        return statement;
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.PredExp;
+
+/**
+ * A run of PredExp nodes already written in wire format. Client sizes and writes it by a single array copy, instead
+ * of walking and encoding each node again on every execution. Immutable, so is shared by all Statements.
+ */
+final class EncodedPredExp extends PredExp {
+    private final byte[] bytes;
+
+    EncodedPredExp(PredExp[] predExp, int from, int to) {
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            size += predExp[i].estimateSize();
+        }
+
+        bytes = new byte[size];
+        int offset = 0;
+        for (int i = from; i < to; i++) {
+            offset = predExp[i].write(bytes, offset);
+        }
+    }
+
+    @Override
+    public int estimateSize() {
+        return bytes.length;
+    }
+
+    @Override
+    public int write(byte[] buf, int offset) {
+        System.arraycopy(bytes, 0, buf, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "ENCODED(" + bytes.length + " bytes)";
+    }
+}
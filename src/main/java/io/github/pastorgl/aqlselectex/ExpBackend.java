@@ -0,0 +1,26 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Filter expressions compare floats and order strings natively, so the server evaluates every comparison exactly.
+ */
+final class ExpBackend implements CodegenBackend {
+    @Override
+    public ServerPredicate compile(WhereNode where, SetSchema setSchema) {
+        return ExpCompiler.compile(where, (setSchema == null) ? SetSchema.EMPTY : setSchema);
+    }
+
+    @Override
+    public boolean evaluates(WhereNode.Compare compare, SetSchema setSchema) {
+        return true;
+    }
+
+    @Override
+    public boolean evaluates(WhereNode.Iterate iterate, SetSchema setSchema) {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Expression";
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.exp.Exp;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Statement;
+
+/**
+ * Filter expression of a WHERE, built once on compilation if it has no parameters, or on each binding otherwise.
+ * It is set on the policy the Statement is run with, not on the Statement itself.
+ */
+final class ExpCode implements CodegenBackend.ServerPredicate {
+    private final WhereNode where;
+    private final SetSchema setSchema;
+    // null if there are parameters
+    private final Expression expression;
+    private final int nodes;
+
+    ExpCode(WhereNode where, SetSchema setSchema, Expression expression, int nodes) {
+        this.where = where;
+        this.setSchema = setSchema;
+        this.expression = expression;
+        this.nodes = nodes;
+    }
+
+    @Override
+    public int size() {
+        return nodes;
+    }
+
+    @Override
+    public int encodedSize(Object[] values) {
+        return filterExp(values).size();
+    }
+
+    @Override
+    public void applyTo(Statement statement, Object[] values) {
+        // Statement has no filter expression, see filterExp()
+    }
+
+    @Override
+    public Expression filterExp(Object[] values) {
+        if (expression != null) {
+            return expression;
+        }
+
+        return Exp.build(ExpCompiler.build(where, setSchema, values));
+    }
+}
@@ -0,0 +1,367 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.cdt.ListReturnType;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.exp.Exp;
+import com.aerospike.client.exp.ListExp;
+import com.aerospike.client.exp.MapExp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiles WHERE into a filter expression in a single pass over the tree. Code generator of
+ * {@link CodegenBackend#EXPRESSION}. Expressions compare floats and order strings natively, but have no iteration, so
+ * ANY is compiled as a non-zero count of list or map elements in the matching range of values, and ALL as no element
+ * in the range of the negated comparison. Ranges are bounded by the type of the element, as CDT orders values of
+ * different types apart.
+ */
+final class ExpCompiler implements WhereNode.Visitor<Exp> {
+    private final SetSchema bins;
+    // null if parameters aren't bound yet, and the expression is only measured
+    private final Object[] values;
+
+    private boolean params;
+    private int size;
+
+    private ExpCompiler(SetSchema bins, Object[] values) {
+        this.bins = bins;
+        this.values = values;
+    }
+
+    static ExpCode compile(WhereNode where, SetSchema setSchema) {
+        if (where == null) {
+            return null;
+        }
+
+        ExpCompiler compiler = new ExpCompiler(setSchema, null);
+        Exp exp = where.accept(compiler);
+
+        return new ExpCode(where, setSchema, compiler.params ? null : Exp.build(exp), compiler.size);
+    }
+
+    static Exp build(WhereNode where, SetSchema setSchema, Object[] values) {
+        return where.accept(new ExpCompiler(setSchema, values));
+    }
+
+    @Override
+    public Exp visitLogic(WhereNode.Logic logic) {
+        List<WhereNode> operands = logic.getOperands();
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            size++;
+            return Exp.not(operands.get(0).accept(this));
+        }
+
+        if (operands.size() == 1) {
+            return operands.get(0).accept(this);
+        }
+
+        Exp[] exps = new Exp[operands.size()];
+        for (int i = 0; i < exps.length; i++) {
+            exps[i] = operands.get(i).accept(this);
+        }
+        size++;
+        return (logic.getOp() == WhereNode.LogicOp.AND) ? Exp.and(exps) : Exp.or(exps);
+    }
+
+    @Override
+    public Exp visitCompare(WhereNode.Compare compare) {
+        ValueNode value = compare.getValue();
+
+        WhereNode.Meta meta = compare.getMeta();
+        if (meta != null) {
+            Exp left = null;
+            switch (meta) {
+                case DIGEST: {
+                    ValueNode digestModulo = compare.getDigestModulo();
+                    if (!digestModulo.isParam()) {
+                        left = Exp.digestModulo((int) Double.parseDouble(digestModulo.getText()));
+                    } else if (values != null) {
+                        left = Exp.digestModulo(ValueSlot.toDouble(values[digestModulo.getParam()]).intValue());
+                    } else {
+                        params = true;
+                        left = Exp.digestModulo(1);
+                    }
+                }
+                break;
+                case LUT: {
+                    left = Exp.lastUpdate();
+                }
+                break;
+                case RECSIZE: {
+                    left = Exp.deviceSize();
+                }
+                break;
+                case TTL: {
+                    left = Exp.voidTime();
+                }
+                break;
+            }
+            size++;
+
+            return compare(compare.getOp(), left, value(ParticleType.INTEGER, value));
+        }
+
+        String bin = compare.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        int binType = type(value);
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            binType = schemaBin.getType();
+        }
+
+        if (compare.getOp() == WhereNode.CompareOp.REGEX) {
+            if (binType != ParticleType.STRING) {
+                throw new RuntimeException("Regex match against non-STRING bin " + bin);
+            }
+
+            String pattern;
+            if (!value.isParam()) {
+                pattern = value.getText();
+            } else if (values != null) {
+                pattern = values[value.getParam()].toString();
+            } else {
+                params = true;
+                pattern = "";
+            }
+            size += 2;
+
+            return Exp.regexCompare(PredExpCompiler.regexPattern(pattern), PredExpCompiler.regexFlags(pattern), Exp.stringBin(bin));
+        }
+
+        size++;
+        return compare(compare.getOp(), bin(bin, binType), value(binType, value));
+    }
+
+    @Override
+    public Exp visitIterate(WhereNode.Iterate iterate) {
+        String bin = iterate.getBin();
+        String var = iterate.getVar();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        int varType = type(iterate.getValue());
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            varType = schemaBin.varType(var);
+        }
+
+        WhereNode.IterateOp iterateOp = iterate.getIterateOp();
+        boolean all = (iterateOp == WhereNode.IterateOp.LIST_AND) || (iterateOp == WhereNode.IterateOp.MAPKEYS_AND) || (iterateOp == WhereNode.IterateOp.MAPVALUES_AND);
+        WhereNode.CompareOp op = all ? negate(iterate.getOp(), bin, var) : iterate.getOp();
+
+        Exp binExp = ((iterateOp == WhereNode.IterateOp.LIST_AND) || (iterateOp == WhereNode.IterateOp.LIST_OR)) ? Exp.listBin(bin) : Exp.mapBin(bin);
+        Exp value = value(varType, iterate.getValue());
+        size++;
+
+        Exp any;
+        switch (op) {
+            case EQ: {
+                any = Exp.gt(count(iterateOp, binExp, value), Exp.val(0L));
+            }
+            break;
+            case NE: {
+                any = Exp.gt(count(iterateOp, binExp, lower(varType, bin, var), upper(varType, bin, var)), count(iterateOp, binExp, value));
+            }
+            break;
+            case GT: {
+                any = Exp.gt(count(iterateOp, binExp, value, upper(varType, bin, var)), count(iterateOp, binExp, value));
+            }
+            break;
+            case GE: {
+                any = Exp.gt(count(iterateOp, binExp, value, upper(varType, bin, var)), Exp.val(0L));
+            }
+            break;
+            case LT: {
+                any = Exp.gt(count(iterateOp, binExp, lower(varType, bin, var), value), Exp.val(0L));
+            }
+            break;
+            case LE: {
+                any = Exp.gt(Exp.add(count(iterateOp, binExp, lower(varType, bin, var), value), count(iterateOp, binExp, value)), Exp.val(0L));
+            }
+            break;
+            default: {
+                throw new RuntimeException("Regex match against elements of " + bin + "." + var);
+            }
+        }
+
+        return all ? Exp.not(any) : any;
+    }
+
+    @Override
+    public Exp visitGeo(WhereNode.Geo geo) {
+        String bin = geo.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+        }
+        size++;
+
+        // a point is within a region, and a region contains a point, by the same operation
+        return Exp.geoCompare(Exp.geoBin(bin), value(ParticleType.GEOJSON, geo.getValue()));
+    }
+
+    /**
+     * @return type of a bin that isn't in the schema, by the literal it's compared with
+     */
+    private static int type(ValueNode value) {
+        if (value.isParam() || value.isString()) {
+            return ParticleType.STRING;
+        }
+
+        try {
+            Long.parseLong(value.getText());
+            return ParticleType.INTEGER;
+        } catch (NumberFormatException e) {
+            return ParticleType.DOUBLE;
+        }
+    }
+
+    private static Exp bin(String bin, int type) {
+        switch (type) {
+            case ParticleType.INTEGER:
+                return Exp.intBin(bin);
+            case ParticleType.DOUBLE:
+                return Exp.floatBin(bin);
+            case ParticleType.GEOJSON:
+                return Exp.geoBin(bin);
+            default:
+                return Exp.stringBin(bin);
+        }
+    }
+
+    /**
+     * @return value of the type it is compared as, or a placeholder for a parameter that isn't bound yet
+     */
+    private Exp value(int type, ValueNode value) {
+        size++;
+
+        if (value.isParam()) {
+            if (values == null) {
+                params = true;
+                return Exp.nil();
+            }
+
+            Object bound = values[value.getParam()];
+            switch (type) {
+                case ParticleType.INTEGER:
+                    return Exp.val(ValueSlot.toLong(bound));
+                case ParticleType.DOUBLE:
+                    return Exp.val(ValueSlot.toDouble(bound));
+                case ParticleType.GEOJSON:
+                    return Exp.geo(bound.toString());
+                default:
+                    return Exp.val(bound.toString());
+            }
+        }
+
+        String raw = value.getText();
+        switch (type) {
+            case ParticleType.INTEGER:
+                return Exp.val(Long.parseLong(raw));
+            case ParticleType.DOUBLE:
+                return Exp.val(Double.parseDouble(raw));
+            case ParticleType.GEOJSON:
+                return Exp.geo(raw);
+            default:
+                return Exp.val(raw);
+        }
+    }
+
+    private static Exp compare(WhereNode.CompareOp op, Exp left, Exp right) {
+        switch (op) {
+            case EQ:
+                return Exp.eq(left, right);
+            case NE:
+                return Exp.ne(left, right);
+            case GT:
+                return Exp.gt(left, right);
+            case GE:
+                return Exp.ge(left, right);
+            case LT:
+                return Exp.lt(left, right);
+            default:
+                return Exp.le(left, right);
+        }
+    }
+
+    private static WhereNode.CompareOp negate(WhereNode.CompareOp op, String bin, String var) {
+        switch (op) {
+            case EQ:
+                return WhereNode.CompareOp.NE;
+            case NE:
+                return WhereNode.CompareOp.EQ;
+            case GT:
+                return WhereNode.CompareOp.LE;
+            case GE:
+                return WhereNode.CompareOp.LT;
+            case LT:
+                return WhereNode.CompareOp.GE;
+            case LE:
+                return WhereNode.CompareOp.GT;
+            default:
+                throw new RuntimeException("Regex match against elements of " + bin + "." + var);
+        }
+    }
+
+    /**
+     * @return least value of the type, inclusive
+     */
+    private static Exp lower(int type, String bin, String var) {
+        switch (type) {
+            case ParticleType.INTEGER:
+                return Exp.val(Long.MIN_VALUE);
+            case ParticleType.DOUBLE:
+                return Exp.val(Double.NEGATIVE_INFINITY);
+            case ParticleType.STRING:
+                return Exp.val("");
+            default:
+                throw new RuntimeException("Ordering comparison of GEOJSON elements of " + bin + "." + var);
+        }
+    }
+
+    /**
+     * @return least value of the type CDT orders next, exclusive, or null for the end of all values
+     */
+    private static Exp upper(int type, String bin, String var) {
+        switch (type) {
+            case ParticleType.INTEGER:
+                return Exp.val("");
+            case ParticleType.DOUBLE:
+                return null;
+            case ParticleType.STRING:
+                return Exp.val(Collections.emptyList());
+            default:
+                throw new RuntimeException("Ordering comparison of GEOJSON elements of " + bin + "." + var);
+        }
+    }
+
+    private Exp count(WhereNode.IterateOp iterateOp, Exp bin, Exp value) {
+        size++;
+
+        switch (iterateOp) {
+            case LIST_AND:
+            case LIST_OR:
+                return ListExp.getByValue(ListReturnType.COUNT, value, bin);
+            case MAPKEYS_AND:
+            case MAPKEYS_OR:
+                return MapExp.getByKey(MapReturnType.COUNT, Exp.Type.INT, value, bin);
+            default:
+                return MapExp.getByValue(MapReturnType.COUNT, value, bin);
+        }
+    }
+
+    private Exp count(WhereNode.IterateOp iterateOp, Exp bin, Exp begin, Exp end) {
+        size++;
+
+        switch (iterateOp) {
+            case LIST_AND:
+            case LIST_OR:
+                return ListExp.getByValueRange(ListReturnType.COUNT, begin, end, bin);
+            case MAPKEYS_AND:
+            case MAPKEYS_OR:
+                return MapExp.getByKeyRange(MapReturnType.COUNT, begin, end, bin);
+            default:
+                return MapExp.getByValueRange(MapReturnType.COUNT, begin, end, bin);
+        }
+    }
+}
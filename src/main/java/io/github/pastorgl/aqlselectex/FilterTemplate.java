@@ -0,0 +1,134 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Filter;
+
+final class FilterTemplate {
+    private static final int EXACT = 0;
+    private static final int CEILING = 1;
+    private static final int FLOOR = -1;
+
+    private final IndexNode index;
+    // ParticleType parameter values are bound as, or -1 if the schema doesn't tell and the value decides
+    private final int paramType;
+
+    FilterTemplate(IndexNode index, SetSchema setSchema) {
+        this.index = index;
+        this.paramType = paramType(index, setSchema);
+    }
+
+    /**
+     * Values of an EQUAL index are bound as the type of its bin in the schema, and of RANGE always as integers.
+     * Element type of a collection isn't in the schema, so CONTAINS values are bound as their own type.
+     */
+    private static int paramType(IndexNode index, SetSchema setSchema) {
+        switch (index.getKind()) {
+            case EQUAL: {
+                SetSchema.Bin bin = (setSchema == null) ? null : setSchema.bin(index.getBin());
+                if (bin == null) {
+                    return -1;
+                }
+                return ((bin.getType() == ParticleType.INTEGER) || (bin.getType() == ParticleType.DOUBLE)) ? ParticleType.INTEGER : ParticleType.STRING;
+            }
+            case RANGE: {
+                return ParticleType.INTEGER;
+            }
+            default: {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @param values parameter values, may be null if index expression has no parameters
+     */
+    Filter bind(Object[] values) {
+        String binName = index.getBin();
+
+        switch (index.getKind()) {
+            case EQUAL: {
+                ValueNode node = index.value(0);
+                Object value = value(node, values);
+                if (isInteger(node, value)) {
+                    return Filter.equal(binName, integer(value, EXACT));
+                }
+                return Filter.equal(binName, value.toString());
+            }
+            case CONTAINS: {
+                ValueNode node = index.value(0);
+                Object value = value(node, values);
+                if (isInteger(node, value)) {
+                    return Filter.contains(binName, index.getCollectionType(), integer(value, EXACT));
+                }
+                return Filter.contains(binName, index.getCollectionType(), value.toString());
+            }
+            case RANGE: {
+                // fractional bounds are rounded towards the inside of the range
+                return Filter.range(binName, index.getCollectionType(),
+                        integer(value(index.value(0), values), CEILING),
+                        integer(value(index.value(1), values), FLOOR));
+            }
+            case GEO_CONTAINS: {
+                return Filter.geoContains(binName, index.getCollectionType(), value(index.value(0), values).toString());
+            }
+            case GEO_WITHIN: {
+                return Filter.geoWithinRegion(binName, index.getCollectionType(), value(index.value(0), values).toString());
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isInteger(ValueNode node, Object value) {
+        // literals are already typed by the query text
+        if (node.isParam() && (paramType >= 0)) {
+            return paramType == ParticleType.INTEGER;
+        }
+        return value instanceof Number;
+    }
+
+    /**
+     * Converts a value to long without going through double, unless it is floating point already.
+     *
+     * @param rounding what to do with a fractional value: fail, or round it up or down
+     */
+    static long integer(Object value, int rounding) {
+        if ((value instanceof Double) || (value instanceof Float)) {
+            double d = ((Number) value).doubleValue();
+            switch (rounding) {
+                case CEILING:
+                    return (long) Math.ceil(d);
+                case FLOOR:
+                    return (long) Math.floor(d);
+                default: {
+                    long l = (long) d;
+                    if (l != d) {
+                        throw new IllegalArgumentException("Value " + value + " of integer index isn't an integer");
+                    }
+                    return l;
+                }
+            }
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        String text = value.toString();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return integer(Double.valueOf(text), rounding);
+        }
+    }
+
+    private static Object value(ValueNode node, Object[] values) {
+        if (node.isParam()) {
+            return values[node.getParam()];
+        }
+        return literal(node);
+    }
+
+    private static Object literal(ValueNode node) {
+        return node.isString() ? node.getText() : (Object) node.truncatedValue();
+    }
+}
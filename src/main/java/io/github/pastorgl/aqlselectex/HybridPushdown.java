@@ -0,0 +1,81 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the top-level WHERE conjuncts the server can't evaluate exactly into the residual, which is checked on the
+ * client against records returned by the server. Which comparisons these are depends on the {@link CodegenBackend};
+ * for PredExp, comparisons of DOUBLE bins or list and map elements, and ordering comparisons of strings, and for filter
+ * expressions, none. A conjunct is moved whole, so any OR or NOT with such a comparison inside is evaluated on the
+ * client entirely. A conjunct that also has conditions only the server can evaluate, on metadata or GEOJSON, stays
+ * on the server as is.
+ */
+final class HybridPushdown implements WhereNode.Visitor<Boolean> {
+    private final SetSchema bins;
+    private final CodegenBackend backend;
+
+    private HybridPushdown(SetSchema bins, CodegenBackend backend) {
+        this.bins = bins;
+        this.backend = backend;
+    }
+
+    static SelectNode apply(SelectNode select, SetSchema setSchema, CodegenBackend backend) {
+        if (select.getWhere() == null) {
+            return select;
+        }
+
+        HybridPushdown pushdown = new HybridPushdown((setSchema == null) ? SetSchema.EMPTY : setSchema, backend);
+
+        List<WhereNode> conjuncts = new ArrayList<>();
+        IndexPushdown.conjuncts(select.getWhere(), conjuncts);
+
+        List<WhereNode> server = new ArrayList<>();
+        List<WhereNode> client = new ArrayList<>();
+        for (WhereNode conjunct : conjuncts) {
+            (conjunct.accept(pushdown) || !ResidualCompiler.evaluates(conjunct) ? server : client).add(conjunct);
+        }
+
+        if (client.isEmpty()) {
+            return select;
+        }
+
+        return select.withWhere(and(server)).withResidual(and(client));
+    }
+
+    private static WhereNode and(List<WhereNode> operands) {
+        switch (operands.size()) {
+            case 0:
+                return null;
+            case 1:
+                return operands.get(0);
+            default:
+                return new WhereNode.Logic(WhereNode.LogicOp.AND, operands);
+        }
+    }
+
+    @Override
+    public Boolean visitLogic(WhereNode.Logic logic) {
+        for (WhereNode operand : logic.getOperands()) {
+            if (!operand.accept(this)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean visitCompare(WhereNode.Compare compare) {
+        return backend.evaluates(compare, bins);
+    }
+
+    @Override
+    public Boolean visitIterate(WhereNode.Iterate iterate) {
+        return backend.evaluates(iterate, bins);
+    }
+
+    @Override
+    public Boolean visitGeo(WhereNode.Geo geo) {
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.util.Arrays;
+
+/**
+ * Secondary index lookup of WITH (USE) clause.
+ */
+public final class IndexNode {
+    public enum Kind {
+        EQUAL, CONTAINS, RANGE, GEO_CONTAINS, GEO_WITHIN
+    }
+
+    private final Kind kind;
+    private final String bin;
+    private final IndexCollectionType collectionType;
+    private final ValueNode[] values;
+
+    public IndexNode(Kind kind, String bin, IndexCollectionType collectionType, ValueNode... values) {
+        this.kind = kind;
+        this.bin = bin;
+        this.collectionType = collectionType;
+        this.values = values;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getBin() {
+        return bin;
+    }
+
+    public IndexCollectionType getCollectionType() {
+        return collectionType;
+    }
+
+    /**
+     * @return single value, or low and high bounds of RANGE
+     */
+    public ValueNode[] getValues() {
+        return values.clone();
+    }
+
+    ValueNode value(int i) {
+        return values[i];
+    }
+
+    boolean hasParams() {
+        for (ValueNode value : values) {
+            if (value.isParam()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexNode)) {
+            return false;
+        }
+        IndexNode other = (IndexNode) o;
+        return (kind == other.kind) && bin.equals(other.bin) && (collectionType == other.collectionType) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((kind.hashCode() * 31 + bin.hashCode()) * 31 + collectionType.hashCode()) * 31 + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return collectionType + " (" + bin + " " + kind + " " + Arrays.toString(values) + ")";
+    }
+}
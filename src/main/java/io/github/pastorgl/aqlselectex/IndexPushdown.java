@@ -0,0 +1,297 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Moves the most selective top-level WHERE conjunct on an indexed bin into the query Filter. Bounds of the same
+ * integer bin found in several conjuncts, like foo &gt;= 2 AND foo &lt;= 9, are merged into a single range.
+ */
+final class IndexPushdown {
+    private static final int RANK_EQUAL = 0;
+    private static final int RANK_GEO = 1;
+    private static final int RANK_CONTAINS = 2;
+    private static final int RANK_CLOSED_RANGE = 3;
+    private static final int RANK_OPEN_RANGE = 4;
+
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final SetSchema bins;
+
+    private IndexNode best;
+    private int bestRank = Integer.MAX_VALUE;
+    private Set<WhereNode> consumed;
+
+    private final Map<String, Range> ranges = new LinkedHashMap<>();
+
+    private IndexPushdown(SetSchema bins) {
+        this.bins = bins;
+    }
+
+    static SelectNode apply(SelectNode select, SetSchema setSchema) {
+        if ((setSchema == null) || !setSchema.hasIndexes() || (select.getIndex() != null) || (select.getWhere() == null)) {
+            return select;
+        }
+
+        IndexPushdown pushdown = new IndexPushdown(setSchema);
+
+        List<WhereNode> conjuncts = new ArrayList<>();
+        conjuncts(select.getWhere(), conjuncts);
+        for (WhereNode conjunct : conjuncts) {
+            pushdown.consider(conjunct);
+        }
+        pushdown.considerRanges();
+
+        if (pushdown.best == null) {
+            return select;
+        }
+
+        return select.withIndex(pushdown.best).withWhere(remove(select.getWhere(), pushdown.consumed));
+    }
+
+    static void conjuncts(WhereNode where, List<WhereNode> conjuncts) {
+        if ((where instanceof WhereNode.Logic) && (((WhereNode.Logic) where).getOp() == WhereNode.LogicOp.AND)) {
+            for (WhereNode operand : ((WhereNode.Logic) where).getOperands()) {
+                conjuncts(operand, conjuncts);
+            }
+        } else {
+            conjuncts.add(where);
+        }
+    }
+
+    /**
+     * Removes consumed conjuncts, keeping the shape of the rest of the tree.
+     */
+    static WhereNode remove(WhereNode where, Set<WhereNode> consumed) {
+        if (consumed.contains(where)) {
+            return null;
+        }
+
+        if ((where instanceof WhereNode.Logic) && (((WhereNode.Logic) where).getOp() == WhereNode.LogicOp.AND)) {
+            List<WhereNode> operands = ((WhereNode.Logic) where).getOperands();
+            List<WhereNode> left = new ArrayList<>(operands.size());
+            for (WhereNode operand : operands) {
+                WhereNode rest = remove(operand, consumed);
+                if (rest != null) {
+                    left.add(rest);
+                }
+            }
+
+            if (left.isEmpty()) {
+                return null;
+            }
+            if (left.size() == 1) {
+                return left.get(0);
+            }
+            if (left.equals(operands)) {
+                return where;
+            }
+            return new WhereNode.Logic(WhereNode.LogicOp.AND, left);
+        }
+
+        return where;
+    }
+
+    private void consider(WhereNode conjunct) {
+        if (conjunct instanceof WhereNode.Compare) {
+            considerCompare((WhereNode.Compare) conjunct);
+        } else if (conjunct instanceof WhereNode.Iterate) {
+            considerIterate((WhereNode.Iterate) conjunct);
+        } else if (conjunct instanceof WhereNode.Geo) {
+            WhereNode.Geo geo = (WhereNode.Geo) conjunct;
+            SetSchema.Bin bin = bins.bin(geo.getBin());
+            if ((bin != null) && (bin.getIndex() == IndexCollectionType.DEFAULT) && (bin.getType() == ParticleType.GEOJSON)) {
+                IndexNode.Kind kind = (geo.getOp() == WhereNode.GeoOp.CONTAINS) ? IndexNode.Kind.GEO_CONTAINS : IndexNode.Kind.GEO_WITHIN;
+                offer(new IndexNode(kind, bin.getName(), IndexCollectionType.DEFAULT, geo.getValue()), RANK_GEO, conjunct);
+            }
+        }
+    }
+
+    private void considerCompare(WhereNode.Compare compare) {
+        if (compare.getMeta() != null) {
+            return;
+        }
+        SetSchema.Bin bin = bins.bin(compare.getBin());
+        if ((bin == null) || (bin.getIndex() != IndexCollectionType.DEFAULT)) {
+            return;
+        }
+
+        ValueNode value = compare.getValue();
+        switch (bin.getType()) {
+            case ParticleType.STRING: {
+                if ((compare.getOp() == WhereNode.CompareOp.EQ) && (value.isString() || value.isParam())) {
+                    offer(new IndexNode(IndexNode.Kind.EQUAL, bin.getName(), IndexCollectionType.DEFAULT, value), RANK_EQUAL, compare);
+                }
+            }
+            break;
+            case ParticleType.INTEGER: {
+                if (value.isString()) {
+                    return;
+                }
+                if (compare.getOp() == WhereNode.CompareOp.EQ) {
+                    // no integer equals a fractional literal, so it is left to the predicate
+                    if (value.isParam() || (integer(value, RoundingMode.UNNECESSARY, 0) != null)) {
+                        offer(new IndexNode(IndexNode.Kind.EQUAL, bin.getName(), IndexCollectionType.DEFAULT, value), RANK_EQUAL, compare);
+                    }
+                    return;
+                }
+
+                Range range = ranges.computeIfAbsent(bin.getName(), name -> new Range());
+                if (value.isParam()) {
+                    // parameter bounds can't be merged or shifted, so only inclusive ones, and only one per side
+                    if ((compare.getOp() == WhereNode.CompareOp.GE) && (range.low == null)) {
+                        range.low = value;
+                        range.conjuncts.add(compare);
+                    }
+                    if ((compare.getOp() == WhereNode.CompareOp.LE) && (range.high == null)) {
+                        range.high = value;
+                        range.conjuncts.add(compare);
+                    }
+                    return;
+                }
+
+                // bounds are rounded towards the inside of the range, so fractional ones don't drop matching integers
+                switch (compare.getOp()) {
+                    case GT: {
+                        range.raiseLow(integer(value, RoundingMode.FLOOR, 1), compare);
+                    }
+                    break;
+                    case GE: {
+                        range.raiseLow(integer(value, RoundingMode.CEILING, 0), compare);
+                    }
+                    break;
+                    case LT: {
+                        range.lowerHigh(integer(value, RoundingMode.CEILING, -1), compare);
+                    }
+                    break;
+                    case LE: {
+                        range.lowerHigh(integer(value, RoundingMode.FLOOR, 0), compare);
+                    }
+                    break;
+                }
+            }
+            break;
+        }
+    }
+
+    /**
+     * @return numeric literal rounded to integer and then shifted, or null if it isn't a valid number, the result
+     * doesn't fit long, or rounding is {@link RoundingMode#UNNECESSARY} and the literal is fractional
+     */
+    private static Long integer(ValueNode value, RoundingMode rounding, int shift) {
+        BigDecimal v;
+        try {
+            String text = value.getText();
+            v = new BigDecimal(text.startsWith("+") ? text.substring(1) : text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // checked before rounding, so a huge exponent doesn't get expanded
+        if ((v.compareTo(LONG_MIN) < 0) || (v.compareTo(LONG_MAX) > 0)) {
+            return null;
+        }
+
+        BigInteger i;
+        try {
+            i = v.setScale(0, rounding).toBigIntegerExact().add(BigInteger.valueOf(shift));
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        return (i.bitLength() < 64) ? i.longValue() : null;
+    }
+
+    private void considerIterate(WhereNode.Iterate iterate) {
+        if (iterate.getOp() != WhereNode.CompareOp.EQ) {
+            return;
+        }
+
+        IndexCollectionType collectionType;
+        switch (iterate.getIterateOp()) {
+            case LIST_OR: {
+                collectionType = IndexCollectionType.LIST;
+            }
+            break;
+            case MAPKEYS_OR: {
+                collectionType = IndexCollectionType.MAPKEYS;
+            }
+            break;
+            case MAPVALUES_OR: {
+                collectionType = IndexCollectionType.MAPVALUES;
+            }
+            break;
+            default: {
+                // every element must match, and index can't tell that
+                return;
+            }
+        }
+
+        SetSchema.Bin bin = bins.bin(iterate.getBin());
+        if ((bin != null) && (bin.getIndex() == collectionType)) {
+            offer(new IndexNode(IndexNode.Kind.CONTAINS, bin.getName(), collectionType, iterate.getValue()), RANK_CONTAINS, iterate);
+        }
+    }
+
+    private void considerRanges() {
+        for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+            Range range = entry.getValue();
+            if (range.conjuncts.isEmpty()) {
+                continue;
+            }
+
+            int rank = ((range.low != null) && (range.high != null)) ? RANK_CLOSED_RANGE : RANK_OPEN_RANGE;
+            ValueNode low = (range.low != null) ? range.low : ValueNode.numeric(String.valueOf(Long.MIN_VALUE));
+            ValueNode high = (range.high != null) ? range.high : ValueNode.numeric(String.valueOf(Long.MAX_VALUE));
+
+            offer(new IndexNode(IndexNode.Kind.RANGE, entry.getKey(), IndexCollectionType.DEFAULT, low, high), rank, range.conjuncts.toArray(new WhereNode[0]));
+        }
+    }
+
+    private void offer(IndexNode index, int rank, WhereNode... conjuncts) {
+        if (rank < bestRank) {
+            best = index;
+            bestRank = rank;
+            consumed = Collections.newSetFromMap(new IdentityHashMap<>());
+            consumed.addAll(Arrays.asList(conjuncts));
+        }
+    }
+
+    private static class Range {
+        private ValueNode low;
+        private ValueNode high;
+        private final List<WhereNode> conjuncts = new ArrayList<>();
+
+        private void raiseLow(Long v, WhereNode conjunct) {
+            if (v == null) {
+                return;
+            }
+            if (low == null) {
+                low = ValueNode.numeric(String.valueOf(v));
+            } else if (low.isParam()) {
+                return;
+            } else if (low.truncatedValue() < v) {
+                low = ValueNode.numeric(String.valueOf(v));
+            }
+            conjuncts.add(conjunct);
+        }
+
+        private void lowerHigh(Long v, WhereNode conjunct) {
+            if (v == null) {
+                return;
+            }
+            if (high == null) {
+                high = ValueNode.numeric(String.valueOf(v));
+            } else if (high.isParam()) {
+                return;
+            } else if (high.truncatedValue() > v) {
+                high = ValueNode.numeric(String.valueOf(v));
+            }
+            conjuncts.add(conjunct);
+        }
+    }
+}
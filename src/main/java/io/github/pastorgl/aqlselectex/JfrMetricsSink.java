@@ -0,0 +1,92 @@
+package io.github.pastorgl.aqlselectex;
+
+import jdk.jfr.*;
+
+/**
+ * {@link MetricsSink} that emits a JFR event for each compilation and execution. Requires a runtime with JFR
+ * (Java 11+, or 8u262+); events are recorded only if enabled in the recording settings.
+ */
+public final class JfrMetricsSink implements MetricsSink {
+    @Name("io.github.pastorgl.aqlselectex.Compile")
+    @Label("AQLSelectEx Compile")
+    @Category("AQLSelectEx")
+    @StackTrace(false)
+    static final class CompileEvent extends Event {
+        @Label("Fingerprint")
+        long fingerprint;
+        @Label("Lex")
+        @Timespan
+        long lexNanos;
+        @Label("Parse")
+        @Timespan
+        long parseNanos;
+        @Label("Optimize")
+        @Timespan
+        long optimizeNanos;
+        @Label("Pushdown")
+        @Timespan
+        long pushdownNanos;
+        @Label("Codegen")
+        @Timespan
+        long codegenNanos;
+        @Label("Tokens")
+        int tokens;
+        @Label("PredExp Size")
+        int predExpSize;
+        @Label("Failed Phase")
+        String failedPhase;
+        @Label("Error")
+        String error;
+    }
+
+    @Name("io.github.pastorgl.aqlselectex.Execute")
+    @Label("AQLSelectEx Execute")
+    @Category("AQLSelectEx")
+    @StackTrace(false)
+    static final class ExecuteEvent extends Event {
+        @Label("Duration")
+        @Timespan
+        long nanos;
+        @Label("Records")
+        long records;
+        @Label("Error")
+        String error;
+    }
+
+    @Override
+    public void compiled(CompileMetrics metrics) {
+        CompileEvent event = new CompileEvent();
+        if (event.isEnabled()) {
+            event.fingerprint = metrics.getFingerprint();
+            event.lexNanos = metrics.getNanos(Phase.LEX);
+            event.parseNanos = metrics.getNanos(Phase.PARSE);
+            event.optimizeNanos = metrics.getNanos(Phase.OPTIMIZE);
+            event.pushdownNanos = metrics.getNanos(Phase.PUSHDOWN);
+            event.codegenNanos = metrics.getNanos(Phase.CODEGEN);
+            event.tokens = metrics.getTokens();
+            event.predExpSize = metrics.getPredExpSize();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void compileFailed(Phase phase, Throwable error) {
+        CompileEvent event = new CompileEvent();
+        if (event.isEnabled()) {
+            event.failedPhase = phase.name();
+            event.error = error.getClass().getName();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void executed(long nanos, long records, Throwable error) {
+        ExecuteEvent event = new ExecuteEvent();
+        if (event.isEnabled()) {
+            event.nanos = nanos;
+            event.records = records;
+            event.error = (error == null) ? null : error.getClass().getName();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MetricsSink} that sums up metrics in memory, for periodic export to a monitoring system.
+ */
+public final class MetricsRecorder implements MetricsSink {
+    private final LongAdder compiles = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder predExpSize = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder executionErrors = new LongAdder();
+
+    public MetricsRecorder() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void compiled(CompileMetrics metrics) {
+        compiles.increment();
+        for (Phase phase : Phase.values()) {
+            phaseNanos[phase.ordinal()].add(metrics.getNanos(phase));
+        }
+        tokens.add(metrics.getTokens());
+        predExpSize.add(metrics.getPredExpSize());
+    }
+
+    @Override
+    public void compileFailed(Phase phase, Throwable error) {
+        errors.computeIfAbsent(phase + ":" + error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void executed(long nanos, long records, Throwable error) {
+        executions.increment();
+        executionNanos.add(nanos);
+        this.records.add(records);
+        if (error != null) {
+            executionErrors.increment();
+        }
+    }
+
+    public long getCompiles() {
+        return compiles.sum();
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getPredExpSize() {
+        return predExpSize.sum();
+    }
+
+    /**
+     * @return number of compile errors by PHASE:ExceptionClass
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new HashMap<>();
+        errors.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public long getExecutionNanos() {
+        return executionNanos.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getExecutionErrors() {
+        return executionErrors.sum();
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Receives compilation and execution metrics. Instances without a sink don't even read the clock, so there is no
+ * overhead unless a sink is set via {@link AQLSelectEx#withMetrics(MetricsSink)} or
+ * {@link QueryExecutor#withMetrics(MetricsSink)}. Methods are called from compiling and executing threads
+ * concurrently, and must be fast and thread-safe.
+ */
+public interface MetricsSink {
+    enum Phase {
+        /**
+         * Tokenizing the query text. {@link ParserEngine#RECURSIVE_DESCENT} scans tokens while parsing, so its
+         * time is counted in {@link #PARSE}
+         */
+        LEX,
+        /**
+         * Parsing, including building of WHERE tree by shunting yard
+         */
+        PARSE,
+        /**
+         * WHERE optimization, if enabled
+         */
+        OPTIMIZE,
+        /**
+         * Index and hybrid pushdown
+         */
+        PUSHDOWN,
+        /**
+         * Server predicate and Filter construction
+         */
+        CODEGEN
+    }
+
+    /**
+     * Called for each query actually compiled, i.e. not found in the compiled query cache.
+     */
+    void compiled(CompileMetrics metrics);
+
+    /**
+     * Called for each query failed to compile, with the phase it failed in.
+     */
+    void compileFailed(Phase phase, Throwable error);
+
+    /**
+     * Called for each run of {@link QueryExecutor}, successful or not.
+     */
+    default void executed(long nanos, long records, Throwable error) {
+    }
+}
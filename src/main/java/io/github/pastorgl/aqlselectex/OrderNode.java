@@ -0,0 +1,54 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * ORDER BY of a bin, or of an aggregate function of the SELECT list.
+ */
+public final class OrderNode {
+    private final String bin;
+    private final AggregateNode aggregate;
+    private final boolean descending;
+
+    public OrderNode(String bin, boolean descending) {
+        this(bin, null, descending);
+    }
+
+    public OrderNode(AggregateNode aggregate, boolean descending) {
+        this(null, aggregate, descending);
+    }
+
+    private OrderNode(String bin, AggregateNode aggregate, boolean descending) {
+        this.bin = bin;
+        this.aggregate = aggregate;
+        this.descending = descending;
+    }
+
+    /**
+     * @return bin name, or null if ordered by an aggregate
+     */
+    public String getBin() {
+        return bin;
+    }
+
+    /**
+     * @return aggregate function, or null if ordered by a bin
+     */
+    public AggregateNode getAggregate() {
+        return aggregate;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * @return name of the bin of records or rows to compare
+     */
+    public String getLabel() {
+        return (aggregate == null) ? bin : aggregate.getLabel();
+    }
+
+    @Override
+    public String toString() {
+        return getLabel() + (descending ? " DESC" : " ASC");
+    }
+}
@@ -0,0 +1,250 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Record;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.KeyRecord;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * ORDER BY of a query, compiled against the schema. As it is always combined with LIMIT, only the first LIMIT + OFFSET
+ * records are kept, by a number of independent bounded {@link TopK} heaps, one per worker thread, which are merged
+ * into one when all records are consumed. Records missing the bin, or having a value of another type, go last in
+ * both directions.
+ */
+final class Ordering {
+    private static final int LONG = 0;
+    private static final int DOUBLE = 1;
+    private static final int STRING = 2;
+    // aggregates are either Long or Double
+    private static final int NUMBER = 3;
+
+    private static final int INITIAL_SIZE = 16;
+
+    private final String label;
+    private final int kind;
+    private final boolean descending;
+    private final int k;
+    private final boolean strip;
+
+    private Ordering(OrderNode order, SelectNode select, SetSchema setSchema) {
+        long k = select.getLimit() + select.getOffset();
+        if (k > Integer.MAX_VALUE - 8) {
+            throw new RuntimeException("LIMIT + OFFSET of a query with ORDER BY must be less than " + (Integer.MAX_VALUE - 8) + ", got " + k);
+        }
+        this.k = (int) k;
+
+        label = order.getLabel();
+        descending = order.isDescending();
+
+        if (order.getAggregate() != null) {
+            kind = NUMBER;
+        } else {
+            switch (setSchema.binType(order.getBin())) {
+                case ParticleType.INTEGER: {
+                    kind = LONG;
+                }
+                break;
+                case ParticleType.DOUBLE: {
+                    kind = DOUBLE;
+                }
+                break;
+                case ParticleType.STRING: {
+                    kind = STRING;
+                }
+                break;
+                default:
+                    throw new RuntimeException("ORDER BY bin " + order.getBin() + ", which isn't INTEGER, DOUBLE or STRING in the schema");
+            }
+        }
+
+        strip = (fetchedBin(select) != null);
+    }
+
+    /**
+     * @return compiled ordering, or null if the query has no ORDER BY
+     */
+    static Ordering compile(SelectNode select, SetSchema setSchema) {
+        OrderNode order = select.getOrder();
+        return (order == null) ? null : new Ordering(order, select, (setSchema == null) ? SetSchema.EMPTY : setSchema);
+    }
+
+    /**
+     * @return bin the Statement has to fetch in addition to the SELECT list, or null
+     */
+    static String fetchedBin(SelectNode select) {
+        OrderNode order = select.getOrder();
+        if ((order == null) || select.isAggregate() || (select.getBinNames() == null) || select.getBinNames().contains(order.getBin())) {
+            return null;
+        }
+        return order.getBin();
+    }
+
+    TopK newTopK() {
+        return new TopK();
+    }
+
+    /**
+     * Merges heaps into one. They mustn't be used afterwards.
+     */
+    TopK merge(Collection<TopK> heaps) {
+        TopK merged = null;
+        for (TopK heap : heaps) {
+            if (merged == null) {
+                merged = heap;
+            } else {
+                for (int i = 0; i < heap.size; i++) {
+                    merged.offer(heap.keys[i], heap.records[i]);
+                }
+            }
+        }
+        return (merged == null) ? new TopK() : merged;
+    }
+
+    private Object key(Record record) {
+        Object value = (record == null) ? null : record.getValue(label);
+        switch (kind) {
+            case LONG:
+                return (value instanceof Long) ? value : (value instanceof Number) ? (Object) ((Number) value).longValue() : null;
+            case DOUBLE:
+                return (value instanceof Double) ? value : (value instanceof Number) ? (Object) ((Number) value).doubleValue() : null;
+            case STRING:
+                return (value instanceof String) ? value : null;
+            default:
+                return (value instanceof Number) ? value : null;
+        }
+    }
+
+    /**
+     * @return negative if a goes before b, positive if after
+     */
+    private int compare(Object a, Object b) {
+        if (a == null) {
+            return (b == null) ? 0 : 1;
+        }
+        if (b == null) {
+            return -1;
+        }
+
+        int c;
+        switch (kind) {
+            case LONG: {
+                c = Long.compare((Long) a, (Long) b);
+            }
+            break;
+            case DOUBLE: {
+                c = Double.compare((Double) a, (Double) b);
+            }
+            break;
+            case STRING: {
+                c = ((String) a).compareTo((String) b);
+            }
+            break;
+            default: {
+                c = ((a instanceof Long) && (b instanceof Long))
+                        ? Long.compare((Long) a, (Long) b)
+                        : Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+        }
+        return descending ? -c : c;
+    }
+
+    /**
+     * First k records of a single worker, not thread-safe. A binary heap with the last of them at the root, so a
+     * record that doesn't get into the first k is rejected by a single comparison.
+     */
+    final class TopK {
+        private Object[] keys = new Object[Math.min(k, INITIAL_SIZE)];
+        private KeyRecord[] records = new KeyRecord[keys.length];
+        private int size;
+
+        private TopK() {
+        }
+
+        void accept(KeyRecord record) {
+            if (k == 0) {
+                return;
+            }
+
+            offer(key(record.record), record);
+        }
+
+        private void offer(Object key, KeyRecord record) {
+            if (size < k) {
+                if (size == keys.length) {
+                    int capacity = (int) Math.min((long) k, keys.length * 2L);
+                    keys = Arrays.copyOf(keys, capacity);
+                    records = Arrays.copyOf(records, capacity);
+                }
+
+                int i = size++;
+                // sift up
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (compare(key, keys[parent]) <= 0) {
+                        break;
+                    }
+                    keys[i] = keys[parent];
+                    records[i] = records[parent];
+                    i = parent;
+                }
+                keys[i] = key;
+                records[i] = record;
+            } else if (compare(key, keys[0]) < 0) {
+                siftDown(key, record, size);
+            }
+        }
+
+        private void siftDown(Object key, KeyRecord record, int size) {
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if ((right < size) && (compare(keys[right], keys[child]) > 0)) {
+                    child = right;
+                }
+                if (compare(key, keys[child]) >= 0) {
+                    break;
+                }
+                keys[i] = keys[child];
+                records[i] = records[child];
+                i = child;
+            }
+            keys[i] = key;
+            records[i] = record;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Passes records to the consumer in order. Sorts the heap in place, so it can be done only once.
+         */
+        void emit(Consumer<KeyRecord> consumer) {
+            for (int n = size - 1; n > 0; n--) {
+                Object key = keys[n];
+                KeyRecord record = records[n];
+                keys[n] = keys[0];
+                records[n] = records[0];
+                siftDown(key, record, n);
+            }
+
+            for (int i = 0; i < size; i++) {
+                KeyRecord record = records[i];
+                if (strip && (record.record != null) && (record.record.bins != null)) {
+                    // bin was fetched only to be compared
+                    Map<String, Object> bins = new HashMap<>(record.record.bins);
+                    bins.remove(label);
+                    record = new KeyRecord(record.key, new Record(bins, record.record.generation, record.record.expiration));
+                }
+                consumer.accept(record);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Parser implementation used by {@link AQLSelectEx} instance. Both accept the same grammar and build the same
+ * syntax tree, so queries compile to the same Statements with either.
+ */
+public enum ParserEngine {
+    /**
+     * Parser generated by ANTLR from AQLSelectEx.g4. Its DFA caches could be primed by {@link AQLSelectEx#warmUp()}.
+     */
+    ANTLR,
+    /**
+     * Hand-written recursive descent parser, which creates neither tokens nor parse tree, and doesn't load ANTLR
+     * runtime.
+     */
+    RECURSIVE_DESCENT
+}
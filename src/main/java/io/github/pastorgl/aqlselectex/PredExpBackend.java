@@ -0,0 +1,60 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+
+/**
+ * PredExp has no floating point and compares strings only for (in)equality, so DOUBLE bins are compared as
+ * truncated integers, and ordering comparisons of strings can't be evaluated at all.
+ */
+final class PredExpBackend implements CodegenBackend {
+    private final boolean encode;
+
+    PredExpBackend(boolean encode) {
+        this.encode = encode;
+    }
+
+    @Override
+    public ServerPredicate compile(WhereNode where, SetSchema setSchema) {
+        return PredExpCompiler.compile(where, (setSchema == null) ? SetSchema.EMPTY : setSchema, encode);
+    }
+
+    @Override
+    public boolean evaluates(WhereNode.Compare compare, SetSchema setSchema) {
+        if (compare.getMeta() != null) {
+            return true;
+        }
+
+        return evaluates((setSchema == null) ? ParticleType.STRING : setSchema.binType(compare.getBin()), compare.getOp(), compare.getValue());
+    }
+
+    @Override
+    public boolean evaluates(WhereNode.Iterate iterate, SetSchema setSchema) {
+        SetSchema.Bin bin = (setSchema == null) ? null : setSchema.bin(iterate.getBin());
+
+        return evaluates((bin == null) ? ParticleType.STRING : bin.varType(iterate.getVar()), iterate.getOp(), iterate.getValue());
+    }
+
+    /**
+     * @param type type of the bin or of the list or map element compared
+     */
+    private static boolean evaluates(int type, WhereNode.CompareOp op, ValueNode value) {
+        if (type == ParticleType.DOUBLE) {
+            return false;
+        }
+
+        switch (op) {
+            case EQ:
+            case NE:
+            case REGEX:
+                return true;
+            default: {
+                return value.isParam() ? (type == ParticleType.INTEGER) : !value.isString();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return encode ? "PredExp (pre-encoded)" : "PredExp";
+    }
+}
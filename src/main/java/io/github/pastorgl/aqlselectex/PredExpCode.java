@@ -0,0 +1,105 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PredExp RPN array with null placeholders at parameter slots, which are filled in a copy on each binding.
+ * If pre-encoded, each run of constant nodes between the slots is replaced with a single {@link EncodedPredExp}.
+ */
+final class PredExpCode implements CodegenBackend.ServerPredicate {
+    private final PredExp[] predExp;
+    private final ValueSlot[] slots;
+    private final int nodes;
+    private final int constantSize;
+
+    PredExpCode(PredExp[] predExp, List<ValueSlot> slots, boolean encode) {
+        int constantSize = 0;
+        for (PredExp exp : predExp) {
+            if (exp != null) {
+                constantSize += exp.estimateSize();
+            }
+        }
+
+        this.nodes = predExp.length;
+        this.constantSize = constantSize;
+
+        if (!encode) {
+            this.predExp = predExp;
+            this.slots = slots.toArray(new ValueSlot[0]);
+            return;
+        }
+
+        // positions of slots shift left as constant runs collapse into single nodes
+        int[] position = new int[predExp.length];
+        List<PredExp> encoded = new ArrayList<>();
+        for (int i = 0; i < predExp.length; ) {
+            if (predExp[i] == null) {
+                position[i++] = encoded.size();
+                encoded.add(null);
+            } else {
+                int from = i;
+                while ((i < predExp.length) && (predExp[i] != null)) {
+                    i++;
+                }
+                encoded.add(new EncodedPredExp(predExp, from, i));
+            }
+        }
+
+        this.predExp = encoded.toArray(new PredExp[0]);
+        this.slots = new ValueSlot[slots.size()];
+        for (int i = 0; i < this.slots.length; i++) {
+            ValueSlot slot = slots.get(i);
+            this.slots[i] = new ValueSlot(position[slot.index], slot.kind, slot.param);
+        }
+    }
+
+    @Override
+    public int size() {
+        return nodes;
+    }
+
+    @Override
+    public int encodedSize(Object[] values) {
+        if (slots.length == 0) {
+            return constantSize;
+        }
+
+        return PredExp.estimateSize(bind(values));
+    }
+
+    @Override
+    public void applyTo(Statement statement, Object[] values) {
+        statement.setPredExp(bind(values));
+    }
+
+    @Override
+    public Expression filterExp(Object[] values) {
+        return null;
+    }
+
+    /**
+     * @return RPN array with null at parameter slots, not to be modified
+     */
+    PredExp[] predExp() {
+        return predExp;
+    }
+
+    ValueSlot[] slots() {
+        return slots;
+    }
+
+    private PredExp[] bind(Object[] values) {
+        PredExp[] bound = predExp.clone();
+        if (values != null) {
+            for (ValueSlot slot : slots) {
+                slot.bind(bound, values[slot.param]);
+            }
+        }
+        return bound;
+    }
+}
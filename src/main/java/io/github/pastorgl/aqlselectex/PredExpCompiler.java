@@ -0,0 +1,440 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.RegexFlag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles WHERE into PredExp RPN array in a single post-order pass over the tree. Code generator of
+ * {@link CodegenBackend#PREDEXP}. Nodes are created by a {@link PredExpEmitter}, so the same pass may emit other
+ * representations of them.
+ */
+final class PredExpCompiler<T> implements WhereNode.Visitor<Void> {
+    // number of AND / OR operands is encoded as unsigned 16-bit integer
+    static final int MAX_OPERANDS = 0xFFFF;
+
+    private static final WhereNode.Visitor<Integer> MAX_SIZE = new WhereNode.Visitor<Integer>() {
+        @Override
+        public Integer visitLogic(WhereNode.Logic logic) {
+            int operands = logic.getOperands().size();
+            int size = (operands > MAX_OPERANDS) ? 2 + operands / MAX_OPERANDS : 1;
+            for (WhereNode operand : logic.getOperands()) {
+                size += operand.accept(this);
+            }
+            return size;
+        }
+
+        @Override
+        public Integer visitCompare(WhereNode.Compare compare) {
+            return 3;
+        }
+
+        @Override
+        public Integer visitIterate(WhereNode.Iterate iterate) {
+            return 5;
+        }
+
+        @Override
+        public Integer visitGeo(WhereNode.Geo geo) {
+            return 3;
+        }
+    };
+
+    private static final PredExpEmitter<PredExp> NODES = new PredExpNodes();
+
+    private final SetSchema bins;
+    private final PredExpEmitter<T> emitter;
+
+    private final List<ValueSlot> slots = new ArrayList<>();
+    private final T[] nodes;
+    private int size;
+
+    private PredExpCompiler(SetSchema bins, PredExpEmitter<T> emitter, T[] nodes) {
+        this.bins = bins;
+        this.emitter = emitter;
+        this.nodes = nodes;
+    }
+
+    static PredExpCode compile(WhereNode where, SetSchema setSchema, boolean encode) {
+        if (where == null) {
+            return null;
+        }
+
+        PredExpCompiler<PredExp> compiler = new PredExpCompiler<>(setSchema, NODES, new PredExp[where.accept(MAX_SIZE)]);
+        where.accept(compiler);
+
+        PredExp[] predExp = compiler.nodes;
+        return new PredExpCode((compiler.size == predExp.length) ? predExp : Arrays.copyOf(predExp, compiler.size), compiler.slots, encode);
+    }
+
+    /**
+     * @return nodes in RPN order, with null at parameter slots, the same as of {@link #compile}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> emit(WhereNode where, SetSchema setSchema, PredExpEmitter<T> emitter) {
+        PredExpCompiler<T> compiler = new PredExpCompiler<>(setSchema, emitter, (T[]) new Object[where.accept(MAX_SIZE)]);
+        where.accept(compiler);
+
+        return Arrays.asList(Arrays.copyOf(compiler.nodes, compiler.size));
+    }
+
+    @Override
+    public Void visitLogic(WhereNode.Logic logic) {
+        List<WhereNode> operands = logic.getOperands();
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            operands.get(0).accept(this);
+            add(emitter.not());
+
+            return null;
+        }
+
+        int count = operands.size();
+        if (count <= MAX_OPERANDS) {
+            for (WhereNode operand : operands) {
+                operand.accept(this);
+            }
+            addLogic(logic.getOp(), count);
+
+            return null;
+        }
+
+        // too many for a single node, so split evenly into a two-level tree
+        int groups = (count + MAX_OPERANDS - 1) / MAX_OPERANDS;
+        for (int g = 0, from = 0; g < groups; g++) {
+            int to = (int) ((long) count * (g + 1) / groups);
+            for (int i = from; i < to; i++) {
+                operands.get(i).accept(this);
+            }
+            addLogic(logic.getOp(), to - from);
+            from = to;
+        }
+        addLogic(logic.getOp(), groups);
+
+        return null;
+    }
+
+    private void addLogic(WhereNode.LogicOp op, int operands) {
+        add((op == WhereNode.LogicOp.AND) ? emitter.and(operands) : emitter.or(operands));
+    }
+
+    @Override
+    public Void visitCompare(WhereNode.Compare compare) {
+        ValueNode value = compare.getValue();
+
+        WhereNode.Meta meta = compare.getMeta();
+        if (meta != null) {
+            switch (meta) {
+                case DIGEST: {
+                    ValueNode digestModulo = compare.getDigestModulo();
+                    if (digestModulo.isParam()) {
+                        addSlot(ValueSlot.DIGEST_MODULO, digestModulo);
+                    } else {
+                        add(emitter.recDigestModulo((int) Double.parseDouble(digestModulo.getText())));
+                    }
+                }
+                break;
+                case LUT: {
+                    add(emitter.recLastUpdate());
+                }
+                break;
+                case RECSIZE: {
+                    add(emitter.recDeviceSize());
+                }
+                break;
+                case TTL: {
+                    add(emitter.recVoidTime());
+                }
+                break;
+            }
+
+            if (value.isParam()) {
+                addSlot(ValueSlot.INTEGER, value);
+            } else {
+                add(emitter.integerValue(value.longValue()));
+            }
+            addNumericOp(compare.getOp());
+
+            return null;
+        }
+
+        String bin = compare.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        int binType = ParticleType.STRING;
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            binType = schemaBin.getType();
+        }
+
+        if (compare.getOp() == WhereNode.CompareOp.REGEX) {
+            if (value.isParam()) {
+                if (binType != ParticleType.STRING) {
+                    throw new RuntimeException("Regex match against non-STRING bin " + bin);
+                }
+
+                add(emitter.stringBin(bin));
+                addSlot(ValueSlot.REGEX, value);
+                add(null);
+            } else {
+                addBinValue(bin, binType, value, regexPattern(value.getText()));
+                add(emitter.stringRegex(regexFlags(value.getText())));
+            }
+
+            return null;
+        }
+
+        addBinValue(bin, binType, value, value.getText());
+        addOp(compare.getOp(), value, binType, bin, null);
+
+        return null;
+    }
+
+    @Override
+    public Void visitIterate(WhereNode.Iterate iterate) {
+        String var = iterate.getVar();
+        switch (iterate.getIterateOp()) {
+            case MAPKEYS_OR: {
+                add(emitter.mapKeyIterateOr(var));
+            }
+            break;
+            case MAPKEYS_AND: {
+                add(emitter.mapKeyIterateAnd(var));
+            }
+            break;
+            case MAPVALUES_OR: {
+                add(emitter.mapValIterateOr(var));
+            }
+            break;
+            case MAPVALUES_AND: {
+                add(emitter.mapValIterateAnd(var));
+            }
+            break;
+            case LIST_OR: {
+                add(emitter.listIterateOr(var));
+            }
+            break;
+            case LIST_AND: {
+                add(emitter.listIterateAnd(var));
+            }
+            break;
+        }
+
+        String bin = iterate.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        int binType = ParticleType.STRING;
+        int varType = ParticleType.STRING;
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            binType = schemaBin.getType();
+            varType = schemaBin.varType(var);
+        }
+
+        switch (binType) {
+            case ParticleType.MAP: {
+                add(emitter.mapBin(bin));
+            }
+            break;
+            case ParticleType.LIST: {
+                add(emitter.listBin(bin));
+            }
+            break;
+        }
+
+        ValueNode value = iterate.getValue();
+        String raw = value.getText();
+        switch (varType) {
+            case ParticleType.STRING: {
+                add(emitter.stringVar(var));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.STRING, value);
+                } else {
+                    add(emitter.stringValue(raw));
+                }
+            }
+            break;
+            case ParticleType.INTEGER: {
+                add(emitter.integerVar(var));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.INTEGER, value);
+                } else {
+                    add(emitter.integerValue(Long.parseLong(raw)));
+                }
+            }
+            break;
+            case ParticleType.DOUBLE: {
+                add(emitter.integerVar(var));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.DOUBLE, value);
+                } else {
+                    add(emitter.integerValue((long) Double.parseDouble(raw)));
+                }
+            }
+            break;
+            case ParticleType.GEOJSON: {
+                add(emitter.geoJSONVar(var));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.GEOJSON, value);
+                } else {
+                    add(emitter.geoJSONValue(raw));
+                }
+            }
+            break;
+        }
+
+        addOp(iterate.getOp(), value, varType, bin, var);
+
+        return null;
+    }
+
+    @Override
+    public Void visitGeo(WhereNode.Geo geo) {
+        String bin = geo.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        int binType = ParticleType.STRING;
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            binType = schemaBin.getType();
+        }
+
+        addBinValue(bin, binType, geo.getValue(), geo.getValue().getText());
+
+        if (geo.getOp() == WhereNode.GeoOp.CONTAINS) {
+            add(emitter.geoJSONContains());
+        } else {
+            add(emitter.geoJSONWithin());
+        }
+
+        return null;
+    }
+
+    private void addBinValue(String bin, int binType, ValueNode value, String raw) {
+        switch (binType) {
+            case ParticleType.INTEGER: {
+                add(emitter.integerBin(bin));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.INTEGER, value);
+                } else {
+                    add(emitter.integerValue(Long.parseLong(raw)));
+                }
+            }
+            break;
+            case ParticleType.DOUBLE: {
+                add(emitter.integerBin(bin));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.DOUBLE, value);
+                } else {
+                    add(emitter.integerValue((long) Double.parseDouble(raw)));
+                }
+            }
+            break;
+            case ParticleType.STRING: {
+                add(emitter.stringBin(bin));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.STRING, value);
+                } else {
+                    add(emitter.stringValue(raw));
+                }
+            }
+            break;
+            case ParticleType.GEOJSON: {
+                add(emitter.geoJSONBin(bin));
+                if (value.isParam()) {
+                    addSlot(ValueSlot.GEOJSON, value);
+                } else {
+                    add(emitter.geoJSONValue(raw));
+                }
+            }
+            break;
+        }
+    }
+
+    private void addOp(WhereNode.CompareOp op, ValueNode value, int type, String bin, String var) {
+        // literals choose the kind of comparison, and parameters take it from the schema
+        boolean numeric = value.isParam() ? ((type == ParticleType.INTEGER) || (type == ParticleType.DOUBLE)) : !value.isString();
+
+        if (numeric) {
+            addNumericOp(op);
+            return;
+        }
+
+        switch (op) {
+            case EQ: {
+                add(emitter.stringEqual());
+            }
+            break;
+            case NE: {
+                add(emitter.stringUnequal());
+            }
+            break;
+            default: {
+                throw new RuntimeException("Comparison of non-numeric " + ((var == null) ? bin : bin + "." + var));
+            }
+        }
+    }
+
+    private void addNumericOp(WhereNode.CompareOp op) {
+        switch (op) {
+            case EQ: {
+                add(emitter.integerEqual());
+            }
+            break;
+            case NE: {
+                add(emitter.integerUnequal());
+            }
+            break;
+            case GT: {
+                add(emitter.integerGreater());
+            }
+            break;
+            case GE: {
+                add(emitter.integerGreaterEq());
+            }
+            break;
+            case LT: {
+                add(emitter.integerLess());
+            }
+            break;
+            case LE: {
+                add(emitter.integerLessEq());
+            }
+            break;
+        }
+    }
+
+    private void add(T node) {
+        nodes[size++] = node;
+    }
+
+    private void addSlot(int kind, ValueNode value) {
+        slots.add(new ValueSlot(size, kind, value.getParam()));
+        add(null);
+    }
+
+    static String regexPattern(String pattern) {
+        if (pattern.startsWith("/")) {
+            return pattern.substring(1, pattern.lastIndexOf('/'));
+        }
+        return pattern;
+    }
+
+    static int regexFlags(String pattern) {
+        int regexFlags = RegexFlag.NEWLINE;
+        if (pattern.startsWith("/")) {
+            int lastSlash = pattern.lastIndexOf('/');
+
+            String patternFlags = pattern.substring(lastSlash).toLowerCase();
+            regexFlags |= patternFlags.contains("i") ? RegexFlag.ICASE : RegexFlag.NONE;
+            regexFlags |= patternFlags.contains("e") ? RegexFlag.EXTENDED : RegexFlag.NONE;
+            if (patternFlags.contains("s")) {
+                regexFlags &= ~RegexFlag.NEWLINE;
+            } else {
+                regexFlags |= RegexFlag.NEWLINE;
+            }
+            regexFlags |= patternFlags.contains("?") ? RegexFlag.NOSUB : RegexFlag.NONE;
+        }
+        return regexFlags;
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Creates PredExp nodes for the compiler, one method per PredExp factory method of the same name and arguments.
+ * The library creates PredExp objects with it, and build-time code generators may create the source of the calls
+ * instead, see {@link CompiledSelect#emitPredExp(PredExpEmitter)}.
+ *
+ * @param <T> type of a node
+ */
+public interface PredExpEmitter<T> {
+    T and(int nexp);
+
+    T or(int nexp);
+
+    T not();
+
+    T integerValue(long value);
+
+    T stringValue(String value);
+
+    T geoJSONValue(String value);
+
+    T integerBin(String name);
+
+    T stringBin(String name);
+
+    T geoJSONBin(String name);
+
+    T listBin(String name);
+
+    T mapBin(String name);
+
+    T integerVar(String name);
+
+    T stringVar(String name);
+
+    T geoJSONVar(String name);
+
+    T recDeviceSize();
+
+    T recLastUpdate();
+
+    T recVoidTime();
+
+    T recDigestModulo(int mod);
+
+    T integerEqual();
+
+    T integerUnequal();
+
+    T integerGreater();
+
+    T integerGreaterEq();
+
+    T integerLess();
+
+    T integerLessEq();
+
+    T stringEqual();
+
+    T stringUnequal();
+
+    T stringRegex(int cflags);
+
+    T geoJSONWithin();
+
+    T geoJSONContains();
+
+    T listIterateOr(String varName);
+
+    T mapKeyIterateOr(String varName);
+
+    T mapValIterateOr(String varName);
+
+    T listIterateAnd(String varName);
+
+    T mapKeyIterateAnd(String varName);
+
+    T mapValIterateAnd(String varName);
+}
@@ -0,0 +1,183 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.PredExp;
+
+/**
+ * Emits PredExp objects themselves.
+ */
+final class PredExpNodes implements PredExpEmitter<PredExp> {
+    @Override
+    public PredExp and(int nexp) {
+        return PredExp.and(nexp);
+    }
+
+    @Override
+    public PredExp or(int nexp) {
+        return PredExp.or(nexp);
+    }
+
+    @Override
+    public PredExp not() {
+        return PredExp.not();
+    }
+
+    @Override
+    public PredExp integerValue(long value) {
+        return PredExp.integerValue(value);
+    }
+
+    @Override
+    public PredExp stringValue(String value) {
+        return PredExp.stringValue(value);
+    }
+
+    @Override
+    public PredExp geoJSONValue(String value) {
+        return PredExp.geoJSONValue(value);
+    }
+
+    @Override
+    public PredExp integerBin(String name) {
+        return PredExp.integerBin(name);
+    }
+
+    @Override
+    public PredExp stringBin(String name) {
+        return PredExp.stringBin(name);
+    }
+
+    @Override
+    public PredExp geoJSONBin(String name) {
+        return PredExp.geoJSONBin(name);
+    }
+
+    @Override
+    public PredExp listBin(String name) {
+        return PredExp.listBin(name);
+    }
+
+    @Override
+    public PredExp mapBin(String name) {
+        return PredExp.mapBin(name);
+    }
+
+    @Override
+    public PredExp integerVar(String name) {
+        return PredExp.integerVar(name);
+    }
+
+    @Override
+    public PredExp stringVar(String name) {
+        return PredExp.stringVar(name);
+    }
+
+    @Override
+    public PredExp geoJSONVar(String name) {
+        return PredExp.geoJSONVar(name);
+    }
+
+    @Override
+    public PredExp recDeviceSize() {
+        return PredExp.recDeviceSize();
+    }
+
+    @Override
+    public PredExp recLastUpdate() {
+        return PredExp.recLastUpdate();
+    }
+
+    @Override
+    public PredExp recVoidTime() {
+        return PredExp.recVoidTime();
+    }
+
+    @Override
+    public PredExp recDigestModulo(int mod) {
+        return PredExp.recDigestModulo(mod);
+    }
+
+    @Override
+    public PredExp integerEqual() {
+        return PredExp.integerEqual();
+    }
+
+    @Override
+    public PredExp integerUnequal() {
+        return PredExp.integerUnequal();
+    }
+
+    @Override
+    public PredExp integerGreater() {
+        return PredExp.integerGreater();
+    }
+
+    @Override
+    public PredExp integerGreaterEq() {
+        return PredExp.integerGreaterEq();
+    }
+
+    @Override
+    public PredExp integerLess() {
+        return PredExp.integerLess();
+    }
+
+    @Override
+    public PredExp integerLessEq() {
+        return PredExp.integerLessEq();
+    }
+
+    @Override
+    public PredExp stringEqual() {
+        return PredExp.stringEqual();
+    }
+
+    @Override
+    public PredExp stringUnequal() {
+        return PredExp.stringUnequal();
+    }
+
+    @Override
+    public PredExp stringRegex(int cflags) {
+        return PredExp.stringRegex(cflags);
+    }
+
+    @Override
+    public PredExp geoJSONWithin() {
+        return PredExp.geoJSONWithin();
+    }
+
+    @Override
+    public PredExp geoJSONContains() {
+        return PredExp.geoJSONContains();
+    }
+
+    @Override
+    public PredExp listIterateOr(String varName) {
+        return PredExp.listIterateOr(varName);
+    }
+
+    @Override
+    public PredExp mapKeyIterateOr(String varName) {
+        return PredExp.mapKeyIterateOr(varName);
+    }
+
+    @Override
+    public PredExp mapValIterateOr(String varName) {
+        return PredExp.mapValIterateOr(varName);
+    }
+
+    @Override
+    public PredExp listIterateAnd(String varName) {
+        return PredExp.listIterateAnd(varName);
+    }
+
+    @Override
+    public PredExp mapKeyIterateAnd(String varName) {
+        return PredExp.mapKeyIterateAnd(varName);
+    }
+
+    @Override
+    public PredExp mapValIterateAnd(String varName) {
+        return PredExp.mapValIterateAnd(varName);
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.PredExp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of the PredExp a query compiles to, for build-time code generators: RPN array with null at the
+ * slots of parameters, and what each slot is filled with on binding.
+ */
+public final class PredExpTemplate {
+    public enum SlotKind {
+        /**
+         * integerValue() of the parameter
+         */
+        INTEGER,
+        /**
+         * integerValue() of the parameter, truncated, as it is compared with a DOUBLE bin
+         */
+        DOUBLE,
+        STRING,
+        GEOJSON,
+        /**
+         * stringValue() of the pattern and stringRegex() of its flags, in this slot and the next one
+         */
+        REGEX,
+        DIGEST_MODULO
+    }
+
+    public static final class Slot {
+        private final int index;
+        private final SlotKind kind;
+        private final int param;
+
+        private Slot(int index, SlotKind kind, int param) {
+            this.index = index;
+            this.kind = kind;
+            this.param = param;
+        }
+
+        /**
+         * @return position of the slot in the RPN array
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public SlotKind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return index of the parameter in {@link CompiledSelect#getParamNames()}
+         */
+        public int getParam() {
+            return param;
+        }
+    }
+
+    private final PredExp[] predExp;
+    private final List<Slot> slots;
+
+    PredExpTemplate(PredExpCode code) {
+        this.predExp = code.predExp();
+
+        List<Slot> slots = new ArrayList<>();
+        for (ValueSlot slot : code.slots()) {
+            slots.add(new Slot(slot.index, SlotKind.values()[slot.kind], slot.param));
+        }
+        this.slots = Collections.unmodifiableList(slots);
+    }
+
+    /**
+     * @return copy of the RPN array, with null at the slots
+     */
+    public PredExp[] getPredExp() {
+        return predExp.clone();
+    }
+
+    public List<Slot> getSlots() {
+        return slots;
+    }
+}
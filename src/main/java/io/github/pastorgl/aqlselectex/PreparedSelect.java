@@ -0,0 +1,90 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Statement;
+
+import java.util.List;
+import java.util.Map;
+
+public final class PreparedSelect {
+    private final CompiledSelect compiled;
+
+    PreparedSelect(CompiledSelect compiled) {
+        this.compiled = compiled;
+    }
+
+    public int getParamCount() {
+        return compiled.getParamNames().size();
+    }
+
+    public List<String> getParamNames() {
+        return compiled.getParamNames();
+    }
+
+    /**
+     * Binds values in order of parameter appearance. A named parameter occupies a single position
+     * no matter how many times it is referenced.
+     */
+    public Statement bind(Object... values) {
+        compiled.checkStatement();
+        return compiled.bind(values);
+    }
+
+    public Statement bind(Map<String, ?> values) {
+        compiled.checkStatement();
+        return compiled.bind(order(values));
+    }
+
+    /**
+     * Size of the predicate field of the bound Statement, in bytes, without field header.
+     *
+     * @see CompiledSelect#getEncodedSize()
+     */
+    public int encodedSize(Object... values) {
+        return compiled.encodedSize(values);
+    }
+
+    /**
+     * Filter expression for the Statement bound to the same values.
+     *
+     * @see CompiledSelect#getFilterExp()
+     */
+    public Expression filterExp(Object... values) {
+        return compiled.filterExp(values);
+    }
+
+    public Expression filterExp(Map<String, ?> values) {
+        return compiled.filterExp(order(values));
+    }
+
+    /**
+     * Binds values and splits the query into indexed sub-statements, if possible.
+     *
+     * @see AQLSelectEx#plan(String)
+     */
+    public QueryPlan plan(Object... values) {
+        return compiled.bindPlan(values);
+    }
+
+    public QueryPlan plan(Map<String, ?> values) {
+        return compiled.bindPlan(order(values));
+    }
+
+    private Object[] order(Map<String, ?> values) {
+        List<String> names = compiled.getParamNames();
+
+        Object[] ordered = new Object[names.size()];
+        for (int i = 0; i < ordered.length; i++) {
+            String name = names.get(i);
+            if (name == null) {
+                throw new IllegalArgumentException("Positional parameter #" + (i + 1) + " can't be bound by name");
+            }
+            ordered[i] = values.get(name);
+            if (ordered[i] == null) {
+                throw new IllegalArgumentException("Parameter :" + name + " is not bound");
+            }
+        }
+
+        return ordered;
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class QueryCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QueryCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must be non-negative, got " + maxSize);
+        }
+
+        // never more segments than entries, so each one holds at least one, and sizes add up to exactly maxSize
+        int segmentCount = Math.max(1, Math.min(SEGMENTS, Integer.highestOneBit(Math.max(1, maxSize))));
+        int segmentSize = maxSize / segmentCount;
+        int remainder = maxSize % segmentCount;
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((i < remainder) ? segmentSize + 1 : segmentSize);
+        }
+    }
+
+    public CompiledSelect get(String select) {
+        CompiledSelect compiled = segmentFor(select).get(select);
+        if (compiled == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return compiled;
+    }
+
+    public void put(String select, CompiledSelect compiled) {
+        segmentFor(select).put(select, compiled);
+    }
+
+    public void invalidate(String fqns) {
+        for (Segment segment : segments) {
+            segment.invalidate(fqns);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    private Segment segmentFor(String select) {
+        int h = select.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private class Segment {
+        private final int maxSize;
+        private final LinkedHashMap<String, CompiledSelect> entries;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+            this.entries = new LinkedHashMap<String, CompiledSelect>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompiledSelect> eldest) {
+                    if (size() > Segment.this.maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized CompiledSelect get(String select) {
+            return entries.get(select);
+        }
+
+        private synchronized void put(String select, CompiledSelect compiled) {
+            if (maxSize > 0) {
+                entries.put(select, compiled);
+            }
+        }
+
+        private synchronized void invalidate(String fqns) {
+            entries.values().removeIf(compiled -> fqns.equals(compiled.getFqns()));
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        private Stats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double hitRatio() {
+            long requests = hits + misses;
+            return (requests == 0) ? 0.D : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryCache.Stats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + "}";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable result of {@link AQLSelectEx#compileAll(Collection)}: compiled queries in order of the source collection,
+ * and errors of the ones that failed to compile.
+ */
+public final class QueryCatalog {
+    // queries per fork-join task, small enough to balance uneven query sizes
+    private static final int BATCH = 16;
+    // below that, forking costs more than it saves, so the calling thread compiles the whole batch
+    private static final int SEQUENTIAL = 4 * BATCH;
+
+    private final String[] selects;
+    private final CompiledSelect[] compiled;
+    private final Exception[] errors;
+    private final Map<String, Integer> indexes;
+    private final Map<Integer, Exception> errorsByIndex;
+
+    private QueryCatalog(String[] selects, CompiledSelect[] compiled, Exception[] errors) {
+        this.selects = selects;
+        this.compiled = compiled;
+        this.errors = errors;
+
+        HashMap<String, Integer> indexes = new HashMap<>();
+        TreeMap<Integer, Exception> errorsByIndex = new TreeMap<>();
+        for (int i = 0; i < selects.length; i++) {
+            indexes.putIfAbsent(selects[i], i);
+            if (errors[i] != null) {
+                errorsByIndex.put(i, errors[i]);
+            }
+        }
+        this.indexes = indexes;
+        this.errorsByIndex = Collections.unmodifiableMap(errorsByIndex);
+    }
+
+    static QueryCatalog compile(AQLSelectEx selectEx, Collection<String> selects, ForkJoinPool pool, boolean cached) {
+        String[] texts = selects.toArray(new String[0]);
+        CompiledSelect[] compiled = new CompiledSelect[texts.length];
+        Exception[] errors = new Exception[texts.length];
+
+        Batch batch = new Batch(selectEx, cached, texts, compiled, errors, 0, texts.length);
+        if ((texts.length <= SEQUENTIAL) || (pool.getParallelism() < 2)) {
+            batch.compileAll();
+        } else {
+            pool.invoke(batch);
+        }
+
+        return new QueryCatalog(texts, compiled, errors);
+    }
+
+    public int size() {
+        return selects.length;
+    }
+
+    public String getSelect(int index) {
+        return selects[index];
+    }
+
+    /**
+     * @return compiled query, or null if it failed to compile
+     */
+    public CompiledSelect get(int index) {
+        return compiled[index];
+    }
+
+    /**
+     * @return compiled query by its text, or null if there is no such query in the catalog or it failed to compile
+     */
+    public CompiledSelect get(String select) {
+        Integer index = indexes.get(select);
+        return (index == null) ? null : compiled[index];
+    }
+
+    /**
+     * @return position of the query text in the source collection, or -1. For duplicates, the first one
+     */
+    public int indexOf(String select) {
+        Integer index = indexes.get(select);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * @return compile error, or null if the query has been compiled
+     */
+    public Exception getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * @return compile errors by position of the query in the source collection, in that order
+     */
+    public Map<Integer, Exception> getErrors() {
+        return errorsByIndex;
+    }
+
+    public boolean hasErrors() {
+        return !errorsByIndex.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCatalog{size=" + selects.length + ", errors=" + errorsByIndex.size() + "}";
+    }
+
+    private static final class Batch extends RecursiveAction {
+        private final AQLSelectEx selectEx;
+        private final boolean cached;
+        private final String[] selects;
+        private final CompiledSelect[] compiled;
+        private final Exception[] errors;
+        private final int from;
+        private final int to;
+
+        private Batch(AQLSelectEx selectEx, boolean cached, String[] selects, CompiledSelect[] compiled, Exception[] errors, int from, int to) {
+            this.selectEx = selectEx;
+            this.cached = cached;
+            this.selects = selects;
+            this.compiled = compiled;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(selectEx, cached, selects, compiled, errors, from, middle),
+                        new Batch(selectEx, cached, selects, compiled, errors, middle, to));
+                return;
+            }
+
+            compileAll();
+        }
+
+        private void compileAll() {
+            for (int i = from; i < to; i++) {
+                try {
+                    compiled[i] = selectEx.compile(selects[i], cached);
+                } catch (Exception e) {
+                    errors[i] = e;
+                }
+            }
+        }
+    }
+}
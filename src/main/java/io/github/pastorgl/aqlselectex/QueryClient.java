@@ -0,0 +1,94 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.exp.Exp;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.PartitionFilter;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.Statement;
+
+import java.util.function.Consumer;
+
+/**
+ * The part of Aerospike client {@link QueryExecutor} runs queries against.
+ */
+@FunctionalInterface
+public interface QueryClient {
+    /**
+     * Runs the statement against partitions from begin to begin + count - 1, and passes each record returned to
+     * the consumer, in the calling thread. Returns when all records are consumed. Statement with an empty array of
+     * bin names needs only keys and metadata of records, so clients may skip their bins.
+     */
+    void query(Statement statement, int begin, int count, Consumer<KeyRecord> consumer) throws AerospikeException;
+
+    /**
+     * Same as above, but hints the server to stop after maxRecords records. Clients which can't do that may ignore
+     * the hint, because the executor enforces the limit anyway.
+     */
+    default void query(Statement statement, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer) throws AerospikeException {
+        query(statement, begin, count, consumer);
+    }
+
+    /**
+     * Same as above, with the filter expression of the query, if not null, which has to be set on the policy.
+     * Clients which can't do that must not ignore it.
+     */
+    default void query(Statement statement, Expression filterExp, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer) throws AerospikeException {
+        if (filterExp != null) {
+            throw new UnsupportedOperationException("Filter expressions aren't supported by " + getClass().getName());
+        }
+
+        query(statement, begin, count, maxRecords, consumer);
+    }
+
+    static QueryClient of(IAerospikeClient client) {
+        return of(client, new QueryPolicy());
+    }
+
+    static QueryClient of(IAerospikeClient client, QueryPolicy policy) {
+        return new QueryClient() {
+            @Override
+            public void query(Statement statement, int begin, int count, Consumer<KeyRecord> consumer) throws AerospikeException {
+                query(statement, begin, count, policy.maxRecords, consumer);
+            }
+
+            @Override
+            public void query(Statement statement, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer) throws AerospikeException {
+                query(statement, null, begin, count, maxRecords, consumer);
+            }
+
+            @Override
+            public void query(Statement statement, Expression filterExp, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer) throws AerospikeException {
+                QueryPolicy limited = policy;
+                if ((maxRecords > 0L) && ((policy.maxRecords <= 0L) || (maxRecords < policy.maxRecords))) {
+                    limited = new QueryPolicy(policy);
+                    limited.maxRecords = maxRecords;
+                }
+                // empty array of bin names is sent as no bin operations, and server returns all bins then
+                String[] binNames = statement.getBinNames();
+                if ((binNames != null) && (binNames.length == 0) && policy.includeBinData) {
+                    if (limited == policy) {
+                        limited = new QueryPolicy(policy);
+                    }
+                    limited.includeBinData = false;
+                }
+                if (filterExp != null) {
+                    if (limited == policy) {
+                        limited = new QueryPolicy(policy);
+                    }
+                    // filter of the policy itself still applies
+                    limited.filterExp = (policy.filterExp == null) ? filterExp : Exp.build(Exp.and(Exp.expr(policy.filterExp), Exp.expr(filterExp)));
+                }
+
+                try (RecordSet recordSet = client.queryPartitions(limited, statement, PartitionFilter.range(begin, count))) {
+                    while (recordSet.next()) {
+                        consumer.accept(new KeyRecord(recordSet.getKey(), recordSet.getRecord()));
+                    }
+                }
+            }
+        };
+    }
+}
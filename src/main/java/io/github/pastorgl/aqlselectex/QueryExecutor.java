@@ -0,0 +1,522 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.Statement;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs a query as a number of concurrent partition slices. Each slice is an independent query against a contiguous
+ * range of partitions, which is retried on failure. Records of all slices are passed to a single consumer, which
+ * is called from worker threads concurrently, so it must be thread-safe.
+ */
+public final class QueryExecutor {
+    public static final int PARTITIONS = Node.PARTITIONS;
+    public static final int DEFAULT_PREFETCH = 1024;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final QueryClient client;
+    private final int slices;
+    private final int retries;
+    private final boolean retryDedup;
+    private final ExecutorService executor;
+    private final int prefetch;
+    private final ResultCache resultCache;
+    private final MetricsSink metrics;
+
+    public QueryExecutor(QueryClient client) {
+        this(client, Runtime.getRuntime().availableProcessors(), 2, false, null, DEFAULT_PREFETCH, null, null);
+    }
+
+    private QueryExecutor(QueryClient client, int slices, int retries, boolean retryDedup, ExecutorService executor, int prefetch, ResultCache resultCache, MetricsSink metrics) {
+        this.client = client;
+        this.slices = slices;
+        this.retries = retries;
+        this.retryDedup = retryDedup;
+        this.executor = executor;
+        this.prefetch = prefetch;
+        this.resultCache = resultCache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param slices number of partition ranges to query concurrently, from 1 to {@link #PARTITIONS}
+     */
+    public QueryExecutor withSlices(int slices) {
+        if ((slices < 1) || (slices > PARTITIONS)) {
+            throw new IllegalArgumentException("Number of slices must be from 1 to " + PARTITIONS + ", got " + slices);
+        }
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param retries how many times a failed slice is re-run before the whole query fails. A slice that has
+     *                already passed records to the consumer is re-run only with {@link #withRetryDedup(boolean)}
+     */
+    public QueryExecutor withRetries(int retries) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("Number of retries can't be negative");
+        }
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param retryDedup if set, a slice may be re-run after it has passed some records to the consumer, skipping
+     *                   those. That needs a set of digests of all records the slice has passed, so heap usage grows
+     *                   with the size of the result. Off by default
+     */
+    public QueryExecutor withRetryDedup(boolean retryDedup) {
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param executor executor to run slices on. By default, slices run on virtual threads where available
+     *                 (Java 21+), and on a shared daemon pool sized to the number of cores otherwise
+     */
+    public QueryExecutor withExecutor(ExecutorService executor) {
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param prefetch maximum number of records {@link #stream(Statement)} buffers ahead of the reader
+     */
+    public QueryExecutor withPrefetch(int prefetch) {
+        if (prefetch < 1) {
+            throw new IllegalArgumentException("Prefetch must be positive, got " + prefetch);
+        }
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param resultCache cache of complete statement results, which may be shared between executors, or null
+     */
+    public QueryExecutor withResultCache(ResultCache resultCache) {
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    /**
+     * @param metrics sink to report duration of each run and number of records received from the server or the
+     *                result cache to, or null
+     */
+    public QueryExecutor withMetrics(MetricsSink metrics) {
+        return new QueryExecutor(client, slices, retries, retryDedup, executor, prefetch, resultCache, metrics);
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public boolean isRetryDedup() {
+        return retryDedup;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Runs all statements of the plan, passing each distinct record to the consumer once.
+     */
+    public void execute(QueryPlan plan, Consumer<KeyRecord> consumer) throws AerospikeException {
+        start(plan, consumer).await();
+    }
+
+    public void execute(Statement statement, Consumer<KeyRecord> consumer) throws AerospikeException {
+        start(statement, consumer).await();
+    }
+
+    /**
+     * Starts the query and returns its records for pulling, buffering at most {@link #getPrefetch()} of them.
+     * Slices are paused while the buffer is full. The stream must be closed if not read till the end.
+     */
+    public RecordStream stream(QueryPlan plan) {
+        RecordStream stream = new RecordStream(prefetch);
+        stream.execution = start(plan, stream::offer);
+        stream.execution.done.whenComplete((v, e) -> stream.finish());
+        return stream;
+    }
+
+    public RecordStream stream(Statement statement) {
+        RecordStream stream = new RecordStream(prefetch);
+        stream.execution = start(statement, stream::offer);
+        stream.execution.done.whenComplete((v, e) -> stream.finish());
+        return stream;
+    }
+
+    /**
+     * Each subscriber to the returned publisher gets a separate run of the query.
+     */
+    public QueryPublisher publisher(QueryPlan plan) {
+        return new QueryPublisher(() -> stream(plan));
+    }
+
+    public QueryPublisher publisher(Statement statement) {
+        return new QueryPublisher(() -> stream(statement));
+    }
+
+    private Execution start(QueryPlan plan, Consumer<KeyRecord> consumer) {
+        if (plan.getLimit() == 0L) {
+            Execution nothing = new Execution();
+            nothing.done = CompletableFuture.completedFuture(null);
+            return nothing;
+        }
+        if (plan.hasLimit()) {
+            consumer = limit(consumer, plan.getLimit(), plan.getOffset());
+        }
+
+        // each worker thread keeps first records by ORDER BY in its own heap, and they are merged at the end
+        Ordering ordering = plan.ordering();
+        Consumer<KeyRecord> sorted = consumer;
+        Map<Thread, Ordering.TopK> heaps = (ordering == null) ? null : new ConcurrentHashMap<>();
+        if (ordering != null) {
+            consumer = record -> heaps.computeIfAbsent(Thread.currentThread(), t -> ordering.newTopK()).accept(record);
+        }
+
+        // same for aggregation, whose rows are then ordered by a single thread
+        Aggregation aggregation = plan.aggregation();
+        Consumer<KeyRecord> rows = consumer;
+        Map<Thread, Aggregation.Partial> partials = (aggregation == null) ? null : new ConcurrentHashMap<>();
+        if (aggregation != null) {
+            consumer = record -> partials.computeIfAbsent(Thread.currentThread(), t -> aggregation.newPartial()).accept(record.record);
+        }
+
+        if (plan.isUnion()) {
+            Predicate<Key> deduplicator = plan.deduplicator();
+            Consumer<KeyRecord> union = consumer;
+            consumer = record -> {
+                if (deduplicator.test(record.key)) {
+                    union.accept(record);
+                }
+            };
+        }
+
+        Predicate<Record> residual = plan.getResidual();
+        if (residual != null) {
+            Consumer<KeyRecord> matching = consumer;
+            consumer = record -> {
+                if (residual.test(record.record)) {
+                    matching.accept(record);
+                }
+            };
+        }
+
+        Execution execution = start(plan.getStatements(), plan.getFilterExps(), consumer, plan.maxRecords());
+        if ((aggregation != null) || (ordering != null)) {
+            execution.done = execution.done.thenRun(() -> {
+                try {
+                    if (aggregation != null) {
+                        aggregation.merge(partials.values()).emit(rows);
+                    }
+                    if (ordering != null) {
+                        ordering.merge(heaps.values()).emit(sorted);
+                    }
+                } catch (CancellationException ignored) {
+                    // LIMIT reached
+                }
+            }).whenComplete((v, e) -> {
+                if (e != null) {
+                    execution.fail((e instanceof CompletionException) ? e.getCause() : e);
+                }
+            });
+        }
+        return execution;
+    }
+
+    private Execution start(Statement statement, Consumer<KeyRecord> consumer) {
+        return start(Collections.singletonList(statement), Collections.singletonList(null), consumer, 0L);
+    }
+
+    /**
+     * Skips first offset records, and stops the query once limit records after them are passed to the consumer.
+     */
+    private static Consumer<KeyRecord> limit(Consumer<KeyRecord> consumer, long limit, long offset) {
+        AtomicLong counter = new AtomicLong();
+        long end = offset + limit;
+        return record -> {
+            long n = counter.getAndIncrement();
+            if (n >= end) {
+                throw new CancellationException();
+            }
+            if (n >= offset) {
+                consumer.accept(record);
+            }
+            if (n == end - 1) {
+                throw new CancellationException();
+            }
+        };
+    }
+
+    private Execution start(List<Statement> statements, List<Expression> filterExps, Consumer<KeyRecord> consumer, long maxRecords) {
+        ExecutorService executor = (this.executor == null) ? defaultExecutor() : this.executor;
+        Execution execution = new Execution();
+
+        MetricsSink metrics = this.metrics;
+        long started = 0L;
+        LongAdder records = null;
+        if (metrics != null) {
+            started = System.nanoTime();
+            records = new LongAdder();
+            LongAdder received = records;
+            Consumer<KeyRecord> counted = consumer;
+            consumer = record -> {
+                received.increment();
+                counted.accept(record);
+            };
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture[statements.size()];
+        for (int f = 0; f < futures.length; f++) {
+            futures[f] = (resultCache == null)
+                    ? slices(statements.get(f), filterExps.get(f), consumer, maxRecords, execution, executor)
+                    : cached(statements.get(f), filterExps.get(f), consumer, execution, executor).whenComplete((v, e) -> {
+                if (e != null) {
+                    execution.fail((e instanceof CompletionException) ? e.getCause() : e);
+                }
+            });
+        }
+        execution.done = CompletableFuture.allOf(futures);
+
+        if (metrics != null) {
+            long start = started;
+            LongAdder received = records;
+            execution.done.whenComplete((v, e) -> metrics.executed(System.nanoTime() - start, received.sum(), execution.failure()));
+        }
+
+        return execution;
+    }
+
+    private CompletableFuture<Void> slices(Statement statement, Expression filterExp, Consumer<KeyRecord> consumer, long maxRecords, Execution execution, ExecutorService executor) {
+        CompletableFuture<?>[] futures = new CompletableFuture[slices];
+        for (int i = 0; i < slices; i++) {
+            int begin = PARTITIONS * i / slices;
+            int count = PARTITIONS * (i + 1) / slices - begin;
+            futures[i] = CompletableFuture.runAsync(() -> runSlice(copy(statement), filterExp, begin, count, maxRecords, consumer, execution.cancelled), executor)
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            execution.fail((e instanceof CompletionException) ? e.getCause() : e);
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Serves the statement from the result cache, refreshing the entry if needed, or runs it and caches the result
+     * if it completes. A result limited by LIMIT isn't complete, so the server-side limit isn't used here.
+     */
+    private CompletableFuture<Void> cached(Statement statement, Expression filterExp, Consumer<KeyRecord> consumer, Execution execution, ExecutorService executor) {
+        ByteBuffer key = ResultCache.key(statement, filterExp);
+        long started = System.currentTimeMillis();
+        boolean refresh = resultCache.refreshes(statement);
+        ResultCache.Entry entry = resultCache.get(key, started, refresh);
+
+        if (entry == null) {
+            // a result that can't be cached isn't kept on heap either, once it grows over the bound
+            Queue<KeyRecord> records = new ConcurrentLinkedQueue<>();
+            AtomicLong bytes = new AtomicLong(ResultCache.Entry.OVERHEAD);
+            AtomicBoolean oversized = new AtomicBoolean();
+            return slices(statement, filterExp, record -> {
+                if (!oversized.get()) {
+                    if (resultCache.exceeds(bytes.addAndGet(ResultCache.sizeOf(record)))) {
+                        oversized.set(true);
+                        records.clear();
+                    } else {
+                        records.add(record);
+                    }
+                }
+                consumer.accept(record);
+            }, 0L, execution, executor).thenRun(() -> {
+                if (!execution.cancelled.get() && !oversized.get()) {
+                    resultCache.put(key, new ResultCache.Entry(records, started, resultCache.snapshotMillis(started)));
+                }
+            });
+        }
+
+        if (!refresh) {
+            return CompletableFuture.runAsync(() -> replay(entry, consumer, execution.cancelled), executor);
+        }
+
+        Queue<KeyRecord> updated = new ConcurrentLinkedQueue<>();
+        Queue<KeyRecord> unmatched = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Void> updates;
+        if (filterExp == null) {
+            Statement unmatchedStatement = ResultCache.updatedSince(statement, entry.snapshotMillis, true);
+            updates = CompletableFuture.allOf(
+                    slices(ResultCache.updatedSince(statement, entry.snapshotMillis, false), null, updated::add, 0L, execution, executor),
+                    (unmatchedStatement == null) ? CompletableFuture.completedFuture(null) : slices(unmatchedStatement, null, unmatched::add, 0L, execution, executor)
+            );
+        } else {
+            updates = CompletableFuture.allOf(
+                    slices(statement, ResultCache.updatedSince(filterExp, entry.snapshotMillis, false), updated::add, 0L, execution, executor),
+                    slices(statement, ResultCache.updatedSince(filterExp, entry.snapshotMillis, true), unmatched::add, 0L, execution, executor)
+            );
+        }
+        return updates.thenRunAsync(() -> {
+            ResultCache.Entry patched = entry.patch(updated, unmatched, resultCache.snapshotMillis(started));
+            resultCache.put(key, patched);
+            replay(patched, consumer, execution.cancelled);
+        }, executor);
+    }
+
+    private static void replay(ResultCache.Entry entry, Consumer<KeyRecord> consumer, AtomicBoolean cancelled) {
+        for (KeyRecord record : entry.records) {
+            if (cancelled.get()) {
+                throw new CancellationException();
+            }
+            consumer.accept(record);
+        }
+    }
+
+    private void runSlice(Statement statement, Expression filterExp, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            throw new CancellationException();
+        }
+
+        // records already passed to the consumer must not be passed again by a retry, so without dedup a slice
+        // is re-run only if it has passed none
+        Set<ByteBuffer> delivered = (retryDedup && (retries > 0)) ? new HashSet<>() : null;
+        AtomicBoolean passed = new AtomicBoolean();
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                client.query(statement, filterExp, begin, count, maxRecords, record -> {
+                    if (cancelled.get()) {
+                        throw new CancellationException();
+                    }
+                    if ((delivered == null) || delivered.add(ByteBuffer.wrap(record.key.digest))) {
+                        passed.lazySet(true);
+                        consumer.accept(record);
+                    }
+                });
+                return;
+            } catch (AerospikeException e) {
+                if ((attempt >= retries) || cancelled.get() || ((delivered == null) && passed.get())) {
+                    throw e;
+                }
+                statement.setTaskId(0L);
+            }
+        }
+    }
+
+    /**
+     * Statement gets its task id on execution, so concurrent queries must not share it.
+     */
+    private static Statement copy(Statement statement) {
+        Statement copy = new Statement();
+        copy.setNamespace(statement.getNamespace());
+        copy.setSetName(statement.getSetName());
+        copy.setIndexName(statement.getIndexName());
+        copy.setBinNames(statement.getBinNames());
+        copy.setFilter(statement.getFilter());
+        copy.setPredExp(statement.getPredExp());
+        copy.setRecordsPerSecond(statement.getRecordsPerSecond());
+        return copy;
+    }
+
+    /**
+     * Slices of a single query run. First failure cancels the rest of slices.
+     */
+    static final class Execution {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        CompletableFuture<Void> done;
+
+        void fail(Throwable cause) {
+            if (!(cause instanceof CancellationException)) {
+                failure.compareAndSet(null, cause);
+            }
+            cancelled.set(true);
+        }
+
+        void cancel() {
+            cancelled.set(true);
+        }
+
+        Throwable failure() {
+            return failure.get();
+        }
+
+        void await() {
+            try {
+                done.get();
+            } catch (ExecutionException | CancellationException ignored) {
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for query slices");
+            }
+
+            Throwable cause = failure();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause != null) {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    private static ExecutorService defaultExecutor() {
+        ExecutorService executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (QueryExecutor.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = virtualThreads();
+                    if (executor == null) {
+                        executor = fixedPool(Runtime.getRuntime().availableProcessors());
+                    }
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return executor starting a virtual thread per slice, or null if the runtime doesn't have virtual threads
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public static ExecutorService fixedPool(int threads) {
+        AtomicInteger number = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "AQLSelectEx-query-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Statement;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * One or more Statements whose results must be united to get the result of the original query. Sub-statements
+ * are independent and may be run in parallel, but a record matching several disjuncts is returned by each of them.
+ */
+public final class QueryPlan {
+    private final List<Statement> statements;
+    private final List<Expression> filterExps;
+    private final long limit;
+    private final long offset;
+    private final Predicate<Record> residual;
+    private final Aggregation aggregation;
+    private final Ordering ordering;
+
+    QueryPlan(List<Statement> statements, List<Expression> filterExps, long limit, long offset, Predicate<Record> residual, Aggregation aggregation, Ordering ordering) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.filterExps = Collections.unmodifiableList(filterExps);
+        this.limit = limit;
+        this.offset = offset;
+        this.residual = residual;
+        this.aggregation = aggregation;
+        this.ordering = ordering;
+    }
+
+    public List<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return filter expressions to set on the policy each statement is run with, by index of the statement. They
+     * are null for statements without WHERE, or with PredExp
+     */
+    public List<Expression> getFilterExps() {
+        return filterExps;
+    }
+
+    public boolean hasLimit() {
+        return limit != SelectNode.NO_LIMIT;
+    }
+
+    /**
+     * @return maximum number of records, or of aggregated rows, of the whole plan, or {@link SelectNode#NO_LIMIT}
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of records to skip. Without ORDER BY, it is meaningful only for a single streaming consumer
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return predicate records returned by the statements must additionally satisfy, or null
+     */
+    public Predicate<Record> getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return true if records are aggregated into rows by the executor, and LIMIT and OFFSET apply to rows
+     */
+    public boolean isAggregate() {
+        return aggregation != null;
+    }
+
+    Aggregation aggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return true if records, or rows, are passed to the consumer in ORDER BY order once all statements are done
+     */
+    public boolean isOrdered() {
+        return ordering != null;
+    }
+
+    Ordering ordering() {
+        return ordering;
+    }
+
+    /**
+     * @return how many records a single query of the plan needs to return at most, or 0 for no limit
+     */
+    long maxRecords() {
+        // records the residual rejects count against the server limit too, any group may need all of them, and any
+        // record may be among the first by ORDER BY
+        return (hasLimit() && (residual == null) && (aggregation == null) && (ordering == null)) ? limit + offset : 0L;
+    }
+
+    /**
+     * @return true if the plan has more than one statement, and thus its results need de-duplication
+     */
+    public boolean isUnion() {
+        return statements.size() > 1;
+    }
+
+    /**
+     * Creates a thread-safe filter for a single execution of this plan, which accepts only the first record with
+     * each digest. For a plan with a single statement it accepts everything.
+     */
+    public Predicate<Key> deduplicator() {
+        if (!isUnion()) {
+            return key -> true;
+        }
+
+        Set<ByteBuffer> seen = ConcurrentHashMap.newKeySet();
+        return key -> seen.add(ByteBuffer.wrap(key.digest));
+    }
+}
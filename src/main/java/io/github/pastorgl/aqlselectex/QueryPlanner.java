@@ -0,0 +1,49 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Statement may have only one Filter, so a WHERE with top-level OR is always a full scan. If every disjunct has
+ * an indexed condition, the query is instead split into a union of indexed sub-queries, one per disjunct.
+ */
+final class QueryPlanner {
+    private QueryPlanner() {
+    }
+
+    static List<CompiledSelect> split(CompiledSelect compiled, SetSchema setSchema, CodegenBackend backend) {
+        SelectNode select = compiled.getSelect();
+        if ((setSchema == null) || !setSchema.hasIndexes() || (select.getIndex() != null) || (select.getWhere() == null)) {
+            return Collections.singletonList(compiled);
+        }
+
+        List<WhereNode> disjuncts = new ArrayList<>();
+        disjuncts(select.getWhere(), disjuncts);
+        if (disjuncts.size() < 2) {
+            return Collections.singletonList(compiled);
+        }
+
+        List<CompiledSelect> branches = new ArrayList<>(disjuncts.size());
+        for (WhereNode disjunct : disjuncts) {
+            SelectNode branch = IndexPushdown.apply(select.withWhere(disjunct), setSchema);
+            if (branch.getIndex() == null) {
+                return Collections.singletonList(compiled);
+            }
+
+            branches.add(CompiledSelect.compile(branch, setSchema, compiled.written(), backend));
+        }
+
+        return Collections.unmodifiableList(branches);
+    }
+
+    static void disjuncts(WhereNode where, List<WhereNode> disjuncts) {
+        if ((where instanceof WhereNode.Logic) && (((WhereNode.Logic) where).getOp() == WhereNode.LogicOp.OR)) {
+            for (WhereNode operand : ((WhereNode.Logic) where).getOperands()) {
+                disjuncts(operand, disjuncts);
+            }
+        } else {
+            disjuncts.add(where);
+        }
+    }
+}
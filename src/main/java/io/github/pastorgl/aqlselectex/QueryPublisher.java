@@ -0,0 +1,116 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.KeyRecord;
+
+import java.util.function.Supplier;
+
+/**
+ * Push-style access to query records with subscriber-controlled demand. The interfaces mirror Reactive Streams
+ * and java.util.concurrent.Flow one to one (the library targets Java 8), so adapting them takes a few lines. Each
+ * subscriber gets a separate run of the query, delivered from a dedicated thread.
+ */
+public final class QueryPublisher {
+    public interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(KeyRecord record);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final Supplier<RecordStream> query;
+
+    QueryPublisher(Supplier<RecordStream> query) {
+        this.query = query;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        Delivery delivery = new Delivery(subscriber, query.get());
+
+        Thread thread = new Thread(delivery, "AQLSelectEx-publisher");
+        thread.setDaemon(true);
+
+        subscriber.onSubscribe(delivery);
+        thread.start();
+    }
+
+    private static final class Delivery implements Subscription, Runnable {
+        private final Subscriber subscriber;
+        private final RecordStream stream;
+
+        private long demand;
+        private boolean cancelled;
+        private Throwable error;
+
+        private Delivery(Subscriber subscriber, RecordStream stream) {
+            this.subscriber = subscriber;
+            this.stream = stream;
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0L) {
+                error = new IllegalArgumentException("Requested number of records must be positive, got " + n);
+                cancelled = true;
+            } else {
+                demand = (demand + n < 0L) ? Long.MAX_VALUE : demand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                notifyAll();
+            }
+            stream.close();
+        }
+
+        private synchronized boolean awaitDemand() throws InterruptedException {
+            while ((demand == 0L) && !cancelled) {
+                wait();
+            }
+            if (cancelled) {
+                return false;
+            }
+            if (demand != Long.MAX_VALUE) {
+                demand--;
+            }
+            return true;
+        }
+
+        private synchronized Throwable error() {
+            return error;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (awaitDemand()) {
+                    if (!stream.hasNext()) {
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(stream.next());
+                }
+
+                stream.close();
+                if (error() != null) {
+                    subscriber.onError(error());
+                }
+            } catch (Throwable e) {
+                stream.close();
+                subscriber.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.KeyRecord;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records of a running query, pulled by a single reader. Query slices put records into a bounded buffer, and block
+ * while it is full, so the memory footprint doesn't depend on the result size. Closing the stream aborts the query.
+ */
+public final class RecordStream implements Iterator<KeyRecord>, AutoCloseable {
+    private static final KeyRecord END = new KeyRecord(null, null);
+    private static final long POLL_MILLIS = 50L;
+
+    private final BlockingQueue<KeyRecord> buffer;
+    private final int capacity;
+    private final Semaphore permits;
+    private final AtomicInteger peak = new AtomicInteger();
+
+    QueryExecutor.Execution execution;
+    private volatile boolean finished;
+    private volatile boolean closed;
+
+    private KeyRecord next;
+
+    RecordStream(int capacity) {
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+        // one more slot for the END marker
+        this.buffer = new ArrayBlockingQueue<>(capacity + 1);
+    }
+
+    void offer(KeyRecord record) {
+        try {
+            while (!permits.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new CancellationException();
+                }
+            }
+            if (closed) {
+                throw new CancellationException();
+            }
+            buffer.add(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while buffering query records");
+        }
+
+        int size = buffer.size();
+        peak.accumulateAndGet(size, Math::max);
+    }
+
+    void finish() {
+        finished = true;
+        // wakes up the reader
+        buffer.add(END);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (next != null) {
+            return true;
+        }
+
+        try {
+            while (!closed) {
+                boolean done = finished;
+                KeyRecord record = done ? buffer.poll() : buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if ((record != null) && (record != END)) {
+                    permits.release();
+                    next = record;
+                    return true;
+                }
+                if (done && (record == null)) {
+                    execution.await();
+                    return false;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while reading query records");
+        }
+    }
+
+    @Override
+    public KeyRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        KeyRecord record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Cancels all query slices still running, and drops buffered records. May be called from any thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        execution.cancel();
+        buffer.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of records currently buffered ahead of the reader
+     */
+    public int getBuffered() {
+        int size = buffer.size();
+        return (size > capacity) ? capacity : size;
+    }
+
+    /**
+     * @return maximal number of records buffered ahead of the reader so far
+     */
+    public int getPeakBuffered() {
+        int p = peak.get();
+        return (p > capacity) ? capacity : p;
+    }
+}
@@ -0,0 +1,932 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written parser of the AQLSelectEx.g4 grammar, which builds {@link SelectNode} directly. Scans the input by
+ * index with a single token of lookahead, matches keywords in place, and copies out only names and literals, so
+ * neither token objects nor parse tree are created. Doesn't need ANTLR runtime.
+ */
+final class RecursiveDescentParser {
+    enum Keyword {
+        AND, ANY, AS, ASC, AVG, BETWEEN, BY, CAST, CHAR, CONTAINS, COUNT, DECIMAL, DEFAULT, DESC, DIGEST, FLOAT, FROM,
+        GEOJSON, GROUP, IN, INT, JSON, LIKE, LIMIT, LIST, LUT, MATCH, MAP, MAPKEYS, MAPVALUES, MAX, MIN, NOT, NUMERIC,
+        OFFSET, OR, ORDER, PK, REAL, RECSIZE, REGEXP, SELECT, STRING, SUM, TEXT, TTL, USE, VARCHAR, WHERE, WITH, WITHIN
+    }
+
+    // non_reserved_keyword : keywords that may be names as well, where the next token tells which they are
+    private static final EnumSet<Keyword> NON_RESERVED = EnumSet.of(Keyword.ASC, Keyword.AVG, Keyword.BY, Keyword.COUNT,
+            Keyword.DESC, Keyword.GROUP, Keyword.IN, Keyword.LIMIT, Keyword.MAX, Keyword.MIN, Keyword.OFFSET, Keyword.ORDER,
+            Keyword.SUM);
+
+    private static final int EOF = 0;
+    private static final int KEYWORD = 1;
+    private static final int IDENTIFIER = 2;
+    private static final int NUMERIC_LITERAL = 3;
+    private static final int STRING_LITERAL = 4;
+    private static final int NAMED_PARAM = 5;
+    private static final int QMARK = 6;
+    private static final int DOT = 7;
+    private static final int OPEN_PAR = 8;
+    private static final int CLOSE_PAR = 9;
+    private static final int COMMA = 10;
+    private static final int STAR = 11;
+    private static final int EQ = 12;
+    private static final int EQ2 = 13;
+    private static final int NOT_EQ1 = 14;
+    private static final int NOT_EQ2 = 15;
+    private static final int LT = 16;
+    private static final int LT_EQ = 17;
+    private static final int GT = 18;
+    private static final int GT_EQ = 19;
+    // tokens the lexer knows, but no parser rule accepts
+    private static final int OTHER = 20;
+
+    // keywords by length, for matching them in place
+    private static final Keyword[][] KEYWORDS = new Keyword[10][];
+
+    static {
+        for (int length = 0; length < KEYWORDS.length; length++) {
+            List<Keyword> keywords = new ArrayList<>();
+            for (Keyword keyword : Keyword.values()) {
+                if (keyword.name().length() == length) {
+                    keywords.add(keyword);
+                }
+            }
+            KEYWORDS[length] = keywords.toArray(new Keyword[0]);
+        }
+    }
+
+    private final CharSequence in;
+    private final int length;
+
+    // current token
+    private int type;
+    private Keyword keyword;
+    private int start;
+    private int pos;
+    private int tokens;
+    // keyword of the token after the current one, set by peek()
+    private Keyword peeked;
+
+    private IndexNode index;
+    private final List<String> paramNames = new ArrayList<>();
+    private final Map<String, Integer> namedParams = new HashMap<>();
+
+    RecursiveDescentParser(CharSequence in) {
+        this.in = in;
+        this.length = in.length();
+    }
+
+    /**
+     * @return number of tokens scanned, not counting whitespace
+     */
+    int tokens() {
+        return tokens;
+    }
+
+    static boolean isKeyword(String name) {
+        return keyword(name, 0, name.length()) != null;
+    }
+
+    SelectNode parse() {
+        next();
+
+        // select_stmt : K_SELECT ( STAR | result_column ( COMMA result_column )* ) ( K_FROM from_set )?
+        //   ( (K_USE | K_WITH) index_expr )? ( K_WHERE where_expr )? ( K_GROUP K_BY column_name ( COMMA column_name )* )?
+        //   ( K_ORDER K_BY order_column )? ( K_LIMIT NUMERIC_LITERAL ( K_OFFSET NUMERIC_LITERAL )? )?
+        expect(Keyword.SELECT);
+
+        List<String> binNames = null;
+        List<AggregateNode> aggregates = new ArrayList<>();
+        if (type == STAR) {
+            next();
+        } else {
+            binNames = new ArrayList<>();
+            do {
+                resultColumn(binNames, aggregates);
+            } while (accept(COMMA));
+        }
+
+        String namespace = null;
+        String setName = null;
+        boolean from = accept(Keyword.FROM);
+        if (from) {
+            namespace = identifier("namespace");
+            if (accept(DOT)) {
+                setName = identifier("set name");
+            }
+        }
+
+        if (accept(Keyword.USE) || accept(Keyword.WITH)) {
+            index = indexExpr();
+        }
+
+        WhereNode where = null;
+        if (accept(Keyword.WHERE)) {
+            where = whereExpr();
+        }
+
+        List<String> groupBy = new ArrayList<>();
+        if (accept(Keyword.GROUP)) {
+            expect(Keyword.BY);
+            do {
+                groupBy.add(binName());
+            } while (accept(COMMA));
+        }
+
+        // order_column : result_column ( K_ASC | K_DESC )?
+        String orderBin = null;
+        AggregateNode orderAggregate = null;
+        boolean descending = false;
+        boolean ordered = accept(Keyword.ORDER);
+        if (ordered) {
+            expect(Keyword.BY);
+            orderAggregate = aggregate();
+            if (orderAggregate == null) {
+                orderBin = binName();
+            }
+            descending = accept(Keyword.DESC);
+            if (!descending) {
+                accept(Keyword.ASC);
+            }
+        }
+
+        long limit = SelectNode.NO_LIMIT;
+        long offset = 0L;
+        if (accept(Keyword.LIMIT)) {
+            limit = count("LIMIT");
+            if (accept(Keyword.OFFSET)) {
+                offset = count("OFFSET");
+            }
+        }
+
+        if (type != EOF) {
+            throw syntaxError("end of query");
+        }
+        if (!from) {
+            throw new RuntimeException("Expected FROM namespace[.set]");
+        }
+
+        SelectNode select = new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset);
+        if (!aggregates.isEmpty() || !groupBy.isEmpty()) {
+            select = select.withAggregation(aggregates, groupBy);
+        }
+        if (ordered) {
+            select = select.withOrder((orderAggregate == null) ? new OrderNode(orderBin, descending) : new OrderNode(orderAggregate, descending));
+        }
+        return select;
+    }
+
+    private void resultColumn(List<String> binNames, List<AggregateNode> aggregates) {
+        // result_column : column_name | aggregate_func OPEN_PAR ( STAR | column_name ) CLOSE_PAR
+        AggregateNode aggregate = aggregate();
+        if (aggregate == null) {
+            binNames.add(binName());
+        } else {
+            aggregates.add(aggregate);
+        }
+    }
+
+    /**
+     * @return aggregate function call, or null if the current token doesn't start one
+     */
+    private AggregateNode aggregate() {
+        AggregateNode.Function function = null;
+        if (type == KEYWORD) {
+            switch (keyword) {
+                case COUNT: {
+                    function = AggregateNode.Function.COUNT;
+                }
+                break;
+                case SUM: {
+                    function = AggregateNode.Function.SUM;
+                }
+                break;
+                case MIN: {
+                    function = AggregateNode.Function.MIN;
+                }
+                break;
+                case MAX: {
+                    function = AggregateNode.Function.MAX;
+                }
+                break;
+                case AVG: {
+                    function = AggregateNode.Function.AVG;
+                }
+                break;
+            }
+        }
+
+        // a bin may be named as an aggregate function
+        if ((function == null) || !followedBy(OPEN_PAR)) {
+            return null;
+        }
+
+        next();
+        expect(OPEN_PAR, "(");
+        String binName = null;
+        if (!accept(STAR)) {
+            binName = binName();
+        }
+        expect(CLOSE_PAR, ")");
+
+        return new AggregateNode(function, binName);
+    }
+
+    private long count(String clause) {
+        if (type == NUMERIC_LITERAL) {
+            int literal = start;
+            try {
+                long count = Long.parseLong(text());
+                if (count >= 0L) {
+                    next();
+                    return count;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            throw new RuntimeException("Expected non-negative integer for " + clause + " at input index " + literal);
+        }
+        throw syntaxError("number of records for " + clause);
+    }
+
+    private WhereNode whereExpr() {
+        // where_expr : ( atomic_expr | OPEN_PAR | CLOSE_PAR | logic_op )+
+        WhereBuilder builder = new WhereBuilder();
+
+        int elements = 0;
+        for (; ; elements++) {
+            if (type == OPEN_PAR) {
+                next();
+                builder.open();
+            } else if (type == CLOSE_PAR) {
+                next();
+                builder.close();
+            } else if (accept(Keyword.NOT)) {
+                builder.op(WhereNode.LogicOp.NOT);
+            } else if (accept(Keyword.AND)) {
+                builder.op(WhereNode.LogicOp.AND);
+            } else if (accept(Keyword.OR)) {
+                builder.op(WhereNode.LogicOp.OR);
+            } else if ((type == IDENTIFIER) || isMeta() || (keyword == Keyword.PK) || (isNonReserved() && !startsClause())) {
+                builder.atom(atom());
+            } else {
+                break;
+            }
+        }
+
+        if (elements == 0) {
+            throw syntaxError("WHERE condition");
+        }
+        return builder.build();
+    }
+
+    private boolean isNonReserved() {
+        return (type == KEYWORD) && NON_RESERVED.contains(keyword);
+    }
+
+    /**
+     * @return true if the current token starts a clause that follows WHERE, and not an atom with a bin named so
+     */
+    private boolean startsClause() {
+        switch (keyword) {
+            case GROUP:
+            case ORDER:
+                return followedBy(Keyword.BY);
+            case LIMIT:
+                return followedBy(NUMERIC_LITERAL);
+            default:
+                return false;
+        }
+    }
+
+    private boolean isMeta() {
+        return (type == KEYWORD) && ((keyword == Keyword.LUT) || (keyword == Keyword.RECSIZE) || (keyword == Keyword.TTL) || (keyword == Keyword.DIGEST));
+    }
+
+    private WhereNode atom() {
+        // meta_name ( equality_op | comparison_op ) ( NUMERIC_LITERAL | param )
+        if (isMeta()) {
+            WhereNode.Meta meta;
+            ValueNode digestModulo = null;
+            switch (keyword) {
+                case DIGEST: {
+                    meta = WhereNode.Meta.DIGEST;
+                    next();
+                    expect(OPEN_PAR, "(");
+                    digestModulo = numericOrParam();
+                    expect(CLOSE_PAR, ")");
+                }
+                break;
+                case LUT: {
+                    meta = WhereNode.Meta.LUT;
+                    next();
+                }
+                break;
+                case RECSIZE: {
+                    meta = WhereNode.Meta.RECSIZE;
+                    next();
+                }
+                break;
+                default: {
+                    meta = WhereNode.Meta.TTL;
+                    next();
+                }
+            }
+
+            return new WhereNode.Compare(meta, digestModulo, compareOp(), numericOrParam());
+        }
+
+        String binName = binName();
+
+        if (type == KEYWORD) {
+            switch (keyword) {
+                // column_name ( map_op | list_op ) iter_expr
+                case ANY: {
+                    next();
+                    WhereNode.IterateOp iterateOp;
+                    if (accept(Keyword.MAPKEYS)) {
+                        iterateOp = WhereNode.IterateOp.MAPKEYS_OR;
+                    } else if (accept(Keyword.MAPVALUES)) {
+                        iterateOp = WhereNode.IterateOp.MAPVALUES_OR;
+                    } else if (accept(Keyword.CONTAINS)) {
+                        iterateOp = WhereNode.IterateOp.LIST_OR;
+                    } else {
+                        throw syntaxError("MAPKEYS, MAPVALUES or CONTAINS");
+                    }
+                    return iterExpr(binName, iterateOp);
+                }
+                case MAPKEYS: {
+                    next();
+                    return iterExpr(binName, WhereNode.IterateOp.MAPKEYS_AND);
+                }
+                case MAPVALUES: {
+                    next();
+                    return iterExpr(binName, WhereNode.IterateOp.MAPVALUES_AND);
+                }
+                // column_name list_op iter_expr | column_name geo_op cast_expr
+                case CONTAINS: {
+                    next();
+                    if (type == OPEN_PAR) {
+                        return iterExpr(binName, WhereNode.IterateOp.LIST_AND);
+                    }
+                    return new WhereNode.Geo(binName, WhereNode.GeoOp.CONTAINS, castExpr());
+                }
+                case WITHIN: {
+                    next();
+                    return new WhereNode.Geo(binName, WhereNode.GeoOp.WITHIN, castExpr());
+                }
+                // column_name K_NOT? ( K_IN in_expr | between_expr )
+                case NOT:
+                case IN:
+                case BETWEEN: {
+                    boolean not = accept(Keyword.NOT);
+                    WhereNode atom;
+                    if (accept(Keyword.IN)) {
+                        atom = inExpr(binName);
+                    } else if ((type == KEYWORD) && (keyword == Keyword.BETWEEN)) {
+                        ValueNode[] bounds = betweenExpr();
+                        atom = new WhereNode.Logic(WhereNode.LogicOp.AND,
+                                new WhereNode.Compare(binName, WhereNode.CompareOp.GE, bounds[0]),
+                                new WhereNode.Compare(binName, WhereNode.CompareOp.LE, bounds[1]));
+                    } else {
+                        throw syntaxError("IN or BETWEEN");
+                    }
+                    return not ? new WhereNode.Logic(WhereNode.LogicOp.NOT, atom) : atom;
+                }
+                // column_name regex_op ( STRING_LITERAL | param )
+                case LIKE:
+                case MATCH:
+                case REGEXP: {
+                    next();
+                    return new WhereNode.Compare(binName, WhereNode.CompareOp.REGEX, stringOrParam());
+                }
+            }
+        }
+
+        // column_name ( equality_op | comparison_op ) ( STRING_LITERAL | NUMERIC_LITERAL | param )
+        return new WhereNode.Compare(binName, compareOp(), value());
+    }
+
+    private WhereNode iterExpr(String binName, WhereNode.IterateOp iterateOp) {
+        // iter_expr : OPEN_PAR var_name ( equality_op STRING_LITERAL | ( equality_op | comparison_op ) ( NUMERIC_LITERAL | param ) ) CLOSE_PAR
+        expect(OPEN_PAR, "(");
+        String var = identifier("variable name");
+        WhereNode.CompareOp op = compareOp();
+        ValueNode value = ((op == WhereNode.CompareOp.EQ) || (op == WhereNode.CompareOp.NE)) ? value() : numericOrParam();
+        expect(CLOSE_PAR, ")");
+
+        return new WhereNode.Iterate(binName, iterateOp, var, op, value);
+    }
+
+    private WhereNode inExpr(String binName) {
+        // in_expr : OPEN_PAR ( NUMERIC_LITERAL | STRING_LITERAL | param ) ( COMMA ( NUMERIC_LITERAL | STRING_LITERAL | param ) )* CLOSE_PAR
+        expect(OPEN_PAR, "(");
+        List<WhereNode> equalities = new ArrayList<>();
+        do {
+            equalities.add(new WhereNode.Compare(binName, WhereNode.CompareOp.EQ, value()));
+        } while (accept(COMMA));
+        expect(CLOSE_PAR, ")");
+
+        return (equalities.size() == 1) ? equalities.get(0) : new WhereNode.Logic(WhereNode.LogicOp.OR, equalities);
+    }
+
+    private ValueNode[] betweenExpr() {
+        // between_expr : K_BETWEEN bound K_AND bound
+        expect(Keyword.BETWEEN);
+        ValueNode low = numericOrParam();
+        expect(Keyword.AND);
+        ValueNode high = numericOrParam();
+
+        return new ValueNode[]{low, high};
+    }
+
+    private ValueNode castExpr() {
+        // cast_expr : K_CAST OPEN_PAR ( STRING_LITERAL | param ) K_AS type_name CLOSE_PAR
+        //   | type_name OPEN_PAR ( STRING_LITERAL | param ) CLOSE_PAR
+        int castStart = start;
+
+        ValueNode value;
+        Keyword typeName;
+        if (accept(Keyword.CAST)) {
+            expect(OPEN_PAR, "(");
+            value = stringOrParam();
+            expect(Keyword.AS);
+            typeName = typeName();
+            expect(CLOSE_PAR, ")");
+        } else {
+            typeName = typeName();
+            expect(OPEN_PAR, "(");
+            value = stringOrParam();
+            expect(CLOSE_PAR, ")");
+        }
+
+        if (typeName != Keyword.GEOJSON) {
+            throw new RuntimeException("Expected GEOJSON type cast at input index " + castStart);
+        }
+        return value;
+    }
+
+    private Keyword typeName() {
+        if (type == KEYWORD) {
+            switch (keyword) {
+                case DECIMAL:
+                case INT:
+                case NUMERIC:
+                case FLOAT:
+                case REAL:
+                case JSON:
+                case LIST:
+                case MAP:
+                case GEOJSON:
+                case CHAR:
+                case STRING:
+                case TEXT:
+                case VARCHAR: {
+                    Keyword typeName = keyword;
+                    next();
+                    return typeName;
+                }
+            }
+        }
+        throw syntaxError("type name");
+    }
+
+    private IndexNode indexExpr() {
+        // index_expr : index_type? OPEN_PAR ( column_name index_op ( NUMERIC_LITERAL | STRING_LITERAL | param )
+        //   | column_name geo_op cast_expr | column_name between_expr ) CLOSE_PAR
+        IndexCollectionType collectionType = IndexCollectionType.DEFAULT;
+        if (accept(Keyword.LIST)) {
+            collectionType = IndexCollectionType.LIST;
+        } else if (accept(Keyword.MAPKEYS)) {
+            collectionType = IndexCollectionType.MAPKEYS;
+        } else if (accept(Keyword.MAPVALUES)) {
+            collectionType = IndexCollectionType.MAPVALUES;
+        } else {
+            accept(Keyword.DEFAULT);
+        }
+
+        expect(OPEN_PAR, "(");
+        String binName = binName();
+
+        IndexNode index;
+        if ((type == EQ) || (type == EQ2)) {
+            next();
+            index = new IndexNode(IndexNode.Kind.EQUAL, binName, collectionType, value());
+        } else if (accept(Keyword.CONTAINS)) {
+            if ((type == NUMERIC_LITERAL) || (type == STRING_LITERAL) || (type == QMARK) || (type == NAMED_PARAM)) {
+                index = new IndexNode(IndexNode.Kind.CONTAINS, binName, collectionType, value());
+            } else {
+                index = new IndexNode(IndexNode.Kind.GEO_CONTAINS, binName, collectionType, castExpr());
+            }
+        } else if (accept(Keyword.WITHIN)) {
+            index = new IndexNode(IndexNode.Kind.GEO_WITHIN, binName, collectionType, castExpr());
+        } else if ((type == KEYWORD) && (keyword == Keyword.BETWEEN)) {
+            index = new IndexNode(IndexNode.Kind.RANGE, binName, collectionType, betweenExpr());
+        } else {
+            throw syntaxError("index condition");
+        }
+        expect(CLOSE_PAR, ")");
+
+        return index;
+    }
+
+    private WhereNode.CompareOp compareOp() {
+        WhereNode.CompareOp op;
+        switch (type) {
+            case EQ:
+            case EQ2: {
+                op = WhereNode.CompareOp.EQ;
+            }
+            break;
+            case NOT_EQ1:
+            case NOT_EQ2: {
+                op = WhereNode.CompareOp.NE;
+            }
+            break;
+            case LT: {
+                op = WhereNode.CompareOp.LT;
+            }
+            break;
+            case LT_EQ: {
+                op = WhereNode.CompareOp.LE;
+            }
+            break;
+            case GT: {
+                op = WhereNode.CompareOp.GT;
+            }
+            break;
+            case GT_EQ: {
+                op = WhereNode.CompareOp.GE;
+            }
+            break;
+            default: {
+                throw syntaxError("comparison operator");
+            }
+        }
+        next();
+        return op;
+    }
+
+    private ValueNode value() {
+        if (type == STRING_LITERAL) {
+            ValueNode value = ValueNode.string(unquote('\''));
+            next();
+            return value;
+        }
+        return numericOrParam();
+    }
+
+    private ValueNode numericOrParam() {
+        if (type == NUMERIC_LITERAL) {
+            ValueNode value = ValueNode.numeric(text());
+            next();
+            return value;
+        }
+        return param("literal or parameter");
+    }
+
+    private ValueNode stringOrParam() {
+        if (type == STRING_LITERAL) {
+            ValueNode value = ValueNode.string(unquote('\''));
+            next();
+            return value;
+        }
+        return param("string or parameter");
+    }
+
+    private ValueNode param(String expected) {
+        // param : QMARK | NAMED_PARAM
+        Integer ordinal;
+        if (type == QMARK) {
+            ordinal = paramNames.size();
+            paramNames.add(null);
+        } else if (type == NAMED_PARAM) {
+            String name = in.subSequence(start + 1, pos).toString();
+            ordinal = namedParams.get(name);
+            if (ordinal == null) {
+                ordinal = paramNames.size();
+                paramNames.add(name);
+                namedParams.put(name, ordinal);
+            }
+        } else {
+            throw syntaxError(expected);
+        }
+        next();
+
+        return ValueNode.param(ordinal);
+    }
+
+    private String binName() {
+        // bin_name : K_PK | IDENTIFIER | non_reserved_keyword
+        if ((type == KEYWORD) && (keyword == Keyword.PK)) {
+            String name = text();
+            next();
+            return name;
+        }
+        return identifier("bin name");
+    }
+
+    private String identifier(String expected) {
+        if (isNonReserved()) {
+            String name = text();
+            next();
+            return name;
+        }
+        if (type != IDENTIFIER) {
+            throw syntaxError(expected);
+        }
+        String name = (in.charAt(start) == '"') ? unquote('"') : text();
+        next();
+        return name;
+    }
+
+    private boolean followedBy(int tokenType) {
+        return peek() == tokenType;
+    }
+
+    private boolean followedBy(Keyword kw) {
+        return (peek() == KEYWORD) && (peeked == kw);
+    }
+
+    /**
+     * Scans the token after the current one, and returns its type, with its keyword in {@link #peeked}. The current
+     * token stays as is.
+     */
+    private int peek() {
+        int type = this.type;
+        Keyword keyword = this.keyword;
+        int start = this.start;
+        int pos = this.pos;
+        int tokens = this.tokens;
+
+        next();
+        int peekedType = this.type;
+        peeked = this.keyword;
+
+        this.type = type;
+        this.keyword = keyword;
+        this.start = start;
+        this.pos = pos;
+        this.tokens = tokens;
+        return peekedType;
+    }
+
+    private boolean accept(int tokenType) {
+        if (type == tokenType) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean accept(Keyword kw) {
+        if ((type == KEYWORD) && (keyword == kw)) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(int tokenType, String expected) {
+        if (!accept(tokenType)) {
+            throw syntaxError(expected);
+        }
+    }
+
+    private void expect(Keyword kw) {
+        if (!accept(kw)) {
+            throw syntaxError(kw.name());
+        }
+    }
+
+    private RuntimeException syntaxError(String expected) {
+        String got = (type == EOF) ? "end of query" : "'" + text() + "'";
+        return new RuntimeException("Expected " + expected + " at input index " + start + ", got " + got);
+    }
+
+    private String text() {
+        return in.subSequence(start, pos).toString();
+    }
+
+    /**
+     * Current token without enclosing quotes, with doubled quotes unescaped.
+     */
+    private String unquote(char quote) {
+        StringBuilder sb = new StringBuilder(pos - start - 2);
+        for (int i = start + 1; i < pos - 1; i++) {
+            char c = in.charAt(i);
+            sb.append(c);
+            if (c == quote) {
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private void next() {
+        while ((pos < length) && isSpace(in.charAt(pos))) {
+            pos++;
+        }
+
+        start = pos;
+        keyword = null;
+        if (pos == length) {
+            type = EOF;
+            return;
+        }
+
+        tokens++;
+        char c = in.charAt(pos++);
+        switch (c) {
+            case '.': {
+                type = DOT;
+            }
+            break;
+            case '(': {
+                type = OPEN_PAR;
+            }
+            break;
+            case ')': {
+                type = CLOSE_PAR;
+            }
+            break;
+            case ',': {
+                type = COMMA;
+            }
+            break;
+            case '*': {
+                type = STAR;
+            }
+            break;
+            case '?': {
+                type = QMARK;
+            }
+            break;
+            case '=': {
+                type = follows('=') ? EQ2 : EQ;
+            }
+            break;
+            case '!': {
+                type = follows('=') ? NOT_EQ1 : OTHER;
+            }
+            break;
+            case '<': {
+                if (follows('=')) {
+                    type = LT_EQ;
+                } else {
+                    type = follows('>') ? NOT_EQ2 : LT;
+                }
+            }
+            break;
+            case '>': {
+                type = follows('=') ? GT_EQ : GT;
+            }
+            break;
+            case ':': {
+                if ((pos < length) && isNameStart(in.charAt(pos))) {
+                    skipName();
+                    type = NAMED_PARAM;
+                } else {
+                    type = OTHER;
+                }
+            }
+            break;
+            case '\'': {
+                type = quoted('\'') ? STRING_LITERAL : OTHER;
+            }
+            break;
+            case '"': {
+                type = quoted('"') ? IDENTIFIER : OTHER;
+            }
+            break;
+            case '+':
+            case '-': {
+                type = number() ? NUMERIC_LITERAL : OTHER;
+            }
+            break;
+            default: {
+                if (isDigit(c)) {
+                    pos--;
+                    type = number() ? NUMERIC_LITERAL : OTHER;
+                } else if (isNameStart(c)) {
+                    skipName();
+                    keyword = keyword(in, start, pos);
+                    type = (keyword == null) ? IDENTIFIER : KEYWORD;
+                } else {
+                    type = OTHER;
+                }
+            }
+        }
+    }
+
+    private boolean follows(char c) {
+        if ((pos < length) && (in.charAt(pos) == c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scans the rest of a quoted token, with the opening quote already consumed. Unterminated quote is a token of
+     * its own, like in the ANTLR lexer.
+     */
+    private boolean quoted(char quote) {
+        for (int i = pos; i < length; i++) {
+            if (in.charAt(i) == quote) {
+                if ((i + 1 < length) && (in.charAt(i + 1) == quote)) {
+                    i++;
+                } else {
+                    pos = i + 1;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * NUMERIC_LITERAL : [+-]? DIGIT+ ( '.' DIGIT* )? ( E [+-]? DIGIT+ )? | [+-] '.' DIGIT+ ( E [+-]? DIGIT+ )?
+     * with sign, if any, already consumed. Integer with L suffix and lone sign are valid tokens no rule accepts.
+     */
+    private boolean number() {
+        int digits = skipDigits(pos);
+        if (digits > pos) {
+            pos = digits;
+            if ((pos < length) && (in.charAt(pos) == '.')) {
+                pos = skipDigits(pos + 1);
+            } else if ((pos < length) && ((in.charAt(pos) == 'l') || (in.charAt(pos) == 'L'))) {
+                pos++;
+                return false;
+            }
+        } else if ((pos + 1 < length) && (in.charAt(pos) == '.') && isDigit(in.charAt(pos + 1)) && (pos > start)) {
+            pos = skipDigits(pos + 1);
+        } else {
+            return false;
+        }
+
+        if ((pos < length) && ((in.charAt(pos) == 'e') || (in.charAt(pos) == 'E'))) {
+            int exponent = pos + 1;
+            if ((exponent < length) && ((in.charAt(exponent) == '+') || (in.charAt(exponent) == '-'))) {
+                exponent++;
+            }
+            int end = skipDigits(exponent);
+            if (end > exponent) {
+                pos = end;
+            }
+        }
+        return true;
+    }
+
+    private int skipDigits(int from) {
+        while ((from < length) && isDigit(in.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private void skipName() {
+        while ((pos < length) && (isNameStart(in.charAt(pos)) || isDigit(in.charAt(pos)))) {
+            pos++;
+        }
+    }
+
+    private static Keyword keyword(CharSequence cs, int from, int to) {
+        int length = to - from;
+        if (length >= KEYWORDS.length) {
+            return null;
+        }
+
+        next:
+        for (Keyword keyword : KEYWORDS[length]) {
+            String name = keyword.name();
+            for (int i = 0; i < length; i++) {
+                char c = cs.charAt(from + i);
+                if (((c >= 'a') && (c <= 'z') ? (char) (c - 32) : c) != name.charAt(i)) {
+                    continue next;
+                }
+            }
+            return keyword;
+        }
+        return null;
+    }
+
+    private static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\u000B') || (c == '\t') || (c == '\r') || (c == '\n');
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    private static boolean isNameStart(char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || (c == '_');
+    }
+}
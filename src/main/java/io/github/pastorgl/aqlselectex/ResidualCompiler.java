@@ -0,0 +1,277 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Record;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.RegexFlag;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the residual part of WHERE into a tree of small monomorphic {@link Predicate}s over returned records.
+ * Missing bins and values of other types never match, same as on the server.
+ */
+final class ResidualCompiler implements WhereNode.Visitor<Predicate<Record>> {
+    // result of comparison with a value of another type
+    private static final int INCOMPARABLE = 2;
+
+    private final SetSchema bins;
+    private final Object[] values;
+
+    private ResidualCompiler(SetSchema bins, Object[] values) {
+        this.bins = bins;
+        this.values = values;
+    }
+
+    /**
+     * @param values parameter values, if residual has parameters
+     */
+    static Predicate<Record> compile(WhereNode residual, SetSchema setSchema, Object[] values) {
+        if (residual == null) {
+            return null;
+        }
+
+        return residual.accept(new ResidualCompiler((setSchema == null) ? SetSchema.EMPTY : setSchema, values));
+    }
+
+    /**
+     * @return false if the predicate has metadata comparisons or GEOJSON conditions, which can't be evaluated on
+     * the client
+     */
+    static boolean evaluates(WhereNode where) {
+        return where.accept(Evaluable.INSTANCE);
+    }
+
+    @Override
+    public Predicate<Record> visitLogic(WhereNode.Logic logic) {
+        List<WhereNode> operands = logic.getOperands();
+
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            return operands.get(0).accept(this).negate();
+        }
+
+        @SuppressWarnings("unchecked")
+        Predicate<Record>[] predicates = new Predicate[operands.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = operands.get(i).accept(this);
+        }
+
+        if (logic.getOp() == WhereNode.LogicOp.AND) {
+            return record -> {
+                for (Predicate<Record> predicate : predicates) {
+                    if (!predicate.test(record)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+
+        return record -> {
+            for (Predicate<Record> predicate : predicates) {
+                if (predicate.test(record)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    @Override
+    public Predicate<Record> visitCompare(WhereNode.Compare compare) {
+        if (compare.getMeta() != null) {
+            throw new RuntimeException("Can't evaluate " + compare + " on client");
+        }
+
+        String bin = compare.getBin();
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+        }
+        String name = bin;
+
+        if (compare.getOp() == WhereNode.CompareOp.REGEX) {
+            Pattern pattern = pattern(value(compare.getValue(), ParticleType.STRING).toString());
+            return record -> {
+                Object actual = bin(record, name);
+                return (actual instanceof String) && pattern.matcher((String) actual).find();
+            };
+        }
+
+        ToIntFunction<Object> comparator = comparator(value(compare.getValue(), bins.binType(bin)));
+        IntPredicate result = result(compare.getOp());
+        return record -> result.test(comparator.applyAsInt(bin(record, name)));
+    }
+
+    @Override
+    public Predicate<Record> visitIterate(WhereNode.Iterate iterate) {
+        String bin = iterate.getBin();
+        int varType = ParticleType.STRING;
+        SetSchema.Bin schemaBin = bins.bin(bin);
+        if (schemaBin != null) {
+            bin = schemaBin.getName();
+            varType = schemaBin.varType(iterate.getVar());
+        }
+        String name = bin;
+
+        ToIntFunction<Object> comparator = comparator(value(iterate.getValue(), varType));
+        IntPredicate result = result(iterate.getOp());
+        Predicate<Object> element = e -> result.test(comparator.applyAsInt(e));
+
+        boolean all;
+        switch (iterate.getIterateOp()) {
+            case LIST_AND:
+            case MAPKEYS_AND:
+            case MAPVALUES_AND:
+                all = true;
+                break;
+            default:
+                all = false;
+        }
+
+        WhereNode.IterateOp op = iterate.getIterateOp();
+        return record -> {
+            Collection<?> elements = elements(bin(record, name), op);
+            if (elements == null) {
+                return false;
+            }
+            for (Object e : elements) {
+                if (element.test(e) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        };
+    }
+
+    @Override
+    public Predicate<Record> visitGeo(WhereNode.Geo geo) {
+        throw new RuntimeException("Can't evaluate " + geo + " on client");
+    }
+
+    private static Object bin(Record record, String bin) {
+        return (record.bins == null) ? null : record.bins.get(bin);
+    }
+
+    private static Collection<?> elements(Object actual, WhereNode.IterateOp op) {
+        switch (op) {
+            case LIST_AND:
+            case LIST_OR:
+                return (actual instanceof List) ? (List<?>) actual : null;
+            case MAPKEYS_AND:
+            case MAPKEYS_OR:
+                return (actual instanceof Map) ? ((Map<?, ?>) actual).keySet() : null;
+            default:
+                return (actual instanceof Map) ? ((Map<?, ?>) actual).values() : null;
+        }
+    }
+
+    private Object value(ValueNode value, int type) {
+        if (value.isParam()) {
+            Object bound = values[value.getParam()];
+            if ((type == ParticleType.DOUBLE) && !(bound instanceof Number)) {
+                return ValueSlot.toDouble(bound);
+            }
+            return bound;
+        }
+
+        if (value.isString()) {
+            return value.getText();
+        }
+        try {
+            return Long.parseLong(value.getText());
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(value.getText());
+        }
+    }
+
+    /**
+     * @return function returning signum of comparison of its argument with the expected value, or INCOMPARABLE
+     */
+    private static ToIntFunction<Object> comparator(Object expected) {
+        if (expected instanceof String) {
+            String s = (String) expected;
+            return actual -> (actual instanceof String) ? Integer.signum(((String) actual).compareTo(s)) : INCOMPARABLE;
+        }
+
+        if ((expected instanceof Long) || (expected instanceof Integer) || (expected instanceof Short) || (expected instanceof Byte)) {
+            long l = ((Number) expected).longValue();
+            return actual -> (actual instanceof Long) ? Long.compare((Long) actual, l)
+                    : (actual instanceof Number) ? Integer.signum(Double.compare(((Number) actual).doubleValue(), l)) : INCOMPARABLE;
+        }
+
+        if (expected instanceof Number) {
+            double d = ((Number) expected).doubleValue();
+            return actual -> (actual instanceof Number) ? Integer.signum(Double.compare(((Number) actual).doubleValue(), d)) : INCOMPARABLE;
+        }
+
+        throw new RuntimeException("Can't compare with " + expected + " on client");
+    }
+
+    private static IntPredicate result(WhereNode.CompareOp op) {
+        switch (op) {
+            case EQ:
+                return c -> c == 0;
+            case NE:
+                return c -> (c == 1) || (c == -1);
+            case LT:
+                return c -> c == -1;
+            case LE:
+                return c -> (c == -1) || (c == 0);
+            case GT:
+                return c -> c == 1;
+            default:
+                return c -> (c == 0) || (c == 1);
+        }
+    }
+
+    private static Pattern pattern(String regex) {
+        int regexFlags = PredExpCompiler.regexFlags(regex);
+
+        int flags = 0;
+        if ((regexFlags & RegexFlag.ICASE) != 0) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        if ((regexFlags & RegexFlag.NEWLINE) != 0) {
+            flags |= Pattern.MULTILINE;
+        } else {
+            flags |= Pattern.DOTALL;
+        }
+
+        return Pattern.compile(PredExpCompiler.regexPattern(regex), flags);
+    }
+
+    private static final class Evaluable implements WhereNode.Visitor<Boolean> {
+        private static final Evaluable INSTANCE = new Evaluable();
+
+        @Override
+        public Boolean visitLogic(WhereNode.Logic logic) {
+            for (WhereNode operand : logic.getOperands()) {
+                if (!operand.accept(this)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visitCompare(WhereNode.Compare compare) {
+            return compare.getMeta() == null;
+        }
+
+        @Override
+        public Boolean visitIterate(WhereNode.Iterate iterate) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitGeo(WhereNode.Geo geo) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.exp.Exp;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of complete Statement results for {@link QueryExecutor}, keyed by the wire form of the statement, so textually
+ * different but equivalent queries share entries. Entries expire after TTL, and the least recently used ones are
+ * evicted when the total estimated size of cached records exceeds the bound.
+ * <p>
+ * With LUT refresh, a hit within TTL doesn't return the entry as is. Instead, two narrow queries fetch records
+ * updated since the entry snapshot that still match, and those that don't match anymore, and the entry is patched.
+ * Deleted records can't be detected this way, and stay in the entry until it expires. Neither can records whose indexed
+ * bin was changed so they don't match the Filter anymore, as the secondary index doesn't return them at all, so
+ * statements with a Filter aren't refreshed, and their entries are served as is until they expire.
+ */
+public final class ResultCache {
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long refreshSkewMillis;
+
+    private final LinkedHashMap<ByteBuffer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResultCache(long maxBytes, long ttl, TimeUnit unit) {
+        this(maxBytes, unit.toMillis(ttl), -1L);
+    }
+
+    private ResultCache(long maxBytes, long ttlMillis, long refreshSkewMillis) {
+        if ((maxBytes < 0L) || (ttlMillis < 0L)) {
+            throw new IllegalArgumentException("Cache size and TTL must be non-negative");
+        }
+
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.refreshSkewMillis = refreshSkewMillis;
+    }
+
+    /**
+     * Returns a separate empty cache with the same bounds, which refreshes hits by last update time of records.
+     *
+     * @param clockSkew maximal difference between client and server clocks. Records updated within that period
+     *                  before the snapshot are re-fetched too
+     */
+    public ResultCache withLutRefresh(long clockSkew, TimeUnit unit) {
+        if (clockSkew < 0L) {
+            throw new IllegalArgumentException("Clock skew must be non-negative");
+        }
+        return new ResultCache(maxBytes, ttlMillis, unit.toMillis(clockSkew));
+    }
+
+    public boolean refreshes() {
+        return refreshSkewMillis >= 0L;
+    }
+
+    /**
+     * @return true if hits of the statement are refreshed, which needs LUT refresh and no Filter
+     */
+    boolean refreshes(Statement statement) {
+        return refreshes() && (statement.getFilter() == null);
+    }
+
+    /**
+     * @param filterExp filter expression the statement is run with, or null
+     */
+    static ByteBuffer key(Statement statement, Expression filterExp) {
+        StringBuilder header = new StringBuilder(statement.getNamespace()).append('\0');
+        if (statement.getSetName() != null) {
+            header.append(statement.getSetName());
+        }
+        header.append('\0');
+        if (statement.getBinNames() != null) {
+            for (String bin : statement.getBinNames()) {
+                header.append(bin).append(',');
+            }
+        } else {
+            header.append('*');
+        }
+        header.append('\0');
+
+        Filter filter = statement.getFilter();
+        PredExp[] predExp = statement.getPredExp();
+
+        int size = 0;
+        if (filter != null) {
+            header.append(filter.getCollectionType());
+            size += filter.estimateSize();
+        }
+        if (predExp != null) {
+            size += PredExp.estimateSize(predExp);
+        }
+        if (filterExp != null) {
+            // tells the filter expression from PredExp of the same length
+            header.append('\0');
+            size += filterExp.size();
+        }
+
+        byte[] head = header.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] key = Arrays.copyOf(head, head.length + size);
+        int offset = head.length;
+        if (filter != null) {
+            offset = filter.write(key, offset);
+        }
+        if (predExp != null) {
+            offset = PredExp.write(predExp, key, offset);
+        }
+        if (filterExp != null) {
+            byte[] bytes = filterExp.getBytes();
+            System.arraycopy(bytes, 0, key, offset, bytes.length);
+        }
+
+        return ByteBuffer.wrap(key);
+    }
+
+    /**
+     * Statement returning records updated since snapshot, which match the statement or, if unmatched is set,
+     * don't. Returns null if there is no such statement.
+     */
+    static Statement updatedSince(Statement statement, long snapshotMillis, boolean unmatched) {
+        PredExp[] predExp = statement.getPredExp();
+        if (unmatched && (predExp == null)) {
+            return null;
+        }
+
+        int size = (predExp == null) ? 0 : predExp.length;
+        PredExp[] updated = Arrays.copyOf((predExp == null) ? new PredExp[0] : predExp, size + (unmatched ? 5 : 4));
+        if (unmatched) {
+            updated[size++] = PredExp.not();
+        }
+        updated[size++] = PredExp.recLastUpdate();
+        updated[size++] = PredExp.integerValue(TimeUnit.MILLISECONDS.toNanos(snapshotMillis));
+        updated[size++] = PredExp.integerGreaterEq();
+        if (predExp != null) {
+            updated[size++] = PredExp.and(2);
+        }
+        updated = Arrays.copyOf(updated, size);
+
+        Statement delta = new Statement();
+        delta.setNamespace(statement.getNamespace());
+        delta.setSetName(statement.getSetName());
+        delta.setBinNames(statement.getBinNames());
+        delta.setFilter(statement.getFilter());
+        delta.setPredExp(updated);
+        return delta;
+    }
+
+    /**
+     * Same as above, for a statement run with a filter expression.
+     */
+    static Expression updatedSince(Expression filterExp, long snapshotMillis, boolean unmatched) {
+        return Exp.build(Exp.and(
+                unmatched ? Exp.not(Exp.expr(filterExp)) : Exp.expr(filterExp),
+                Exp.ge(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(snapshotMillis)))
+        ));
+    }
+
+    /**
+     * @param refresh true if the entry is going to be refreshed before use
+     * @return entry if it isn't expired, or null
+     */
+    synchronized Entry get(ByteBuffer key, long nowMillis, boolean refresh) {
+        Entry entry = entries.get(key);
+        if ((entry != null) && (nowMillis - entry.createdMillis >= ttlMillis)) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.increment();
+        } else if (refresh) {
+            refreshes.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    synchronized void put(ByteBuffer key, Entry entry) {
+        remove(key);
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+
+        entries.put(key, entry);
+        bytes += entry.bytes;
+
+        Iterator<Entry> lru = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= lru.next().bytes;
+            lru.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(ByteBuffer key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0L;
+    }
+
+    /**
+     * @return true if an entry of that estimated size would be dropped by {@link #put} anyway
+     */
+    boolean exceeds(long bytes) {
+        return bytes > maxBytes;
+    }
+
+    long snapshotMillis(long startedMillis) {
+        return startedMillis - Math.max(refreshSkewMillis, 0L);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), refreshes.sum(), evictions.sum(), entries.size(), bytes);
+    }
+
+    static final class Entry {
+        final KeyRecord[] records;
+        final long createdMillis;
+        final long snapshotMillis;
+        final long bytes;
+
+        static final long OVERHEAD = 64L;
+
+        Entry(Collection<KeyRecord> records, long createdMillis, long snapshotMillis) {
+            this.records = records.toArray(new KeyRecord[0]);
+            this.createdMillis = createdMillis;
+            this.snapshotMillis = snapshotMillis;
+
+            long size = OVERHEAD;
+            for (KeyRecord record : this.records) {
+                size += sizeOf(record);
+            }
+            this.bytes = size;
+        }
+
+        /**
+         * @return copy of this entry with updated records replaced and unmatched ones removed, keeping creation time
+         */
+        Entry patch(Collection<KeyRecord> updated, Collection<KeyRecord> unmatched, long snapshotMillis) {
+            Map<ByteBuffer, KeyRecord> patched = new LinkedHashMap<>();
+            for (KeyRecord record : records) {
+                patched.put(ByteBuffer.wrap(record.key.digest), record);
+            }
+            for (KeyRecord record : updated) {
+                patched.put(ByteBuffer.wrap(record.key.digest), record);
+            }
+            for (KeyRecord record : unmatched) {
+                patched.remove(ByteBuffer.wrap(record.key.digest));
+            }
+
+            return new Entry(patched.values(), createdMillis, snapshotMillis);
+        }
+    }
+
+    /**
+     * Rough estimate of heap footprint of a record.
+     */
+    static long sizeOf(KeyRecord record) {
+        long size = 96L;
+        if ((record.record != null) && (record.record.bins != null)) {
+            for (Map.Entry<String, Object> bin : record.record.bins.entrySet()) {
+                size += 32L + sizeOf(bin.getKey()) + sizeOf(bin.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof String) {
+            return 40L + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16L + ((byte[]) value).length;
+        }
+        if (value instanceof Collection) {
+            long size = 40L;
+            for (Object element : (Collection<?>) value) {
+                size += 8L + sizeOf(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 48L;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 32L + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        return 16L;
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long refreshes;
+        private final long evictions;
+        private final int size;
+        private final long bytes;
+
+        private Stats(long hits, long misses, long refreshes, long evictions, int size, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.refreshes = refreshes;
+            this.evictions = evictions;
+            this.size = size;
+            this.bytes = bytes;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        /**
+         * @return number of hits served after LUT refresh
+         */
+        public long refreshes() {
+            return refreshes;
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        /**
+         * @return share of requests served from the cache, including refreshed ones
+         */
+        public double hitRatio() {
+            long requests = hits + refreshes + misses;
+            return (requests == 0) ? 0.D : (double) (hits + refreshes) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "ResultCache.Stats{hits=" + hits + ", misses=" + misses + ", refreshes=" + refreshes + ", evictions=" + evictions + ", size=" + size + ", bytes=" + bytes + "}";
+        }
+    }
+}
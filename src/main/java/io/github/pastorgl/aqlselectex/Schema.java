@@ -0,0 +1,180 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schema of an instance, created from a {@link Snapshot}. Schemas of namespace[.set]s may be replaced at runtime by
+ * reload, each bumping its version, so after that it no longer corresponds to the snapshot.
+ */
+public final class Schema {
+    private final Snapshot snapshot;
+    private final ConcurrentHashMap<String, SetSchema> sets = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    Schema(Snapshot snapshot) {
+        this.snapshot = snapshot;
+        for (Map.Entry<String, Map<String, Integer>> set : snapshot.binTypes.entrySet()) {
+            sets.put(set.getKey(), new SetSchema(set.getValue(), snapshot.indexes.getOrDefault(set.getKey(), Collections.emptyMap()), version.get()));
+        }
+        for (Map.Entry<String, Map<String, IndexCollectionType>> set : snapshot.indexes.entrySet()) {
+            if (!sets.containsKey(set.getKey())) {
+                sets.put(set.getKey(), new SetSchema(Collections.emptyMap(), set.getValue(), version.get()));
+            }
+        }
+    }
+
+    /**
+     * @return snapshot this schema was created from
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return true if any namespace[.set] has been reloaded, so the schema no longer corresponds to its snapshot
+     */
+    boolean isReloaded() {
+        return version.get() != 0L;
+    }
+
+    /**
+     * @return fingerprint of the snapshot this schema was created from, which doesn't change on reload
+     */
+    public long getFingerprint() {
+        return snapshot.fingerprint;
+    }
+
+    /**
+     * @return schema of namespace[.set], or null if it isn't known
+     */
+    public SetSchema get(String fqns) {
+        return sets.get(fqns);
+    }
+
+    public Map<String, SetSchema> getSets() {
+        return new HashMap<>(sets);
+    }
+
+    SetSchema reload(String fqns, Map<String, Integer> binTypes, Map<String, IndexCollectionType> indexes) {
+        SetSchema setSchema = new SetSchema(binTypes, indexes, version.incrementAndGet());
+        sets.put(fqns, setSchema);
+        return setSchema;
+    }
+
+    static long fingerprint(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes) {
+        // order-independent, so that it doesn't depend on the Map implementation
+        long fingerprint = schema.size();
+        for (Map.Entry<String, Map<String, Integer>> set : schema.entrySet()) {
+            long setHash = hash(set.getKey());
+            for (Map.Entry<String, Integer> bin : set.getValue().entrySet()) {
+                setHash += mix(hash(bin.getKey()) ^ bin.getValue());
+            }
+            fingerprint += mix(setHash);
+        }
+        for (Map.Entry<String, Map<String, IndexCollectionType>> set : indexes.entrySet()) {
+            long setHash = ~hash(set.getKey());
+            for (Map.Entry<String, IndexCollectionType> index : set.getValue().entrySet()) {
+                setHash += mix(hash(index.getKey()) ^ ~index.getValue().ordinal());
+            }
+            fingerprint += mix(setHash);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Immutable copy of a source schema Map, with its fingerprint computed once. Snapshots are equal if their
+     * schemas are; the fingerprint is only a shortcut, so colliding schemas don't get mixed up. Holding a snapshot
+     * makes {@link AQLSelectEx#forSchema(Snapshot)} a constant-time lookup.
+     */
+    public static final class Snapshot {
+        private final Map<String, Map<String, Integer>> binTypes;
+        private final Map<String, Map<String, IndexCollectionType>> indexes;
+        private final long fingerprint;
+
+        private Snapshot(Map<String, Map<String, Integer>> binTypes, Map<String, Map<String, IndexCollectionType>> indexes, long fingerprint) {
+            this.binTypes = binTypes;
+            this.indexes = indexes;
+            this.fingerprint = fingerprint;
+        }
+
+        public static Snapshot of(Map<String, Map<String, Integer>> schema) {
+            return of(schema, Collections.emptyMap());
+        }
+
+        public static Snapshot of(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes) {
+            Map<String, Map<String, Integer>> binTypes = copy(schema);
+            Map<String, Map<String, IndexCollectionType>> indexesCopy = copy(indexes);
+            return new Snapshot(binTypes, indexesCopy, fingerprint(binTypes, indexesCopy));
+        }
+
+        /**
+         * @return key equal to the snapshot of source Maps, which refers to them instead of copying, to look
+         * registered snapshots up. It mustn't outlive the call, as the source Maps may change
+         */
+        static Snapshot view(Map<String, Map<String, Integer>> schema, Map<String, Map<String, IndexCollectionType>> indexes) {
+            return new Snapshot(schema, indexes, fingerprint(schema, indexes));
+        }
+
+        private static <T> Map<String, Map<String, T>> copy(Map<String, Map<String, T>> source) {
+            HashMap<String, Map<String, T>> copy = new HashMap<>();
+            for (Map.Entry<String, Map<String, T>> set : source.entrySet()) {
+                copy.put(set.getKey(), Collections.unmodifiableMap(new HashMap<>(set.getValue())));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+
+        public Map<String, Map<String, Integer>> getBinTypes() {
+            return binTypes;
+        }
+
+        public Map<String, Map<String, IndexCollectionType>> getIndexes() {
+            return indexes;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot other = (Snapshot) o;
+            return (fingerprint == other.fingerprint) && binTypes.equals(other.binTypes) && indexes.equals(other.indexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+    }
+
+    static long hash(String s) {
+        // 64-bit FNV-1a
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    static long mix(long h) {
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
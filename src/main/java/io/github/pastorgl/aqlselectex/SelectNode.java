@@ -0,0 +1,178 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Root of a parsed SELECT.
+ */
+public final class SelectNode {
+    public static final long NO_LIMIT = -1L;
+
+    private final List<String> binNames;
+    private final String namespace;
+    private final String setName;
+    private final IndexNode index;
+    private final WhereNode where;
+    private final List<String> paramNames;
+    private final long limit;
+    private final long offset;
+    private final WhereNode residual;
+    private final List<AggregateNode> aggregates;
+    private final List<String> groupBy;
+    private final OrderNode order;
+
+    public SelectNode(List<String> binNames, String namespace, String setName, IndexNode index, WhereNode where, List<String> paramNames) {
+        this(binNames, namespace, setName, index, where, paramNames, NO_LIMIT, 0L);
+    }
+
+    public SelectNode(List<String> binNames, String namespace, String setName, IndexNode index, WhereNode where, List<String> paramNames, long limit, long offset) {
+        this(binNames, namespace, setName, index, where, paramNames, limit, offset, null, Collections.emptyList(), Collections.emptyList(), null);
+    }
+
+    private SelectNode(List<String> binNames, String namespace, String setName, IndexNode index, WhereNode where, List<String> paramNames, long limit, long offset, WhereNode residual,
+                       List<AggregateNode> aggregates, List<String> groupBy, OrderNode order) {
+        this.binNames = (binNames == null) ? null : Collections.unmodifiableList(binNames);
+        this.namespace = namespace;
+        this.setName = setName;
+        this.index = index;
+        this.where = where;
+        this.paramNames = Collections.unmodifiableList(paramNames);
+        this.limit = limit;
+        this.offset = offset;
+        this.residual = residual;
+        this.aggregates = Collections.unmodifiableList(aggregates);
+        this.groupBy = Collections.unmodifiableList(groupBy);
+        this.order = order;
+    }
+
+    /**
+     * @return projected bins, or null for SELECT *
+     */
+    public List<String> getBinNames() {
+        return binNames;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getSetName() {
+        return setName;
+    }
+
+    public String getFqns() {
+        return (setName == null) ? namespace : namespace + "." + setName;
+    }
+
+    public IndexNode getIndex() {
+        return index;
+    }
+
+    public WhereNode getWhere() {
+        return where;
+    }
+
+    /**
+     * @return names of parameters in order of their first appearance, with null for positional ones
+     */
+    public List<String> getParamNames() {
+        return paramNames;
+    }
+
+    /**
+     * @return maximum number of records to return, or {@link #NO_LIMIT}
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of records to skip before the first returned one
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return part of WHERE to be evaluated on the client, ANDed with {@link #getWhere()}, or null
+     */
+    public WhereNode getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return aggregate functions of the SELECT list, in order of appearance, or an empty list
+     */
+    public List<AggregateNode> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * @return bins of GROUP BY, or an empty list
+     */
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * @return true if the query returns a row per group of records instead of records
+     */
+    public boolean isAggregate() {
+        return !aggregates.isEmpty() || !groupBy.isEmpty();
+    }
+
+    /**
+     * @return ORDER BY, or null
+     */
+    public OrderNode getOrder() {
+        return order;
+    }
+
+    /**
+     * Adds aggregate functions and GROUP BY. Bins of the SELECT list then must all be in GROUP BY.
+     */
+    public SelectNode withAggregation(List<AggregateNode> aggregates, List<String> groupBy) {
+        if (binNames == null) {
+            throw new RuntimeException("SELECT * can't be used with aggregate functions or GROUP BY");
+        }
+        for (String binName : binNames) {
+            if (!groupBy.contains(binName)) {
+                throw new RuntimeException("Bin " + binName + " must be in GROUP BY, or used in an aggregate function");
+            }
+        }
+
+        return new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset, residual, aggregates, groupBy, order);
+    }
+
+    /**
+     * Adds ORDER BY, which must be combined with LIMIT, so only LIMIT + OFFSET records have to be kept. An aggregate
+     * query can be ordered by a bin or an aggregate function of its SELECT list, and a query of records by any bin.
+     */
+    public SelectNode withOrder(OrderNode order) {
+        if (limit == NO_LIMIT) {
+            throw new RuntimeException("ORDER BY must be combined with LIMIT");
+        }
+        if (order.getAggregate() != null) {
+            if (!aggregates.contains(order.getAggregate())) {
+                throw new RuntimeException("Aggregate function " + order.getAggregate() + " of ORDER BY must be in the SELECT list");
+            }
+        } else if (isAggregate() && !binNames.contains(order.getBin())) {
+            throw new RuntimeException("Bin " + order.getBin() + " of ORDER BY must be in the SELECT list of an aggregate query");
+        }
+
+        return new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset, residual, aggregates, groupBy, order);
+    }
+
+    public SelectNode withResidual(WhereNode residual) {
+        return new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset, residual, aggregates, groupBy, order);
+    }
+
+    public SelectNode withIndex(IndexNode index) {
+        return new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset, residual, aggregates, groupBy, order);
+    }
+
+    public SelectNode withWhere(WhereNode where) {
+        return new SelectNode(binNames, namespace, setName, index, where, paramNames, limit, offset, residual, aggregates, groupBy, order);
+    }
+}
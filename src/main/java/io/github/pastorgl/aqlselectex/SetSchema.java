@@ -0,0 +1,118 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.IndexCollectionType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled schema of a single namespace[.set]. MAP and LIST bin variables, which are given as "bin.var" keys in the
+ * source schema, are kept in a nested table of their bin, so lookups need neither concatenation nor boxing.
+ * Bins could also have secondary indexes declared on them.
+ */
+public final class SetSchema {
+    static final SetSchema EMPTY = new SetSchema(Collections.emptyMap(), 0);
+
+    private final Map<String, Integer> binTypes;
+    private final Map<String, IndexCollectionType> indexes;
+    private final HashMap<String, Bin> bins = new HashMap<>();
+    private final long version;
+
+    SetSchema(Map<String, Integer> binTypes, long version) {
+        this(binTypes, Collections.emptyMap(), version);
+    }
+
+    SetSchema(Map<String, Integer> binTypes, Map<String, IndexCollectionType> indexes, long version) {
+        this.binTypes = Collections.unmodifiableMap(new HashMap<>(binTypes));
+        this.indexes = Collections.unmodifiableMap(new HashMap<>(indexes));
+        this.version = version;
+
+        for (Map.Entry<String, Integer> binType : binTypes.entrySet()) {
+            String key = binType.getKey();
+            int type = binType.getValue();
+
+            int dot = key.indexOf('.');
+            if (dot < 0) {
+                bins.computeIfAbsent(key, Bin::new).type = type;
+            } else {
+                Bin bin = bins.computeIfAbsent(key.substring(0, dot), Bin::new);
+                if (bin.vars == null) {
+                    bin.vars = new HashMap<>();
+                }
+                bin.vars.computeIfAbsent(key.substring(dot + 1), Bin::new).type = type;
+            }
+        }
+
+        for (Map.Entry<String, IndexCollectionType> index : indexes.entrySet()) {
+            bins.computeIfAbsent(index.getKey(), Bin::new).index = index.getValue();
+        }
+    }
+
+    public Map<String, Integer> getBinTypes() {
+        return binTypes;
+    }
+
+    public Map<String, IndexCollectionType> getIndexes() {
+        return indexes;
+    }
+
+    public boolean hasIndexes() {
+        return !indexes.isEmpty();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return bin, or null if it isn't in the schema
+     */
+    public Bin bin(String name) {
+        return bins.get(name);
+    }
+
+    public int binType(String name) {
+        Bin bin = bins.get(name);
+        return (bin == null) ? ParticleType.STRING : bin.type;
+    }
+
+    public static final class Bin {
+        private final String name;
+        private int type = ParticleType.STRING;
+        private HashMap<String, Bin> vars;
+        private IndexCollectionType index;
+
+        private Bin(String name) {
+            this.name = name.intern();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return collection type of the secondary index on this bin, or null if the bin isn't indexed
+         */
+        public IndexCollectionType getIndex() {
+            return index;
+        }
+
+        /**
+         * @return variable of MAP or LIST bin, or null if it isn't in the schema
+         */
+        public Bin var(String name) {
+            return (vars == null) ? null : vars.get(name);
+        }
+
+        public int varType(String name) {
+            Bin var = var(name);
+            return (var == null) ? ParticleType.STRING : var.type;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.pastorgl.aqlselectex;
+
+/**
+ * Literal value or parameter reference in a query. Numeric literals are kept as their text, because their final
+ * type is known only after resolving the bin they are compared with.
+ */
+public final class ValueNode {
+    private final String text;
+    private final boolean string;
+    private final int param;
+
+    private ValueNode(String text, boolean string, int param) {
+        this.text = text;
+        this.string = string;
+        this.param = param;
+    }
+
+    public static ValueNode numeric(String text) {
+        return new ValueNode(text, false, -1);
+    }
+
+    public static ValueNode string(String text) {
+        return new ValueNode(text, true, -1);
+    }
+
+    public static ValueNode param(int ordinal) {
+        return new ValueNode(null, false, ordinal);
+    }
+
+    public boolean isParam() {
+        return param >= 0;
+    }
+
+    public boolean isString() {
+        return string;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return ordinal of the parameter, or -1 for literals
+     */
+    public int getParam() {
+        return param;
+    }
+
+    public long longValue() {
+        return Long.parseLong(text);
+    }
+
+    public long truncatedValue() {
+        try {
+            return Long.parseLong(text.startsWith("+") ? text.substring(1) : text);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(text);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValueNode)) {
+            return false;
+        }
+        ValueNode other = (ValueNode) o;
+        return (string == other.string) && (param == other.param) && ((text == null) ? other.text == null : text.equals(other.text));
+    }
+
+    @Override
+    public int hashCode() {
+        return ((text == null) ? 0 : text.hashCode()) * 31 + (string ? 1 : 0) + param * 7;
+    }
+
+    @Override
+    public String toString() {
+        if (isParam()) {
+            return "?" + (param + 1);
+        }
+        return string ? "'" + text.replace("'", "''") + "'" : text;
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.query.PredExp;
+
+final class ValueSlot {
+    // ordinals of PredExpTemplate.SlotKind
+    static final int INTEGER = 0;
+    static final int DOUBLE = 1;
+    static final int STRING = 2;
+    static final int GEOJSON = 3;
+    static final int REGEX = 4;
+    static final int DIGEST_MODULO = 5;
+
+    final int index;
+    final int kind;
+    final int param;
+
+    ValueSlot(int index, int kind, int param) {
+        this.index = index;
+        this.kind = kind;
+        this.param = param;
+    }
+
+    void bind(PredExp[] predExp, Object value) {
+        switch (kind) {
+            case INTEGER: {
+                predExp[index] = PredExp.integerValue(toLong(value));
+            }
+            break;
+            case DOUBLE: {
+                predExp[index] = PredExp.integerValue(toDouble(value).longValue());
+            }
+            break;
+            case STRING: {
+                predExp[index] = PredExp.stringValue(value.toString());
+            }
+            break;
+            case GEOJSON: {
+                predExp[index] = PredExp.geoJSONValue(value.toString());
+            }
+            break;
+            case REGEX: {
+                String pattern = value.toString();
+                predExp[index] = PredExp.stringValue(PredExpCompiler.regexPattern(pattern));
+                predExp[index + 1] = PredExp.stringRegex(PredExpCompiler.regexFlags(pattern));
+            }
+            break;
+            case DIGEST_MODULO: {
+                predExp[index] = PredExp.recDigestModulo(toDouble(value).intValue());
+            }
+            break;
+        }
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.valueOf(value.toString());
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import org.antlr.v4.runtime.dfa.DFA;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Primes the lexer and parser DFA caches, which are static and shared by all instances, with a corpus that covers
+ * every grammar rule alternative.
+ */
+final class WarmUp {
+    static final String[] CORPUS = {
+            "SELECT * FROM ns",
+            "SELECT foo FROM ns.sett",
+            "select foo, \"bar\", baz, PK from ns.sett",
+            "SELECT foo FROM ns.sett WITH (baz = 'a')",
+            "SELECT foo FROM ns.sett USE (foo == 200)",
+            "SELECT foo FROM ns.sett WITH DEFAULT (foo = -1.5e3)",
+            "SELECT foo FROM ns.sett WITH LIST (li CONTAINS 100)",
+            "SELECT foo FROM ns.sett WITH MAPKEYS (ma CONTAINS 'a')",
+            "SELECT foo FROM ns.sett WITH MAPVALUES (ma CONTAINS ?)",
+            "SELECT foo FROM ns.sett WITH (foo BETWEEN 100 AND 200)",
+            "SELECT foo FROM ns.sett WITH (foo BETWEEN :lo AND :hi)",
+            "SELECT foo FROM ns.sett WITH (gj CONTAINS CAST('{}' AS GEOJSON))",
+            "SELECT foo FROM ns.sett WITH (gj WITHIN GEOJSON(?))",
+            "SELECT foo FROM ns.sett WHERE baz = 'a' AND baz == 'b' OR baz != 'c' AND NOT baz <> 'd'",
+            "SELECT foo FROM ns.sett WHERE foo = 1 AND foo == +2 AND foo != -3 AND foo <> 4.0",
+            "SELECT foo FROM ns.sett WHERE (foo < 1 OR foo <= 2) AND (bar > 3.5 OR bar >= -.5e-1)",
+            "SELECT foo FROM ns.sett WHERE LUT > 0 AND RECSIZE < 1000 AND TTL >= 10 AND DIGEST(3) = 1",
+            "SELECT foo FROM ns.sett WHERE LUT > ? AND DIGEST(:mod) = :rem",
+            "SELECT foo FROM ns.sett WHERE foo > ? AND bar <= :bar AND baz = ? AND baz LIKE :re",
+            "SELECT foo FROM ns.sett WHERE baz LIKE '/sparta.*/ie?' OR baz MATCH 'a' OR baz REGEXP '/b/s'",
+            "SELECT foo FROM ns.sett WHERE ma MAPKEYS (ke = 'a') OR ma ANY MAPKEYS (ko <= 5)",
+            "SELECT foo FROM ns.sett WHERE ma MAPVALUES (ko != 1) OR ma ANY MAPVALUES (ke = ?)",
+            "SELECT foo FROM ns.sett WHERE li CONTAINS (ke = 'a') AND li ANY CONTAINS (ko > :ko)",
+            "SELECT foo FROM ns.sett WHERE gj CONTAINS CAST('{}' AS GEOJSON) OR gj WITHIN GEOJSON('{}')",
+            "SELECT foo FROM ns.sett WHERE NOT (gj WITHIN CAST(? AS GEOJSON)) AND NOT NOT foo = 1",
+            "SELECT foo FROM ns.sett WHERE ((foo > 1 AND (bar < 2 OR NOT (baz = 'x'))) OR foo = 3) AND bar != 4",
+            "SELECT foo FROM ns.sett WHERE foo = 1 OR foo = 2 OR foo = 3 OR foo = 4 OR foo = 5 OR foo = 6",
+            "SELECT foo FROM ns.sett WHERE gj WITHIN CAST('' AS DECIMAL) OR gj WITHIN INT('') OR gj WITHIN NUMERIC('')",
+            "SELECT foo FROM ns.sett WHERE gj WITHIN FLOAT('') OR gj WITHIN REAL('') OR gj WITHIN JSON('')",
+            "SELECT foo FROM ns.sett WHERE gj WITHIN LIST('') OR gj WITHIN MAP('') OR gj WITHIN CHAR('')",
+            "SELECT foo FROM ns.sett WHERE gj WITHIN STRING('') OR gj WITHIN TEXT('') OR gj WITHIN VARCHAR('')",
+            "SELECT foo FROM ns.sett WHERE foo IN (1, ?, 3) AND baz NOT IN ('a') OR bar NOT BETWEEN 1 AND :hi LIMIT 10 OFFSET 20",
+            "SELECT COUNT(*), COUNT(baz), SUM(foo), MIN(bar), MAX(foo), AVG(bar) FROM ns.sett WHERE foo > 0",
+            "SELECT baz, COUNT(*), AVG(foo) FROM ns.sett WITH (baz = ?) GROUP BY baz, foo LIMIT 5",
+            "SELECT foo, baz FROM ns.sett WHERE bar > ? ORDER BY bar DESC LIMIT 50",
+            "SELECT baz, MAX(foo) FROM ns.sett GROUP BY baz ORDER BY MAX(foo) ASC LIMIT 3 OFFSET 1",
+    };
+
+    private static final Map<String, Map<String, Integer>> SCHEMA = new HashMap<String, Map<String, Integer>>() {{
+        put("ns.sett", new HashMap<String, Integer>() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+            put("li", ParticleType.LIST);
+            put("li.ko", ParticleType.INTEGER);
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.INTEGER);
+        }});
+    }};
+
+    private WarmUp() {
+    }
+
+    static WarmUpReport run(AQLSelectEx selectEx) {
+        int statesBefore = dfaStates();
+        int failed = 0;
+
+        long start = System.nanoTime();
+        for (String select : CORPUS) {
+            try {
+                selectEx.compile(select);
+            } catch (Exception e) {
+                // corpus also goes through error reporting paths, and those are expected to throw
+                failed++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        int statesAfter = dfaStates();
+        return new WarmUpReport(nanos, CORPUS.length, failed, statesAfter - statesBefore, statesAfter);
+    }
+
+    static Map<String, Map<String, Integer>> schema() {
+        return SCHEMA;
+    }
+
+    static int dfaStates() {
+        return dfaStates(AQLSelectExLexer._decisionToDFA) + dfaStates(AQLSelectExParser._decisionToDFA);
+    }
+
+    private static int dfaStates(DFA[] decisionToDFA) {
+        int states = 0;
+        for (DFA dfa : decisionToDFA) {
+            states += dfa.states.size();
+        }
+        return states;
+    }
+}
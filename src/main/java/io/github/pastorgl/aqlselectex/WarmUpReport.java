@@ -0,0 +1,58 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.concurrent.TimeUnit;
+
+public final class WarmUpReport {
+    private final long nanos;
+    private final int queries;
+    private final int failed;
+    private final int dfaStatesCreated;
+    private final int dfaStates;
+
+    WarmUpReport(long nanos, int queries, int failed, int dfaStatesCreated, int dfaStates) {
+        this.nanos = nanos;
+        this.queries = queries;
+        this.failed = failed;
+        this.dfaStatesCreated = dfaStatesCreated;
+        this.dfaStates = dfaStates;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return number of corpus queries that didn't compile (they still prime the DFA along the way)
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return lexer and parser DFA states created by this warm-up
+     */
+    public int getDfaStatesCreated() {
+        return dfaStatesCreated;
+    }
+
+    /**
+     * @return total lexer and parser DFA states after this warm-up
+     */
+    public int getDfaStates() {
+        return dfaStates;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{" + queries + " queries (" + failed + " failed) in " + getMillis() + " ms, "
+                + dfaStatesCreated + " DFA states created, " + dfaStates + " total}";
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+
+/**
+ * WHERE is parsed as a flat sequence of atoms, parentheses and logical operators, which is then put together by
+ * Shunting Yard, but straight into the tree instead of RPN. Shared by both parser engines, so they agree on
+ * precedence and on what is an error.
+ */
+final class WhereBuilder {
+    // null stands for an open parenthesis
+    private final Deque<WhereNode.LogicOp> ops = new LinkedList<>();
+    private final Deque<WhereNode> operands = new ArrayDeque<>();
+
+    // number of sequence elements seen so far
+    private int i;
+
+    void atom(WhereNode atom) {
+        operands.push(atom);
+        i++;
+    }
+
+    void op(WhereNode.LogicOp op) {
+        // NOT is a prefix operator, so it can't take anything from the stack yet
+        if (op != WhereNode.LogicOp.NOT) {
+            while (!ops.isEmpty() && isHigherOrSameOp(ops.peek(), op)) {
+                reduce(ops.pop());
+            }
+        }
+        ops.push(op);
+        i++;
+    }
+
+    void open() {
+        ops.push(null);
+        i++;
+    }
+
+    void close() {
+        while (!ops.isEmpty() && (ops.peek() != null)) {
+            reduce(ops.pop());
+        }
+        if (ops.isEmpty()) {
+            throw new RuntimeException("Mismatched parentheses at WHERE token #" + i);
+        }
+        ops.pop();
+        i++;
+    }
+
+    WhereNode build() {
+        while (!ops.isEmpty()) {
+            WhereNode.LogicOp op = ops.pop();
+            if (op == null) {
+                throw new RuntimeException("Mismatched parentheses at WHERE token #" + i);
+            }
+            reduce(op);
+        }
+
+        if (operands.size() != 1) {
+            throw new RuntimeException("Missing logical operator in WHERE");
+        }
+        return operands.pop();
+    }
+
+    private static boolean isHigherOrSameOp(WhereNode.LogicOp stacked, WhereNode.LogicOp incoming) {
+        // open parenthesis
+        if (stacked == null) {
+            return false;
+        }
+
+        // NOT > AND > OR, all left-associative
+        return stacked.ordinal() <= incoming.ordinal();
+    }
+
+    private void reduce(WhereNode.LogicOp op) {
+        if (op == WhereNode.LogicOp.NOT) {
+            if (operands.isEmpty()) {
+                throw new RuntimeException("Missing operand of NOT at WHERE token #" + i);
+            }
+            operands.push(new WhereNode.Logic(op, operands.pop()));
+        } else {
+            if (operands.size() < 2) {
+                throw new RuntimeException("Missing operand of " + op + " at WHERE token #" + i);
+            }
+            WhereNode right = operands.pop();
+            WhereNode left = operands.pop();
+            operands.push(new WhereNode.Logic(op, left, right));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Node of a WHERE expression tree.
+ */
+public abstract class WhereNode {
+    public enum LogicOp {
+        NOT, AND, OR
+    }
+
+    public enum CompareOp {
+        EQ, NE, LT, LE, GT, GE, REGEX
+    }
+
+    public enum Meta {
+        LUT, RECSIZE, TTL, DIGEST
+    }
+
+    public enum IterateOp {
+        LIST_AND, LIST_OR, MAPKEYS_AND, MAPKEYS_OR, MAPVALUES_AND, MAPVALUES_OR
+    }
+
+    public enum GeoOp {
+        CONTAINS, WITHIN
+    }
+
+    public interface Visitor<R> {
+        R visitLogic(Logic logic);
+
+        R visitCompare(Compare compare);
+
+        R visitIterate(Iterate iterate);
+
+        R visitGeo(Geo geo);
+    }
+
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    /**
+     * NOT, or AND / OR of two or more operands
+     */
+    public static final class Logic extends WhereNode {
+        private final LogicOp op;
+        private final List<WhereNode> operands;
+
+        public Logic(LogicOp op, List<WhereNode> operands) {
+            this.op = op;
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        public Logic(LogicOp op, WhereNode... operands) {
+            this(op, Arrays.asList(operands));
+        }
+
+        public LogicOp getOp() {
+            return op;
+        }
+
+        public List<WhereNode> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitLogic(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Logic) && (op == ((Logic) o).op) && operands.equals(((Logic) o).operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return op.hashCode() * 31 + operands.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            if (op == LogicOp.NOT) {
+                return "NOT (" + operands.get(0) + ")";
+            }
+
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < operands.size(); i++) {
+                if (i > 0) {
+                    sb.append(' ').append(op).append(' ');
+                }
+                sb.append(operands.get(i));
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * bin or record metadata compared with a value, or bin matched against a regex
+     */
+    public static final class Compare extends WhereNode {
+        private final String bin;
+        private final Meta meta;
+        private final ValueNode digestModulo;
+        private final CompareOp op;
+        private final ValueNode value;
+
+        public Compare(String bin, CompareOp op, ValueNode value) {
+            this(bin, null, null, op, value);
+        }
+
+        public Compare(Meta meta, ValueNode digestModulo, CompareOp op, ValueNode value) {
+            this(null, meta, digestModulo, op, value);
+        }
+
+        private Compare(String bin, Meta meta, ValueNode digestModulo, CompareOp op, ValueNode value) {
+            this.bin = bin;
+            this.meta = meta;
+            this.digestModulo = digestModulo;
+            this.op = op;
+            this.value = value;
+        }
+
+        /**
+         * @return bin name, or null if record metadata is compared
+         */
+        public String getBin() {
+            return bin;
+        }
+
+        public Meta getMeta() {
+            return meta;
+        }
+
+        public ValueNode getDigestModulo() {
+            return digestModulo;
+        }
+
+        public CompareOp getOp() {
+            return op;
+        }
+
+        public ValueNode getValue() {
+            return value;
+        }
+
+        public Compare withOp(CompareOp op) {
+            return new Compare(bin, meta, digestModulo, op, value);
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCompare(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Compare)) {
+                return false;
+            }
+            Compare other = (Compare) o;
+            return Objects.equals(bin, other.bin) && (meta == other.meta) && Objects.equals(digestModulo, other.digestModulo)
+                    && (op == other.op) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bin, meta, digestModulo, op, value);
+        }
+
+        @Override
+        public String toString() {
+            String left = (meta == null) ? bin : ((meta == Meta.DIGEST) ? "DIGEST(" + digestModulo + ")" : meta.name());
+            return left + " " + op + " " + value;
+        }
+    }
+
+    /**
+     * MAP or LIST bin elements iterated and compared with a value
+     */
+    public static final class Iterate extends WhereNode {
+        private final String bin;
+        private final IterateOp iterateOp;
+        private final String var;
+        private final CompareOp op;
+        private final ValueNode value;
+
+        public Iterate(String bin, IterateOp iterateOp, String var, CompareOp op, ValueNode value) {
+            this.bin = bin;
+            this.iterateOp = iterateOp;
+            this.var = var;
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getBin() {
+            return bin;
+        }
+
+        public IterateOp getIterateOp() {
+            return iterateOp;
+        }
+
+        public String getVar() {
+            return var;
+        }
+
+        public CompareOp getOp() {
+            return op;
+        }
+
+        public ValueNode getValue() {
+            return value;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIterate(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Iterate)) {
+                return false;
+            }
+            Iterate other = (Iterate) o;
+            return bin.equals(other.bin) && (iterateOp == other.iterateOp) && var.equals(other.var)
+                    && (op == other.op) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bin, iterateOp, var, op, value);
+        }
+
+        @Override
+        public String toString() {
+            return bin + " " + iterateOp + " (" + var + " " + op + " " + value + ")";
+        }
+    }
+
+    /**
+     * GEOJSON bin against a region or point
+     */
+    public static final class Geo extends WhereNode {
+        private final String bin;
+        private final GeoOp op;
+        private final ValueNode value;
+
+        public Geo(String bin, GeoOp op, ValueNode value) {
+            this.bin = bin;
+            this.op = op;
+            this.value = value;
+        }
+
+        public String getBin() {
+            return bin;
+        }
+
+        public GeoOp getOp() {
+            return op;
+        }
+
+        public ValueNode getValue() {
+            return value;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitGeo(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Geo)) {
+                return false;
+            }
+            Geo other = (Geo) o;
+            return bin.equals(other.bin) && (op == other.op) && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bin, op, value);
+        }
+
+        @Override
+        public String toString() {
+            return bin + " " + op + " " + value;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.pastorgl.aqlselectex;
+
+import java.util.*;
+
+/**
+ * Rewrites WHERE tree into an equivalent one that is shorter and cheaper to evaluate:
+ * <ul>
+ * <li>nested AND and OR chains are flattened into a single n-ary node,</li>
+ * <li>duplicate operands of AND and OR are removed, and double NOT is dropped,</li>
+ * <li>NOT is pushed down by De Morgan's laws where that leaves fewer NOTs,</li>
+ * <li>operands are ordered by estimated evaluation cost, cheapest first.</li>
+ * </ul>
+ */
+final class WhereOptimizer implements WhereNode.Visitor<WhereNode> {
+    static final WhereOptimizer INSTANCE = new WhereOptimizer();
+
+    private static final WhereNode.Visitor<Integer> COST = new WhereNode.Visitor<Integer>() {
+        @Override
+        public Integer visitLogic(WhereNode.Logic logic) {
+            int cost = 0;
+            for (WhereNode operand : logic.getOperands()) {
+                cost += operand.accept(this);
+            }
+            return cost;
+        }
+
+        @Override
+        public Integer visitCompare(WhereNode.Compare compare) {
+            if (compare.getMeta() != null) {
+                return 1;
+            }
+            if (compare.getOp() == WhereNode.CompareOp.REGEX) {
+                return 16;
+            }
+            return compare.getValue().isString() ? 3 : 2;
+        }
+
+        @Override
+        public Integer visitIterate(WhereNode.Iterate iterate) {
+            return 8;
+        }
+
+        @Override
+        public Integer visitGeo(WhereNode.Geo geo) {
+            return 32;
+        }
+    };
+
+    private WhereOptimizer() {
+    }
+
+    static WhereNode optimize(WhereNode where) {
+        return (where == null) ? null : where.accept(INSTANCE);
+    }
+
+    static int cost(WhereNode where) {
+        return where.accept(COST);
+    }
+
+    @Override
+    public WhereNode visitLogic(WhereNode.Logic logic) {
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            return negate(logic.getOperands().get(0).accept(this));
+        }
+
+        // flatten and deduplicate, keeping the first occurrence
+        Set<WhereNode> operands = new LinkedHashSet<>();
+        for (WhereNode operand : logic.getOperands()) {
+            WhereNode optimized = operand.accept(this);
+            if ((optimized instanceof WhereNode.Logic) && (((WhereNode.Logic) optimized).getOp() == logic.getOp())) {
+                operands.addAll(((WhereNode.Logic) optimized).getOperands());
+            } else {
+                operands.add(optimized);
+            }
+        }
+
+        if (operands.size() == 1) {
+            return operands.iterator().next();
+        }
+
+        List<WhereNode> ordered = new ArrayList<>(operands);
+        Map<WhereNode, Integer> costByNode = new IdentityHashMap<>();
+        for (WhereNode operand : ordered) {
+            costByNode.put(operand, cost(operand));
+        }
+        // stable, so equally expensive operands keep their order
+        ordered.sort(Comparator.comparingInt(costByNode::get));
+
+        return new WhereNode.Logic(logic.getOp(), ordered);
+    }
+
+    /**
+     * @param operand already optimized operand of NOT
+     */
+    private WhereNode negate(WhereNode operand) {
+        if (!(operand instanceof WhereNode.Logic)) {
+            return new WhereNode.Logic(WhereNode.LogicOp.NOT, operand);
+        }
+
+        WhereNode.Logic logic = (WhereNode.Logic) operand;
+        if (logic.getOp() == WhereNode.LogicOp.NOT) {
+            return logic.getOperands().get(0);
+        }
+
+        // NOT (a AND NOT b AND NOT c) => NOT a OR b OR c, which is worth it if most of the operands are negated
+        List<WhereNode> operands = logic.getOperands();
+        int negated = 0;
+        for (WhereNode o : operands) {
+            if ((o instanceof WhereNode.Logic) && (((WhereNode.Logic) o).getOp() == WhereNode.LogicOp.NOT)) {
+                negated++;
+            }
+        }
+        if (operands.size() - negated >= 1 + negated) {
+            return new WhereNode.Logic(WhereNode.LogicOp.NOT, operand);
+        }
+
+        List<WhereNode> pushed = new ArrayList<>(operands.size());
+        for (WhereNode o : operands) {
+            pushed.add(new WhereNode.Logic(WhereNode.LogicOp.NOT, o));
+        }
+        WhereNode.LogicOp dual = (logic.getOp() == WhereNode.LogicOp.AND) ? WhereNode.LogicOp.OR : WhereNode.LogicOp.AND;
+
+        // optimize once more, to drop double NOTs and to merge with the neighbours
+        return new WhereNode.Logic(dual, pushed).accept(this);
+    }
+
+    @Override
+    public WhereNode visitCompare(WhereNode.Compare compare) {
+        return compare;
+    }
+
+    @Override
+    public WhereNode visitIterate(WhereNode.Iterate iterate) {
+        return iterate;
+    }
+
+    @Override
+    public WhereNode visitGeo(WhereNode.Geo geo) {
+        return geo;
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.*;
+
+public class AggregationTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("qux", ParticleType.INTEGER);
+        }});
+    }};
+
+    @Test
+    public void parse() throws Exception {
+        SelectNode select = AQLSelectEx.forSchema(SCHEMA).compile("SELECT baz, COUNT(*), sum(foo), Avg(\"bar\") FROM namespace1.set1 WHERE foo > 1 GROUP BY baz, qux").getSelect();
+
+        assertEquals(Collections.singletonList("baz"), select.getBinNames());
+        assertEquals(Arrays.asList(new AggregateNode(AggregateNode.Function.COUNT, null), new AggregateNode(AggregateNode.Function.SUM, "foo"),
+                new AggregateNode(AggregateNode.Function.AVG, "bar")), select.getAggregates());
+        assertEquals(Arrays.asList("baz", "qux"), select.getGroupBy());
+        assertTrue(select.isAggregate());
+        assertFalse(AQLSelectEx.forSchema(SCHEMA).compile("SELECT baz FROM namespace1.set1").getSelect().isAggregate());
+
+        assertEquals("SELECT baz, COUNT(*), SUM(foo), AVG(bar) FROM namespace1.set1 WHERE foo > 1 GROUP BY baz, qux",
+                AQLSelectEx.forSchema(SCHEMA).compile("SELECT baz, COUNT(*), sum(foo), Avg(\"bar\") FROM namespace1.set1 WHERE foo > 1 GROUP BY baz, qux")
+                        .getCanonical().getText());
+    }
+
+    @Test
+    public void invalid() {
+        String[] invalid = {
+                "SELECT *, COUNT(*) FROM namespace1.set1",
+                "SELECT * FROM namespace1.set1 GROUP BY baz",
+                "SELECT foo, COUNT(*) FROM namespace1.set1 GROUP BY baz",
+                "SELECT SUM(*) FROM namespace1.set1",
+                "SELECT SUM(baz) FROM namespace1.set1",
+                "SELECT AVG(nope) FROM namespace1.set1",
+        };
+        for (String query : invalid) {
+            try {
+                AQLSelectEx.forSchema(SCHEMA).compile(query);
+                fail(query);
+            } catch (Exception e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void groupsAreMergedAcrossSlices() throws Exception {
+        ExecutorService pool = QueryExecutor.fixedPool(4);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(3000, InMemoryQueryClient::bins)).withSlices(16).withExecutor(pool);
+
+        Map<Object, Map<String, Object>> rows = new ConcurrentHashMap<>();
+        executor.execute(AQLSelectEx.forSchema(SCHEMA).plan("SELECT baz, COUNT(*), COUNT(qux), SUM(foo), MIN(bar), MAX(qux), AVG(foo) FROM namespace1.set1 GROUP BY baz"),
+                record -> {
+                    assertNull(record.key);
+                    rows.put(record.record.getValue("baz"), record.record.bins);
+                });
+        pool.shutdown();
+
+        assertEquals(3, rows.size());
+        for (int g = 0; g < 3; g++) {
+            long count = 0L, countQux = 0L, sum = 0L, maxQux = Long.MIN_VALUE;
+            for (long i = g; i < 3000; i += 3) {
+                count++;
+                sum += i;
+                if (i % 2 == 0) {
+                    countQux++;
+                    maxQux = Math.max(maxQux, i);
+                }
+            }
+
+            Map<String, Object> row = rows.get(String.valueOf((char) ('a' + g)));
+            assertEquals(Arrays.asList("baz", "COUNT(*)", "COUNT(qux)", "SUM(foo)", "MIN(bar)", "MAX(qux)", "AVG(foo)"), new ArrayList<>(row.keySet()));
+            assertEquals(count, row.get("COUNT(*)"));
+            assertEquals(countQux, row.get("COUNT(qux)"));
+            assertEquals(sum, row.get("SUM(foo)"));
+            assertEquals(g / 2.0D, row.get("MIN(bar)"));
+            assertEquals(maxQux, row.get("MAX(qux)"));
+            assertEquals((double) sum / count, (Double) row.get("AVG(foo)"), 1e-9);
+        }
+    }
+
+    @Test
+    public void globalAggregateHasSingleRow() throws Exception {
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(0, InMemoryQueryClient::bins)).withSlices(4);
+
+        List<KeyRecord> rows = Collections.synchronizedList(new ArrayList<>());
+        executor.execute(AQLSelectEx.forSchema(SCHEMA).plan("SELECT COUNT(*), SUM(foo), AVG(bar) FROM namespace1.set1"), rows::add);
+
+        assertEquals(1, rows.size());
+        assertEquals(0L, rows.get(0).record.getValue("COUNT(*)"));
+        assertNull(rows.get(0).record.getValue("SUM(foo)"));
+        assertNull(rows.get(0).record.getValue("AVG(bar)"));
+    }
+
+    @Test
+    public void aggregatesAreNotStatements() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        for (String select : new String[]{"SELECT COUNT(*) FROM namespace1.set1", "SELECT baz, SUM(foo) FROM namespace1.set1 GROUP BY baz"}) {
+            try {
+                selectEx.fromString(select);
+                fail(select);
+            } catch (Exception e) {
+                assertTrue(e.getMessage().contains("plan()"));
+            }
+            try {
+                selectEx.compile(select).toStatement();
+                fail(select);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(1, selectEx.plan(select).getStatements().size());
+        }
+
+        try {
+            selectEx.prepare("SELECT COUNT(*) FROM namespace1.set1 WHERE foo > ?").bind(1L);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(selectEx.prepare("SELECT COUNT(*) FROM namespace1.set1 WHERE foo > ?").plan(1L).isAggregate());
+    }
+
+    @Test
+    public void countAllFetchesNoBinData() throws Exception {
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).plan("SELECT COUNT(*) FROM namespace1.set1 WHERE foo > 1");
+        assertArrayEquals(new String[0], plan.getStatements().get(0).getBinNames());
+
+        // the stand-in returns records without bins, as the cluster does
+        List<KeyRecord> rows = Collections.synchronizedList(new ArrayList<>());
+        new QueryExecutor(new InMemoryQueryClient(100, InMemoryQueryClient::bins)).withSlices(4).execute(plan, rows::add);
+        assertEquals(100L, rows.get(0).record.getValue("COUNT(*)"));
+
+        List<QueryPolicy> policies = new ArrayList<>();
+        IAerospikeClient client = (IAerospikeClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IAerospikeClient.class}, (proxy, method, args) -> {
+            policies.add((QueryPolicy) args[0]);
+            throw new AerospikeException(ResultCode.SERVER_NOT_AVAILABLE);
+        });
+        QueryPolicy policy = new QueryPolicy();
+        for (Statement statement : new Statement[]{plan.getStatements().get(0), AQLSelectEx.forSchema(SCHEMA).fromString("SELECT foo FROM namespace1.set1")}) {
+            try {
+                QueryClient.of(client, policy).query(statement, 0, 1, record -> {
+                });
+                fail();
+            } catch (AerospikeException e) {
+                // expected
+            }
+        }
+        assertFalse(policies.get(0).includeBinData);
+        assertSame(policy, policies.get(1));
+        assertTrue(policy.includeBinData);
+    }
+
+    @Test
+    public void multipleGroupByBinsWithMissingValues() throws Exception {
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(100, InMemoryQueryClient::bins)).withSlices(3);
+
+        Map<List<Object>, Long> rows = new ConcurrentHashMap<>();
+        executor.execute(AQLSelectEx.forSchema(SCHEMA).plan("SELECT baz, qux, COUNT(*) FROM namespace1.set1 WHERE foo < 10 GROUP BY baz, qux"),
+                record -> rows.put(Arrays.asList(record.record.getValue("baz"), record.record.getValue("qux")), record.record.getLong("COUNT(*)")));
+
+        // even records are groups of their own, and odd ones are grouped by baz, for all 100 as there is no residual
+        assertEquals(50 + 3, rows.size());
+        assertEquals(Long.valueOf(1L), rows.get(Arrays.asList("a", 0L)));
+        assertEquals(Long.valueOf(17L), rows.get(Arrays.asList("b", null)));
+    }
+
+    @Test
+    public void limitAppliesToRows() throws Exception {
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).plan("SELECT foo, COUNT(*) FROM namespace1.set1 GROUP BY foo LIMIT 5 OFFSET 3");
+        assertTrue(plan.isAggregate());
+        assertEquals(0L, plan.maxRecords());
+
+        List<KeyRecord> rows = Collections.synchronizedList(new ArrayList<>());
+        new QueryExecutor(new InMemoryQueryClient(1000, InMemoryQueryClient::bins)).withSlices(4).execute(plan, rows::add);
+
+        assertEquals(5, rows.size());
+    }
+
+    @Test
+    public void onlyNeededBinsAreFetched() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        assertArrayEquals(new String[]{"baz", "qux", "foo"},
+                selectEx.plan("SELECT baz, COUNT(qux), SUM(foo) FROM namespace1.set1 GROUP BY baz").getStatements().get(0).getBinNames());
+        assertArrayEquals(new String[]{"bar"},
+                selectEx.plan("SELECT MAX(bar) FROM namespace1.set1 WHERE foo > 1").getStatements().get(0).getBinNames());
+        assertArrayEquals(new String[0], selectEx.plan("SELECT COUNT(*) FROM namespace1.set1").getStatements().get(0).getBinNames());
+    }
+}
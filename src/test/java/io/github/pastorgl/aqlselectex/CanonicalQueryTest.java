@@ -0,0 +1,73 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class CanonicalQueryTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+            put("limit", ParticleType.STRING);
+        }});
+    }};
+
+    private final AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+    @Test
+    public void formattingDoesNotMatter() throws Exception {
+        CanonicalQuery a = selectEx.canonicalize("SELECT foo, bar FROM namespace1.set1 WHERE foo = 1 AND (bar != 2 OR baz LIKE 'x.*')");
+        CanonicalQuery b = selectEx.canonicalize("select \"foo\",bar\nfrom namespace1.\"set1\" where ((foo==1) and ((bar <> 2) or baz regexp 'x.*'))");
+
+        assertEquals("SELECT foo, bar FROM namespace1.set1 WHERE foo = 1 AND (bar != 2 OR baz LIKE 'x.*')", a.getText());
+        assertEquals(a.getText(), b.getText());
+        assertEquals(a.getFingerprint(), b.getFingerprint());
+
+        CanonicalQuery c = selectEx.canonicalize("SELECT foo, bar FROM namespace1.set1 WHERE foo = 1 AND bar != 2 OR baz LIKE 'x.*'");
+        assertNotEquals(a.getText(), c.getText());
+        assertNotEquals(a.getFingerprint(), c.getFingerprint());
+    }
+
+    @Test
+    public void literalsAreStripped() throws Exception {
+        CanonicalQuery a = selectEx.canonicalize("SELECT * FROM namespace1.set1 WHERE foo > 1 AND baz = 'a' AND bar = :bar LIMIT 10");
+        CanonicalQuery b = selectEx.canonicalize("SELECT * FROM namespace1.set1 WHERE foo > 200 AND baz = 'b' AND bar = :bar LIMIT 20");
+
+        assertNotEquals(a.getFingerprint(), b.getFingerprint());
+        assertEquals("SELECT * FROM namespace1.set1 WHERE foo > ? AND baz = ? AND bar = :bar LIMIT ?", a.getTemplate());
+        assertEquals(a.getTemplate(), b.getTemplate());
+        assertEquals(a.getTemplateFingerprint(), b.getTemplateFingerprint());
+    }
+
+    @Test
+    public void canonicalTextIsStable() throws Exception {
+        String[] queries = {
+                "SELECT \"limit\", \"we\"\"ird\" FROM namespace1.set1 WHERE NOT (foo > 1 OR NOT bar < 2) AND baz IN ('a', 'b')",
+                "SELECT * FROM namespace1.set1 WITH LIST (foo CONTAINS 5) WHERE DIGEST(4) = 1 AND TTL < :ttl LIMIT 5 OFFSET 7",
+                "SELECT * FROM namespace1.set1 USE (foo BETWEEN 1 AND ?) WHERE baz ANY MAPKEYS (k = 'x') OR baz WITHIN GEOJSON('{}')",
+        };
+
+        for (String query : queries) {
+            String canonical = selectEx.canonicalize(query).getText();
+            assertEquals(canonical, selectEx.canonicalize(canonical).getText());
+        }
+    }
+
+    @Test
+    public void computedOnceFromQueryAsWritten() throws Exception {
+        CompiledSelect compiled = selectEx.withOptimizer(true).compile("SELECT * FROM namespace1.set1 WHERE NOT (foo > 1) OR foo = 2 OR bar = 3");
+
+        CanonicalQuery canonical = compiled.getCanonical();
+        assertEquals("SELECT * FROM namespace1.set1 WHERE NOT foo > 1 OR foo = 2 OR bar = 3", canonical.getText());
+        assertSame(canonical, compiled.getCanonical());
+        for (CompiledSelect branch : compiled.branches()) {
+            assertEquals(canonical.getText(), branch.getCanonical().getText());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.cdt.ListReturnType;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.exp.Exp;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.exp.ListExp;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class CodegenBackendTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("li", ParticleType.LIST);
+            put("li.v", ParticleType.DOUBLE);
+        }});
+    }};
+
+    /**
+     * Evaluates nothing on server, and records what it was asked to compile.
+     */
+    private static class ClientOnlyBackend implements CodegenBackend {
+        private final List<WhereNode> compiled = new ArrayList<>();
+
+        @Override
+        public ServerPredicate compile(WhereNode where, SetSchema setSchema) {
+            compiled.add(where);
+            return CodegenBackend.PREDEXP.compile(where, setSchema);
+        }
+
+        @Override
+        public boolean evaluates(WhereNode.Compare compare, SetSchema setSchema) {
+            return false;
+        }
+
+        @Override
+        public boolean evaluates(WhereNode.Iterate iterate, SetSchema setSchema) {
+            return false;
+        }
+    }
+
+    @Test
+    public void predExpIsDefault() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+        assertSame(CodegenBackend.PREDEXP, selectEx.getBackend());
+
+        String query = "SELECT * FROM namespace1.set1 WHERE foo > 1";
+        assertStatementEquals(selectEx.fromString(query), selectEx.withBackend(CodegenBackend.PREDEXP).fromString(query));
+    }
+
+    @Test
+    public void backendDecidesWhatIsPushedDown() throws Exception {
+        ClientOnlyBackend backend = new ClientOnlyBackend();
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(backend).withHybridPushdown(true);
+
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE foo > 1 AND bar < 2.5");
+
+        assertEquals(Collections.singletonList(null), backend.compiled);
+        assertNull(compiled.toStatement().getPredExp());
+        assertTrue(compiled.getResidual().test(new Record(new HashMap<String, Object>() {{
+            put("foo", 2L);
+            put("bar", 2.25D);
+        }}, 1, 0)));
+    }
+
+    @Test
+    public void parametersAreBoundByBackend() throws Exception {
+        ClientOnlyBackend backend = new ClientOnlyBackend();
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(backend);
+
+        Statement statement = selectEx.prepare("SELECT * FROM namespace1.set1 WHERE foo > :min").bind(5);
+
+        assertEquals(1, backend.compiled.size());
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("set1");
+        reference.setPredExp(
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(5),
+                PredExp.integerGreater()
+        );
+        assertStatementEquals(reference, statement);
+    }
+
+    @Test
+    public void expressionComparesExactly() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION).withHybridPushdown(true);
+
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE foo > 1 AND bar <= 3.5 AND baz >= 'm'");
+
+        assertNull(compiled.getResidual());
+        assertNull(compiled.toStatement().getPredExp());
+        assertEquals(Exp.build(Exp.and(
+                Exp.and(Exp.gt(Exp.intBin("foo"), Exp.val(1L)), Exp.le(Exp.floatBin("bar"), Exp.val(3.5D))),
+                Exp.ge(Exp.stringBin("baz"), Exp.val("m"))
+        )), compiled.getFilterExp());
+        assertEquals(compiled.getFilterExp().size(), compiled.getEncodedSize());
+    }
+
+    @Test
+    public void expressionCountsElements() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION);
+
+        Exp li = Exp.listBin("li");
+        Exp value = Exp.val(0.5D);
+        Exp greater = ListExp.getByValueRange(ListReturnType.COUNT, value, null, li);
+        Exp equal = ListExp.getByValue(ListReturnType.COUNT, value, li);
+
+        assertEquals(Exp.build(Exp.gt(greater, equal)),
+                selectEx.compile("SELECT * FROM namespace1.set1 WHERE li ANY CONTAINS (v > 0.5)").getFilterExp());
+        // no element is less or equal
+        assertEquals(Exp.build(Exp.not(Exp.gt(Exp.add(ListExp.getByValueRange(ListReturnType.COUNT, Exp.val(Double.NEGATIVE_INFINITY), value, li), equal), Exp.val(0L)))),
+                selectEx.compile("SELECT * FROM namespace1.set1 WHERE li CONTAINS (v > 0.5)").getFilterExp());
+    }
+
+    @Test
+    public void expressionParametersAreBound() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION);
+
+        PreparedSelect prepared = selectEx.prepare("SELECT * FROM namespace1.set1 WHERE bar > :min");
+        Expression expected = Exp.build(Exp.gt(Exp.floatBin("bar"), Exp.val(2.5D)));
+
+        assertEquals(expected, prepared.filterExp(2.5D));
+        assertEquals(Exp.build(Exp.gt(Exp.floatBin("bar"), Exp.val(3D))), prepared.filterExp(3));
+        assertNull(prepared.bind(2.5D).getPredExp());
+        assertEquals(Collections.singletonList(expected), prepared.plan(Collections.singletonMap("min", 2.5D)).getFilterExps());
+    }
+
+    @Test
+    public void expressionIsSetOnPolicy() throws Exception {
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION).plan("SELECT * FROM namespace1.set1 WHERE bar > 2.5");
+        Expression filterExp = plan.getFilterExps().get(0);
+
+        List<QueryPolicy> policies = new ArrayList<>();
+        IAerospikeClient client = (IAerospikeClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{IAerospikeClient.class}, (proxy, method, args) -> {
+            policies.add((QueryPolicy) args[0]);
+            throw new AerospikeException(ResultCode.SERVER_NOT_AVAILABLE);
+        });
+        QueryPolicy policy = new QueryPolicy();
+        QueryPolicy filtered = new QueryPolicy();
+        filtered.filterExp = Exp.build(Exp.binExists("foo"));
+        for (QueryPolicy p : new QueryPolicy[]{policy, filtered}) {
+            try {
+                QueryClient.of(client, p).query(plan.getStatements().get(0), filterExp, 0, 1, 0L, record -> {
+                });
+                fail();
+            } catch (AerospikeException e) {
+                // expected
+            }
+        }
+
+        assertEquals(filterExp, policies.get(0).filterExp);
+        assertNull(policy.filterExp);
+        assertEquals(Exp.build(Exp.and(Exp.binExists("foo"), Exp.gt(Exp.floatBin("bar"), Exp.val(2.5D)))), policies.get(1).filterExp);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void expressionIsNotIgnored() throws Exception {
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION).plan("SELECT * FROM namespace1.set1 WHERE bar > 2.5");
+
+        QueryClient client = (statement, begin, count, consumer) -> {
+        };
+        new QueryExecutor(client).execute(plan, record -> {
+        });
+    }
+
+    @Test
+    public void expressionIsNotLostByFromString() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withBackend(CodegenBackend.EXPRESSION);
+
+        assertNull(selectEx.fromString("SELECT * FROM namespace1.set1").getPredExp());
+        try {
+            selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo > 1");
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("plan()"));
+        }
+    }
+
+    @Test
+    public void predExpIsEmittedByAnotherEmitter() throws Exception {
+        PredExpEmitter<String> emitter = (PredExpEmitter<String>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PredExpEmitter.class},
+                (proxy, method, args) -> method.getName() + ((args == null) ? "()" : Arrays.toString(args)));
+
+        CompiledSelect compiled = AQLSelectEx.forSchema(SCHEMA).compile("SELECT * FROM namespace1.set1 WHERE foo > ? OR li ANY CONTAINS (v = 1.5)");
+
+        assertEquals(Arrays.asList("integerBin[foo]", null, "integerGreater()",
+                "listIterateOr[v]", "listBin[li]", "integerVar[v]", "integerValue[1]", "integerEqual()", "or[2]"), compiled.emitPredExp(emitter));
+        assertEquals(1, compiled.getPredExpTemplate().getSlots().get(0).getIndex());
+        assertNull(AQLSelectEx.forSchema(SCHEMA).compile("SELECT * FROM namespace1.set1").emitPredExp(emitter));
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class EncodedPredExpTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("mp", ParticleType.MAP);
+            put("mp.v", ParticleType.INTEGER);
+        }});
+    }};
+
+    private final AQLSelectEx plain = AQLSelectEx.forSchema(SCHEMA);
+    private final AQLSelectEx encoded = plain.withBackend(CodegenBackend.PREDEXP_ENCODED);
+
+    @Test
+    public void constantQueryIsSingleNode() throws Exception {
+        String query = "SELECT * FROM namespace1.set1 WHERE foo > 1 AND (baz LIKE '/a.+/i' OR mp ANY MAPVALUES (v == 3)) AND DIGEST(4) = 1";
+
+        Statement reference = plain.fromString(query);
+        Statement statement = encoded.fromString(query);
+        assertStatementEquals(reference, statement);
+
+        assertEquals(1, statement.getPredExp().length);
+        assertSame(statement.getPredExp()[0], encoded.fromString(query).getPredExp()[0]);
+
+        assertEquals(PredExp.estimateSize(reference.getPredExp()), encoded.compile(query).getEncodedSize());
+        assertEquals(PredExp.estimateSize(reference.getPredExp()), plain.compile(query).getEncodedSize());
+    }
+
+    @Test
+    public void parametersAreBoundBetweenEncodedRuns() throws Exception {
+        String query = "SELECT * FROM namespace1.set1 WHERE foo > :min AND baz MATCH ? AND bar IN (1, :max) AND DIGEST(?) = 0";
+        Object[] values = {5, "/x+/s", 7.5D, 8};
+
+        Statement reference = plain.prepare(query).bind(values);
+        PreparedSelect prepared = encoded.prepare(query);
+        assertStatementEquals(reference, prepared.bind(values));
+
+        assertTrue(prepared.bind(values).getPredExp().length < reference.getPredExp().length);
+        assertEquals(PredExp.estimateSize(reference.getPredExp()), prepared.encodedSize(values));
+        assertEquals(PredExp.estimateSize(reference.getPredExp()), plain.prepare(query).encodedSize(values));
+    }
+
+    @Test
+    public void noWhereHasNoPredicate() throws Exception {
+        CompiledSelect compiled = encoded.compile("SELECT foo FROM namespace1.set1");
+
+        assertNull(compiled.toStatement().getPredExp());
+        assertEquals(0, compiled.getEncodedSize());
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Record;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class HybridPushdownTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("li", ParticleType.LIST);
+            put("li.v", ParticleType.DOUBLE);
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.DOUBLE);
+            put("ma.ki", ParticleType.INTEGER);
+            put("gj", ParticleType.GEOJSON);
+        }});
+    }};
+
+    private final AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withHybridPushdown(true);
+
+    private static Record record(Object... bins) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < bins.length; i += 2) {
+            map.put((String) bins[i], bins[i + 1]);
+        }
+        return new Record(map, 1, 0);
+    }
+
+    @Test
+    public void doubleComparisonIsExact() throws Exception {
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE bar <= 3.5 AND foo > 1");
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("set1");
+        reference.setPredExp(
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(1),
+                PredExp.integerGreater()
+        );
+        assertStatementEquals(reference, compiled.toStatement());
+
+        Predicate<Record> residual = compiled.getResidual();
+        assertTrue(residual.test(record("bar", 3.5D)));
+        assertTrue(residual.test(record("bar", 3L)));
+        assertFalse(residual.test(record("bar", 3.51D)));
+        assertFalse(residual.test(record("baz", "3")));
+        assertFalse(residual.test(record()));
+    }
+
+    @Test
+    public void stringOrderingAndMixedDisjunction() throws Exception {
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE baz >= 'm' OR foo = 1 OR li ANY CONTAINS (v > 0.5)");
+        assertNull(compiled.toStatement().getPredExp());
+
+        Predicate<Record> residual = compiled.getResidual();
+        assertTrue(residual.test(record("baz", "mango")));
+        assertFalse(residual.test(record("baz", "apple")));
+        assertTrue(residual.test(record("baz", "apple", "foo", 1L)));
+        assertTrue(residual.test(record("li", Arrays.asList(0.1D, 0.6D))));
+        assertFalse(residual.test(record("li", Arrays.asList(0.1D, 0.5D))));
+    }
+
+    @Test
+    public void doubleElementComparisonIsExact() throws Exception {
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE ma ANY MAPVALUES (ko > 3.5) AND ma ANY MAPVALUES (ki > 3)");
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("set1");
+        reference.setPredExp(
+                PredExp.mapValIterateOr("ki"),
+                PredExp.mapBin("ma"),
+                PredExp.integerVar("ki"),
+                PredExp.integerValue(3),
+                PredExp.integerGreater()
+        );
+        assertStatementEquals(reference, compiled.toStatement());
+
+        Predicate<Record> residual = compiled.getResidual();
+        assertNotNull(residual);
+        assertTrue(residual.test(record("ma", Collections.singletonMap("a", 3.6D))));
+        assertFalse(residual.test(record("ma", Collections.singletonMap("a", 3.4D))));
+        assertFalse(residual.test(record("ma", Collections.singletonMap("a", 3.5D))));
+    }
+
+    @Test
+    public void serverOnlyConditionsStayOnServer() throws Exception {
+        String point = "CAST('{\"type\": \"Point\", \"coordinates\": [0.0, 0.0]}' AS GEOJSON)";
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.set1 WHERE (bar > 3.5 OR LUT > 5) AND baz < 'm' AND (bar < 1.5 OR gj CONTAINS " + point + ")");
+
+        Statement reference = AQLSelectEx.forSchema(SCHEMA).fromString("SELECT * FROM namespace1.set1 WHERE (bar > 3.5 OR LUT > 5) AND (bar < 1.5 OR gj CONTAINS " + point + ")");
+        assertStatementEquals(reference, compiled.toStatement());
+
+        Predicate<Record> residual = compiled.getResidual();
+        assertTrue(residual.test(record("baz", "apple")));
+        assertFalse(residual.test(record("baz", "mango")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void stringOrderingNeedsHybrid() throws Exception {
+        AQLSelectEx.forSchema(SCHEMA).compile("SELECT * FROM namespace1.set1 WHERE baz >= 'm'");
+    }
+
+    @Test
+    public void residualParametersAreBound() throws Exception {
+        QueryPlan plan = selectEx.prepare("SELECT * FROM namespace1.set1 WHERE bar > ? AND baz < :baz").plan(2.5D, "k");
+
+        Predicate<Record> residual = plan.getResidual();
+        assertTrue(residual.test(record("bar", 2.75D, "baz", "a")));
+        assertFalse(residual.test(record("bar", 2.5D, "baz", "a")));
+        assertFalse(residual.test(record("bar", 2.75D, "baz", "z")));
+    }
+
+    @Test
+    public void executorAppliesResidual() throws Exception {
+        HashMap schema = new HashMap() {{
+            put("namespace1.set1", new HashMap() {{
+                put("foo", ParticleType.DOUBLE);
+            }});
+        }};
+        AQLSelectEx hybrid = AQLSelectEx.forSchema(schema).withHybridPushdown(true);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(1000)).withSlices(4);
+
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(hybrid.plan("SELECT * FROM namespace1.set1 WHERE foo < 10.5"), record -> count.incrementAndGet());
+        assertEquals(11, count.get());
+
+        count.set(0);
+        executor.execute(hybrid.plan("SELECT * FROM namespace1.set1 WHERE foo < 10.5 LIMIT 5"), record -> count.incrementAndGet());
+        assertEquals(5, count.get());
+    }
+}
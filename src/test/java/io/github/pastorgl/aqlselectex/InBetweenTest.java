@@ -0,0 +1,124 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InBetweenTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+    private final HashMap INDEXES = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", IndexCollectionType.DEFAULT);
+        }});
+    }};
+
+    private Statement reference(Filter filter, PredExp... predExp) {
+        Statement reference = new Statement();
+        reference.setFilter(filter);
+        reference.setNamespace("namespace1");
+        reference.setSetName("set1");
+        if (predExp.length > 0) {
+            reference.setPredExp(predExp);
+        }
+        return reference;
+    }
+
+    @Test
+    public void inListIsDisjunction() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        Statement statement = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE baz IN ('a', 'b', 'c')");
+        assertStatementEquals(reference(null,
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("a"),
+                PredExp.stringEqual(),
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("b"),
+                PredExp.stringEqual(),
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("c"),
+                PredExp.stringEqual(),
+                PredExp.or(3)
+        ), statement);
+
+        statement = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo NOT IN (1) AND baz = 'x'");
+        assertStatementEquals(reference(null,
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(1),
+                PredExp.integerEqual(),
+                PredExp.not(),
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("x"),
+                PredExp.stringEqual(),
+                PredExp.and(2)
+        ), statement);
+    }
+
+    @Test
+    public void inListAcceptsParameters() throws Exception {
+        PreparedSelect prepared = AQLSelectEx.forSchema(SCHEMA).prepare("SELECT * FROM namespace1.set1 WHERE foo IN (?, 5, ?)");
+        assertEquals(2, prepared.getParamCount());
+
+        assertStatementEquals(reference(null,
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(4),
+                PredExp.integerEqual(),
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(5),
+                PredExp.integerEqual(),
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(6),
+                PredExp.integerEqual(),
+                PredExp.or(3)
+        ), prepared.bind(4, 6));
+    }
+
+    @Test
+    public void betweenIsClosedRange() throws Exception {
+        Statement statement = AQLSelectEx.forSchema(SCHEMA).fromString("SELECT * FROM namespace1.set1 WHERE foo NOT BETWEEN 2 AND 7");
+        assertStatementEquals(reference(null,
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(2),
+                PredExp.integerGreaterEq(),
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(7),
+                PredExp.integerLessEq(),
+                PredExp.and(2),
+                PredExp.not()
+        ), statement);
+
+        statement = AQLSelectEx.forSchema(SCHEMA, INDEXES).fromString("SELECT * FROM namespace1.set1 WHERE foo BETWEEN 2 AND 7");
+        assertEquals(Filter.range("foo", 2, 7), statement.getFilter());
+        assertNull(statement.getPredExp());
+    }
+
+    @Test
+    public void hugeInListIsSplit() throws Exception {
+        int count = PredExpCompiler.MAX_OPERANDS + 10;
+        String[] values = new String[count];
+        Arrays.fill(values, "1");
+
+        Statement statement = AQLSelectEx.forSchema(SCHEMA).withCacheSize(0)
+                .fromString("SELECT * FROM namespace1.set1 WHERE foo IN (" + String.join(",", values) + ")");
+
+        PredExp[] predExp = statement.getPredExp();
+        assertEquals(count * 3 + 3, predExp.length);
+        assertEquals(PredExp.or(2).toString(), predExp[predExp.length - 1].toString());
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.command.Buffer;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.Statement;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Stand-in for a cluster that returns all records of the requested partitions, ignoring filters, predicates and
+ * filter expressions.
+ * Like the cluster with includeBinData off, it returns records without bins to a statement with an empty array of
+ * bin names.
+ */
+class InMemoryQueryClient implements QueryClient {
+    private final List<KeyRecord>[] partitions = new List[QueryExecutor.PARTITIONS];
+    private final Map<Integer, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final Set<Integer> early = ConcurrentHashMap.newKeySet();
+
+    final AtomicInteger queries = new AtomicInteger();
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    InMemoryQueryClient(int records) {
+        this(records, i -> Collections.singletonMap("foo", i));
+    }
+
+    /**
+     * @param bins makes bins of the record with given number
+     */
+    InMemoryQueryClient(int records, LongFunction<Map<String, Object>> bins) {
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new ArrayList<>();
+        }
+        for (long i = 0; i < records; i++) {
+            Key key = new Key("namespace1", "set1", i);
+            partitions[partitionId(key)].add(new KeyRecord(key, new Record(bins.apply(i), 1, 0)));
+        }
+    }
+
+    /**
+     * Bins of the record with given number for tests of client-side processing: foo is the number, bar is its half,
+     * rnd is pseudo-random, baz is one of 'a', 'b', 'c', and qux is only in even records.
+     */
+    static Map<String, Object> bins(long i) {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("foo", i);
+        bins.put("bar", i / 2.0D);
+        bins.put("rnd", new Random(i).nextDouble());
+        bins.put("baz", String.valueOf((char) ('a' + i % 3)));
+        if (i % 2 == 0) {
+            bins.put("qux", i);
+        }
+        return bins;
+    }
+
+    static int partitionId(Key key) {
+        return (Buffer.littleBytesToInt(key.digest, 0) & 0xFFFF) % QueryExecutor.PARTITIONS;
+    }
+
+    /**
+     * Makes the query of a slice starting at the partition fail after the first record, given number of times.
+     */
+    InMemoryQueryClient failing(int begin, int times) {
+        failures.put(begin, new AtomicInteger(times));
+        return this;
+    }
+
+    /**
+     * Makes the query of a slice starting at the partition fail before the first record, given number of times.
+     */
+    InMemoryQueryClient failingEarly(int begin, int times) {
+        early.add(begin);
+        return failing(begin, times);
+    }
+
+    @Override
+    public void query(Statement statement, Expression filterExp, int begin, int count, long maxRecords, Consumer<KeyRecord> consumer) throws AerospikeException {
+        query(statement, begin, count, consumer);
+    }
+
+    @Override
+    public void query(Statement statement, int begin, int count, Consumer<KeyRecord> consumer) throws AerospikeException {
+        queries.incrementAndGet();
+        threads.add(Thread.currentThread());
+
+        AtomicInteger failure = failures.get(begin);
+        boolean fail = (failure != null) && (failure.getAndDecrement() > 0);
+        if (fail && early.contains(begin)) {
+            throw new AerospikeException(ResultCode.TIMEOUT, "Slice " + begin + " failed");
+        }
+        boolean binData = (statement.getBinNames() == null) || (statement.getBinNames().length > 0);
+        for (int i = begin; i < begin + count; i++) {
+            for (KeyRecord record : partitions[i]) {
+                consumer.accept(binData ? record : new KeyRecord(record.key, new Record(null, record.record.generation, record.record.expiration)));
+                if (fail) {
+                    throw new AerospikeException(ResultCode.TIMEOUT, "Slice " + begin + " failed");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class IndexPushdownTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.indexed", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+            put("li", ParticleType.LIST);
+        }});
+    }};
+    private final HashMap INDEXES = new HashMap() {{
+        put("namespace1.indexed", new HashMap() {{
+            put("foo", IndexCollectionType.DEFAULT);
+            put("baz", IndexCollectionType.DEFAULT);
+            put("gj", IndexCollectionType.DEFAULT);
+            put("li", IndexCollectionType.LIST);
+        }});
+    }};
+
+    private final AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA, INDEXES);
+
+    private Statement reference(Filter filter, PredExp... predExp) {
+        Statement reference = new Statement();
+        reference.setFilter(filter);
+        reference.setNamespace("namespace1");
+        reference.setSetName("indexed");
+        reference.setBinNames("foo");
+        if (predExp.length > 0) {
+            reference.setPredExp(predExp);
+        }
+        return reference;
+    }
+
+    @Test
+    public void equalityIsPreferred() throws Exception {
+        Statement statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo > 3 AND bar > 3 AND baz = 'x'");
+
+        assertEquals(Filter.equal("baz", "x"), statement.getFilter());
+        assertStatementEquals(reference(Filter.equal("baz", "x"),
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(3),
+                PredExp.integerGreater(),
+                PredExp.integerBin("bar"),
+                PredExp.integerValue(3),
+                PredExp.integerGreater(),
+                PredExp.and(2)
+        ), statement);
+    }
+
+    @Test
+    public void boundsAreMergedIntoRange() throws Exception {
+        Statement statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo >= 2 AND (bar = 1 AND foo <= 9) AND foo < 7");
+
+        assertEquals(Filter.range("foo", 2, 6), statement.getFilter());
+        assertStatementEquals(reference(Filter.range("foo", 2, 6),
+                PredExp.integerBin("bar"),
+                PredExp.integerValue(1),
+                PredExp.integerEqual()
+        ), statement);
+
+        statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo > 100");
+        assertEquals(Filter.range("foo", 101, Long.MAX_VALUE), statement.getFilter());
+        assertNull(statement.getPredExp());
+    }
+
+    @Test
+    public void fractionalBoundsAreRoundedInwards() throws Exception {
+        assertEquals(Filter.range("foo", Long.MIN_VALUE, 2), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo < 2.5").getFilter());
+        assertEquals(Filter.range("foo", Long.MIN_VALUE, 2), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo <= 2.5").getFilter());
+        assertEquals(Filter.range("foo", 3, Long.MAX_VALUE), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo > 2.5").getFilter());
+        assertEquals(Filter.range("foo", 3, Long.MAX_VALUE), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo >= 2.5").getFilter());
+
+        assertEquals(Filter.range("foo", -2, Long.MAX_VALUE), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo > -2.5").getFilter());
+        assertEquals(Filter.range("foo", -2, Long.MAX_VALUE), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo >= -2.5").getFilter());
+        assertEquals(Filter.range("foo", Long.MIN_VALUE, -3), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo < -2.5").getFilter());
+        assertEquals(Filter.range("foo", Long.MIN_VALUE, -3), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo <= -2.5").getFilter());
+
+        assertEquals(Filter.range("foo", -2, 2), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo > -2.5 AND foo < 2.5").getFilter());
+        assertEquals(Filter.range("foo", 2000, 2000), selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo >= 2e3 AND foo <= 2.0e3").getFilter());
+
+        // these aren't pushed, so they are rejected by the predicate same as without an index
+        for (String query : new String[]{"SELECT foo FROM namespace1.indexed WHERE foo = 2.5", "SELECT foo FROM namespace1.indexed WHERE foo > 1e30"}) {
+            try {
+                selectEx.compile(query);
+                fail(query);
+            } catch (Exception e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void collectionAndGeoIndexes() throws Exception {
+        Statement statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE li ANY CONTAINS (ke = 'a') AND li CONTAINS (ke = 'b')");
+        assertEquals(Filter.contains("li", IndexCollectionType.LIST, "a"), statement.getFilter());
+
+        statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE gj WITHIN CAST('{}' AS GEOJSON) AND li ANY CONTAINS (ke = 'a')");
+        assertEquals(Filter.geoWithinRegion("gj", "{}"), statement.getFilter());
+    }
+
+    @Test
+    public void nothingToPush() throws Exception {
+        Statement statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE foo = 1 OR baz = 'x'");
+        assertNull(statement.getFilter());
+        assertEquals(7, statement.getPredExp().length);
+
+        statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WITH (baz = 'y') WHERE foo = 1");
+        assertEquals(Filter.equal("baz", "y"), statement.getFilter());
+        assertEquals(3, statement.getPredExp().length);
+
+        statement = selectEx.fromString("SELECT foo FROM namespace1.indexed WHERE NOT foo = 1 AND bar = 2");
+        assertNull(statement.getFilter());
+    }
+
+    @Test
+    public void parameters() throws Exception {
+        Statement statement = selectEx.prepare("SELECT foo FROM namespace1.indexed WHERE foo >= ? AND foo <= ? AND bar = ?").bind(5, 10, 1);
+
+        assertEquals(Filter.range("foo", 5, 10), statement.getFilter());
+        assertEquals(3, statement.getPredExp().length);
+
+        // longs aren't passed through double, and fractional bounds are rounded inwards
+        PreparedSelect range = selectEx.prepare("SELECT foo FROM namespace1.indexed WITH (foo BETWEEN ? AND ?)");
+        assertEquals(Filter.range("foo", 9007199254740993L, Long.MAX_VALUE), range.bind(9007199254740993L, Long.MAX_VALUE).getFilter());
+        assertEquals(Filter.range("foo", -2, 2), range.bind(-2.5, 2.5).getFilter());
+
+        // equality parameters are bound as the type of the bin in the schema, not of the value
+        assertEquals(Filter.equal("baz", "5"), selectEx.prepare("SELECT foo FROM namespace1.indexed WHERE baz = ?").bind(5).getFilter());
+        assertEquals(Filter.equal("foo", 9007199254740993L), selectEx.prepare("SELECT foo FROM namespace1.indexed WHERE foo = ?").bind("9007199254740993").getFilter());
+        try {
+            selectEx.prepare("SELECT foo FROM namespace1.indexed WHERE foo = ?").bind(2.5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
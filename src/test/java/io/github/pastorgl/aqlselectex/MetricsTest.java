@@ -0,0 +1,87 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+
+    @Test
+    public void compilePhasesAreReported() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder();
+        CompileMetrics[] last = new CompileMetrics[1];
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withMetrics(new MetricsSink() {
+            @Override
+            public void compiled(CompileMetrics metrics) {
+                last[0] = metrics;
+                recorder.compiled(metrics);
+            }
+
+            @Override
+            public void compileFailed(Phase phase, Throwable error) {
+                recorder.compileFailed(phase, error);
+            }
+        });
+
+        String query = "SELECT * FROM namespace1.set1 WHERE foo > 1 AND baz = 'a'";
+        selectEx.fromString(query);
+        selectEx.fromString(query);
+
+        assertEquals(1L, recorder.getCompiles());
+        assertEquals(14, last[0].getTokens());
+        assertEquals(7, last[0].getPredExpSize());
+        assertEquals(selectEx.canonicalize(query).getFingerprint(), last[0].getFingerprint());
+        assertTrue(last[0].getNanos(MetricsSink.Phase.PARSE) > 0L);
+        assertEquals(last[0].getTotalNanos(), recorder.getNanos(MetricsSink.Phase.LEX) + recorder.getNanos(MetricsSink.Phase.PARSE)
+                + recorder.getNanos(MetricsSink.Phase.OPTIMIZE) + recorder.getNanos(MetricsSink.Phase.PUSHDOWN) + recorder.getNanos(MetricsSink.Phase.CODEGEN));
+    }
+
+    @Test
+    public void compileErrorsAreCounted() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder();
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withMetrics(recorder);
+
+        for (String query : new String[]{"SELECT * FROM", "SELECT * FROM namespace1.set1 WHERE (foo > 1", "SELECT * FROM namespace1.set1 WHERE baz > ?"}) {
+            try {
+                selectEx.compile(query);
+                fail();
+            } catch (Exception ignored) {
+            }
+        }
+
+        Map<String, Long> errors = recorder.getErrors();
+        assertEquals(3L, errors.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(Long.valueOf(1L), errors.get("CODEGEN:RuntimeException"));
+    }
+
+    @Test
+    public void executionIsReported() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder();
+        new QueryExecutor(new InMemoryQueryClient(100)).withSlices(2).withMetrics(recorder).execute(new Statement(), record -> {
+        });
+
+        for (int i = 0; (i < 100) && (recorder.getExecutions() == 0L); i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1L, recorder.getExecutions());
+        assertEquals(100L, recorder.getRecords());
+        assertEquals(0L, recorder.getExecutionErrors());
+    }
+
+    @Test
+    public void jfrSinkAcceptsMetrics() throws Exception {
+        AQLSelectEx.forSchema(SCHEMA).withMetrics(new JfrMetricsSink()).withCacheSize(0).fromString("SELECT * FROM namespace1.set1 WHERE foo = 1");
+    }
+}
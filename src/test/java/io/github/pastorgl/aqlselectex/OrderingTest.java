@@ -0,0 +1,152 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.KeyRecord;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.*;
+
+public class OrderingTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("rnd", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("qux", ParticleType.INTEGER);
+            put("li", ParticleType.LIST);
+        }});
+    }};
+
+    private List<KeyRecord> execute(String select) throws Exception {
+        ExecutorService pool = QueryExecutor.fixedPool(4);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(3000, InMemoryQueryClient::bins)).withSlices(16).withExecutor(pool);
+
+        List<KeyRecord> records = Collections.synchronizedList(new ArrayList<>());
+        executor.execute(AQLSelectEx.forSchema(SCHEMA).plan(select), records::add);
+        pool.shutdown();
+        return records;
+    }
+
+    @Test
+    public void parse() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        OrderNode order = selectEx.compile("SELECT foo FROM namespace1.set1 ORDER BY bar desc LIMIT 5").getSelect().getOrder();
+        assertEquals("bar", order.getBin());
+        assertTrue(order.isDescending());
+        assertFalse(selectEx.compile("SELECT foo FROM namespace1.set1 ORDER BY bar LIMIT 5").getSelect().getOrder().isDescending());
+
+        assertEquals("SELECT foo FROM namespace1.set1 WHERE foo > 1 ORDER BY bar ASC LIMIT 5 OFFSET 2",
+                selectEx.compile("SELECT foo FROM namespace1.set1 WHERE foo > 1 ORDER BY \"bar\" LIMIT 5 OFFSET 2").getCanonical().getText());
+        assertEquals("SELECT baz, COUNT(*) FROM namespace1.set1 GROUP BY baz ORDER BY COUNT(*) DESC LIMIT 3",
+                selectEx.compile("SELECT baz, count(*) FROM namespace1.set1 GROUP BY baz ORDER BY COUNT(*) DESC LIMIT 3").getCanonical().getText());
+    }
+
+    @Test
+    public void invalid() {
+        String[] invalid = {
+                "SELECT foo FROM namespace1.set1 ORDER BY bar",
+                "SELECT foo FROM namespace1.set1 ORDER BY li LIMIT 1",
+                "SELECT foo FROM namespace1.set1 ORDER BY COUNT(*) LIMIT 1",
+                "SELECT baz, COUNT(*) FROM namespace1.set1 GROUP BY baz ORDER BY SUM(foo) LIMIT 1",
+                "SELECT COUNT(*) FROM namespace1.set1 GROUP BY baz ORDER BY baz LIMIT 1",
+                "SELECT foo FROM namespace1.set1 ORDER BY bar LIMIT 1 OFFSET 2147483647",
+        };
+        for (String query : invalid) {
+            try {
+                AQLSelectEx.forSchema(SCHEMA).compile(query);
+                fail(query);
+            } catch (Exception e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void orderedQueriesAreNotStatements() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+        String select = "SELECT foo FROM namespace1.set1 ORDER BY foo DESC LIMIT 5";
+
+        try {
+            selectEx.fromString(select);
+            fail();
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("plan()"));
+        }
+        try {
+            selectEx.compile(select).toStatement();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            selectEx.prepare("SELECT foo FROM namespace1.set1 WHERE bar > ? ORDER BY foo LIMIT 5").bind(0.5D);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(selectEx.plan(select).isOrdered());
+    }
+
+    @Test
+    public void firstRecordsOfAllSlices() throws Exception {
+        List<Double> expected = new ArrayList<>();
+        for (long i = 0; i < 3000; i++) {
+            expected.add((Double) InMemoryQueryClient.bins(i).get("rnd"));
+        }
+        Collections.sort(expected);
+
+        List<Double> actual = new ArrayList<>();
+        for (KeyRecord record : execute("SELECT rnd FROM namespace1.set1 ORDER BY rnd LIMIT 100 OFFSET 7")) {
+            actual.add(record.record.getDouble("rnd"));
+        }
+        assertEquals(expected.subList(7, 107), actual);
+
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).plan("SELECT rnd FROM namespace1.set1 ORDER BY rnd LIMIT 100 OFFSET 7");
+        assertTrue(plan.isOrdered());
+        assertEquals(0L, plan.maxRecords());
+    }
+
+    @Test
+    public void missingValuesGoLast() throws Exception {
+        List<KeyRecord> records = execute("SELECT foo FROM namespace1.set1 ORDER BY qux DESC LIMIT 1510");
+
+        assertEquals(1510, records.size());
+        for (int i = 0; i < 1500; i++) {
+            assertEquals(2998L - 2L * i, records.get(i).record.getLong("foo"));
+        }
+        for (int i = 1500; i < 1510; i++) {
+            assertEquals(1L, records.get(i).record.getLong("foo") % 2L);
+        }
+    }
+
+    @Test
+    public void orderBinIsFetchedButNotReturned() throws Exception {
+        assertArrayEquals(new String[]{"foo", "qux"},
+                AQLSelectEx.forSchema(SCHEMA).plan("SELECT foo FROM namespace1.set1 ORDER BY qux LIMIT 3").getStatements().get(0).getBinNames());
+
+        List<KeyRecord> records = execute("SELECT foo FROM namespace1.set1 ORDER BY qux LIMIT 3");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2L * i, records.get(i).record.getLong("foo"));
+            assertFalse(records.get(i).record.bins.containsKey("qux"));
+        }
+    }
+
+    @Test
+    public void aggregatedRows() throws Exception {
+        List<KeyRecord> rows = execute("SELECT baz, MIN(foo) FROM namespace1.set1 GROUP BY baz ORDER BY MIN(foo) DESC LIMIT 2");
+        assertEquals(2, rows.size());
+        assertEquals("c", rows.get(0).record.getString("baz"));
+        assertEquals("b", rows.get(1).record.getString("baz"));
+
+        rows = execute("SELECT baz, COUNT(*) FROM namespace1.set1 GROUP BY baz ORDER BY baz LIMIT 5");
+        assertEquals(3, rows.size());
+        assertEquals("a", rows.get(0).record.getString("baz"));
+        assertEquals("c", rows.get(2).record.getString("baz"));
+    }
+}
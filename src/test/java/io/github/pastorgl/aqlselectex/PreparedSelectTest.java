@@ -0,0 +1,116 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PreparedSelectTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.sett", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.INTEGER);
+        }});
+    }};
+
+    @Test
+    public void positionalParamsMatchLiterals() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        PreparedSelect prepared = selectEx.prepare("SELECT foo,bar FROM namespace1.sett WITH (baz = ?) WHERE (foo > ? AND bar <= ?) OR NOT baz = ?");
+        assertEquals(4, prepared.getParamCount());
+
+        for (int i = 0; i < 3; i++) {
+            Statement bound = prepared.bind("a" + i, i, 3.5, "q" + i);
+            Statement literal = selectEx.fromString("SELECT foo,bar FROM namespace1.sett WITH (baz = 'a" + i + "') WHERE (foo > " + i + " AND bar <= 3.5) OR NOT baz = 'q" + i + "'");
+
+            assertEquals(literal.getFilter(), bound.getFilter());
+            assertStatementEquals(literal, bound);
+        }
+    }
+
+    @Test
+    public void namedParamsAreSharedByName() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        PreparedSelect prepared = selectEx.prepare("SELECT foo FROM namespace1.sett WITH (foo BETWEEN :lo AND 100) WHERE foo > :lo AND ma ANY MAPKEYS (ko <= :hi) AND baz LIKE :re");
+        assertEquals(Arrays.asList("lo", "hi", "re"), prepared.getParamNames());
+
+        Statement bound = prepared.bind(new HashMap<String, Object>() {{
+            put("lo", 10);
+            put("hi", 999L);
+            put("re", "/sparta.*/i");
+        }});
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("sett");
+        reference.setBinNames("foo");
+        reference.setFilter(Filter.range("foo", 10, 100));
+        reference.setPredExp(
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(10),
+                PredExp.integerGreater(),
+                PredExp.mapKeyIterateOr("ko"),
+                PredExp.mapBin("ma"),
+                PredExp.integerVar("ko"),
+                PredExp.integerValue(999),
+                PredExp.integerLessEq(),
+                PredExp.and(2),
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("sparta.*"),
+                PredExp.stringRegex(RegexFlag.ICASE | RegexFlag.NEWLINE),
+                PredExp.and(2)
+        );
+
+        assertEquals(reference.getFilter(), bound.getFilter());
+        assertStatementEquals(reference, bound);
+    }
+
+    @Test
+    public void geoAndDigestParams() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+        String region = "{\"type\": \"Point\", \"coordinates\": [0.0, 0.0]}";
+        Statement bound = selectEx.prepare("SELECT gj FROM namespace1.sett WITH (gj WITHIN CAST(? AS GEOJSON)) WHERE gj CONTAINS CAST(? AS GEOJSON) AND DIGEST(?) = ?")
+                .bind(region, region, 3, 1);
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("sett");
+        reference.setBinNames("gj");
+        reference.setFilter(Filter.geoWithinRegion("gj", region));
+        reference.setPredExp(
+                PredExp.geoJSONBin("gj"),
+                PredExp.geoJSONValue(region),
+                PredExp.geoJSONContains(),
+                PredExp.recDigestModulo(3),
+                PredExp.integerValue(1),
+                PredExp.integerEqual(),
+                PredExp.and(2)
+        );
+
+        assertEquals(reference.getFilter(), bound.getFilter());
+        assertStatementEquals(reference, bound);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingValuesAreRejected() throws Exception {
+        AQLSelectEx.forSchema(SCHEMA).prepare("SELECT foo FROM namespace1.sett WHERE foo > ? AND foo < ?").bind(1);
+    }
+
+    @Test(expected = Exception.class)
+    public void fromStringRejectsParams() throws Exception {
+        AQLSelectEx.forSchema(SCHEMA).fromString("SELECT foo FROM namespace1.sett WHERE foo > ?");
+    }
+}
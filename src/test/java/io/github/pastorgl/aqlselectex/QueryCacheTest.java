@@ -0,0 +1,82 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+
+    private final HashMap FOO_BAR_BAZ = new HashMap() {{
+        put("namespace1.sett", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+
+    @Test
+    public void hitsReturnFreshStatements() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ).withCacheSize(16);
+
+        String select = "SELECT foo,bar FROM namespace1.sett WHERE foo>2 AND baz='a'";
+        Statement first = selectEx.fromString(select);
+        Statement second = selectEx.fromString(select);
+
+        assertNotSame(first, second);
+        assertNotSame(first.getPredExp(), second.getPredExp());
+        assertArrayEquals(first.getBinNames(), second.getBinNames());
+        assertEquals(first.getPredExp().length, second.getPredExp().length);
+
+        second.getPredExp()[0] = PredExp.integerBin("qux");
+        second.getBinNames()[0] = "qux";
+        Statement third = selectEx.fromString(select);
+        assertEquals("foo", third.getBinNames()[0]);
+        assertNotSame(second.getPredExp()[0], third.getPredExp()[0]);
+
+        QueryCache.Stats stats = selectEx.cacheStats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    public void sizeIsBounded() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ).withCacheSize(4);
+
+        for (int i = 0; i < 100; i++) {
+            selectEx.fromString("SELECT foo FROM namespace1.sett WHERE foo=" + i);
+        }
+
+        QueryCache.Stats stats = selectEx.cacheStats();
+        assertEquals(100, stats.misses());
+        assertTrue(stats.size() <= 4);
+        assertEquals(100 - stats.size(), stats.evictions());
+    }
+
+    @Test
+    public void sizeIsNeverExceeded() {
+        for (int maxSize : new int[]{1, 3, 17, 31, 100, 1023}) {
+            QueryCache cache = new QueryCache(maxSize);
+            for (int i = 0; i < 4 * maxSize + 64; i++) {
+                cache.put("SELECT foo FROM namespace1.sett WHERE foo=" + i, null);
+            }
+            assertEquals(String.valueOf(maxSize), maxSize, cache.size());
+        }
+    }
+
+    @Test
+    public void zeroSizeDisablesCaching() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ).withCacheSize(0);
+
+        selectEx.fromString("SELECT foo FROM namespace1.sett");
+        selectEx.fromString("SELECT foo FROM namespace1.sett");
+
+        assertEquals(0, selectEx.cacheStats().hits());
+        assertEquals(0, selectEx.cacheStats().size());
+    }
+}
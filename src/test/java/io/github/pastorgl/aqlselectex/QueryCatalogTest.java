@@ -0,0 +1,110 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class QueryCatalogTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+
+    private static List<String> queries(int count) {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i % 100 == 7) {
+                queries.add("SELECT * FROM namespace1.set1 WHERE foo > " + i + " AND");
+            } else {
+                queries.add("SELECT * FROM namespace1.set1 WHERE foo > " + i + " AND baz = 'q" + i + "'");
+            }
+        }
+        return queries;
+    }
+
+    @Test
+    public void compilesAllAndCollectsErrors() throws Exception {
+        List<String> queries = queries(1000);
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withCacheSize(0);
+
+        QueryCatalog catalog = selectEx.compileAll(queries);
+
+        assertEquals(1000, catalog.size());
+        assertEquals(10, catalog.getErrors().size());
+        assertTrue(catalog.hasErrors());
+        assertEquals(Arrays.asList(7, 107, 207, 307, 407, 507, 607, 707, 807, 907), new ArrayList<>(catalog.getErrors().keySet()));
+        assertNull(catalog.get(7));
+        assertNotNull(catalog.getError(7));
+
+        for (int i = 0; i < queries.size(); i++) {
+            if (i % 100 != 7) {
+                assertNull(catalog.getError(i));
+                assertStatementEquals(selectEx.fromString(queries.get(i)), catalog.get(i).toStatement());
+            }
+        }
+
+        assertEquals(42, catalog.indexOf(queries.get(42)));
+        assertSame(catalog.get(42), catalog.get(queries.get(42)));
+        assertNull(catalog.get("SELECT * FROM nowhere"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void catalogIsImmutable() {
+        AQLSelectEx.forSchema(SCHEMA).compileAll(queries(10)).getErrors().clear();
+    }
+
+    @Test
+    public void ownPoolAndEngine() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withParserEngine(ParserEngine.RECURSIVE_DESCENT);
+            QueryCatalog catalog = selectEx.compileAll(queries(200), pool, true);
+
+            assertEquals(2, catalog.getErrors().size());
+            assertSame(catalog.get(3), selectEx.compile(queries(5).get(3)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void catalogBypassesCache() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA).withCacheSize(16);
+        CompiledSelect hot = selectEx.compile(queries(1).get(0));
+
+        for (int count : new int[]{10, 1000}) {
+            QueryCatalog catalog = selectEx.compileAll(queries(count));
+            assertEquals(count / 100 + ((count % 100 > 7) ? 1 : 0), catalog.getErrors().size());
+            assertNotSame(hot, catalog.get(0));
+        }
+
+        QueryCache.Stats stats = selectEx.cacheStats();
+        assertEquals(1, stats.size());
+        assertEquals(0L, stats.evictions());
+        assertSame(hot, selectEx.compile(queries(1).get(0)));
+    }
+
+    @Test
+    public void singleThreadedPool() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            QueryCatalog catalog = AQLSelectEx.forSchema(SCHEMA).compileAll(queries(500), pool);
+
+            assertEquals(5, catalog.getErrors().size());
+            assertNotNull(catalog.get(499));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
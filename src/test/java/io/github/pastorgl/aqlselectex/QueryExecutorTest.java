@@ -0,0 +1,158 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class QueryExecutorTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+    private final HashMap INDEXES = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", IndexCollectionType.DEFAULT);
+            put("baz", IndexCollectionType.DEFAULT);
+        }});
+    }};
+
+    @Test
+    public void slicesCoverAllPartitions() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(10000);
+        ExecutorService pool = QueryExecutor.fixedPool(4);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(7).withExecutor(pool);
+
+        Set<ByteBuffer> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(AQLSelectEx.forSchema(SCHEMA).fromString("SELECT * FROM namespace1.set1"), record -> {
+            count.incrementAndGet();
+            seen.add(ByteBuffer.wrap(record.key.digest));
+        });
+        pool.shutdown();
+
+        assertEquals(7, client.queries.get());
+        assertTrue(client.threads.size() > 1);
+        assertEquals(10000, count.get());
+        assertEquals(10000, seen.size());
+    }
+
+    @Test
+    public void failedSliceIsRetried() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(1000).failing(0, 2);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(4).withRetries(2).withRetryDedup(true);
+
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(new Statement(), record -> count.incrementAndGet());
+
+        assertEquals(6, client.queries.get());
+        assertEquals(1000, count.get());
+    }
+
+    @Test
+    public void sliceFailedBeforeFirstRecordIsRetriedWithoutDedup() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(1000).failingEarly(0, 2);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(4);
+        assertFalse(executor.isRetryDedup());
+
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(new Statement(), record -> count.incrementAndGet());
+
+        assertEquals(6, client.queries.get());
+        assertEquals(1000, count.get());
+    }
+
+    @Test(expected = AerospikeException.class)
+    public void sliceFailedMidwayFailsQueryWithoutDedup() throws Exception {
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(1000).failing(0, 1)).withSlices(4).withRetries(2);
+
+        executor.execute(new Statement(), record -> {
+        });
+    }
+
+    @Test(expected = AerospikeException.class)
+    public void exhaustedRetriesFailQuery() throws Exception {
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(1000).failing(2048, 2)).withSlices(2).withRetries(1);
+
+        executor.execute(new Statement(), record -> {
+        });
+    }
+
+    @Test
+    public void unionIsDeduplicated() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(500);
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA, INDEXES).plan("SELECT * FROM namespace1.set1 WHERE foo = 1 OR baz = 'x'");
+        assertTrue(plan.isUnion());
+
+        Set<Key> keys = ConcurrentHashMap.newKeySet();
+        AtomicInteger count = new AtomicInteger();
+        new QueryExecutor(client).withSlices(3).execute(plan, (KeyRecord record) -> {
+            count.incrementAndGet();
+            keys.add(record.key);
+        });
+
+        // stand-in ignores filters, so both statements return everything
+        assertEquals(6, client.queries.get());
+        assertEquals(500, count.get());
+        assertEquals(500, keys.size());
+    }
+
+    @Test
+    public void limitStopsQuery() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(10000);
+        QueryPlan plan = AQLSelectEx.forSchema(SCHEMA).plan("SELECT * FROM namespace1.set1 WHERE foo > 0 LIMIT 100 OFFSET 10");
+        assertEquals(100L, plan.getLimit());
+        assertEquals(10L, plan.getOffset());
+
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger produced = new AtomicInteger();
+        new QueryExecutor((statement, begin, partitions, consumer) -> client.query(statement, begin, partitions, record -> {
+            produced.incrementAndGet();
+            consumer.accept(record);
+        })).withSlices(4).withExecutor(QueryExecutor.fixedPool(1)).execute(plan, record -> count.incrementAndGet());
+
+        assertEquals(100, count.get());
+        // the first slice reaches the limit, and the rest are cancelled before they start
+        assertEquals(110, produced.get());
+
+        count.set(0);
+        new QueryExecutor(client).execute(AQLSelectEx.forSchema(SCHEMA).plan("SELECT * FROM namespace1.set1 LIMIT 0"), record -> count.incrementAndGet());
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void limitIsPassedToClient() throws Exception {
+        AtomicLong maxRecords = new AtomicLong();
+        QueryClient client = new QueryClient() {
+            @Override
+            public void query(Statement statement, int begin, int count, Consumer<KeyRecord> consumer) {
+            }
+
+            @Override
+            public void query(Statement statement, int begin, int count, long max, Consumer<KeyRecord> consumer) {
+                maxRecords.set(max);
+            }
+        };
+
+        new QueryExecutor(client).withSlices(1).execute(AQLSelectEx.forSchema(SCHEMA).plan("SELECT * FROM namespace1.set1 LIMIT 5 OFFSET 2"), record -> {
+        });
+        assertEquals(7L, maxRecords.get());
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Filter;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class QueryPlanTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.indexed", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.INTEGER);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+    private final HashMap INDEXES = new HashMap() {{
+        put("namespace1.indexed", new HashMap() {{
+            put("foo", IndexCollectionType.DEFAULT);
+            put("baz", IndexCollectionType.DEFAULT);
+        }});
+    }};
+
+    private final AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA, INDEXES);
+
+    private Statement reference(Filter filter, PredExp... predExp) {
+        Statement reference = new Statement();
+        reference.setFilter(filter);
+        reference.setNamespace("namespace1");
+        reference.setSetName("indexed");
+        if (predExp.length > 0) {
+            reference.setPredExp(predExp);
+        }
+        return reference;
+    }
+
+    @Test
+    public void disjunctionIsSplit() throws Exception {
+        QueryPlan plan = selectEx.plan("SELECT * FROM namespace1.indexed WHERE foo = 1 OR foo = 7 OR (baz = 'x' AND bar > 2)");
+
+        assertTrue(plan.isUnion());
+        List<Statement> statements = plan.getStatements();
+        assertEquals(3, statements.size());
+        assertStatementEquals(reference(Filter.equal("foo", 1)), statements.get(0));
+        assertStatementEquals(reference(Filter.equal("foo", 7)), statements.get(1));
+        assertStatementEquals(reference(Filter.equal("baz", "x"),
+                PredExp.integerBin("bar"),
+                PredExp.integerValue(2),
+                PredExp.integerGreater()
+        ), statements.get(2));
+    }
+
+    @Test
+    public void unindexedDisjunctPreventsSplit() throws Exception {
+        QueryPlan plan = selectEx.plan("SELECT * FROM namespace1.indexed WHERE foo = 1 OR bar = 7");
+
+        assertFalse(plan.isUnion());
+        assertStatementEquals(selectEx.fromString("SELECT * FROM namespace1.indexed WHERE foo = 1 OR bar = 7"), plan.getStatements().get(0));
+    }
+
+    @Test
+    public void preparedPlanIsBound() throws Exception {
+        QueryPlan plan = selectEx.prepare("SELECT * FROM namespace1.indexed WHERE foo BETWEEN ? AND ? OR baz = :baz").plan(3, 5, "y");
+
+        assertEquals(2, plan.getStatements().size());
+        assertStatementEquals(reference(Filter.range("foo", 3, 5)), plan.getStatements().get(0));
+        assertStatementEquals(reference(Filter.equal("baz", "y")), plan.getStatements().get(1));
+    }
+
+    @Test
+    public void unionIsDeduplicated() throws Exception {
+        Predicate<Key> dedup = selectEx.plan("SELECT * FROM namespace1.indexed WHERE foo = 1 OR baz = 'x'").deduplicator();
+
+        assertTrue(dedup.test(new Key("namespace1", "indexed", 1L)));
+        assertTrue(dedup.test(new Key("namespace1", "indexed", 2L)));
+        assertFalse(dedup.test(new Key("namespace1", "indexed", 1L)));
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.query.KeyRecord;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RecordStreamTest {
+
+    @Test
+    public void bufferIsBounded() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(5000);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(8).withPrefetch(16);
+
+        int count = 0;
+        try (RecordStream stream = executor.stream(new Statement())) {
+            assertEquals(16, stream.getCapacity());
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+                assertTrue(stream.getBuffered() <= 16);
+            }
+            assertTrue(stream.getPeakBuffered() <= 16);
+        }
+
+        assertEquals(5000, count);
+    }
+
+    @Test
+    public void closeCancelsSlices() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        InMemoryQueryClient client = new InMemoryQueryClient(5000);
+        QueryExecutor executor = new QueryExecutor((statement, begin, count, consumer) ->
+                client.query(statement, begin, count, record -> {
+                    produced.incrementAndGet();
+                    consumer.accept(record);
+                })).withSlices(4).withPrefetch(8);
+
+        RecordStream stream = executor.stream(new Statement());
+        for (int i = 0; i < 10; i++) {
+            stream.next();
+        }
+        stream.close();
+        assertFalse(stream.hasNext());
+
+        Thread.sleep(200L);
+        // at most one record per slice may be in flight
+        assertTrue(produced.get() <= 10 + 8 + 4 + 4);
+    }
+
+    @Test(expected = AerospikeException.class)
+    public void failureIsThrownToReader() throws Exception {
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(1000).failing(0, 1)).withSlices(2).withRetries(0);
+
+        try (RecordStream stream = executor.stream(new Statement())) {
+            while (stream.hasNext()) {
+                stream.next();
+            }
+        }
+    }
+
+    @Test
+    public void publisherHonorsDemand() throws Exception {
+        QueryPublisher publisher = new QueryExecutor(new InMemoryQueryClient(1000)).withSlices(4).withPrefetch(4).publisher(new Statement());
+
+        AtomicInteger received = new AtomicInteger();
+        AtomicReference<QueryPublisher.Subscription> subscription = new AtomicReference<>();
+        CountDownLatch firstBatch = new CountDownLatch(5);
+        CountDownLatch complete = new CountDownLatch(1);
+        publisher.subscribe(new QueryPublisher.Subscriber() {
+            @Override
+            public void onSubscribe(QueryPublisher.Subscription s) {
+                subscription.set(s);
+                s.request(5);
+            }
+
+            @Override
+            public void onNext(KeyRecord record) {
+                received.incrementAndGet();
+                firstBatch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                complete.countDown();
+            }
+        });
+
+        assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        assertEquals(5, received.get());
+
+        subscription.get().request(Long.MAX_VALUE);
+        assertTrue(complete.await(5, TimeUnit.SECONDS));
+        assertEquals(1000, received.get());
+    }
+}
@@ -0,0 +1,295 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.Statement;
+import org.antlr.v4.runtime.Vocabulary;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential test of {@link ParserEngine#RECURSIVE_DESCENT} against {@link ParserEngine#ANTLR}: each query must
+ * either fail with both, or compile to the same canonical form, parameters and Statement.
+ */
+public class RecursiveDescentParserTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.sett", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+            put("li", ParticleType.LIST);
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.INTEGER);
+        }});
+    }};
+
+    // queries of ParseSelectExTest
+    private static final String[] CORPUS = {
+            "  SELECT foo,bar,baz FROM namespace1.sett WITH(baz='a') WHERE (foo>2 AND (bar <=3 OR foo>5) AND bar >3) OR NOT (foo<=100) ",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH MAPKEYS (baz CONTAINS 'a')",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH MAPVALUES (baz CONTAINS 'a')",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH MAPVALUES (foo CONTAINS 100)",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH (baz CONTAINS CAST('a' AS GEOJSON))",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH (baz WITHIN CAST('a' AS GEOJSON))",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH (foo = 200)",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH (foo BETWEEN 100 AND 200)",
+            "SELECT foo,bar,baz FROM namespace1.sett WITH (PK = 'thisisaprimarykey')",
+            "SELECT foo,bar,baz FROM namespace1.sett WHERE foo=-10",
+            "SELECT foo,bar,baz FROM namespace1.sett WHERE bar!=-100.000",
+            "SeLECT foo,bar,baz from namespace1.sett where baz like '/sparta.*/ie?'",
+            "SeLECT foo,bar,baz from namespace1.sett where baz like '/sparta.*/s'",
+            "SeLECT foo,bar,baz from namespace1.sett where baz like 'sparta.*'",
+            "SeLECT gj from namespace1.sett where gj contains CAST('{\"type\": \"Point\", \"coordinates\": [0.0, 0.0]}' AS GEOJSON)",
+            "SeLECT gj from namespace1.sett where gj WITHIN CAST('{\"type\": \"Polygon\", \"coordinates\": [0.0, 0.0],[1.0, 0.0],[1.0, 1.0],[0.0, 1.0],[0.0, 0.0]}' AS GEOJSON)",
+            "SeLECT li,ma from namespace1.sett where li CONTAINS (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where li ANY CONTAINS (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where ma MAPVALUES (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where ma ANY MAPVALUES (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where ma MAPKEYS (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where ma ANY MAPKEYS (ke='aaa')",
+            "SeLECT li,ma from namespace1.sett where ma ANY MAPKEYS (ko!=999)",
+            "SeLECT li,ma from namespace1.sett where ma ANY MAPKEYS (ko<=999)",
+            "SELECT \"we\"\"ird\", pk FROM \"namespace1\".\"sett\" WHERE \"foo\" = 1 AND baz = 'it''s' LIMIT 0",
+            "SELECT * FROM namespace1.sett WHERE foo = 5L OR bar = 1.e3 OR bar = -.5 OR bar = 1e OR foo = 1 - 2",
+            "SELECT * FROM namespace1.sett WHERE baz = 'unterminated",
+            "SELECT * FROM namespace1.sett WHERE foo = 1 foo = 2",
+            "SELECT * FROM namespace1.sett WHERE foo = 1 NOT AND bar = 2",
+            "SELECT * FROM namespace1.sett WHERE ((foo = 1)",
+            "SELECT * FROM namespace1.sett LIMIT 1.5",
+            "SELECT * FROM namespace1.sett WHERE gj WITHIN JSON('{}')",
+            "SELECT *",
+            "SELECT * FROM namespace1.sett;",
+            "Ä",
+            "",
+    };
+
+    private static final String[] BINS = {"foo", "bar", "baz", "gj", "li", "ma", "PK", "\"foo\""};
+    private static final String[] COMPARE_OPS = {"=", "==", "!=", "<>", "<", "<=", ">", ">=", "LIKE", "match", "RegExp"};
+    private static final String[] VALUES = {"1", "-2", "+3.5", "4e2", "'a'", "''''", "?", ":p", ":q"};
+    private static final String[] ITERATORS = {"CONTAINS", "ANY CONTAINS", "MAPKEYS", "ANY MAPKEYS", "MAPVALUES", "ANY MAPVALUES"};
+    private static final String[] METAS = {"LUT", "ttl", "RecSize", "DIGEST(4)", "DIGEST(?)"};
+
+    @Test
+    public void keywordsMatchGrammar() {
+        Set<String> grammar = new TreeSet<>();
+        Vocabulary vocabulary = AQLSelectExLexer.VOCABULARY;
+        for (int i = 0; i <= vocabulary.getMaxTokenType(); i++) {
+            String name = vocabulary.getSymbolicName(i);
+            if ((name != null) && name.startsWith("K_")) {
+                grammar.add(name.substring(2));
+            }
+        }
+
+        Set<String> keywords = new TreeSet<>();
+        for (RecursiveDescentParser.Keyword keyword : RecursiveDescentParser.Keyword.values()) {
+            keywords.add(keyword.name());
+        }
+
+        assertEquals(grammar, keywords);
+        assertTrue(RecursiveDescentParser.isKeyword("MapValues"));
+        assertFalse(RecursiveDescentParser.isKeyword("mapvalue"));
+    }
+
+    @Test
+    public void corpus() {
+        for (String query : CORPUS) {
+            assertSameOutcome(SCHEMA, query);
+        }
+        for (String query : WarmUp.CORPUS) {
+            assertSameOutcome(WarmUp.schema(), query);
+        }
+    }
+
+    @Test
+    public void keywordsAddedLaterAreStillNames() throws Exception {
+        HashMap schema = new HashMap() {{
+            put("in.by", new HashMap() {{
+                put("count", ParticleType.INTEGER);
+                put("max", ParticleType.INTEGER);
+                put("order", ParticleType.STRING);
+                put("limit", ParticleType.INTEGER);
+                put("li", ParticleType.LIST);
+            }});
+        }};
+        String[] queries = {
+                "SELECT count, max, order FROM in.by",
+                "SELECT count, COUNT(*) FROM in.by GROUP BY count",
+                "SELECT max(count), order FROM in.by GROUP BY order ORDER BY max(count) DESC LIMIT 2",
+                "SELECT * FROM in.by WHERE count > 1 AND max IN (1, 2) AND order = 'asc' LIMIT 5",
+                "SELECT * FROM in.by WHERE limit = 1 ORDER BY order LIMIT 5 OFFSET 1",
+                "SELECT desc, COUNT(*) FROM in.by WHERE count = 1 GROUP BY desc",
+                "SELECT * FROM in.by WHERE (count = 1) OR limit BETWEEN 1 AND 2 ORDER BY desc ASC LIMIT 1",
+                "SELECT * FROM in.by WHERE li ANY CONTAINS (sum = 1)",
+                "SELECT * FROM in.by WITH (limit BETWEEN 1 AND 3) WHERE in = 'x'",
+        };
+        for (String query : queries) {
+            assertTrue(query, assertSameOutcome(schema, query));
+        }
+
+        assertEquals(Arrays.asList("count", "max", "order"),
+                AQLSelectEx.forSchema(schema).withParserEngine(ParserEngine.RECURSIVE_DESCENT).compile(queries[0]).getSelect().getBinNames());
+        assertEquals("SELECT * FROM \"in\".\"by\" WHERE \"limit\" = 1 ORDER BY \"order\" ASC LIMIT 5 OFFSET 1",
+                AQLSelectEx.forSchema(schema).compile(queries[4]).getCanonical().getText());
+    }
+
+    @Test
+    public void generatedQueries() {
+        Random random = new Random(42L);
+
+        int compiled = 0;
+        for (int i = 0; i < 2000; i++) {
+            if (assertSameOutcome(SCHEMA, generate(random))) {
+                compiled++;
+            }
+        }
+        assertTrue(compiled > 500);
+    }
+
+    @Test
+    public void mutatedQueries() {
+        Random random = new Random(7L);
+        String alphabet = "()'\",.=<>!:?*+-;eL1 aNotAnd";
+
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder query = new StringBuilder(CORPUS[random.nextInt(CORPUS.length)]);
+            for (int m = random.nextInt(3); m >= 0; m--) {
+                int at = (query.length() == 0) ? 0 : random.nextInt(query.length());
+                switch (random.nextInt(3)) {
+                    case 0: {
+                        if (query.length() > 0) {
+                            query.deleteCharAt(at);
+                        }
+                    }
+                    break;
+                    case 1: {
+                        query.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    break;
+                    default: {
+                        query.setLength(at);
+                    }
+                }
+            }
+
+            assertSameOutcome(SCHEMA, query.toString());
+        }
+    }
+
+    @Test
+    public void tokenCount() {
+        for (String query : WarmUp.CORPUS) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(query);
+            try {
+                parser.parse();
+            } catch (RuntimeException e) {
+                continue;
+            }
+
+            assertEquals(query, AntlrParser.lex(query).tokens(), parser.tokens());
+        }
+    }
+
+    private boolean assertSameOutcome(Map schema, String query) {
+        AQLSelectEx antlr = AQLSelectEx.forSchema(schema).withCacheSize(0);
+
+        String expected = outcome(antlr, query);
+        assertEquals(query, expected, outcome(antlr.withParserEngine(ParserEngine.RECURSIVE_DESCENT), query));
+
+        return expected != null;
+    }
+
+    private static String outcome(AQLSelectEx selectEx, String query) {
+        try {
+            CompiledSelect compiled = selectEx.compile(query);
+
+            // plans carry queries Statements alone can't
+            QueryPlan plan;
+            if (compiled.hasParameters()) {
+                Object[] values = new Object[compiled.getParamNames().size()];
+                Arrays.fill(values, "1");
+                plan = compiled.bindPlan(values);
+            } else {
+                plan = compiled.toPlan();
+            }
+
+            StringBuilder outcome = new StringBuilder(compiled.getCanonical().getText()).append('\n').append(compiled.getParamNames());
+            for (Statement statement : plan.getStatements()) {
+                outcome.append('\n').append(Arrays.toString(StatementAssert.wire(statement)));
+            }
+            return outcome.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String generate(Random random) {
+        StringBuilder sb = new StringBuilder(random.nextBoolean() ? "SELECT * " : "select foo, \"bar\" ");
+        sb.append("FROM namespace1.sett");
+
+        if (random.nextInt(4) == 0) {
+            sb.append(random.nextBoolean() ? " WITH " : " use ").append(random.nextBoolean() ? "" : "LIST ")
+                    .append("(foo ").append(random.nextBoolean() ? "= 1" : "BETWEEN ? AND 3").append(')');
+        }
+
+        if (random.nextInt(5) > 0) {
+            sb.append(" WHERE ");
+            int atoms = 1 + random.nextInt(5);
+            int open = 0;
+            for (int a = 0; a < atoms; a++) {
+                if (a > 0) {
+                    sb.append(random.nextBoolean() ? " AND " : " or ");
+                }
+                if (random.nextInt(4) == 0) {
+                    sb.append("NOT ");
+                }
+                if (random.nextInt(3) == 0) {
+                    sb.append('(');
+                    open++;
+                }
+                sb.append(atom(random));
+                if ((open > 0) && random.nextBoolean()) {
+                    sb.append(')');
+                    open--;
+                }
+            }
+            for (; open > 0; open--) {
+                sb.append(')');
+            }
+        }
+
+        if (random.nextInt(4) == 0) {
+            sb.append(" LIMIT ").append(random.nextInt(100));
+            if (random.nextBoolean()) {
+                sb.append(" OFFSET ").append(random.nextInt(100));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static String atom(Random random) {
+        String bin = pick(random, BINS);
+        switch (random.nextInt(6)) {
+            case 0:
+                return pick(random, METAS) + pick(random, COMPARE_OPS) + pick(random, VALUES);
+            case 1:
+                return bin + " " + pick(random, ITERATORS) + " (ko " + pick(random, COMPARE_OPS) + " " + pick(random, VALUES) + ")";
+            case 2:
+                return bin + (random.nextBoolean() ? " NOT IN (" : " in (") + pick(random, VALUES) + ", " + pick(random, VALUES) + ")";
+            case 3:
+                return bin + (random.nextBoolean() ? " not BETWEEN " : " BETWEEN ") + pick(random, VALUES) + " AND " + pick(random, VALUES);
+            case 4:
+                return bin + (random.nextBoolean() ? " CONTAINS " : " WITHIN ") + (random.nextBoolean() ? "CAST(? AS GEOJSON)" : "GEOJSON('{}')");
+            default:
+                return bin + " " + pick(random, COMPARE_OPS) + " " + pick(random, VALUES);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
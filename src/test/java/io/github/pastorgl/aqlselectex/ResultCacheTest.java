@@ -0,0 +1,167 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.exp.Expression;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResultCacheTest {
+
+    private final HashMap SCHEMA = new HashMap() {{
+        put("namespace1.set1", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+        }});
+    }};
+
+    private final AQLSelectEx selectEx = AQLSelectEx.forSchema(SCHEMA);
+
+    @Test
+    public void equivalentStatementsShareKey() throws Exception {
+        Statement a = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo>1 AND foo < 10");
+        Statement b = selectEx.fromString("select * from namespace1.set1 where (foo > 1) and foo<10");
+        Statement c = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo > 1 AND foo < 11");
+
+        assertEquals(ResultCache.key(a, null), ResultCache.key(b, null));
+        assertNotEquals(ResultCache.key(a, null), ResultCache.key(c, null));
+    }
+
+    @Test
+    public void filterExpressionIsPartOfKey() throws Exception {
+        AQLSelectEx expressions = selectEx.withBackend(CodegenBackend.EXPRESSION);
+        CompiledSelect a = expressions.compile("SELECT * FROM namespace1.set1 WHERE foo > 1");
+        CompiledSelect b = expressions.compile("SELECT * FROM namespace1.set1 WHERE foo > 2");
+
+        assertEquals(ResultCache.key(a.toStatement(), a.getFilterExp()), ResultCache.key(b.toStatement(), a.getFilterExp()));
+        assertNotEquals(ResultCache.key(a.toStatement(), a.getFilterExp()), ResultCache.key(b.toStatement(), b.getFilterExp()));
+        assertNotEquals(ResultCache.key(a.toStatement(), a.getFilterExp()), ResultCache.key(a.toStatement(), null));
+
+        Expression unmatched = ResultCache.updatedSince(a.getFilterExp(), 1000L, true);
+        assertEquals(expressions.compile("SELECT * FROM namespace1.set1 WHERE NOT foo > 1 AND LUT >= 1000000000").getFilterExp(), unmatched);
+    }
+
+    @Test
+    public void repeatedQueryIsServedFromCache() throws Exception {
+        InMemoryQueryClient client = new InMemoryQueryClient(300);
+        ResultCache cache = new ResultCache(1L << 20, 1L, TimeUnit.MINUTES);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(3).withResultCache(cache);
+
+        for (int i = 0; i < 3; i++) {
+            AtomicInteger count = new AtomicInteger();
+            executor.execute(selectEx.plan("SELECT * FROM namespace1.set1"), record -> count.incrementAndGet());
+            assertEquals(300, count.get());
+        }
+
+        assertEquals(3, client.queries.get());
+        ResultCache.Stats stats = cache.stats();
+        assertEquals(2L, stats.hits());
+        assertEquals(1L, stats.misses());
+        assertEquals(1, stats.size());
+        assertTrue(stats.bytes() > 300 * 96);
+        assertEquals(2.D / 3.D, stats.hitRatio(), 1E-9);
+    }
+
+    @Test
+    public void sizeBoundEvicts() throws Exception {
+        ResultCache cache = new ResultCache(30000L, 1L, TimeUnit.MINUTES);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(100)).withSlices(1).withResultCache(cache);
+
+        executor.execute(selectEx.plan("SELECT * FROM namespace1.set1 WHERE foo > 1"), record -> {
+        });
+        executor.execute(selectEx.plan("SELECT * FROM namespace1.set1 WHERE foo > 2"), record -> {
+        });
+
+        assertEquals(1, cache.stats().size());
+        assertEquals(1L, cache.stats().evictions());
+        assertTrue(cache.stats().bytes() <= 30000L);
+    }
+
+    @Test
+    public void oversizedResultIsNotCollected() throws Exception {
+        ResultCache cache = new ResultCache(5000L, 1L, TimeUnit.MINUTES);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(100)).withSlices(2).withResultCache(cache);
+
+        AtomicInteger count = new AtomicInteger();
+        executor.execute(selectEx.plan("SELECT * FROM namespace1.set1"), record -> count.incrementAndGet());
+
+        assertEquals(100, count.get());
+        assertEquals(0, cache.stats().size());
+        assertEquals(0L, cache.stats().evictions());
+        assertTrue(cache.exceeds(5001L));
+        assertFalse(cache.exceeds(5000L));
+    }
+
+    @Test
+    public void limitedResultIsNotCached() throws Exception {
+        ResultCache cache = new ResultCache(1L << 20, 1L, TimeUnit.MINUTES);
+        QueryExecutor executor = new QueryExecutor(new InMemoryQueryClient(100)).withSlices(1).withResultCache(cache);
+
+        executor.execute(selectEx.plan("SELECT * FROM namespace1.set1 LIMIT 10"), record -> {
+        });
+
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    public void refreshQueriesUpdatedRecords() throws Exception {
+        Statement statement = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo > 1");
+
+        Statement updated = ResultCache.updatedSince(statement, 1000L, false);
+        Statement expected = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE foo > 1 AND LUT >= 1000000000");
+        StatementAssert.assertStatementEquals(expected, updated);
+
+        Statement unmatched = ResultCache.updatedSince(statement, 1000L, true);
+        expected = selectEx.fromString("SELECT * FROM namespace1.set1 WHERE NOT foo > 1 AND LUT >= 1000000000");
+        StatementAssert.assertStatementEquals(expected, unmatched);
+
+        assertNull(ResultCache.updatedSince(selectEx.fromString("SELECT * FROM namespace1.set1"), 1000L, true));
+        assertEquals(3, ResultCache.updatedSince(selectEx.fromString("SELECT * FROM namespace1.set1"), 1000L, false).getPredExp().length);
+
+        ResultCache cache = new ResultCache(1L << 20, 1L, TimeUnit.MINUTES).withLutRefresh(1L, TimeUnit.SECONDS);
+        InMemoryQueryClient client = new InMemoryQueryClient(50);
+        // stand-in ignores predicates, so nothing is updated since the snapshot
+        QueryExecutor executor = new QueryExecutor((st, begin, count, consumer) -> {
+            if (st.getPredExp().length == 3) {
+                client.query(st, begin, count, consumer);
+            } else {
+                client.queries.incrementAndGet();
+            }
+        }).withSlices(1).withResultCache(cache);
+        for (int i = 0; i < 2; i++) {
+            AtomicInteger count = new AtomicInteger();
+            executor.execute(statement, record -> count.incrementAndGet());
+            assertEquals(50, count.get());
+        }
+        // full query, then two delta queries
+        assertEquals(3, client.queries.get());
+        assertEquals(1L, cache.stats().refreshes());
+    }
+
+    @Test
+    public void filteredStatementIsNotRefreshed() throws Exception {
+        // a record whose indexed bin has changed isn't returned by the index at all, so it can't be found unmatched
+        Statement statement = selectEx.fromString("SELECT * FROM namespace1.set1 WITH (foo BETWEEN 1 AND 10) WHERE foo != 5");
+
+        ResultCache cache = new ResultCache(1L << 20, 1L, TimeUnit.MINUTES).withLutRefresh(1L, TimeUnit.SECONDS);
+        assertTrue(cache.refreshes());
+        assertFalse(cache.refreshes(statement));
+
+        InMemoryQueryClient client = new InMemoryQueryClient(50);
+        QueryExecutor executor = new QueryExecutor(client).withSlices(1).withResultCache(cache);
+        for (int i = 0; i < 2; i++) {
+            AtomicInteger count = new AtomicInteger();
+            executor.execute(statement, record -> count.incrementAndGet());
+            assertEquals(50, count.get());
+        }
+
+        assertEquals(1, client.queries.get());
+        assertEquals(0L, cache.stats().refreshes());
+        assertEquals(1L, cache.stats().hits());
+    }
+}
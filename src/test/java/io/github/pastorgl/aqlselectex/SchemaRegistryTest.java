@@ -0,0 +1,156 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.*;
+
+public class SchemaRegistryTest {
+
+    private static HashMap<String, Map<String, Integer>> schema(String set, int fooType) {
+        HashMap<String, Map<String, Integer>> schema = new HashMap<>();
+        schema.put(set, new HashMap<String, Integer>() {{
+            put("foo", fooType);
+            put("baz", ParticleType.STRING);
+        }});
+        schema.put("registry.other", new HashMap<String, Integer>() {{
+            put("qux", ParticleType.INTEGER);
+        }});
+        return schema;
+    }
+
+    @Test
+    public void equalSchemasShareInstance() {
+        AQLSelectEx first = AQLSelectEx.forSchema(schema("registry.sett", ParticleType.INTEGER));
+        AQLSelectEx second = AQLSelectEx.forSchema(new TreeMap<>(schema("registry.sett", ParticleType.INTEGER)));
+        AQLSelectEx third = AQLSelectEx.forSchema(schema("registry.sett", ParticleType.DOUBLE));
+
+        assertSame(first, second);
+        assertNotSame(first, third);
+        assertNotEquals(first.getSchema().getFingerprint(), third.getSchema().getFingerprint());
+    }
+
+    @Test
+    public void mutationAfterRegistrationIsNotSeen() throws Exception {
+        HashMap<String, Map<String, Integer>> schema = schema("registry.mutated", ParticleType.INTEGER);
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(schema);
+
+        schema.get("registry.mutated").put("foo", ParticleType.STRING);
+
+        assertEquals(ParticleType.INTEGER, (int) selectEx.getSchema().get("registry.mutated").getBinTypes().get("foo"));
+        assertNotSame(selectEx, AQLSelectEx.forSchema(schema));
+    }
+
+    @Test
+    public void reloadInvalidatesDependentQueriesOnly() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(schema("registry.reloaded", ParticleType.INTEGER)).withCacheSize(16);
+
+        String select = "SELECT foo FROM registry.reloaded WHERE foo = 5";
+        String other = "SELECT qux FROM registry.other WHERE qux = 5";
+        selectEx.fromString(select);
+        selectEx.fromString(other);
+
+        long version = selectEx.reloadSchema("registry.reloaded", Collections.singletonMap("foo", ParticleType.STRING));
+        assertEquals(version, selectEx.getSchema().get("registry.reloaded").getVersion());
+        assertEquals(1, selectEx.cacheStats().size());
+
+        Statement reference = new Statement();
+        reference.setNamespace("registry");
+        reference.setSetName("reloaded");
+        reference.setBinNames("foo");
+        reference.setPredExp(
+                PredExp.stringBin("foo"),
+                PredExp.stringValue("5"),
+                PredExp.integerEqual()
+        );
+        assertStatementEquals(reference, selectEx.fromString(select));
+
+        selectEx.fromString(other);
+        assertEquals(1, selectEx.cacheStats().hits());
+    }
+
+    @Test
+    public void reloadedSchemaIsUnregistered() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(schema("registry.unregistered", ParticleType.INTEGER));
+        selectEx.reloadSchema("registry.unregistered", Collections.singletonMap("foo", ParticleType.STRING));
+
+        AQLSelectEx registered = AQLSelectEx.forSchema(schema("registry.unregistered", ParticleType.INTEGER));
+        assertNotSame(selectEx, registered);
+        assertEquals(ParticleType.INTEGER, registered.getSchema().get("registry.unregistered").binType("foo"));
+        assertSame(registered, AQLSelectEx.forSchema(schema("registry.unregistered", ParticleType.INTEGER)));
+    }
+
+    @Test
+    public void sameMapIsLookedUpAgainAfterReload() throws Exception {
+        HashMap<String, Map<String, Integer>> schema = schema("registry.same", ParticleType.INTEGER);
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(schema);
+        assertSame(selectEx, AQLSelectEx.forSchema(schema));
+
+        selectEx.reloadSchema("registry.same", Collections.singletonMap("foo", ParticleType.STRING));
+
+        AQLSelectEx registered = AQLSelectEx.forSchema(schema);
+        assertNotSame(selectEx, registered);
+        assertEquals(ParticleType.INTEGER, registered.getSchema().get("registry.same").binType("foo"));
+        assertSame(registered, AQLSelectEx.forSchema(schema));
+    }
+
+    @Test
+    public void snapshotLookup() {
+        Schema.Snapshot snapshot = Schema.Snapshot.of(schema("registry.snapshot", ParticleType.INTEGER));
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(snapshot);
+
+        assertSame(snapshot, selectEx.getSchema().getSnapshot());
+        assertSame(selectEx, AQLSelectEx.forSchema(snapshot));
+        assertSame(selectEx, AQLSelectEx.forSchema(schema("registry.snapshot", ParticleType.INTEGER)));
+
+        Schema.Snapshot other = Schema.Snapshot.of(schema("registry.snapshot", ParticleType.DOUBLE));
+        assertNotEquals(snapshot, other);
+        assertEquals(snapshot, Schema.Snapshot.of(new TreeMap<>(schema("registry.snapshot", ParticleType.INTEGER))));
+    }
+
+    @Test
+    public void compiledSetSchema() {
+        SetSchema setSchema = new SetSchema(new HashMap<String, Integer>() {{
+            put("ma", ParticleType.MAP);
+            put("ma.ko", ParticleType.INTEGER);
+            put("li.ke", ParticleType.DOUBLE);
+            put("foo", ParticleType.INTEGER);
+        }}, 0);
+
+        assertEquals(ParticleType.INTEGER, setSchema.binType("foo"));
+        assertEquals(ParticleType.STRING, setSchema.binType("bar"));
+        assertEquals(ParticleType.MAP, setSchema.binType("ma"));
+        assertEquals(ParticleType.INTEGER, setSchema.bin("ma").varType("ko"));
+        assertEquals(ParticleType.STRING, setSchema.bin("ma").varType("ke"));
+        assertEquals(ParticleType.STRING, setSchema.binType("li"));
+        assertEquals(ParticleType.DOUBLE, setSchema.bin("li").varType("ke"));
+        assertNull(setSchema.bin("ma.ko"));
+        assertSame("foo", setSchema.bin(new String("foo")).getName());
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<AQLSelectEx>> futures = new ArrayList<>();
+            for (int i = 0; i < 256; i++) {
+                final int type = (i % 4 == 0) ? ParticleType.DOUBLE : ParticleType.INTEGER;
+                futures.add(pool.submit(() -> AQLSelectEx.forSchema(schema("registry.concurrent", type))));
+            }
+
+            Set<AQLSelectEx> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<AQLSelectEx> future : futures) {
+                instances.add(future.get());
+            }
+            assertEquals(2, instances.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SelectNodeTest {
+
+    private final HashMap FOO_BAR_BAZ = new HashMap() {{
+        put("namespace1.sett", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+        }});
+    }};
+
+    @Test
+    public void treeFollowsPrecedence() throws Exception {
+        SelectNode select = AQLSelectEx.forSchema(FOO_BAR_BAZ)
+                .compile("SELECT * FROM namespace1.sett WHERE foo>2 OR NOT bar<=3 AND baz='a' OR foo=1").getSelect();
+
+        assertNull(select.getBinNames());
+        assertEquals("namespace1.sett", select.getFqns());
+        assertEquals("((foo GT 2 OR (NOT (bar LE 3) AND baz EQ 'a')) OR foo EQ 1)", select.getWhere().toString());
+    }
+
+    @Test
+    public void doubleNegationAndQuotes() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ);
+
+        Statement statement = selectEx.fromString("SELECT \"foo\" FROM \"namespace1\".sett WHERE NOT NOT \"baz\" = 'it''s'");
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("sett");
+        reference.setBinNames("foo");
+        reference.setPredExp(
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("it's"),
+                PredExp.stringEqual(),
+                PredExp.not(),
+                PredExp.not()
+        );
+
+        assertStatementEquals(reference, statement);
+        assertEquals(Arrays.asList("foo"), selectEx.compile("SELECT \"foo\" FROM \"namespace1\".sett").getSelect().getBinNames());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void mismatchedParentheses() throws Exception {
+        AQLSelectEx.forSchema(FOO_BAR_BAZ).fromString("SELECT foo FROM namespace1.sett WHERE (foo>2 AND bar<3");
+    }
+
+    @Test
+    public void limitAndOffset() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ);
+
+        CompiledSelect compiled = selectEx.compile("SELECT * FROM namespace1.sett WHERE foo>2 LIMIT 10 OFFSET 5");
+        assertEquals(10L, compiled.getLimit());
+        assertEquals(5L, compiled.getOffset());
+
+        compiled = selectEx.compile("SELECT * FROM namespace1.sett");
+        assertEquals(SelectNode.NO_LIMIT, compiled.getLimit());
+        assertEquals(0L, compiled.getOffset());
+    }
+
+    @Test
+    public void limitedQueriesAreNotStatements() throws Exception {
+        AQLSelectEx selectEx = AQLSelectEx.forSchema(FOO_BAR_BAZ);
+
+        for (String select : new String[]{"SELECT * FROM namespace1.sett WHERE foo>2 LIMIT 100", "SELECT * FROM namespace1.sett LIMIT 0 OFFSET 5"}) {
+            try {
+                selectEx.fromString(select);
+                fail(select);
+            } catch (Exception e) {
+                assertTrue(e.getMessage().contains("plan()"));
+            }
+            try {
+                selectEx.compile(select).toStatement();
+                fail(select);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        try {
+            selectEx.prepare("SELECT * FROM namespace1.sett WHERE foo > ? LIMIT 100").bind(2L);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        QueryPlan plan = selectEx.plan("SELECT * FROM namespace1.sett WHERE foo>2 LIMIT 100");
+        assertEquals(100L, plan.maxRecords());
+        assertEquals(1, plan.getStatements().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void fractionalLimit() throws Exception {
+        AQLSelectEx.forSchema(FOO_BAR_BAZ).compile("SELECT * FROM namespace1.sett LIMIT 1.5");
+    }
+}
@@ -0,0 +1,33 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.Command;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.Statement;
+
+import java.util.Arrays;
+
+import static com.aerospike.client.command.Command.MSG_TOTAL_HEADER_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+
+final class StatementAssert {
+    private StatementAssert() {
+    }
+
+    static void assertStatementEquals(Statement reference, Statement statement) {
+        assertArrayEquals(wire(reference), wire(statement));
+    }
+
+    static byte[] wire(Statement statement) {
+        final int size = 8192;
+
+        Command command = new Command(0, 0, 0) {
+            @Override
+            protected void sizeBuffer() {
+            }
+        };
+        command.dataBuffer = new byte[size];
+        command.setQuery(new QueryPolicy(), statement, false, null);
+
+        return Arrays.copyOfRange(command.dataBuffer, MSG_TOTAL_HEADER_SIZE, command.dataOffset);
+    }
+}
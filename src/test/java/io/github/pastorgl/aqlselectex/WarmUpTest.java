@@ -0,0 +1,25 @@
+package io.github.pastorgl.aqlselectex;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+    @Test
+    public void warmUpPrimesSharedDfa() throws Exception {
+        WarmUpReport report = AQLSelectEx.warmUpInBackground().get(1, TimeUnit.MINUTES);
+
+        assertEquals(WarmUp.CORPUS.length, report.getQueries());
+        assertTrue(report.getNanos() > 0);
+        assertTrue(report.getDfaStates() >= report.getDfaStatesCreated());
+        assertTrue(report.getFailed() < report.getQueries() / 2);
+
+        // DFA is shared and already primed, so nothing new
+        WarmUpReport again = AQLSelectEx.warmUp();
+        assertEquals(0, again.getDfaStatesCreated());
+        assertEquals(report.getDfaStates(), again.getDfaStates());
+    }
+}
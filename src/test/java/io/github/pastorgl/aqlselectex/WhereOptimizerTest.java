@@ -0,0 +1,81 @@
+package io.github.pastorgl.aqlselectex;
+
+import com.aerospike.client.command.ParticleType;
+import com.aerospike.client.query.PredExp;
+import com.aerospike.client.query.RegexFlag;
+import com.aerospike.client.query.Statement;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static io.github.pastorgl.aqlselectex.StatementAssert.assertStatementEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WhereOptimizerTest {
+
+    private final HashMap FOO_BAR_BAZ = new HashMap() {{
+        put("namespace1.sett", new HashMap() {{
+            put("foo", ParticleType.INTEGER);
+            put("bar", ParticleType.DOUBLE);
+            put("baz", ParticleType.STRING);
+            put("gj", ParticleType.GEOJSON);
+        }});
+    }};
+
+    private WhereNode optimized(String where) throws Exception {
+        return AQLSelectEx.forSchema(FOO_BAR_BAZ).withOptimizer(true).compile("SELECT foo FROM namespace1.sett WHERE " + where).getSelect().getWhere();
+    }
+
+    @Test
+    public void flattenAndDeduplicate() throws Exception {
+        assertEquals("(foo GT 1 AND bar LT 2 AND foo LT 9 AND baz EQ 'a')",
+                optimized("foo > 1 AND (bar < 2 AND (foo < 9 AND baz = 'a')) AND foo > 1").toString());
+        assertEquals("foo GT 1", optimized("foo > 1 OR foo > 1").toString());
+        assertEquals("foo GT 1", optimized("NOT NOT foo > 1").toString());
+    }
+
+    @Test
+    public void deMorgan() throws Exception {
+        assertEquals("(foo GT 1 OR bar LT 2)", optimized("NOT (NOT foo > 1 AND NOT bar < 2)").toString());
+        assertEquals("(foo GT 1 AND bar LT 2 AND NOT (baz EQ 'a'))", optimized("NOT (NOT foo > 1 OR NOT bar < 2 OR baz = 'a')").toString());
+        // would add NOTs instead
+        assertEquals("NOT ((foo GT 1 AND bar LT 2))", optimized("NOT (foo > 1 AND bar < 2)").toString());
+    }
+
+    @Test
+    public void cheapFirst() throws Exception {
+        WhereNode where = optimized("gj WITHIN CAST('{}' AS GEOJSON) AND baz LIKE 'a.*' AND baz = 'b' AND foo = 3 AND LUT > 100");
+        assertEquals("(LUT GT 100 AND foo EQ 3 AND baz EQ 'b' AND baz REGEX 'a.*' AND gj WITHIN '{}')", where.toString());
+        assertTrue(WhereOptimizer.cost(where) > 0);
+    }
+
+    @Test
+    public void compilesToNaryPredExp() throws Exception {
+        Statement statement = AQLSelectEx.forSchema(FOO_BAR_BAZ).withOptimizer(true)
+                .fromString("SELECT foo FROM namespace1.sett WHERE (baz LIKE 'x' OR foo > 2) AND (foo < 5 AND bar >= 1)");
+
+        Statement reference = new Statement();
+        reference.setNamespace("namespace1");
+        reference.setSetName("sett");
+        reference.setBinNames("foo");
+        reference.setPredExp(
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(5),
+                PredExp.integerLess(),
+                PredExp.integerBin("bar"),
+                PredExp.integerValue(1),
+                PredExp.integerGreaterEq(),
+                PredExp.integerBin("foo"),
+                PredExp.integerValue(2),
+                PredExp.integerGreater(),
+                PredExp.stringBin("baz"),
+                PredExp.stringValue("x"),
+                PredExp.stringRegex(RegexFlag.NEWLINE),
+                PredExp.or(2),
+                PredExp.and(3)
+        );
+
+        assertStatementEquals(reference, statement);
+    }
+}